@@ -62,34 +62,29 @@ public class Cluster3Layout extends Layout {
 		double maxNodeWidth = X_COL_SIZE;
 		double maxNodeHeight = Y_COL_SIZE;
 		// create the clusters and sorted list
-		Iterator<LWComponent> i = VUE.getActiveMap().getAllDescendents(
-				LWContainer.ChildKind.PROPER).iterator();
 		// placing the cluster nodes in a map with the center node as a key
-		while (i.hasNext()) {
-			LWComponent c = i.next();
-			if (c instanceof LWLink) {
-				LWLink link = (LWLink) c;
-				LWComponent head = link.getHead();
-				LWComponent tail = link.getTail();
-				if (selection.contains(head)) {
-					if (!clusterMap.containsKey(head)) {
-						clusterMap.put(head, new ArrayList<LWComponent>());
-					}
-					clusterMap.get(head).add(tail);
+		final LWMap map = VUE.getActiveMap();
+		for (LWLink link : map.getAllInstancesOf(LWLink.class)) {
+			LWComponent head = link.getHead();
+			LWComponent tail = link.getTail();
+			if (selection.contains(head)) {
+				if (!clusterMap.containsKey(head)) {
+					clusterMap.put(head, new ArrayList<LWComponent>());
 				}
-				if (selection.contains(tail)) {
-					if (!clusterMap.containsKey(tail)) {
-						clusterMap.put(tail, new ArrayList<LWComponent>());
-					}
-					clusterMap.get(tail).add(head);
+				clusterMap.get(head).add(tail);
+			}
+			if (selection.contains(tail)) {
+				if (!clusterMap.containsKey(tail)) {
+					clusterMap.put(tail, new ArrayList<LWComponent>());
 				}
-			} else if (c instanceof LWNode) {
-				maxNodeWidth = maxNodeWidth > c.getWidth() ? maxNodeWidth : c
-						.getWidth();
-				maxNodeHeight = maxNodeHeight > c.getHeight() ? maxNodeHeight
-						: c.getHeight();
+				clusterMap.get(tail).add(head);
 			}
-
+		}
+		for (LWNode c : map.getAllInstancesOf(LWNode.class)) {
+			maxNodeWidth = maxNodeWidth > c.getWidth() ? maxNodeWidth : c
+					.getWidth();
+			maxNodeHeight = maxNodeHeight > c.getHeight() ? maxNodeHeight
+					: c.getHeight();
 		}
 	}
 }
@@ -153,39 +153,34 @@ public class ClusterLayout extends Layout {
 		double totalNodeHeight= 0.0;
 		int meanCount = 0;
 		int total = 0;
-		Iterator<LWComponent> i = VUE.getActiveMap().getAllDescendents(
-				LWContainer.ChildKind.PROPER).iterator();
 		// placing the cluster nodes in a hashmap with the center node as a key
-		while (i.hasNext()) {
-			LWComponent c = i.next();
-			if (c instanceof LWLink) {
-				LWLink link = (LWLink) c;
-				LWComponent head = link.getHead();
-				LWComponent tail = link.getTail();
-				if (selection.contains(head)) {
-					if (!clusterMap.containsKey(head)) {
-						clusterMap.put(head, new ArrayList<LWComponent>());
-					}
-					clusterMap.get(head).add(tail);
+		final LWMap map = VUE.getActiveMap();
+		for (LWLink link : map.getAllInstancesOf(LWLink.class)) {
+			LWComponent head = link.getHead();
+			LWComponent tail = link.getTail();
+			if (selection.contains(head)) {
+				if (!clusterMap.containsKey(head)) {
+					clusterMap.put(head, new ArrayList<LWComponent>());
 				}
-				if (selection.contains(tail)) {
-					if (!clusterMap.containsKey(tail)) {
-						clusterMap.put(tail, new ArrayList<LWComponent>());
-					}
-					clusterMap.get(tail).add(head);
+				clusterMap.get(head).add(tail);
+			}
+			if (selection.contains(tail)) {
+				if (!clusterMap.containsKey(tail)) {
+					clusterMap.put(tail, new ArrayList<LWComponent>());
 				}
-			} else if (c instanceof LWNode) {
-				maxNodeWidth = maxNodeWidth > c.getWidth() ? maxNodeWidth : c
-						.getWidth();
-				maxNodeHeight = maxNodeHeight > c.getHeight() ? maxNodeHeight
-						: c.getHeight();
-				totalNodeWidth +=  c.getWidth();
-				totalNodeHeight += c.getHeight();
-				meanCount++;
-				 
-//				System.out.println("Node: "+c.getLabel()+" width:"+c.getWidth()+" max:"+maxNodeWidth);
+				clusterMap.get(tail).add(head);
 			}
-
+		}
+		for (LWNode c : map.getAllInstancesOf(LWNode.class)) {
+			maxNodeWidth = maxNodeWidth > c.getWidth() ? maxNodeWidth : c
+					.getWidth();
+			maxNodeHeight = maxNodeHeight > c.getHeight() ? maxNodeHeight
+					: c.getHeight();
+			totalNodeWidth +=  c.getWidth();
+			totalNodeHeight += c.getHeight();
+			meanCount++;
+			 
+//				System.out.println("Node: "+c.getLabel()+" width:"+c.getWidth()+" max:"+maxNodeWidth);
 		}
 		// computing the minimum and X and Y position of selection
 		// TODO: use the center of selection to compute min and max instead
@@ -79,25 +79,20 @@ public class ForceLayout extends Layout {
             
         }
         // interate to map for links
-        i = VUE.getActiveMap().getAllDescendents(LWContainer.ChildKind.PROPER).iterator();
-        while (i.hasNext()) {
-            LWComponent c = i.next();
-            if (c.isManagedLocation())
+        for (LWLink link : VUE.getActiveMap().getAllOfType(LWLink.class)) {
+            if (link.isManagedLocation())
                 continue; 
-            if(c instanceof LWLink) {
-                applyLayout = true;
-                LWLink link = (LWLink)c;
-                LWComponent head= link.getHead();
-                LWComponent tail = link.getTail();
-                if(repeatMap.containsKey( head)) {
-                    int nc= repeatMap.get( head).intValue();
-                    repeatMap.put(head,new Integer(nc+1));
-                    
-                }
-                if(repeatMap.containsKey(tail)) {
-                    int nc= repeatMap.get(tail).intValue();
-                    repeatMap.put(tail,new Integer(nc+1));
-                }
+            applyLayout = true;
+            LWComponent head= link.getHead();
+            LWComponent tail = link.getTail();
+            if(repeatMap.containsKey( head)) {
+                int nc= repeatMap.get( head).intValue();
+                repeatMap.put(head,new Integer(nc+1));
+                
+            }
+            if(repeatMap.containsKey(tail)) {
+                int nc= repeatMap.get(tail).intValue();
+                repeatMap.put(tail,new Integer(nc+1));
             }
         }
         if(applyLayout) {
@@ -0,0 +1,135 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package edu.tufts.vue.preferences.implementations;
+
+import java.util.Hashtable;
+
+import javax.swing.JLabel;
+import javax.swing.JSlider;
+import javax.swing.event.ChangeEvent;
+
+import tufts.vue.VueResources;
+import edu.tufts.vue.preferences.generics.GenericSliderPreference;
+
+/**
+ * A small on-screen size in pixels, from 0 (off) up to some maximum, set with a slider.
+ *
+ * Example Usage:
+ * private static PixelSizePreference textPref = PixelSizePreference.create(
+ *		edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+ *		"lodTextSize",
+ *		"Hide Small Text",
+ *		"Text smaller than this on screen is drawn as a line",
+ *		5, 12, true);
+ */
+public class PixelSizePreference extends GenericSliderPreference {
+
+	private final String category;
+	private final String key;
+	private final String name;
+	private final String description;
+	private final Integer defaultValue;
+
+	public static PixelSizePreference create
+            (String category,
+             String key,
+             String name,
+             String desc,
+             int defaultValue,
+             int maxValue,
+             boolean showInUI)
+	{
+            return new PixelSizePreference(category,key,name,desc,defaultValue,maxValue,showInUI);
+	}
+
+	private PixelSizePreference(String category, String key, String name, String desc, int defaultValue, int maxValue, boolean showInUI)
+	{
+		super();
+		this.category = category;
+		this.key = key;
+		this.name = name;
+		this.description = desc;
+		this.defaultValue = Integer.valueOf(defaultValue);
+
+		final JSlider slider = getSlider();
+		slider.setMinimum(0);
+		slider.setMaximum(maxValue);
+		slider.setMinorTickSpacing(1);
+		slider.setMajorTickSpacing(4);
+		slider.setPaintTicks(true);
+		slider.setSnapToTicks(true);
+
+		final Hashtable<Integer, JLabel> labelTable = new Hashtable<Integer, JLabel>();
+		labelTable.put(Integer.valueOf(0), new JLabel(VueResources.getString("jlabel.off")));
+		for (int i = 4; i <= maxValue; i += 4)
+			labelTable.put(Integer.valueOf(i), new JLabel(Integer.toString(i)));
+		slider.setLabelTable(labelTable);
+		slider.setPaintLabels(true);
+
+		slider.setValue(getIntValue());
+		slider.addChangeListener(this);
+
+		setMessage(VueResources.getString("preference.pixels"));
+
+		if (showInUI)
+			edu.tufts.vue.preferences.PreferencesManager.registerPreference(this);
+	}
+
+	/** @return the current value, in pixels */
+	public int getIntValue()
+	{
+		return ((Integer) getValue()).intValue();
+	}
+
+	public Object getDefaultValue()
+	{
+		return defaultValue;
+	}
+
+	public int getSliderValueMappedToPref()
+	{
+		return getSlider().getValue();
+	}
+
+	public String getTitle()
+	{
+		return name;
+	}
+
+	public String getDescription()
+	{
+		return description;
+	}
+
+	public String getPrefName()
+	{
+		return category + "." + key;
+	}
+
+	public String getCategoryKey()
+	{
+		return category;
+	}
+
+	public void stateChanged(ChangeEvent e)
+	{
+		JSlider source = (JSlider)e.getSource();
+	    if (!source.getValueIsAdjusting()) {
+	    	setValue(Integer.valueOf(getSliderValueMappedToPref()));
+	    }
+	}
+
+}
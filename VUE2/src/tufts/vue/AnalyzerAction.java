@@ -433,7 +433,7 @@ public class AnalyzerAction extends Actions.LWCAction {
 			    		{
 			    		//	node.setFillColor(new Color())
 			    			node.setFillColor(joinNodeColor);
-			    			link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASHED);
+			    			LWComponent.SLOT_StrokeStyle.setTo(link, LWComponent.StrokeStyle.DASHED);
 			    			categoryComps.add(node);
 			    			categoryComps.add(link);
 			    		
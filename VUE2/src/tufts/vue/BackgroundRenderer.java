@@ -0,0 +1,564 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders the visible region of a huge map for a MapViewer on a worker thread, so that
+ * a paint on the AWT thread is only a blit of the latest completed render.
+ *
+ * Each render is requested from a paint on the AWT thread.  The request captures a
+ * Snapshot of what's visible: for every container in view, a copy of the list of its
+ * children that could intersect the viewer, as given by the spatial index.  Any link in
+ * view has its geometry, and anything with a label its label layout, brought up to date
+ * while we're at it.  On the worker, the map is drawn from the snapshot (see
+ * LWContainer.drawChildren), so the worker never iterates a live child list, touches a
+ * spatial index, or computes anything in the model.  Links that are found to need
+ * recomputing anyway are skipped, and image loads wanted while drawing are only
+ * requested back on the AWT thread, when the render is shown.  Views with anything in them that can only be drawn
+ * on the AWT thread aren't rendered in the background at all: rich text and labels that
+ * aren't plain text (both drawn by Swing text components), and slide icons (which are
+ * laid out as they're drawn).
+ *
+ * When the zoom has changed, a render is done in two passes.  The first is a quick
+ * low-detail pass at half resolution: draft quality, no anti-aliasing, and LOD thresholds
+ * high enough to skip most text.  Then comes a full-detail pass.  Each pass is shown as
+ * soon as it completes.  Until then, the last completed render is shown, scaled and
+ * translated to where it belongs in the current view.
+ *
+ * Any model change makes all completed renders stale, and cancels any render in
+ * progress: we never show a render of the map as it was before a change.  A stale render
+ * is simply not drawn: the viewer draws directly, as it would without us, until a
+ * render of the current model completes.  So while the model is changing continuously
+ * (e.g., during a drag), we're out of the way.  Changes that only make something look
+ * better (e.g., image data has arrived) don't make a render stale, but will request a
+ * new one.  A request for a different view (a scroll or zoom) cancels any render in
+ * progress for a prior view.
+ *
+ * A model change on the AWT thread while a render is in progress may leave the worker
+ * reading inconsistent state.  The render is cancelled and thrown away in that case, and
+ * any exception it ran into is ignored.
+ *
+ * All renders, for all viewers, are done one at a time on a single worker thread.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class BackgroundRenderer
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(BackgroundRenderer.class);
+
+    /** maps with fewer components than this are drawn on the AWT thread as usual */
+    static final int MIN_COMPONENTS = VueResources.getInt("backgroundRendering.minComponents", 50000);
+
+    /** the resolution & LOD thresholds (pixels) of the low-detail pass */
+    private static final double COARSE_RESOLUTION = 0.5;
+    private static final int COARSE_TEXT_PIXELS = 12;
+    private static final int COARSE_SHAPE_PIXELS = 16;
+
+    /** extra margin (pixels) for the snapshot, for strokes drawn outside a component's paint bounds */
+    private static final int MARGIN = 12;
+
+    private static final ExecutorService Worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread it = new Thread(r, "backgroundRender");
+                it.setDaemon(true);
+                it.setPriority(Thread.NORM_PRIORITY - 1);
+                return it;
+            }
+        });
+
+    /**
+     * What to draw for one render, as captured on the AWT thread, and whether the render
+     * has been cancelled.
+     */
+    static final class Snapshot
+    {
+        private final Map<LWComponent,List<LWComponent>> mChildren = new IdentityHashMap();
+        private volatile boolean mCancelled;
+
+        /** true if something in view can't be drawn from a snapshot: see capture */
+        private boolean mUncapturable;
+
+        /** image loads requested while drawing: worker only, until handed to a Buffer */
+        private List<Runnable> mLoads = new ArrayList();
+
+        /**
+         * @return the children of the given container to draw: those that were in view
+         * when we captured.  Any container we didn't come across when capturing wasn't
+         * in view, and has nothing to draw: we never hand out a live child list.
+         */
+        List<LWComponent> getChildren(LWContainer c) {
+            final List<LWComponent> children = mChildren.get(c);
+            return children == null ? Collections.EMPTY_LIST : children;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        /**
+         * Kicking an image load reads where the image is in the model, so any load that
+         * drawing from the snapshot wants is only requested on the AWT thread, once the
+         * render it was wanted for is shown.
+         */
+        void deferLoad(Runnable request) {
+            mLoads.add(request);
+        }
+
+        /** @return the loads deferred so far, which are then cleared */
+        private List<Runnable> takeLoads() {
+            final List<Runnable> loads = mLoads;
+            mLoads = new ArrayList();
+            return loads;
+        }
+
+        /**
+         * Unwind the render in progress from whatever depth we're drawing at.
+         * @throws CancellationException if this snapshot has been cancelled
+         */
+        void checkCancelled() {
+            if (mCancelled)
+                throw new CancellationException();
+        }
+
+        /**
+         * Capture the children of the given container that could be drawn, and bring
+         * everything the worker will need from them up to date, so drawing them never
+         * has to compute anything in the model.
+         */
+        private void capture(LWContainer c, Rectangle2D region, double zoom, LWComponent focal)
+        {
+            // the same candidates LWContainer.drawChildren would iterate (all of them, if no region)
+            List<LWComponent> children;
+            if (region != null && !(zoom <= 1.0 && c.fullyContainsChildren() && focal != c))
+                children = c.getChildrenIntersecting(region, focal);
+            else
+                children = c.getChildren();
+            if (children == c.getChildren())
+                children = new ArrayList(children);
+            mChildren.put(c, children);
+
+            if (c instanceof LWSlide) {
+                // drawn with every slide, unclipped, and isn't in the model
+                final LWSlide master = ((LWSlide)c).getMasterSlide();
+                if (master != null && master != c && !mChildren.containsKey(master))
+                    capture(master, null, zoom, focal);
+            }
+
+            for (LWComponent child : children) {
+                if (mUncapturable) {
+                    // no point going any further: the viewer will just draw directly instead
+                    return;
+                }
+                if (child instanceof LWLink)
+                    child.getZeroShape(); // compute the link here and now, not on the worker
+                if (child instanceof LWNode || (child instanceof LWLink && child.hasLabel())) {
+                    // likewise the label layout
+                    if (child.getLabelBox().getLayout().isStamped())
+                        mUncapturable = true; // drawn by a JTextPane
+                }
+                if (child instanceof LWImage)
+                    ((LWImage) child).prepareToDraw(); // may kick loads & size the image
+                if (child instanceof LWText) {
+                    // rich text is drawn by a Swing editor pane
+                    mUncapturable = true;
+                }
+                if (child.hasEntries() && LWPathway.isShowingSlideIcons()) {
+                    // Slide icons are laid out as they're drawn, so we can't draw them
+                    // off the AWT thread.
+                    mUncapturable = true;
+                }
+                if (child instanceof LWContainer && child.hasChildren())
+                    capture((LWContainer) child, region, zoom, focal);
+            }
+        }
+    }
+
+    /** A completed render */
+    private static final class Buffer
+    {
+        final BufferedImage image;
+        final double zoom;
+        final float offsetX, offsetY;
+        /** the canvas region rendered */
+        final Rectangle region;
+        final double resolution;
+        final Color fill;
+        final long generation;
+        final long softGeneration;
+        /** image loads deferred while rendering us: requested on the AWT thread when we're first shown */
+        private final List<Runnable> loads;
+        /** the keys of the images drawn into us: see ImageMemoryCache.shown */
+        final Set<Object> imageKeys;
+
+        Buffer(Render r, BufferedImage image, double resolution, Set<Object> imageKeys) {
+            this.image = image;
+            this.zoom = r.zoom;
+            this.offsetX = r.offsetX;
+            this.offsetY = r.offsetY;
+            this.region = r.region;
+            this.resolution = resolution;
+            this.fill = r.fill;
+            this.generation = r.generation;
+            this.softGeneration = r.softGeneration;
+            this.loads = r.snapshot.takeLoads();
+            this.imageKeys = imageKeys;
+        }
+
+        /** AWT thread only */
+        void requestLoads() {
+            if (loads.isEmpty())
+                return;
+            for (Runnable request : loads) {
+                try {
+                    request.run();
+                } catch (Throwable t) {
+                    Log.warn("requesting image load", t);
+                }
+            }
+            loads.clear();
+        }
+
+        boolean isFull() {
+            return resolution == 1;
+        }
+
+        /** @return true if we're exactly the current view */
+        boolean matches(DrawContext dc, Rectangle region) {
+            return zoom == dc.zoom
+                && offsetX == dc.offsetX
+                && offsetY == dc.offsetY
+                && this.region.equals(region);
+        }
+    }
+
+    /** A requested render */
+    private final class Render implements Runnable
+    {
+        final double zoom;
+        final float offsetX, offsetY;
+        final Rectangle region;
+        final Color fill;
+        final long generation;
+        final long softGeneration;
+        final Snapshot snapshot = new Snapshot();
+        final LWComponent focal;
+
+        private DrawContext mCoarseDC;
+        private BufferedImage mCoarseImage;
+        private DrawContext mFullDC;
+        private BufferedImage mFullImage;
+
+        volatile boolean failed;
+
+        Render(DrawContext viewerDC, Rectangle region, Color fill, boolean coarse)
+        {
+            this.zoom = viewerDC.zoom;
+            this.offsetX = viewerDC.offsetX;
+            this.offsetY = viewerDC.offsetY;
+            this.region = region;
+            this.fill = fill;
+            this.generation = mGeneration.get();
+            this.softGeneration = mSoftGeneration.get();
+            this.focal = mViewer.getFocal();
+
+            final Rectangle2D mapRegion = mViewer.screenToMapRect(new Rectangle(region.x - MARGIN,
+                                                                                 region.y - MARGIN,
+                                                                                 region.width + MARGIN * 2,
+                                                                                 region.height + MARGIN * 2));
+            if (focal instanceof LWContainer)
+                snapshot.capture((LWContainer) focal, mapRegion, zoom, focal);
+
+            // The DrawContexts are set up here, on the AWT thread, as they depend on the state of the viewer
+            if (coarse) {
+                final int w = (int) Math.ceil(region.width * COARSE_RESOLUTION);
+                final int h = (int) Math.ceil(region.height * COARSE_RESOLUTION);
+                mCoarseImage = createImage(viewerDC, w, h);
+                final Graphics2D g = mCoarseImage.createGraphics();
+                g.scale(COARSE_RESOLUTION, COARSE_RESOLUTION);
+                g.translate(-region.x, -region.y);
+                mCoarseDC = createDrawContext(g);
+                mCoarseDC.setDraftQuality();
+                mCoarseDC.disableAntiAlias(true);
+                mCoarseDC.setLODThresholds(COARSE_TEXT_PIXELS, COARSE_SHAPE_PIXELS);
+            }
+            mFullImage = createImage(viewerDC, region.width, region.height);
+            final Graphics2D g = mFullImage.createGraphics();
+            g.translate(-region.x, -region.y);
+            mFullDC = createDrawContext(g);
+        }
+
+        private DrawContext createDrawContext(Graphics2D g) {
+            final DrawContext dc = mViewer.createOffscreenDrawContext(g, region);
+            dc.snapshot = snapshot;
+            dc.setRasterCacheEnabled(false);
+            return dc;
+        }
+
+        boolean matches(DrawContext dc, Rectangle region) {
+            return zoom == dc.zoom
+                && offsetX == dc.offsetX
+                && offsetY == dc.offsetY
+                && this.region.equals(region)
+                && generation == mGeneration.get()
+                && softGeneration == mSoftGeneration.get();
+        }
+
+        public void run()
+        {
+            try {
+                if (mCoarseDC != null && !snapshot.isCancelled()) {
+                    final long start = System.nanoTime();
+                    final Set<Object> imageKeys = draw(mCoarseDC);
+                    if (!snapshot.isCancelled())
+                        publish(new Buffer(this, mCoarseImage, COARSE_RESOLUTION, imageKeys), start);
+                }
+                if (!snapshot.isCancelled()) {
+                    final long start = System.nanoTime();
+                    final Set<Object> imageKeys = draw(mFullDC);
+                    if (!snapshot.isCancelled())
+                        publish(new Buffer(this, mFullImage, 1, imageKeys), start);
+                }
+            } catch (Throwable t) {
+                if (!snapshot.isCancelled()) {
+                    failed = true;
+                    Log.warn("rendering " + focal + " in " + mViewer, t);
+                }
+            } finally {
+                dispose();
+            }
+        }
+
+        void dispose() {
+            if (mCoarseDC != null)
+                mCoarseDC.g.dispose();
+            if (mFullDC != null)
+                mFullDC.g.dispose();
+            mCoarseDC = mFullDC = null;
+            mCoarseImage = mFullImage = null;
+        }
+
+        /** @return the keys of the images drawn */
+        private Set<Object> draw(DrawContext dc) {
+            final Set<Object> imageKeys;
+            ImageMemoryCache.beginRecording();
+            try {
+                if (dc.getBackgroundFill() == null)
+                    dc.fillBackground(fill);
+                focal.draw(dc);
+            } finally {
+                imageKeys = ImageMemoryCache.endRecording();
+            }
+            return imageKeys;
+        }
+
+        private void publish(Buffer buffer, long start) {
+            if (buffer.generation != mGeneration.get())
+                return;
+            mShown = buffer;
+            mRenders++;
+            if (DEBUG.PAINT || DEBUG.PERF)
+                Log.debug(String.format("rendered %s at %.0f%% in %.1fms: %s",
+                                        buffer.region, buffer.resolution * 100, (System.nanoTime() - start) / 1e6, mViewer));
+            mViewer.repaint();
+        }
+    }
+
+    private final MapViewer mViewer;
+
+    /** bumped by every change that makes completed renders stale */
+    private final AtomicLong mGeneration = new AtomicLong();
+    /** bumped by every change that calls for a new render, without making the completed ones stale */
+    private final AtomicLong mSoftGeneration = new AtomicLong();
+
+    /** the latest completed render */
+    private volatile Buffer mShown;
+    /** the latest requested render */
+    private Render mRequested;
+
+    /** for diagnostics */
+    private volatile int mRenders, mBlits;
+
+    BackgroundRenderer(MapViewer viewer) {
+        mViewer = viewer;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Invalidation: may be called from any thread
+    //-----------------------------------------------------------------------------
+
+    /** everything rendered so far is out of date */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+        final Render r = mRequested;
+        if (r != null)
+            r.snapshot.cancel();
+    }
+
+    /** re-render whatever the given event may have changed */
+    void invalidate(LWCEvent e) {
+        final Object key = e.key;
+        if (key == LWKey.UserActionCompleted) {
+            // nothing new to draw: the changes have already been reported
+            return;
+        }
+        if (key == LWKey.RepaintRegion || key == LWKey.RepaintComponent || key == LWKey.RepaintAsync) {
+            // e.g., image data has arrived: what we've rendered is still good until we have better
+            mSoftGeneration.incrementAndGet();
+            return;
+        }
+        invalidate();
+    }
+
+    /** cancel any render in progress, and release the last completed render */
+    void dispose() {
+        invalidate();
+        mShown = null;
+        mRequested = null;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Painting: AWT thread only
+    //-----------------------------------------------------------------------------
+
+    /**
+     * Fill the clip region of the given viewer DrawContext from the latest completed
+     * render, requesting a new render if it isn't of exactly the current view.  The
+     * DrawContext is left in map drawing mode, with it's background fill set, just as
+     * if the focal had been drawn into it directly.
+     *
+     * @return false if there's no render of the current model yet: the caller must draw
+     * the focal itself, including the background
+     */
+    boolean paint(DrawContext dc, Color fill)
+    {
+        if (fill.getAlpha() != 255 || dc.frame == null)
+            return false;
+
+        final Rectangle region = new Rectangle(dc.frame);
+        if (region.isEmpty())
+            return false;
+
+        final long generation = mGeneration.get();
+        final Buffer shown = mShown;
+        final boolean current = shown != null && shown.generation == generation && shown.fill.equals(fill);
+
+        if (!current || !shown.isFull() || !shown.matches(dc, region) || shown.softGeneration != mSoftGeneration.get())
+            request(dc, region, fill, shown);
+
+        if (!current)
+            return false;
+
+        blit(dc, shown);
+        ImageMemoryCache.shown(shown.imageKeys);
+        shown.requestLoads();
+        return true;
+    }
+
+    private void request(DrawContext dc, Rectangle region, Color fill, Buffer shown)
+    {
+        final Render requested = mRequested;
+        if (requested != null) {
+            if (requested.matches(dc, region) && requested.fill.equals(fill) && !requested.snapshot.isCancelled()) {
+                // already on the way, or failed: in the latter case, the viewer keeps drawing directly
+                // until something changes
+                return;
+            }
+            requested.snapshot.cancel();
+        }
+
+        // only bother with a quick low-detail pass if there's nothing at this zoom to show in the meantime
+        final boolean coarse = shown == null || shown.zoom != dc.zoom || !shown.isFull();
+
+        final long start = System.nanoTime();
+        final Render render = new Render(dc, region, fill, coarse);
+        mRequested = render;
+        if (render.snapshot.mUncapturable) {
+            // treated as a failed render: the viewer keeps drawing directly until something changes
+            render.failed = true;
+            render.dispose();
+            if (DEBUG.PAINT || DEBUG.PERF) Log.debug("can't render in the background: " + region);
+            return;
+        }
+        Worker.execute(render);
+
+        if (DEBUG.PAINT || DEBUG.PERF)
+            Log.debug(String.format("captured %d containers in %.1fms for %s", render.snapshot.mChildren.size(), (System.nanoTime() - start) / 1e6, region));
+    }
+
+    private void blit(DrawContext dc, Buffer b)
+    {
+        dc.setRawDrawing();
+        try {
+            final Graphics2D g = dc.g;
+            final Rectangle clip = g.getClipBounds();
+
+            final AffineTransform t = AffineTransform.getTranslateInstance(dc.offsetX, dc.offsetY);
+            t.scale(dc.zoom / b.zoom, dc.zoom / b.zoom);
+            t.translate(b.region.x - b.offsetX, b.region.y - b.offsetY);
+            t.scale(1 / b.resolution, 1 / b.resolution);
+
+            if (!b.isFull() || b.zoom != dc.zoom || clip == null || !t.createTransformedShape(new Rectangle(b.image.getWidth(), b.image.getHeight())).getBounds().contains(clip)) {
+                // anything the render doesn't cover is just background until the next one is done
+                g.setColor(b.fill);
+                g.fill(clip != null ? clip : dc.frame);
+            }
+
+            if (t.getType() == AffineTransform.TYPE_TRANSLATION || t.isIdentity()) {
+                g.drawImage(b.image, (int) Math.round(t.getTranslateX()), (int) Math.round(t.getTranslateY()), null);
+            } else {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(b.image, t, null);
+            }
+            mBlits++;
+        } finally {
+            dc.setMapDrawing();
+        }
+        dc.setBackgroundFill(b.fill);
+    }
+
+    private static BufferedImage createImage(DrawContext viewerDC, int width, int height) {
+        return viewerDC.g.getDeviceConfiguration().createCompatibleImage(Math.max(1, width), Math.max(1, height), Transparency.OPAQUE);
+    }
+
+    @Override
+    public String toString() {
+        final Buffer shown = mShown;
+        return "BackgroundRenderer["
+            + (shown == null ? "nothing shown" : (shown.image.getWidth() + "x" + shown.image.getHeight() + " @" + shown.resolution))
+            + " renders=" + mRenders
+            + " blits=" + mBlits
+            + "; " + mViewer + "]";
+    }
+}
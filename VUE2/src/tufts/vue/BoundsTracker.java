@@ -0,0 +1,305 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Incrementally maintains the union of the paint bounds of the drawn children of a
+ * single LWContainer (in practice, a map layer), so that LWMap.getMapBounds doesn't
+ * have to rescan every component in the map each time it's cache is flushed.
+ *
+ * Each counted child contributes it's four edges to four sorted multi-sets, so the
+ * union is always available from the extremes of each set, and a child that changes
+ * (including one that shrinks, or moves in from the edge of the map) costs only a few
+ * O(log n) updates.  As with SpatialIndex, maintenance is driven by child adds &
+ * removes, events from descendents, and LWContainer.notifyBoundsChanged for changes
+ * that don't issue events.  Changed children are re-measured lazily at the next query.
+ *
+ * Children with pathway entries may be drawing slide icons, whose extent is only
+ * known after they've been painted, and that depend on global pathway state, so they're
+ * never cached: they're re-measured at every query.  There are normally only a few.
+ *
+ * Like LWMap.accruePaintBounds, this only looks at the paint bounds of direct children
+ * for which isDrawn() is true.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class BoundsTracker
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(BoundsTracker.class);
+
+    private static final class Entry {
+        final LWComponent c;
+        float x0, y0, x1, y1;
+        boolean counted;
+        boolean always;
+        boolean dirty;
+
+        Entry(LWComponent c) {
+            this.c = c;
+        }
+    }
+
+    /** a sorted multi-set of float values */
+    private static final class Edges {
+        private final TreeMap<Float,int[]> counts = new TreeMap();
+
+        void add(float v) {
+            final int[] n = counts.get(v);
+            if (n == null)
+                counts.put(v, new int[] { 1 });
+            else
+                n[0]++;
+        }
+
+        void remove(float v) {
+            final int[] n = counts.get(v);
+            if (n == null)
+                Log.warn("missing edge " + v);
+            else if (--n[0] == 0)
+                counts.remove(v);
+        }
+
+        float min() { return counts.firstKey(); }
+        float max() { return counts.lastKey(); }
+        void clear() { counts.clear(); }
+    }
+
+    private final LWContainer mOwner;
+
+    private final Map<LWComponent,Entry> mEntries = new IdentityHashMap();
+    private final List<Entry> mDirty = new ArrayList();
+    private final List<Entry> mAlways = new ArrayList();
+
+    private final Edges mMinX = new Edges();
+    private final Edges mMinY = new Edges();
+    private final Edges mMaxX = new Edges();
+    private final Edges mMaxY = new Edges();
+
+    private int mCounted;
+    private boolean mValid;
+
+    /** for diagnostics */
+    private int mRebuilds;
+
+    BoundsTracker(LWContainer owner) {
+        mOwner = owner;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Maintenance
+    //-----------------------------------------------------------------------------
+
+    /** the tracker will be rebuilt from scratch the next time it's needed */
+    void invalidate() {
+        mValid = false;
+    }
+
+    void childAdded(LWComponent c) {
+        if (!mValid)
+            return;
+        Entry e = mEntries.get(c);
+        if (e == null) {
+            e = new Entry(c);
+            mEntries.put(c, e);
+        }
+        markDirty(e);
+    }
+
+    void childRemoved(LWComponent c) {
+        if (!mValid)
+            return;
+        final Entry e = mEntries.remove(c);
+        if (e != null) {
+            uncount(e);
+            if (e.dirty)
+                mDirty.remove(e);
+        }
+    }
+
+    /** the given child of our owner, or something in it's subtree, may have changed bounds */
+    void markChild(LWComponent child) {
+        if (!mValid)
+            return;
+        final Entry e = mEntries.get(child);
+        if (e != null)
+            markDirty(e);
+    }
+
+    private void markDirty(Entry e) {
+        if (!e.dirty) {
+            e.dirty = true;
+            mDirty.add(e);
+        }
+    }
+
+    /** an event from one of our descendents has been delivered to our owner */
+    void childEvent(LWCEvent e) {
+        if (!mValid)
+            return;
+
+        final Object src = e.getSource();
+        if (src instanceof LWComponent)
+            markDescendent((LWComponent) src);
+        if (e.component != null && e.component != src)
+            markDescendent(e.component);
+    }
+
+    private void markDescendent(LWComponent c) {
+        // find the child of our owner that contains the given descendent
+        for (LWContainer p = c.getParent(); p != null; c = p, p = p.getParent()) {
+            if (p == mOwner) {
+                markChild(c);
+                return;
+            }
+        }
+    }
+
+    //-----------------------------------------------------------------------------
+    // Measuring
+    //-----------------------------------------------------------------------------
+
+    private void count(Entry e) {
+        mMinX.add(e.x0);
+        mMinY.add(e.y0);
+        mMaxX.add(e.x1);
+        mMaxY.add(e.y1);
+        e.counted = true;
+        mCounted++;
+    }
+
+    private void uncount(Entry e) {
+        if (e.always) {
+            mAlways.remove(e);
+            e.always = false;
+        }
+        if (e.counted) {
+            mMinX.remove(e.x0);
+            mMinY.remove(e.y0);
+            mMaxX.remove(e.x1);
+            mMaxY.remove(e.y1);
+            e.counted = false;
+            mCounted--;
+        }
+    }
+
+    private void measure(Entry e) {
+        uncount(e);
+
+        if (!e.c.isDrawn())
+            return;
+
+        if (e.c.hasEntries()) {
+            // slide icons: never cached
+            e.always = true;
+            mAlways.add(e);
+            return;
+        }
+
+        final Rectangle2D.Float r = e.c.getPaintBounds();
+
+        if (Util.isBadRect(r)) {
+            if (DEBUG.PAINT || DEBUG.CONTAINMENT) Log.warn("bad paint bounds " + Util.fmt(r) + " for " + e.c);
+            return;
+        }
+
+        e.x0 = r.x;
+        e.y0 = r.y;
+        e.x1 = r.x + r.width;
+        e.y1 = r.y + r.height;
+        count(e);
+    }
+
+    private void rebuild() {
+        mEntries.clear();
+        mDirty.clear();
+        mAlways.clear();
+        mMinX.clear();
+        mMinY.clear();
+        mMaxX.clear();
+        mMaxY.clear();
+        mCounted = 0;
+
+        mValid = true; // set first: measuring links may cause them to report changes
+
+        for (LWComponent c : mOwner.getChildren()) {
+            final Entry e = new Entry(c);
+            mEntries.put(c, e);
+            measure(e);
+        }
+
+        mRebuilds++;
+
+        if (DEBUG.PERF || (DEBUG.CONTAINMENT && DEBUG.META))
+            Log.debug("rebuilt #" + mRebuilds + "; " + mCounted + "/" + mEntries.size() + " counted in " + mOwner);
+    }
+
+    private void ensureCurrent() {
+        if (!mValid) {
+            rebuild();
+            return;
+        }
+        // use an index: measuring may add more dirty entries
+        for (int i = 0; i < mDirty.size(); i++) {
+            final Entry e = mDirty.get(i);
+            e.dirty = false;
+            if (mEntries.get(e.c) == e)
+                measure(e);
+        }
+        mDirty.clear();
+    }
+
+    //-----------------------------------------------------------------------------
+    // Query
+    //-----------------------------------------------------------------------------
+
+    /** @return the union of the paint bounds of all our owner's drawn children, or null if there are none */
+    Rectangle2D.Float getBounds() {
+
+        ensureCurrent();
+
+        Rectangle2D.Float bounds = null;
+
+        if (mCounted > 0) {
+            final float x = mMinX.min();
+            final float y = mMinY.min();
+            bounds = new Rectangle2D.Float(x, y, mMaxX.max() - x, mMaxY.max() - y);
+        }
+
+        for (Entry e : mAlways) {
+            final Rectangle2D.Float r = e.c.getPaintBounds();
+            if (Util.isBadRect(r))
+                continue;
+            if (bounds == null)
+                bounds = r;
+            else
+                bounds.add(r);
+        }
+
+        return bounds;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundsTracker[" + (mValid ? "" : "INVALID ")
+            + mCounted + "/" + mEntries.size() + " counted; always=" + mAlways.size()
+            + " dirty=" + mDirty.size() + " rebuilds=" + mRebuilds + "; " + mOwner + "]";
+    }
+}
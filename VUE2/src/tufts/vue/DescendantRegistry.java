@@ -0,0 +1,369 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.vue.LWComponent.ChildKind;
+import tufts.vue.LWComponent.Flag;
+
+import java.util.*;
+
+/**
+ * An incrementally maintained index of all the ChildKind.PROPER descendents
+ * of an LWMap, keyed by exact class.  This lets queries such as "all LWLinks in
+ * the map" run in time proportional to the result, instead of a full traversal
+ * of the hierarchy followed by a type filter.
+ *
+ * The registry is kept current by LWContainer.addChildImpl / removeChildImpl,
+ * which are the choke points for all normal hierarchy changes (including
+ * re-parenting, which is a remove from the old parent followed by an add).
+ * Anything that swaps child lists out from under the model (undo, XML restore,
+ * layer installation) calls invalidate(), and the index is lazily rebuilt
+ * from a full traversal the next time it's asked for anything.
+ *
+ * All collections handed out are read-only, zero-copy views of the live index:
+ * they reflect subsequent changes to the map.  Callers that are going to change
+ * the hierarchy while iterating must copy the view first.  Iteration order is
+ * TREE order immediately after a rebuild, and insertion order for anything added
+ * since -- callers that need a strict traversal order should use getAllDescendents.
+ *
+ * This is not thread-safe: like the rest of the model, it's expected to
+ * be accessed from the AWT thread, or by a single thread during map loading.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class DescendantRegistry
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(DescendantRegistry.class);
+
+    private final LWMap mMap;
+
+    /** exact class -> all registered instances of exactly that class */
+    private final Map<Class,Set<LWComponent>> mByClass = new HashMap();
+
+    /** cached per-class views, so repeated queries don't allocate */
+    private final Map<Class,Collection> mViews = new HashMap();
+
+    private boolean mValid;
+    private int mSize;
+
+    /** for diagnostics: number of full rebuilds */
+    private int mRebuilds;
+
+    DescendantRegistry(LWMap map) {
+        mMap = map;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Maintenance
+    //-----------------------------------------------------------------------------
+
+    /** the index will be rebuilt from scratch the next time it's needed */
+    void invalidate() {
+        if (mValid && DEBUG.PARENTING) Log.debug("invalidated: " + mMap);
+        mValid = false;
+    }
+
+    /** called by LWContainer.addChildImpl after c has been added to parent */
+    void childAdded(LWContainer parent, LWComponent c) {
+        if (mValid && isTracking(parent))
+            addTree(c);
+    }
+
+    /** called by LWContainer.removeChildImpl after c has been removed from it's parent */
+    void childRemoved(LWComponent c) {
+        if (mValid && isRegistered(c))
+            removeTree(c);
+    }
+
+    /** @return true if children of the given container are members of the index */
+    private boolean isTracking(LWContainer parent) {
+        if (parent == mMap)
+            return true;
+        else if (parent instanceof LWMap.Layer)
+            return parent.getParent() == mMap;
+        else
+            return isRegistered(parent);
+    }
+
+    private boolean isRegistered(LWComponent c) {
+        final Set<LWComponent> set = mByClass.get(c.getClass());
+        return set != null && set.contains(c);
+    }
+
+    private void addTree(LWComponent c) {
+        if (c instanceof LWMap.Layer == false) {
+            if (bucket(c.getClass()).add(c))
+                mSize++;
+        }
+        if (c.hasChildren()) {
+            for (LWComponent child : c.getChildren())
+                addTree(child);
+        }
+    }
+
+    private void removeTree(LWComponent c) {
+        final Set<LWComponent> set = mByClass.get(c.getClass());
+        if (set != null && set.remove(c))
+            mSize--;
+        if (c.hasChildren()) {
+            for (LWComponent child : c.getChildren())
+                removeTree(child);
+        }
+    }
+
+    private Set<LWComponent> bucket(Class clazz) {
+        Set<LWComponent> set = mByClass.get(clazz);
+        if (set == null) {
+            set = new LinkedHashSet();
+            mByClass.put(clazz, set);
+        }
+        return set;
+    }
+
+    /** rebuild the index if needed.  Note that the buckets are cleared in place, so outstanding views remain valid. */
+    private void ensureValid() {
+        if (mValid)
+            return;
+
+        for (Set<LWComponent> set : mByClass.values())
+            set.clear();
+        mSize = 0;
+
+        for (LWComponent c : mMap.getChildren())
+            addTree(c);
+
+        mRebuilds++;
+
+        if (DEBUG.PARENTING || DEBUG.PERF) Log.debug("rebuilt #" + mRebuilds + "; " + mSize + " descendents in " + mMap);
+
+        // don't trust the index while the map is still being constructed
+        mValid = !mMap.mXMLRestoreUnderway;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Queries
+    //-----------------------------------------------------------------------------
+
+    /** @return a live, read-only view of all ChildKind.PROPER descendents that are exactly of the given class */
+    <A extends LWComponent> Collection<A> getAllOfType(final Class<A> clazz) {
+        Collection view = mViews.get(clazz);
+        if (view == null) {
+            final Set<LWComponent> set = bucket(clazz);
+            view = new AbstractSet<A>() {
+                public Iterator<A> iterator() {
+                    ensureValid();
+                    return (Iterator<A>) Collections.unmodifiableSet(set).iterator();
+                }
+                public int size() {
+                    ensureValid();
+                    return set.size();
+                }
+                public boolean contains(Object o) {
+                    ensureValid();
+                    return set.contains(o);
+                }
+            };
+            mViews.put(clazz, view);
+        }
+        return view;
+    }
+
+    /** @return a live, read-only view of all ChildKind.PROPER descendents that are instances of the given class (including subclasses) */
+    <A extends LWComponent> Collection<A> getAllInstancesOf(final Class<A> clazz) {
+        return new AbstractCollection<A>() {
+            public Iterator<A> iterator() {
+                ensureValid();
+                final List<Set<LWComponent>> sets = new ArrayList();
+                for (Map.Entry<Class,Set<LWComponent>> e : mByClass.entrySet())
+                    if (clazz.isAssignableFrom(e.getKey()))
+                        sets.add(e.getValue());
+                return (Iterator<A>) chain(sets);
+            }
+            public int size() {
+                ensureValid();
+                int size = 0;
+                for (Map.Entry<Class,Set<LWComponent>> e : mByClass.entrySet())
+                    if (clazz.isAssignableFrom(e.getKey()))
+                        size += e.getValue().size();
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a live, read-only view of all descendents of the given kind.  PROPER is
+     * answered directly from the index, and VISIBLE / EDITABLE are filtered from it
+     * on the fly.  ANY is not indexed (it includes layers, pathways and slides),
+     * and is answered with a traversal.
+     */
+    Collection<LWComponent> getAll(final ChildKind kind) {
+        return getAll(kind, LWComponent.class);
+    }
+
+    /** @return a live, read-only view of all descendents of the given kind of exactly the given class */
+    <A extends LWComponent> Collection<A> getAll(final ChildKind kind, final Class<A> clazz) {
+
+        final boolean allTypes = (clazz == LWComponent.class);
+
+        switch (kind) {
+        case ANY:
+            if (allTypes)
+                return (Collection<A>) mMap.getAllDescendents(ChildKind.ANY);
+            final List<A> any = new ArrayList();
+            for (LWComponent c : mMap.getAllDescendents(ChildKind.ANY))
+                if (c.getClass() == clazz)
+                    any.add((A) c);
+            return any;
+
+        case PROPER:
+            if (allTypes) {
+                return new AbstractCollection<A>() {
+                    public Iterator<A> iterator() {
+                        ensureValid();
+                        return (Iterator<A>) chain(mByClass.values());
+                    }
+                    public int size() {
+                        ensureValid();
+                        return mSize;
+                    }
+                };
+            } else
+                return getAllOfType(clazz);
+
+        default:
+            // VISIBLE or EDITABLE
+            final Collection<A> source = allTypes ? getAll(ChildKind.PROPER, clazz) : getAllOfType(clazz);
+            return new AbstractCollection<A>() {
+                public Iterator<A> iterator() {
+                    return new FilterIterator(source.iterator(), kind);
+                }
+                public int size() {
+                    int size = 0;
+                    for (Iterator i = iterator(); i.hasNext(); i.next())
+                        size++;
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return true if the given registered component would be included in a traversal
+     * via getAllDescendents(kind).  This mirrors the VISIBLE / EDITABLE logic in
+     * LWContainer.getAllDescendents and LWMap.getAllLayerDescendents: a hidden ancestor
+     * excludes, a filtered ancestor does not, and for EDITABLE, a locked ancestor (or a
+     * node icon) excludes.
+     */
+    private boolean accepts(LWComponent c, ChildKind kind) {
+        final boolean editableOnly = (kind == ChildKind.EDITABLE);
+
+        if (c.isHidden() || c.isFiltered())
+            return false;
+        if (editableOnly && (c.isLocked() || c.hasFlag(Flag.ICON)))
+            return false;
+
+        for (LWComponent p = c.getParent(); p != null && p != mMap; p = p.getParent()) {
+            if (p instanceof LWMap.Layer) {
+                if (p.isHidden() || (editableOnly && p.isLocked()))
+                    return false;
+            }
+            else if (p.isHidden())
+                return false;
+            else if (p.isFiltered())
+                continue;
+            else if (editableOnly && (p.isLocked() || p.hasFlag(Flag.ICON)))
+                return false;
+        }
+        return true;
+    }
+
+    private final class FilterIterator<A extends LWComponent> implements Iterator<A> {
+        private final Iterator<A> source;
+        private final ChildKind kind;
+        private A next;
+
+        FilterIterator(Iterator<A> source, ChildKind kind) {
+            this.source = source;
+            this.kind = kind;
+            advance();
+        }
+        private void advance() {
+            next = null;
+            while (source.hasNext()) {
+                final A c = source.next();
+                if (accepts(c, kind)) {
+                    next = c;
+                    break;
+                }
+            }
+        }
+        public boolean hasNext() { return next != null; }
+        public A next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            final A c = next;
+            advance();
+            return c;
+        }
+        public void remove() { throw new UnsupportedOperationException(); }
+    }
+
+    /** @return a read-only iterator over each of the given sets in turn */
+    private static Iterator<LWComponent> chain(final Collection<Set<LWComponent>> sets) {
+        final Iterator<Set<LWComponent>> setIterator = sets.iterator();
+        return new Iterator<LWComponent>() {
+            Iterator<LWComponent> current = Collections.<LWComponent>emptySet().iterator();
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!setIterator.hasNext())
+                        return false;
+                    current = setIterator.next().iterator();
+                }
+                return true;
+            }
+            public LWComponent next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+            public void remove() { throw new UnsupportedOperationException(); }
+        };
+    }
+
+    /** for debugging: @return true if the index matches a full traversal of the map */
+    boolean verify() {
+        ensureValid();
+        final Set<LWComponent> traversed = Collections.newSetFromMap(new IdentityHashMap());
+        for (LWComponent c : mMap.getChildren()) {
+            if (c instanceof LWMap.Layer == false)
+                traversed.add(c);
+            c.getAllDescendents(ChildKind.PROPER, traversed);
+        }
+        final Set<LWComponent> indexed = Collections.newSetFromMap(new IdentityHashMap());
+        indexed.addAll(getAll(ChildKind.PROPER));
+        if (!indexed.equals(traversed) || indexed.size() != mSize) {
+            Log.warn("registry mismatch in " + mMap + ": indexed=" + indexed.size() + " (size=" + mSize + ")"
+                     + " traversed=" + traversed.size());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "DescendantRegistry[" + (mValid ? "" : "INVALID ") + mSize + " in " + mByClass.size() + " types; rebuilds=" + mRebuilds + "]";
+    }
+}
@@ -0,0 +1,450 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The index of the Images disk cache: the name, size & last access time of every
+ * permanent file in the cache directory, in least-recently-used order.
+ *
+ * Images used to list the cache directory at startup and make a cache key from every
+ * file name, which with a large cache could take seconds.  Now the index is read from a
+ * single file (.index in the cache directory) on a background thread, and Images
+ * only asks it about a cache key the first time that key is requested in a runtime.
+ * The index file is a log: additions, accesses and removals are appended to it as they
+ * happen, and it's compacted (rewritten with only the current entries) in the
+ * background once it's grown well past the number of entries.  If there's no index
+ * file (e.g., the first run with this code), the directory is scanned once, using the
+ * file modification times for the access times.
+ *
+ * Once the cache holds more than image.diskCache.maxMegabytes, the least recently used
+ * files are deleted until it's back under 90% of that.
+ *
+ * All file names are those made by Images.keyToCacheFileName.  Temporary cache files
+ * (names starting with ".") are never in the index.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class DiskCacheIndex implements Runnable
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(DiskCacheIndex.class);
+
+    static final String INDEX_NAME = ".index";
+    private static final String HEADER = "VUE-IMAGE-CACHE-INDEX 1";
+
+    private static final char ADD = '+';
+    private static final char ACCESS = '@';
+    private static final char REMOVE = '-';
+
+    /** the disk budget, in bytes: <= 0 means no limit */
+    private static final long BUDGET = VueResources.getInt("image.diskCache.maxMegabytes", 1024) * 1024L * 1024L;
+
+    /** how often the background thread flushes buffered access records & checks for work */
+    private static final int FLUSH_MILLIS = 10 * 1000;
+
+    /** the index file is compacted once it has more than this many records per entry (and at least MIN_COMPACT records) */
+    private static final int COMPACT_RATIO = 2;
+    private static final int MIN_COMPACT = 1000;
+
+    private static final class Entry {
+        final long size;
+        long lastAccess;
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final File mDir;
+    private final File mIndexFile;
+
+    /** all entries, by file name, least recently used first */
+    private final LinkedHashMap<String,Entry> mEntries = new LinkedHashMap(1024, 0.75f, true);
+
+    private Writer mLog;
+    /** records in the index file, including any not yet flushed */
+    private int mRecords;
+    private long mBytes;
+    private volatile boolean mLoaded;
+    private boolean mWantsMaintenance;
+
+    private long mHits, mMisses, mEvictions, mEvictedBytes;
+    private long mLoadMillis = -1;
+
+    DiskCacheIndex(File cacheDir) {
+        mDir = cacheDir;
+        mIndexFile = new File(cacheDir, INDEX_NAME);
+    }
+
+    /** start loading the index, and maintaining it, in the background */
+    void start() {
+        final Thread t = new Thread(this, "imageCacheIndex");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    public void run()
+    {
+        try {
+            load();
+        } catch (Throwable t) {
+            Log.error("loading " + mIndexFile, t);
+        } finally {
+            synchronized (this) {
+                mLoaded = true;
+                notifyAll();
+            }
+        }
+        for (;;) {
+            try {
+                synchronized (this) {
+                    if (!mWantsMaintenance)
+                        wait(FLUSH_MILLIS);
+                    mWantsMaintenance = false;
+                    flush();
+                    if (BUDGET > 0 && mBytes > BUDGET)
+                        evict(BUDGET / 10 * 9);
+                    if (mRecords > MIN_COMPACT && mRecords > mEntries.size() * COMPACT_RATIO)
+                        compact();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                Log.error("maintaining " + mIndexFile, t);
+            }
+        }
+    }
+
+    /**
+     * @return the cache file for the given name if it's in the cache, or null.  This
+     * never waits for the index to load: until it has, the file system is just asked if
+     * the file is there.
+     */
+    File lookup(String name)
+    {
+        if (name == null)
+            return null;
+        if (!mLoaded) {
+            // Don't hold up the caller (often the AWT thread) for what could be a scan of
+            // a large cache directory.  Whatever we find here will be in the index once
+            // it's loaded (or it's scan will have found it), so there's nothing to record.
+            final File file = new File(mDir, name);
+            return file.exists() ? file : null;
+        }
+        synchronized (this) {
+            final Entry entry = mEntries.get(name);
+            if (entry != null) {
+                final File file = new File(mDir, name);
+                if (file.exists()) {
+                    mHits++;
+                    return file;
+                }
+                if (DEBUG.IMAGE) Log.debug("indexed cache file has gone: " + file);
+                remove(name);
+            }
+            mMisses++;
+            return null;
+        }
+    }
+
+    /** a new permanent file has been written to the cache */
+    void added(File file)
+    {
+        if (!inCache(file))
+            return;
+        final String name = file.getName();
+        final long size = file.length();
+        final long now = System.currentTimeMillis();
+        synchronized (this) {
+            final Entry old = mEntries.put(name, new Entry(size, now));
+            if (old != null)
+                mBytes -= old.size;
+            mBytes += size;
+            append(ADD, size, now, name);
+            flush();
+            if (BUDGET > 0 && mBytes > BUDGET) {
+                mWantsMaintenance = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /** a file in the cache has been read */
+    void accessed(File file)
+    {
+        if (!inCache(file))
+            return;
+        if (!mLoaded)
+            return; // only costs us some LRU accuracy: don't wait on a scan for this
+        final String name = file.getName();
+        synchronized (this) {
+            final Entry entry = mEntries.get(name);
+            if (entry != null) {
+                entry.lastAccess = System.currentTimeMillis();
+                // buffered: losing these in a crash only costs us some LRU accuracy
+                append(ACCESS, -1, entry.lastAccess, name);
+            }
+        }
+    }
+
+    /** drop a file from the cache, deleting it if it's still there */
+    void discard(File file)
+    {
+        if (!inCache(file))
+            return;
+        synchronized (this) {
+            if (remove(file.getName()) && file.exists() && !file.delete())
+                Log.warn("couldn't delete cache file " + file);
+        }
+    }
+
+    private boolean inCache(File file) {
+        return file != null && mDir.equals(file.getParentFile()) && file.getName().charAt(0) != '.';
+    }
+
+    private boolean remove(String name)
+    {
+        final Entry entry = mEntries.remove(name);
+        if (entry == null)
+            return false;
+        mBytes -= entry.size;
+        append(REMOVE, -1, -1, name);
+        return true;
+    }
+
+    /** delete least recently used files until we're down to the given size */
+    private void evict(long targetBytes)
+    {
+        int count = 0;
+        long bytes = 0;
+        final Iterator<Map.Entry<String,Entry>> i = mEntries.entrySet().iterator();
+        while (mBytes > targetBytes && i.hasNext()) {
+            final Map.Entry<String,Entry> e = i.next();
+            final File file = new File(mDir, e.getKey());
+            if (file.exists() && !file.delete()) {
+                Log.warn("couldn't evict cache file " + file);
+                continue;
+            }
+            i.remove();
+            mBytes -= e.getValue().size;
+            bytes += e.getValue().size;
+            count++;
+            append(REMOVE, -1, -1, e.getKey());
+        }
+        mEvictions += count;
+        mEvictedBytes += bytes;
+        flush();
+        Log.info("evicted " + count + " cache files (" + (bytes / 1024) + "kb); " + this);
+    }
+
+    private void load()
+        throws IOException
+    {
+        final long start = System.currentTimeMillis();
+        boolean loaded = false;
+
+        if (mIndexFile.exists()) {
+            try {
+                loaded = read();
+            } catch (Throwable t) {
+                Log.warn("couldn't read " + mIndexFile + ", rebuilding: " + t);
+            }
+        }
+
+        synchronized (this) {
+            if (!loaded) {
+                mEntries.clear();
+                mBytes = 0;
+                scan();
+                compact();
+            } else {
+                mLog = new BufferedWriter(new FileWriter(mIndexFile, true));
+            }
+            mLoadMillis = System.currentTimeMillis() - start;
+            Log.info("loaded " + (loaded ? "" : "(rebuilt) ") + this + " in " + mLoadMillis + "ms");
+        }
+    }
+
+    /** @return false if this isn't an index file we understand */
+    private boolean read()
+        throws IOException
+    {
+        final BufferedReader in = new BufferedReader(new FileReader(mIndexFile), 64 * 1024);
+        try {
+            if (!HEADER.equals(in.readLine()))
+                return false;
+            synchronized (this) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    mRecords++;
+                    try {
+                        replay(line);
+                    } catch (RuntimeException e) {
+                        // most likely a record cut off by a crash: any entry it was
+                        // for will be dropped the first time it's looked up
+                        if (DEBUG.IMAGE) Log.debug("bad index record: " + line);
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    private void replay(String line)
+    {
+        final char op = line.charAt(0);
+        if (op == ADD) {
+            final String[] fields = line.split(" ", 4);
+            final Entry old = mEntries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            if (old != null)
+                mBytes -= old.size;
+            mBytes += Long.parseLong(fields[1]);
+        } else if (op == ACCESS) {
+            final String[] fields = line.split(" ", 3);
+            final Entry entry = mEntries.get(fields[2]);
+            if (entry != null)
+                entry.lastAccess = Long.parseLong(fields[1]);
+        } else if (op == REMOVE) {
+            final Entry old = mEntries.remove(line.substring(2));
+            if (old != null)
+                mBytes -= old.size;
+        }
+    }
+
+    /** build the index from the cache directory itself */
+    private void scan()
+    {
+        final File[] files = mDir.listFiles();
+        if (files == null)
+            return;
+        final long[] modified = new long[files.length];
+        for (int i = 0; i < files.length; i++)
+            modified[i] = files[i].lastModified();
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return modified[a] < modified[b] ? -1 : (modified[a] == modified[b] ? 0 : 1);
+                }});
+        for (Integer i : order) {
+            final File file = files[i];
+            if (file.getName().charAt(0) == '.' || !file.isFile())
+                continue;
+            final long size = file.length();
+            mEntries.put(file.getName(), new Entry(size, modified[i]));
+            mBytes += size;
+        }
+    }
+
+    /** rewrite the index file with only the current entries */
+    synchronized void compact()
+        throws IOException
+    {
+        final File tmp = new File(mDir, INDEX_NAME + ".tmp");
+        final Writer out = new BufferedWriter(new FileWriter(tmp), 64 * 1024);
+        try {
+            out.write(HEADER);
+            out.write('\n');
+            for (Map.Entry<String,Entry> e : mEntries.entrySet())
+                writeRecord(out, ADD, e.getValue().size, e.getValue().lastAccess, e.getKey());
+        } finally {
+            out.close();
+        }
+        if (mLog != null) {
+            mLog.close();
+            mLog = null;
+        }
+        if (mIndexFile.exists() && !mIndexFile.delete())
+            Log.warn("couldn't replace " + mIndexFile);
+        if (!tmp.renameTo(mIndexFile))
+            throw new IOException("couldn't rename " + tmp + " to " + mIndexFile);
+        if (DEBUG.IMAGE) Log.debug("compacted " + mRecords + " records to " + mEntries.size());
+        mRecords = mEntries.size();
+        mLog = new BufferedWriter(new FileWriter(mIndexFile, true));
+    }
+
+    private void append(char op, long size, long time, String name)
+    {
+        mRecords++;
+        if (mLog == null)
+            return;
+        try {
+            writeRecord(mLog, op, size, time, name);
+        } catch (IOException e) {
+            Log.warn("writing " + mIndexFile + ": " + e);
+        }
+    }
+
+    private void flush()
+    {
+        if (mLog == null)
+            return;
+        try {
+            mLog.flush();
+        } catch (IOException e) {
+            Log.warn("flushing " + mIndexFile + ": " + e);
+        }
+    }
+
+    private static void writeRecord(Writer out, char op, long size, long time, String name)
+        throws IOException
+    {
+        out.write(op);
+        out.write(' ');
+        if (op == ADD) {
+            out.write(Long.toString(size));
+            out.write(' ');
+        }
+        if (op != REMOVE) {
+            out.write(Long.toString(time));
+            out.write(' ');
+        }
+        out.write(name);
+        out.write('\n');
+    }
+
+    synchronized int getEntryCount() { return mEntries.size(); }
+    synchronized long getBytes() { return mBytes; }
+    synchronized long getHits() { return mHits; }
+    synchronized long getMisses() { return mMisses; }
+    synchronized long getEvictions() { return mEvictions; }
+    synchronized long getEvictedBytes() { return mEvictedBytes; }
+    synchronized long getLoadMillis() { return mLoadMillis; }
+    static long getBudget() { return BUDGET; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("DiskCacheIndex[%d files %.1fmb/%dmb hits=%d misses=%d evicted=%d %s]",
+                             mEntries.size(), mBytes / 1048576.0, BUDGET / 1048576,
+                             mHits, mMisses, mEvictions, mDir);
+    }
+}
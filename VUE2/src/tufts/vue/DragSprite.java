@@ -0,0 +1,376 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.*;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A drag of a large selection in a MapViewer, shown without moving anything in the
+ * model until the drag is over.
+ *
+ * When the drag starts, the visible region of the viewer is rendered once without
+ * the selection (the background), and the selection is rendered once on it's own
+ * (the sprite), along with any links that will move rigidly along with it.  Each
+ * frame of the drag is then just the background, the sprite blitted at the current
+ * drag offset, and a provisional straight line for each link that's being stretched
+ * between something moving and something that isn't.  Nothing under the selection has
+ * to be re-drawn, no matter how dense the map is there.
+ *
+ * The viewer applies the total translation to the model when the drag ends, at which
+ * point the links are properly re-computed, the map lays out, and everything is
+ * drawn normally again.  If the viewer scrolls or zooms during the drag, the
+ * background is no longer any good, and the viewer applies the drag so far and
+ * carries on with a regular drag.
+ *
+ * A sprite is only used for selections of at least dragSprite.minComponents components
+ * (including descendants and connected links), that fit within the visible region
+ * grown by a viewport in every direction, and that aren't on any pathway (pathways
+ * draw between their members wherever they are).
+ *
+ * @see MapViewer
+ * @version $Revision: 1.0 $
+ */
+final class DragSprite
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(DragSprite.class);
+
+    /** selections with fewer components than this are cheap enough to just drag */
+    private static final int MIN_COMPONENTS = VueResources.getInt("dragSprite.minComponents", 40);
+
+    /** extra margin (pixels) around the sprite for strokes drawn outside a component's paint bounds: e.g., selection strokes */
+    private static final int MARGIN = 12;
+
+    private final MapViewer mViewer;
+
+    /** the viewer state the images were rendered for */
+    private final double mZoom;
+    private final float mOriginX, mOriginY;
+    private final Rectangle mVisible;
+
+    private BufferedImage mBackground;
+    private BufferedImage mSprite;
+    /** the canvas bounds of the sprite at it's starting location */
+    private final Rectangle mSpriteBounds;
+
+    /** links stretched between what's moving and what isn't: drawn provisionally each frame */
+    private final List<Stretch> mStretched;
+
+    /** the map location of the dragged selection group at the start of the drag */
+    private final double mStartX, mStartY;
+    /** the current map location for the dragged selection group */
+    private double mX, mY;
+
+    /** for diagnostics */
+    private int mFrames;
+
+    /** a link with at least one end moving, and one end not */
+    private static final class Stretch {
+        final float headX, headY, tailX, tailY; // map coordinates at the start of the drag
+        final boolean headMoves, tailMoves;
+        final Color color;
+        final BasicStroke stroke;
+        Stretch(LWLink link, boolean headMoves, boolean tailMoves) {
+            final AffineTransform tx = link.getZeroTransform();
+            final Point2D head = tx.transform(link.getHeadPoint(), null);
+            final Point2D tail = tx.transform(link.getTailPoint(), null);
+            this.headX = (float) head.getX();
+            this.headY = (float) head.getY();
+            this.tailX = (float) tail.getX();
+            this.tailY = (float) tail.getY();
+            this.headMoves = headMoves;
+            this.tailMoves = tailMoves;
+            this.color = link.getStrokeColor();
+            this.stroke = new BasicStroke((float) (link.getStrokeWidth() * link.getParent().getMapScale()),
+                                          BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+        }
+    }
+
+    /**
+     * @param moving the top-level moving components: those selected without a selected ancestor
+     * @return a DragSprite ready for painting, or null if dragging the given selection
+     * this way wouldn't be worth it or couldn't be done
+     */
+    static DragSprite create(MapViewer viewer, LWComponent dragGroup, Collection<LWComponent> moving)
+    {
+        final Set<LWComponent> movingSet = Collections.newSetFromMap(new IdentityHashMap());
+        movingSet.addAll(moving);
+
+        // Sort everything that's moving, or connected to something that's moving, into
+        // what's rigidly moving (drawn into the sprite), and what's stretching.
+
+        final Set<LWComponent> rigid = Collections.newSetFromMap(new IdentityHashMap());
+        final Set<LWLink> stretched = Collections.newSetFromMap(new IdentityHashMap());
+        int count = 0;
+
+        for (LWComponent c : moving) {
+            if (c.inPathway())
+                return null;
+            if (c instanceof LWLink) {
+                if (isRigid((LWLink) c, movingSet))
+                    rigid.add(c);
+                else
+                    stretched.add((LWLink) c);
+                count++;
+                continue;
+            }
+            rigid.add(c);
+            count++;
+            collectLinks(c, movingSet, rigid, stretched);
+            if (c.hasChildren()) {
+                for (LWComponent d : c.getAllDescendents(LWComponent.ChildKind.PROPER)) {
+                    if (d.inPathway())
+                        return null;
+                    collectLinks(d, movingSet, rigid, stretched);
+                    count++;
+                }
+            }
+        }
+
+        count += stretched.size();
+        if (count < MIN_COMPONENTS)
+            return null;
+
+        final Rectangle2D.Float mapBounds = new Rectangle2D.Float();
+        boolean first = true;
+        for (LWComponent c : rigid) {
+            final Rectangle2D.Float r = c.getPaintBounds();
+            if (first)
+                mapBounds.setRect(r);
+            else
+                mapBounds.add(r);
+            first = false;
+        }
+        if (first)
+            return null;
+
+        final Rectangle spriteBounds = viewer.mapToScreenRect(mapBounds);
+        spriteBounds.grow(MARGIN, MARGIN);
+        final Rectangle visible = viewer.getVisibleBounds();
+        final Rectangle reach = new Rectangle(visible);
+        reach.grow(visible.width, visible.height);
+        if (visible.isEmpty() || !reach.contains(spriteBounds)) {
+            if (DEBUG.PAINT) Log.debug("selection too big for a sprite: " + spriteBounds);
+            return null;
+        }
+
+        final DragSprite sprite = new DragSprite(viewer, dragGroup, spriteBounds, stretched, movingSet);
+
+        try {
+            sprite.render(rigid, stretched);
+        } catch (Throwable t) {
+            Log.error("rendering drag sprite for " + dragGroup, t);
+            sprite.flush();
+            return null;
+        }
+
+        return sprite;
+    }
+
+    /** @return true if the given moving link will move rigidly with the selection */
+    private static boolean isRigid(LWLink link, Set<LWComponent> movingSet) {
+        return (link.getHead() == null || isMoving(link.getHead(), movingSet))
+            && (link.getTail() == null || isMoving(link.getTail(), movingSet));
+    }
+
+    private static void collectLinks(LWComponent c, Set<LWComponent> movingSet, Set<LWComponent> rigid, Set<LWLink> stretched)
+    {
+        for (LWLink link : c.getLinks()) {
+            if (isMoving(link, movingSet)) {
+                continue; // drawn along with whatever it's in, or handled as part of the selection
+            }
+            final LWComponent head = link.getHead();
+            final LWComponent tail = link.getTail();
+            if (link.getControlCount() == 0
+                && head != null && tail != null
+                && isMoving(head, movingSet)
+                && isMoving(tail, movingSet))
+                rigid.add(link);
+            else
+                stretched.add(link);
+        }
+    }
+
+    private static boolean isMoving(LWComponent c, Set<LWComponent> movingSet) {
+        for (; c != null; c = c.getParent())
+            if (movingSet.contains(c))
+                return true;
+        return false;
+    }
+
+    private DragSprite(MapViewer viewer, LWComponent dragGroup, Rectangle spriteBounds,
+                       Set<LWLink> stretched, Set<LWComponent> movingSet)
+    {
+        mViewer = viewer;
+        mZoom = viewer.getZoomFactor();
+        mOriginX = viewer.getOriginX();
+        mOriginY = viewer.getOriginY();
+        mVisible = viewer.getVisibleBounds();
+        mSpriteBounds = spriteBounds;
+        mStartX = mX = dragGroup.getMapX();
+        mStartY = mY = dragGroup.getMapY();
+        mStretched = new ArrayList(stretched.size());
+        for (LWLink link : stretched) {
+            if (!link.isDrawn())
+                continue;
+            // a free end only moves if the link itself is being dragged
+            final LWComponent head = link.getHead();
+            final LWComponent tail = link.getTail();
+            mStretched.add(new Stretch(link,
+                                       isMoving(head == null ? link : head, movingSet),
+                                       isMoving(tail == null ? link : tail, movingSet)));
+        }
+    }
+
+    private void render(Set<LWComponent> rigid, Set<LWLink> stretched)
+    {
+        final long start = System.nanoTime();
+
+        //-----------------------------------------------------------------------------
+        // The background: everything but what's moving
+        //-----------------------------------------------------------------------------
+
+        mBackground = new BufferedImage(mVisible.width, mVisible.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = mBackground.createGraphics();
+        try {
+            g.translate(-mVisible.x, -mVisible.y);
+            final DrawContext dc = mViewer.createOffscreenDrawContext(g, mVisible);
+            final Set<LWComponent> skip = Collections.newSetFromMap(new IdentityHashMap());
+            skip.addAll(rigid);
+            skip.addAll(stretched);
+            dc.skipDrawSet = skip;
+            mViewer.drawFocalOffscreen(dc);
+        } finally {
+            g.dispose();
+        }
+
+        //-----------------------------------------------------------------------------
+        // The sprite: just what's rigidly moving, in the order the map would draw it
+        //-----------------------------------------------------------------------------
+
+        mSprite = new BufferedImage(mSpriteBounds.width, mSpriteBounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        g = mSprite.createGraphics();
+        try {
+            g.translate(-mSpriteBounds.x, -mSpriteBounds.y);
+            final DrawContext dc = mViewer.createOffscreenDrawContext(g, mSpriteBounds);
+            dc.setMapDrawing();
+            for (LWComponent c : mViewer.getMap().getAllDescendents(LWComponent.ChildKind.PROPER)) {
+                if (rigid.contains(c) && c.requiresPaint(dc)) {
+                    c.draw(dc.push());
+                    dc.pop();
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        if (DEBUG.PAINT || DEBUG.PERF)
+            Log.debug(String.format("rendered in %.1fms: %s", (System.nanoTime() - start) / 1e6, this));
+    }
+
+    /** @return true if the viewer is still showing the region of the map the images were rendered for */
+    boolean isCurrent() {
+        return mBackground != null
+            && mViewer.getZoomFactor() == mZoom
+            && mViewer.getOriginX() == mOriginX
+            && mViewer.getOriginY() == mOriginY
+            && mViewer.getVisibleBounds().equals(mVisible);
+    }
+
+    /** set the map location of the dragged selection group */
+    void moveTo(double mapX, double mapY) {
+        mX = mapX;
+        mY = mapY;
+    }
+
+    /** @return true if the selection has been dragged anywhere */
+    boolean isMoved() {
+        return mX != mStartX || mY != mStartY;
+    }
+
+    double getX() { return mX; }
+    double getY() { return mY; }
+
+    /**
+     * Draw the current frame of the drag into the given viewer DrawContext, which is
+     * left in map drawing mode.
+     * @return false if nothing was drawn, as the images are no longer current
+     */
+    boolean paint(DrawContext dc)
+    {
+        if (!isCurrent())
+            return false;
+
+        // snap the offset to whole pixels, so the stretched links stay attached to the sprite
+        final int dxPixels = (int) Math.round((mX - mStartX) * mZoom);
+        final int dyPixels = (int) Math.round((mY - mStartY) * mZoom);
+        final float dx = (float) (dxPixels / mZoom);
+        final float dy = (float) (dyPixels / mZoom);
+
+        final Graphics2D g = dc.g;
+
+        dc.setRawDrawing();
+        g.drawImage(mBackground, mVisible.x, mVisible.y, null);
+
+        dc.setMapDrawing();
+        final Line2D.Float line = new Line2D.Float();
+        for (Stretch s : mStretched) {
+            if (s.color == null)
+                continue;
+            line.x1 = s.headMoves ? s.headX + dx : s.headX;
+            line.y1 = s.headMoves ? s.headY + dy : s.headY;
+            line.x2 = s.tailMoves ? s.tailX + dx : s.tailX;
+            line.y2 = s.tailMoves ? s.tailY + dy : s.tailY;
+            g.setColor(s.color);
+            g.setStroke(s.stroke);
+            g.draw(line);
+        }
+
+        dc.setRawDrawing();
+        g.drawImage(mSprite, mSpriteBounds.x + dxPixels, mSpriteBounds.y + dyPixels, null);
+        dc.setMapDrawing();
+
+        mFrames++;
+        return true;
+    }
+
+    /** release the images */
+    void flush() {
+        if (mBackground != null)
+            mBackground.flush();
+        if (mSprite != null)
+            mSprite.flush();
+        mBackground = mSprite = null;
+    }
+
+    @Override
+    public String toString() {
+        return "DragSprite["
+            + mSpriteBounds.width + "x" + mSpriteBounds.height
+            + " over " + mVisible.width + "x" + mVisible.height
+            + " stretched=" + mStretched.size()
+            + " frames=" + mFrames
+            + "]";
+    }
+}
@@ -18,7 +18,10 @@ package tufts.vue;
 import tufts.Util;
 import static tufts.Util.*;
 
+import edu.tufts.vue.preferences.VuePrefEvent;
+import edu.tufts.vue.preferences.VuePrefListener;
 import edu.tufts.vue.preferences.implementations.BooleanPreference;
+import edu.tufts.vue.preferences.implementations.PixelSizePreference;
 
 import java.awt.Color;
 import java.awt.Shape;
@@ -34,7 +37,6 @@ import static java.awt.RenderingHints.*;
 
 import static java.lang.Boolean.*;
 
-import com.google.common.collect.Multiset;
 
 
 /**
@@ -87,12 +89,26 @@ public final class DrawContext
     private Color fillColor;
 
     public LWComponent skipDraw;
+    /** any further components not to draw (along with their descendants), if any */
+    public java.util.Set<LWComponent> skipDrawSet;
 
     private boolean isClipOptimized = true; // todo: rename isPaintOptimized, and make the default false
     private boolean isAnimating;
 
     private boolean isBrowsing = false;
 
+    /** if null, LOD is permitted for interactive & draft quality drawing */
+    private Boolean isLODEnabled;
+
+    /** if null, component raster caching is permitted for interactive drawing */
+    private Boolean isRasterCacheEnabled;
+
+    /** if >= 0, the LOD text & shape thresholds (pixels) for this context, instead of the preferences */
+    private int lodTextPixels = -1, lodShapePixels = -1;
+
+    /** if set, we're drawing off the AWT thread, from this snapshot of what to draw (see BackgroundRenderer) */
+    BackgroundRenderer.Snapshot snapshot;
+
     // todo: consider including a Conatiner arg in here, for
     // MapViewer, etc.  And replace zoom with a getZoom
     // that grabs transform scale value.
@@ -449,10 +465,71 @@ public final class DrawContext
     
     /** @return true of Level-Of-Detail rendering is enabled/permitted */
     public boolean isLODEnabled() {
-        // todo: this is inferred -- should have a separate bit for this
+        if (isLODEnabled != null)
+            return isLODEnabled.booleanValue();
+        // if not set explicitly, this is inferred
         return isInteractive() || isDraftQuality();
     }
 
+    /** explicitly permit or forbid Level-Of-Detail rendering, regardless of interactivity or quality */
+    public void setLODEnabled(boolean enabled) {
+        isLODEnabled = Boolean.valueOf(enabled);
+    }
+
+    /**
+     * Use the given LOD thresholds for this context, instead of those from the
+     * preferences: e.g., for a quick low-detail pass.  Values < 0 restore the preferences.
+     */
+    public void setLODThresholds(int textPixels, int shapePixels) {
+        lodTextPixels = textPixels;
+        lodShapePixels = shapePixels;
+    }
+
+    private int getLODTextPixels() {
+        return lodTextPixels >= 0 ? lodTextPixels : LODTextPixels;
+    }
+
+    private int getLODShapePixels() {
+        return lodShapePixels >= 0 ? lodShapePixels : LODShapePixels;
+    }
+
+    /** @return a value that changes whenever the LOD decisions made at any given scale may change */
+    int getLODState() {
+        return isLODEnabled() ? (getLODTextPixels() << 16 | getLODShapePixels()) : -1;
+    }
+
+    /** @return true if components that have opted in may be drawn from a cached raster (see RasterCache) */
+    public boolean isRasterCacheEnabled() {
+        if (isRasterCacheEnabled != null)
+            return isRasterCacheEnabled.booleanValue();
+        // if not set explicitly, this is inferred
+        return isInteractive() && !isAnimating() && !isPrintQuality() && snapshot == null;
+    }
+
+    /** explicitly permit or forbid drawing components from cached rasters */
+    public void setRasterCacheEnabled(boolean enabled) {
+        isRasterCacheEnabled = Boolean.valueOf(enabled);
+    }
+
+    /**
+     * @return true if LOD is enabled, and text of the given font size, in the current local
+     * coordinate space, would be too small on-screen to be worth rendering glyphs for.  Icons
+     * (which are drawn with fonts) use the same threshold.
+     */
+    public boolean canSkipText(float fontSize) {
+        return isLODEnabled() && fontSize * getAbsoluteScale() < getLODTextPixels();
+    }
+
+    /**
+     * @return true if LOD is enabled, and a feature of the given size, in the current local
+     * coordinate space, would be too small on-screen to be worth drawing in detail: e.g., a
+     * node of that height can be drawn as a plain fill, without it's children, and a link
+     * with arrows of that size can be drawn as a simple hairline.
+     */
+    public boolean canSimplify(float size) {
+        return isLODEnabled() && size * getAbsoluteScale() < getLODShapePixels();
+    }
+
     public void disableAntiAlias(boolean disable)
     {
         this.disableAntiAlias = disable;
@@ -753,8 +830,36 @@ public final class DrawContext
         
     // todo: replace with a faster clone op?
     public DrawContext(DrawContext dc, LWComponent newFocal) {
+        this(dc, newFocal, (Graphics2D) dc.g.create(), 0, 0);
+    }
+
+    /**
+     * A copy of the given DrawContext for drawing into an offscreen image whose pixel
+     * 0,0 is at pixel x,y of the device the given DrawContext is drawing to: e.g., for
+     * caching the drawing of a component.  The image graphics take on the current
+     * transform of the given DrawContext, and the master clip is the entire image.
+     */
+    DrawContext(DrawContext dc, Graphics2D imageGraphics, int x, int y, int width, int height)
+    {
+        this(dc, dc.focal, imageGraphics, x, y);
+        final AffineTransform t = dc.g.getTransform();
+        t.preConcatenate(AffineTransform.getTranslateInstance(-x, -y));
+        g.setClip(0, 0, width, height);
+        g.setTransform(t);
+        // the master clip is in map coordinates
+        Rectangle2D clip;
+        try {
+            clip = mapTransform.createInverse().createTransformedShape(new Rectangle(0, 0, width, height)).getBounds2D();
+        } catch (java.awt.geom.NoninvertibleTransformException e) {
+            clip = null;
+        }
+        this.masterClipRect = clip;
+        this.isRasterCacheEnabled = Boolean.FALSE; // we're already making one
+    }
+
+    private DrawContext(DrawContext dc, LWComponent newFocal, Graphics2D g, int deviceX, int deviceY) {
         //System.out.println("transform before dupe: " + dc.g.getTransform());
-        this.g = (Graphics2D) dc.g.create();
+        this.g = g;
         //this.g = dc.g;
 
         // This helps itext (tho is not a workaround) -- it looks like the GC provided by
@@ -772,8 +877,8 @@ public final class DrawContext
                 
         //System.out.println("transform after  dupe: " + g.getTransform());
         this.zoom = dc.zoom;
-        this.offsetX = dc.offsetX;
-        this.offsetY = dc.offsetY;
+        this.offsetX = dc.offsetX - deviceX;
+        this.offsetY = dc.offsetY - deviceY;
         this.disableAntiAlias = dc.disableAntiAlias;
         this.index = dc.index;
         this.isInteractive = dc.isInteractive;
@@ -785,21 +890,27 @@ public final class DrawContext
         this.isDrawingPathways = dc.isDrawingPathways;
         //this.activeTool = dc.activeTool;
         //this.inMapDraw = dc.inMapDraw;
-        this.mapTransform = dc.mapTransform;
+        this.mapTransform = translate(dc.mapTransform, -deviceX, -deviceY);
         this.frame = dc.frame;
         this.focal = newFocal;
         this.alpha = dc.alpha;
         //this.drawAbsoluteLinks = dc.drawAbsoluteLinks;
         this.maxLayer = dc.maxLayer;
         this.rawClip = dc.rawClip;
-        this.rawTransform = dc.rawTransform;
+        this.rawTransform = translate(dc.rawTransform, -deviceX, -deviceY);
         this.masterClipRect = dc.masterClipRect;
         this.skipDraw = dc.skipDraw;
+        this.skipDrawSet = dc.skipDrawSet;
         this.fillColor = dc.fillColor;
         this.isClipOptimized = dc.isClipOptimized;
         this.isAnimating = dc.isAnimating;
         this.focused = dc.focused;
         this.isBrowsing = dc.isBrowsing;
+        this.isLODEnabled = dc.isLODEnabled;
+        this.isRasterCacheEnabled = dc.isRasterCacheEnabled;
+        this.lodTextPixels = dc.lodTextPixels;
+        this.lodShapePixels = dc.lodShapePixels;
+        this.snapshot = dc.snapshot;
 
         if (DEBUG.PAINT&&DEBUG.META) out("CLONE of " + dc);
         //out("CLONED: " + Util.tag(masterClipRect) + " from " + dc);
@@ -808,30 +919,15 @@ public final class DrawContext
         //this.mAlpha = dc.mAlpha;
     }
 
-
-    private static final Multiset DebugRecording = com.google.common.collect.HashMultiset.create();
-
-    public static void recordDebug(Object value) {
-        DebugRecording.add(value);
+    /** @return the given transform preceded by the given device translation: the same instance if there isn't any */
+    private static AffineTransform translate(AffineTransform t, int dx, int dy) {
+        if (t == null || (dx == 0 && dy == 0))
+            return t;
+        final AffineTransform translated = AffineTransform.getTranslateInstance(dx, dy);
+        translated.concatenate(t);
+        return translated;
     }
 
-    public static void recordDebug(LWComponent c) {
-        //final String type = c.getClass().getName();
-        final String type = c.getComponentTypeLabel();
-        if (c.getTypeToken() != null && c.getTypeToken() != c.getClass())
-            recordDebug(type + ":" + c.getTypeToken());
-        else
-            recordDebug(type);
-    }
-    
-    
-    public static String getDebug() {
-        return DebugRecording.toString();
-    }
-    
-    public static void clearDebug() {
-        DebugRecording.clear();
-    }
 
     private final static boolean PlatformQualityIsSlow;
     
@@ -852,6 +948,40 @@ public final class DrawContext
         return true;
     }
 
+    private final static PixelSizePreference LODTextPreference = PixelSizePreference.create(
+			edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+			"lodTextSize",
+			VueResources.getString("preference.lodtext.title"),
+			VueResources.getString("preference.lodtext.description"),
+			5, 12,
+			true);
+
+    private final static PixelSizePreference LODShapePreference = PixelSizePreference.create(
+			edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+			"lodShapeSize",
+			VueResources.getString("preference.lodshape.title"),
+			VueResources.getString("preference.lodshape.description"),
+			5, 12,
+			true);
+
+    /** LOD: on-screen pixel size below which text & icons needn't be drawn (0 to always draw) */
+    private static volatile int LODTextPixels = LODTextPreference.getIntValue();
+    /** LOD: on-screen pixel size below which shapes & links can be simplified (0 to never simplify) */
+    private static volatile int LODShapePixels = LODShapePreference.getIntValue();
+
+    static {
+        LODTextPreference.addVuePrefListener(new VuePrefListener() {
+                public void preferenceChanged(VuePrefEvent pe) {
+                    LODTextPixels = ((Integer)pe.getNewValue()).intValue();
+                }
+            });
+        LODShapePreference.addVuePrefListener(new VuePrefListener() {
+                public void preferenceChanged(VuePrefEvent pe) {
+                    LODShapePixels = ((Integer)pe.getNewValue()).intValue();
+                }
+            });
+    }
+
     public boolean isBrowsing() {
     	return isBrowsing;
     }
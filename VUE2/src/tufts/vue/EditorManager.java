@@ -475,10 +475,14 @@ public class EditorManager
             // back up to the tools, we want to ignore those events while this is underway -- the tools
             // already have their state set to this.
             PropertySettingUnderway = true;
+            // lay out each changed component (and each of their parents) only once
+            final boolean deferringLayout = LayoutScheduler.begin();
             try {
                 for (tufts.vue.LWComponent c : components)
                     applyPropertyValue(source, key, newValue, c);
             } finally {
+                if (deferringLayout)
+                    LayoutScheduler.end();
                 PropertySettingUnderway = false;
             }
 
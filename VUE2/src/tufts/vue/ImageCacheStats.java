@@ -0,0 +1,130 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+/**
+ * Exposes the state of the Images caches, published via JMX as
+ * tufts.vue:type=ImageCache if imageCache.jmx is set.
+ *
+ * @see ImageCacheStatsMBean
+ * @see ImageMemoryCache
+ * @see DiskCacheIndex
+ * @version $Revision: 1.0 $
+ */
+public final class ImageCacheStats implements ImageCacheStatsMBean
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(ImageCacheStats.class);
+
+    private static boolean Published;
+
+    private ImageCacheStats() {}
+
+    /** publish the stats via JMX, if imageCache.jmx is set: only the first call does anything */
+    static synchronized void publish()
+    {
+        if (Published || !VueResources.getBool("imageCache.jmx"))
+            return;
+        Published = true;
+        try {
+            java.lang.management.ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new ImageCacheStats(), new javax.management.ObjectName("tufts.vue:type=ImageCache"));
+        } catch (Throwable t) {
+            Log.warn("couldn't publish image cache stats via JMX: " + t);
+        }
+    }
+
+    public int getMemoryEntries() {
+        return ImageMemoryCache.getEntryCount();
+    }
+    public int getMemoryIcons() {
+        return ImageMemoryCache.getIconCount();
+    }
+    public int getMemoryPinned() {
+        return ImageMemoryCache.getPinnedCount();
+    }
+    public double getMemoryMegabytes() {
+        return ImageMemoryCache.getBytesHeld() / 1048576.0;
+    }
+    public long getMemoryBudgetMegabytes() {
+        return ImageMemoryCache.getBudget() / 1048576;
+    }
+    public long getMemoryHits() {
+        return ImageMemoryCache.getHits();
+    }
+    public long getMemoryMisses() {
+        return ImageMemoryCache.getMisses();
+    }
+    public double getMemoryHitRate() {
+        final long hits = getMemoryHits();
+        final long lookups = hits + getMemoryMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    public long getMemoryEvictions() {
+        return ImageMemoryCache.getEvictions();
+    }
+    public double getMemoryEvictedMegabytes() {
+        return ImageMemoryCache.getEvictedBytes() / 1048576.0;
+    }
+
+    private static DiskCacheIndex disk() {
+        return Images.getDiskCacheIndex();
+    }
+
+    public int getDiskEntries() {
+        return disk() == null ? 0 : disk().getEntryCount();
+    }
+    public double getDiskMegabytes() {
+        return disk() == null ? 0 : disk().getBytes() / 1048576.0;
+    }
+    public long getDiskBudgetMegabytes() {
+        return Math.max(0, DiskCacheIndex.getBudget() / 1048576);
+    }
+    public long getDiskHits() {
+        return disk() == null ? 0 : disk().getHits();
+    }
+    public long getDiskMisses() {
+        return disk() == null ? 0 : disk().getMisses();
+    }
+    public double getDiskHitRate() {
+        final long hits = getDiskHits();
+        final long lookups = hits + getDiskMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    public long getDiskEvictions() {
+        return disk() == null ? 0 : disk().getEvictions();
+    }
+    public double getDiskEvictedMegabytes() {
+        return disk() == null ? 0 : disk().getEvictedBytes() / 1048576.0;
+    }
+    public long getDiskIndexLoadMillis() {
+        return disk() == null ? -1 : disk().getLoadMillis();
+    }
+
+    public void compactDiskIndex() {
+        if (disk() == null)
+            return;
+        try {
+            disk().compact();
+        } catch (java.io.IOException e) {
+            Log.warn("compacting disk cache index: " + e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCacheStats[" + ImageMemoryCache.getSummary() + " " + disk() + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+/**
+ * The JMX management interface of ImageCacheStats.  Memory figures are for the images
+ * hard referenced by the ImageMemoryCache, and memory hits & misses are counted for
+ * every Images cache lookup that wants an image.  Disk cache figures are all zero if
+ * the disk cache isn't in use.  Disk hits & misses are counted the first time a cache
+ * key is looked up in a runtime.
+ *
+ * @see ImageCacheStats
+ * @version $Revision: 1.0 $
+ */
+public interface ImageCacheStatsMBean
+{
+    int getMemoryEntries();
+    int getMemoryIcons();
+    /** @return the number of images pinned by showing viewers */
+    int getMemoryPinned();
+    double getMemoryMegabytes();
+    long getMemoryBudgetMegabytes();
+    long getMemoryHits();
+    long getMemoryMisses();
+    /** @return hits / (hits + misses), or 0 if there haven't been any lookups */
+    double getMemoryHitRate();
+    long getMemoryEvictions();
+    double getMemoryEvictedMegabytes();
+
+    int getDiskEntries();
+    double getDiskMegabytes();
+    /** @return the disk cache budget, or 0 if there's no limit */
+    long getDiskBudgetMegabytes();
+    long getDiskHits();
+    long getDiskMisses();
+    /** @return hits / (hits + misses), or 0 if there haven't been any lookups */
+    double getDiskHitRate();
+    long getDiskEvictions();
+    double getDiskEvictedMegabytes();
+    /** @return how long it took to load the disk cache index at startup, or -1 if it's not loaded yet */
+    long getDiskIndexLoadMillis();
+
+    /** rewrite the disk cache index file with only the current entries */
+    void compactDiskIndex();
+}
@@ -0,0 +1,347 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.awt.Component;
+import java.awt.Image;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Hard references to the most recently used decoded images, up to a memory budget.
+ *
+ * The Images cache only holds it's images through SoftReferences, so under memory
+ * pressure the GC could clear all of them at once, and the next paint would have to
+ * reload everything, which can then push us right back into low memory (see
+ * Images.setLowMemory).  Images keeps every image it caches here as well, and
+ * ImageReps report every image they draw, so the images that have actually been used
+ * recently are hard referenced, and can't be GC'd.  Once the raster bytes held pass
+ * image.memoryCache.maxMegabytes (or a quarter of the max heap, if that's not set), the
+ * least recently used images are released: larger images (full size images & pyramid
+ * levels) first, then icons, which are what let us draw anything at all.  A
+ * released image is still soft referenced by the Images cache and any ImageReps
+ * holding it, so it's only reloaded if the GC actually needed the memory.
+ *
+ * Images drawn by a MapViewer since it's view last changed (the viewport, or the slide
+ * in a presentation) are pinned: they're never released while that viewer is showing,
+ * even if that puts us over budget.  A viewer may also show images without drawing
+ * them, from an offscreen buffer (a map tile, or a background render) drawn earlier,
+ * maybe on another thread.  Whatever draws such a buffer records the images drawn into
+ * it, and the viewer reports them as shown whenever it blits the buffer, which pins
+ * them just the same.
+ *
+ * Keys are Images cache keys.
+ *
+ * @see ImageCacheStats
+ * @version $Revision: 1.0 $
+ */
+final class ImageMemoryCache
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(ImageMemoryCache.class);
+
+    /** total raster bytes to hold */
+    private static final long BUDGET;
+    static {
+        final int mb = VueResources.getInt("image.memoryCache.maxMegabytes", 0);
+        BUDGET = mb > 0 ? mb * 1024L * 1024L : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /** images no larger than this on either side are released last */
+    private static final int ICON_SIZE = 256;
+
+    private static final class Held {
+        final Image image;
+        final long bytes;
+        final boolean icon;
+        Held(Image image) {
+            this.image = image;
+            this.bytes = bytes(image);
+            this.icon = image.getWidth(null) <= ICON_SIZE && image.getHeight(null) <= ICON_SIZE;
+        }
+    }
+
+    /** the images drawn by one viewer since it's view last changed */
+    private static final class Pins {
+        final Object focal;
+        final Rectangle2D view;
+        final Set<Object> keys = new HashSet();
+        Pins(Object focal, Rectangle2D view) {
+            this.focal = focal;
+            this.view = view;
+        }
+    }
+
+    /** larger images & icons held, least recently used first */
+    private static final LinkedHashMap<Object,Held> Fulls = new LinkedHashMap(64, 0.75f, true);
+    private static final LinkedHashMap<Object,Held> Icons = new LinkedHashMap(64, 0.75f, true);
+
+    private static final Map<Component,Pins> PinsByViewer = new WeakHashMap();
+
+    /** the pins being collected during a paint, and the painting thread */
+    private static Pins Collecting;
+    private static Thread CollectingThread;
+
+    /** the keys of the images drawn into the offscreen buffer being drawn on each thread, if any */
+    private static final ThreadLocal<Set<Object>> Recording = new ThreadLocal<Set<Object>>();
+
+    private static long BytesHeld;
+    /** for diagnostics */
+    private static long Hits, Misses, Evictions, EvictedBytes;
+
+    private ImageMemoryCache() {}
+
+    /** hold the given image, which has just been cached or loaded under the given key */
+    static void hold(Object key, Image image)
+    {
+        if (key == null || image == null)
+            return;
+        synchronized (Fulls) {
+            discard(key);
+            final Held held = new Held(image);
+            (held.icon ? Icons : Fulls).put(key, held);
+            BytesHeld += held.bytes;
+            if (BytesHeld > BUDGET)
+                release(BUDGET);
+        }
+    }
+
+    /**
+     * The given image has been drawn.  It becomes the most recently used, is held again
+     * if it had been released, and is pinned if a viewer is painting.
+     */
+    static void drawn(Object key, Image image)
+    {
+        if (key == null)
+            return;
+        final Set<Object> recording = Recording.get();
+        if (recording != null)
+            recording.add(key);
+        synchronized (Fulls) {
+            if (Collecting != null && CollectingThread == Thread.currentThread())
+                Collecting.keys.add(key);
+            final Held held = get(key);
+            if (held == null || held.image != image)
+                hold(key, image);
+        }
+    }
+
+    /**
+     * The images with the given keys (see endRecording) have been shown from an offscreen
+     * buffer.  They become the most recently used, and are pinned if a viewer is
+     * painting, just as if they'd been drawn.
+     */
+    static void shown(Collection<Object> keys)
+    {
+        if (keys.isEmpty())
+            return;
+        synchronized (Fulls) {
+            if (Collecting != null && CollectingThread == Thread.currentThread())
+                Collecting.keys.addAll(keys);
+            for (Object key : keys)
+                get(key);
+        }
+    }
+
+    /** an Images cache lookup found the given image */
+    static void hit(Object key, Image image)
+    {
+        synchronized (Fulls) {
+            Hits++;
+            final Held held = get(key);
+            if (held == null || held.image != image)
+                hold(key, image);
+        }
+    }
+
+    /** an Images cache lookup found no image */
+    static void miss()
+    {
+        synchronized (Fulls) {
+            Misses++;
+        }
+    }
+
+    static void remove(Object key)
+    {
+        synchronized (Fulls) {
+            discard(key);
+        }
+    }
+
+    static void clear()
+    {
+        synchronized (Fulls) {
+            Fulls.clear();
+            Icons.clear();
+            BytesHeld = 0;
+        }
+    }
+
+    /** we're low on memory: release anything we can down to half the budget */
+    static void lowMemory()
+    {
+        synchronized (Fulls) {
+            if (BytesHeld > BUDGET / 2)
+                release(BUDGET / 2);
+        }
+    }
+
+    /**
+     * The given viewer is about to paint the given region of it's focal (e.g., the map,
+     * or a presentation slide): any images drawn until endPaint are pinned for that
+     * viewer.  Painting is expected to be on a single thread at a time (normally AWT).
+     */
+    static void beginPaint(Component viewer, Object focal, Rectangle2D focalView)
+    {
+        synchronized (Fulls) {
+            Pins pins = PinsByViewer.get(viewer);
+            if (pins == null || pins.focal != focal || !pins.view.equals(focalView)) {
+                // the view has changed: drop what was pinned for the old one
+                pins = new Pins(focal, focalView);
+                PinsByViewer.put(viewer, pins);
+            }
+            Collecting = pins;
+            CollectingThread = Thread.currentThread();
+        }
+    }
+
+    static void endPaint()
+    {
+        synchronized (Fulls) {
+            Collecting = null;
+            CollectingThread = null;
+        }
+    }
+
+    /**
+     * Start recording the images drawn on this thread, into an offscreen buffer that
+     * will later be shown without drawing them again: see shown.
+     */
+    static void beginRecording()
+    {
+        Recording.set(new HashSet());
+    }
+
+    /** @return the keys of the images drawn on this thread since beginRecording */
+    static Set<Object> endRecording()
+    {
+        final Set<Object> keys = Recording.get();
+        Recording.remove();
+        return keys == null || keys.isEmpty() ? Collections.EMPTY_SET : keys;
+    }
+
+    /** must hold Fulls lock: makes the image for the given key, if any, the most recently used */
+    private static Held get(Object key)
+    {
+        final Held held = Fulls.get(key);
+        return held == null ? Icons.get(key) : held;
+    }
+
+    /** must hold Fulls lock */
+    private static void discard(Object key)
+    {
+        Held held = Fulls.remove(key);
+        if (held == null)
+            held = Icons.remove(key);
+        if (held != null)
+            BytesHeld -= held.bytes;
+    }
+
+    /** must hold Fulls lock: release unpinned images, larger images first, until we're down to the given bytes */
+    private static void release(long targetBytes)
+    {
+        final long startBytes = BytesHeld;
+        int count = release(Fulls, targetBytes);
+        if (BytesHeld > targetBytes)
+            count += release(Icons, targetBytes);
+        Evictions += count;
+        EvictedBytes += startBytes - BytesHeld;
+        if (DEBUG.IMAGE) Log.debug("released " + count + " images (" + ((startBytes - BytesHeld) / 1024) + "kb); " + getSummary());
+        if (BytesHeld > targetBytes && DEBUG.Enabled)
+            Log.debug("pinned images hold more than " + (targetBytes / 1024) + "kb; " + getSummary());
+    }
+
+    private static int release(LinkedHashMap<Object,Held> map, long targetBytes)
+    {
+        int count = 0;
+        final Iterator<Map.Entry<Object,Held>> i = map.entrySet().iterator();
+        while (BytesHeld > targetBytes && i.hasNext()) {
+            final Map.Entry<Object,Held> e = i.next();
+            if (isPinned(e.getKey()))
+                continue;
+            i.remove();
+            BytesHeld -= e.getValue().bytes;
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isPinned(Object key)
+    {
+        for (Map.Entry<Component,Pins> e : PinsByViewer.entrySet()) {
+            if (e.getValue().keys.contains(key) && e.getKey().isShowing())
+                return true;
+        }
+        return false;
+    }
+
+    /** @return the memory taken by the pixels of the given image */
+    private static long bytes(Image image)
+    {
+        final int w = Math.max(0, image.getWidth(null));
+        final int h = Math.max(0, image.getHeight(null));
+        if (image instanceof BufferedImage)
+            return (long) w * h * ((((BufferedImage) image).getColorModel().getPixelSize() + 7) / 8);
+        else
+            return (long) w * h * 4;
+    }
+
+    static long getBudget() { return BUDGET; }
+    static long getBytesHeld() { synchronized (Fulls) { return BytesHeld; } }
+    static int getEntryCount() { synchronized (Fulls) { return Fulls.size() + Icons.size(); } }
+    static int getIconCount() { synchronized (Fulls) { return Icons.size(); } }
+    static long getHits() { synchronized (Fulls) { return Hits; } }
+    static long getMisses() { synchronized (Fulls) { return Misses; } }
+    static long getEvictions() { synchronized (Fulls) { return Evictions; } }
+    static long getEvictedBytes() { synchronized (Fulls) { return EvictedBytes; } }
+
+    static int getPinnedCount()
+    {
+        synchronized (Fulls) {
+            final Set<Object> pinned = new HashSet();
+            for (Map.Entry<Component,Pins> e : PinsByViewer.entrySet())
+                if (e.getKey().isShowing())
+                    pinned.addAll(e.getValue().keys);
+            return pinned.size();
+        }
+    }
+
+    static String getSummary() {
+        synchronized (Fulls) {
+            return String.format("ImageMemoryCache[%d images (%d icons) %.1fmb/%dmb hits=%d misses=%d released=%d]",
+                                 Fulls.size() + Icons.size(), Icons.size(), BytesHeld / 1048576.0, BUDGET / 1048576,
+                                 Hits, Misses, Evictions);
+        }
+    }
+}
@@ -33,6 +33,8 @@ public class ImageRef
     public static final Object REPAINT = "ImageRef.REPAINT";
     public static final Object KICKED = "ImageRef.*****KICKED*****";
     
+    private static final ImageRep[] NO_LEVELS = new ImageRep[0]; // must be initialized before EMPTY
+    
     public static final ImageRef EMPTY = new ImageRef() {
 //             @Override public void setImageSource(Object is) {
 //                 Log.error("attempt to set image source on the empty ImageRef: " + Util.tags(is), new Throwable("HERE"));
@@ -55,6 +57,24 @@ public class ImageRef
     private static final int PIXEL_THRESHOLD_FOR_ICON_DRAWING = DEFAULT_ICON_SIZE*2;
 
     private static final boolean ICONS_ARE_DISPOSABLE = false; // todo: true case needs testing / may not work
+
+    /**
+     * The max side, in pixels, of each level of the image pyramid: the intermediate
+     * representations between the icon and the full rep.  Each is twice the size of the
+     * last, starting above the largest size we'll draw the icon at.  Unlike the icon,
+     * these may be GC'd, as they can be reloaded from the disk cache.
+     */
+    private static final int[] LEVEL_SIZES = levelSizes(VueResources.getInt("image.pyramid.maxSize", 2048));
+
+    private static int[] levelSizes(int maxSize) {
+        int count = 0;
+        for (int size = PIXEL_THRESHOLD_FOR_ICON_DRAWING * 2; size <= maxSize; size *= 2)
+            count++;
+        final int[] sizes = new int[count];
+        for (int i = 0; i < count; i++)
+            sizes[i] = PIXEL_THRESHOLD_FOR_ICON_DRAWING * 2 << i;
+        return sizes;
+    }
     
     private final ImageSource _source;
 
@@ -64,6 +84,10 @@ public class ImageRef
 
     private volatile ImageRep _full = ImageRep.UNAVAILABLE;
     private volatile ImageRep _icon = ImageRep.UNAVAILABLE;
+    /** the image pyramid, smallest first, of LEVEL_SIZES: any level may be UNAVAILABLE */
+    private volatile ImageRep[] _levels = NO_LEVELS;
+    /** if the full rep could only be decoded subsampled, full resolution tiles of the image */
+    private volatile ImageTiles _tiles;
     
     //private volatile Object _desired = SIZE_UNKNOWN;
     // _desired not used at moment -- would be easy to have one global instance of an ImageRef per image w/out it,
@@ -99,6 +123,11 @@ public class ImageRef
         return _source;
     }
 
+    /** @return who we're drawing for (e.g., an LWImage): used to prioritize our loads by where that is */
+    Object owner() {
+        return _repainter;
+    }
+
 //     public boolean isBlank() {
 //         return _source == null;
 //     }
@@ -163,6 +192,19 @@ public class ImageRef
             }
         } // _icon left as ImageRep.UNAVAILABLE
 
+        if (iconKey != null) {
+            // As with icons, levels of the pyramid only exist in the cache
+            final ImageRep[] levels = new ImageRep[LEVEL_SIZES.length];
+            for (int i = 0; i < levels.length; i++) {
+                final java.net.URI levelKey = _source.getIconKey(LEVEL_SIZES[i]);
+                if (Images.hasCacheEntry(levelKey))
+                    levels[i] = ImageRep.create(this, ImageSource.create(levelKey), true);
+                else
+                    levels[i] = UNAVAILABLE;
+            }
+            _levels = levels;
+        }
+
 //         // rep won't load until it attempts to draw:
 //         _full = ImageRep.create(this, _source);
     }
@@ -202,7 +244,29 @@ public class ImageRef
     private static final java.awt.Color DebugYellow = new java.awt.Color(255,255,0,128);
 
     private ImageRep pickRepToDraw(final ImageRep ideal) {
-        return pickRepToDraw(ideal, ideal == _full ? _icon : _full);
+        if (ideal == _full || ideal == _icon)
+            return pickRepToDraw(ideal, ideal == _full ? _icon : _full);
+        else
+            return pickRepToDraw(ideal, getLevelBackup(ideal));
+    }
+
+    /**
+     * @return the best available rep to draw while waiting for the given level of the
+     * pyramid: a larger level or the full rep, otherwise a smaller level, otherwise the icon
+     */
+    private ImageRep getLevelBackup(final ImageRep level) {
+        final ImageRep[] levels = _levels;
+        int index = levels.length;
+        while (--index >= 0 && levels[index] != level);
+        for (int i = index + 1; i < levels.length; i++)
+            if (levels[i].available())
+                return levels[i];
+        if (_full.available())
+            return _full;
+        for (int i = index - 1; i >= 0; i--)
+            if (levels[i].available())
+                return levels[i];
+        return _icon;
     }
     
     private ImageRep pickRepToDraw(final ImageRep desired, final ImageRep backup)
@@ -298,7 +362,7 @@ public class ImageRef
         } else {
             //debug("onScreenMaxDim ABOVE thresh " + PIXEL_THRESHOLD_FOR_ICON_DRAWING + " at " + onScreenMaxDim);
             //_desired = SIZE_FULL;
-            idealRep = _full;
+            idealRep = getLevelRep(onDisplayMaxDim);
             //backupRep = _icon;
         }
 
@@ -315,6 +379,24 @@ public class ImageRef
         
     }
     
+    /**
+     * @return the smallest level of the pyramid with at least the given max side, or the
+     * full rep if there isn't one.  Levels are only ever present if they're smaller than the
+     * full rep.
+     */
+    private ImageRep getLevelRep(final int onDisplayMaxDim)
+    {
+        final ImageRep[] levels = _levels;
+        for (int i = 0; i < levels.length; i++) {
+            if (onDisplayMaxDim <= LEVEL_SIZES[i]) {
+                final ImageRep level = levels[i];
+                if (level != UNAVAILABLE && !level.hasError())
+                    return level;
+            }
+        }
+        return _full;
+    }
+    
     private void drawBestAvailable(DrawContext dc, float width, float height)
     {
         // Tasks to accomplish here:
@@ -331,6 +413,8 @@ public class ImageRef
             // we're not running low on memory.
             
             renderImage(dc.g, idealImageLock[0], width, height);
+            ideal.drawn(idealImageLock[0]);
+            PaintStats.countImage(false);
 
             idealImageLock[0] = null; // ensure GC-lock is immediately released
             
@@ -355,11 +439,19 @@ public class ImageRef
                 // We never kick image data loading during animations, as the desired representation
                 // may only be a momentary need (and it could suddenly slow down the animation to boot).
                 // Note: ideal may already be loading -- kickLoad handles all that.
-                ensureLoading(ideal, drawable);
+                if (dc.snapshot != null) {
+                    // drawing off the AWT thread (see BackgroundRenderer)
+                    dc.snapshot.deferLoad(new Runnable() { public void run() {
+                        ensureLoading(ideal, drawable);
+                    }});
+                } else {
+                    ensureLoading(ideal, drawable);
+                }
             }
 
             // rendering before/after kickloads doesn't matter as long as reps don't auto-constitute
             drawable.renderRep(dc.g, width, height);
+            PaintStats.countImage(!drawable.available());
 
             if (DEBUG.Enabled) {
                 if (drawable != ideal && !dc.isPrintQuality() && drawable.available() && !ideal.hasError())
@@ -368,6 +460,12 @@ public class ImageRef
         }
 
 
+        final ImageTiles tiles = _tiles;
+        if (tiles != null && drawable == _full && drawable.available()) {
+            // the full rep is subsampled: draw anything that's magnified at full resolution
+            tiles.draw(dc, width, height);
+        }
+
         if (DEBUG.BOXES) drawDebugStatus(dc.g, ideal, drawable, width, height);
 
     }
@@ -481,7 +579,7 @@ public class ImageRef
             } // else _icon left as ImageRep.UNAVAILABLE
              
         }
-        else if (freshRep == _icon && (_full == UNAVAILABLE || _full.size() == ZERO_SIZE)) {
+        else if (freshRep != _full && hardImageRef != null && (_full == UNAVAILABLE || _full.size() == ZERO_SIZE)) {
             // We don't have a full rep loaded -- pull it from meta-data stored with the icon.
             // There are several reasons this is important: (1) We may need to know the full
             // pixel size before the full representation is available (e.g., set to natural size).
@@ -493,6 +591,18 @@ public class ImageRef
             loadFullPixelSize(hardImageRef);
         }
 
+        if (freshRep == _full && hardImageRef != null && _tiles == null) {
+            final int[] subsampledFrom = (int[]) hardImageRef.data.get("subsampledFrom");
+            if (subsampledFrom != null)
+                _tiles = ImageTiles.create(this, _source, subsampledFrom, (Integer) hardImageRef.data.get("subsampling"));
+        }
+
+        if (freshRep == _full && hardImageRef != null && _levels.length > 0) {
+            // While we've got the full image in hand, generate any levels of the pyramid
+            // we're missing.
+            createRuntimeScaledLevelReps(freshRep, hardImageRef.image);
+        }
+
         if (_aspect == 0 || freshRep == _full) {
             // note: this used to be at the very top, before the repaint() issue
             _aspect = freshRep.aspect(); 
@@ -599,6 +709,32 @@ public class ImageRef
         
      }
     
+    private void createRuntimeScaledLevelReps(final ImageRep full, final Image hardFullImageRef)
+    {
+        final int[] size = full.size();
+        final int fullMaxSide = Math.max(size[0], size[1]);
+        final ImageRep[] levels = _levels.clone();
+        boolean changed = false;
+
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i] == UNAVAILABLE && fullMaxSide > LEVEL_SIZES[i]) {
+                // Levels may be GC'd: Images will reload them from the disk cache
+                // once the hard full image reference has been released.
+                levels[i] = ImageRep.create(this,
+                                            ImageSource.createIconSource(_source, full, hardFullImageRef, LEVEL_SIZES[i]),
+                                            true);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            _levels = levels;
+            for (ImageRep level : levels)
+                if (level != UNAVAILABLE)
+                    ensureLoading(level);
+        }
+    }
+    
     private void ensureLoading(ImageRep ideal, ImageRep drawable)
     {
         // Note: the logic below is tuned to cover many possible corner cases,
@@ -686,7 +822,12 @@ public class ImageRef
     }
 
     public boolean available() {
-        return _icon.available() || _full.available();
+        if (_icon.available() || _full.available())
+            return true;
+        for (ImageRep level : _levels)
+            if (level.available())
+                return true;
+        return false;
     }
 
     public boolean hasError() {
@@ -704,6 +845,8 @@ public class ImageRef
     public void reload() {
         _full = ImageRep.UNAVAILABLE;
         _icon = ImageRep.UNAVAILABLE;
+        _levels = NO_LEVELS;
+        _tiles = null;
         repaint();
     }
     
@@ -717,7 +860,7 @@ public class ImageRef
     @Override public String toString() {
         //return "ImageRef[full=" + fullRep() + "; icon=" + iconRep() + "; src=" + _source + "]";
         
-        return String.format("ImageRef[full=%s icon=%s]", _full, _icon.handle());
+        return String.format("ImageRef[full=%s icon=%s levels=%s]", _full, _icon.handle(), java.util.Arrays.asList(_levels));
         //return String.format("ImageRef[full: %s\n\ticon: %s\n\tsrc: %s]", _full, _icon, _source);
     }
 
@@ -347,8 +347,14 @@ public abstract class ImageRep implements /*ImageRef.Rep,*/ Images.Listener
             // tho there are some special cases where that call may not arrive (e.g., icon generation).
             // Note: multi-threaded coherency agaist AWT thread for the next 3 stores,
             // as well as locked against cacheData calls happening in AWT via reconstitute
-            setSize(image.getWidth(null),
-                    image.getHeight(null));
+            final int[] subsampledFrom = (int[]) imageData.data.get("subsampledFrom");
+            if (subsampledFrom != null) {
+                // we only have a subsampled image: our size is still that of the full image
+                setSize(subsampledFrom[0], subsampledFrom[1]);
+            } else {
+                setSize(image.getWidth(null),
+                        image.getHeight(null));
+            }
             // record the new width & height first before installing the handle just in case
             setHandle(newRef(image), "[cacheData/"+cause+"]");
         }
@@ -421,6 +427,9 @@ public abstract class ImageRep implements /*ImageRef.Rep,*/ Images.Listener
         // todo: distinguish between recoverable v.s. non-recoverable (e.g. OutOfMemory v.s. no image file)
         if (msg == Images.OUT_OF_MEMORY) {
             setHandle(IMG_ERROR_MEMORY, "gotMemoryError");
+        } else if (msg == Images.CANCELLED) {
+            // not an error: we'll simply be reloaded if we're drawn again
+            setHandle(IMG_UNLOADED, "gotCancelled");
         } else {
             setHandle(IMG_ERROR, "gotError");
         }
@@ -494,9 +503,20 @@ public abstract class ImageRep implements /*ImageRef.Rep,*/ Images.Listener
             
         } else {
             ImageRef.renderImage(g, image, toWidth, toHeight);
+            drawn(image);
         }
     }
 
+    /** @return the owner of our ImageRef, if any */
+    Object owner() {
+        return _ref == null ? null : _ref.owner();
+    }
+
+    /** the given image of ours has just been drawn: see ImageMemoryCache */
+    void drawn(Image image) {
+        ImageMemoryCache.drawn(_data.key, image);
+    }
+
 //     void renderImage(Graphics2D g, Image image, float toWidth, float toHeight) {
 //         final int[] size = size();
 //         final float pixelsWide = size[0];
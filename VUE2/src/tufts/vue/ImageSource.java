@@ -40,6 +40,12 @@ class ImageSource {
 
     final int iconSize;
 
+    /** if non-null, only this region of the source image (in source pixels) is to be read */
+    final java.awt.Rectangle region;
+
+    /** for icon sources: the pixel size of the full image, which may be larger than the image we're to create the icon from */
+    final int[] sourcePixels;
+
 //     boolean nextLoadIsImmediate;
 
 // //     interface Scaler {
@@ -66,6 +72,11 @@ class ImageSource {
     public static ImageSource createIconSource(ImageSource is, ImageRep fullRep, java.awt.Image hardFullImage, int size) {
         return new ImageSource(is, fullRep, hardFullImage, size);
     }
+
+    /** @return a source for reading just the given region of the image in the given file, at full resolution */
+    public static ImageSource createRegionSource(ImageSource is, File file, java.awt.Rectangle region) {
+        return new ImageSource(is, file, region);
+    }
         
     /** @return a key that could be used for an icon version of this image */
     URI getIconKey(int size) {
@@ -122,8 +133,22 @@ class ImageSource {
         
         this.key = makeIconKey(is.key, iconSize);
         this.resource = null;
+        this.region = null;
+        this.sourcePixels = softImageSource.size();
         this._cacheFile = new File(Images.keyToCacheFileName(this.key));
     }
+
+    /** create a region entry: these are only ever cached in memory */
+    private ImageSource(ImageSource is, File file, java.awt.Rectangle region) {
+        this.original = is.original;
+        this.iconSize = -1;
+        this.readable = file;
+        this.key = makeRegionKey(is.key, region);
+        this.resource = null;
+        this.region = region;
+        this.sourcePixels = null;
+        this._cacheFile = DO_NOT_CACHE_TO_DISK;
+    }
     
     // todo: would be better to use the actual CacheEntry.file to create
     // this, but we may not have that if there's a Loader in the Cache.
@@ -133,6 +158,8 @@ class ImageSource {
         this.original = cacheKey;
         this.key = cacheKey;
         this.resource = null;
+        this.region = null;
+        this.sourcePixels = null;
         this._cacheFile = new File(Images.keyToCacheFileName(this.key));
         this.iconSize = iconSize; // okay if <=0: means not an icon
         // readable unset
@@ -141,6 +168,8 @@ class ImageSource {
         
     private ImageSource(Object original) {
         this.iconSize = -1;
+        this.region = null;
+        this.sourcePixels = null;
         this.original = original;
 
         //Log.debug("NEW IMAGE SOURCE FROM " + Util.tags(original));
@@ -318,6 +347,11 @@ class ImageSource {
             s.append("; ICON");
             s.append(iconSize);
         }
+        if (region != null) {
+            s.append("; REGION ");
+            s.append(region.x).append(',').append(region.y).append(' ');
+            s.append(region.width).append('x').append(region.height);
+        }
         if (_cacheFile != null) {
             s.append("; CF=");
             s.append(_cacheFile);
@@ -339,6 +373,17 @@ class ImageSource {
         return null;
     }
 
+    static URI makeRegionKey(URI cacheKey, java.awt.Rectangle r) {
+        if (cacheKey == null)
+            throw new IllegalArgumentException("makeRegionKey: null source key");
+        try {
+            return new URI(String.format("%s.r%d.%d.%dx%d", cacheKey, r.x, r.y, r.width, r.height));
+        } catch (Throwable t) {
+            Util.printStackTrace(t, "can't make URI region cache key from key " + cacheKey);
+        }
+        return null;
+    }
+
     private static URI makeKey(URL u) {
         try {
 
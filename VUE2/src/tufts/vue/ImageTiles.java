@@ -0,0 +1,178 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.io.File;
+import java.awt.Image;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Full resolution tiles of an image too large to be decoded whole (see
+ * Images.MAX_DECODE_PIXELS).  The ImageRef for such an image only ever has a subsampled
+ * version of it as it's full rep.  When that's drawn magnified, ImageRef has us draw the
+ * visible parts of the image over it at full resolution, a tile at a time.  Each tile is
+ * decoded from the image file on it's own, as a region of the source image, by the
+ * regular Images loading threads.  Tiles are ImageReps, cached in memory under keys
+ * derived from the image's cache key, and may be GC'd at any time.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class ImageTiles
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(ImageTiles.class);
+
+    /** tile size, in source pixels */
+    private static final int TILE_SIZE = VueResources.getInt("image.tileSize", 512);
+
+    /** if drawing would require more tiles than this, we just draw the subsampled image */
+    private static final int MAX_VISIBLE_TILES = 64;
+
+    private final ImageRef mRef;
+    private final ImageSource mSource;
+    private final File mFile;
+    /** the size of the full image, in source pixels */
+    private final int mWidth, mHeight;
+    /** the subsampling of the image drawn underneath us */
+    private final int mSubsampling;
+
+    /** tiles we've had requests for, by row & column */
+    private final Map<Long,ImageRep> mTiles = new HashMap();
+
+    /**
+     * @return tiles for the given image source, or null if we can't read regions from it
+     * (e.g., it's not a file, and hasn't been saved to the disk cache)
+     */
+    static ImageTiles create(ImageRef ref, ImageSource source, int[] fullSize, int subsampling)
+    {
+        final File file;
+        if (source.readable instanceof File)
+            file = (File) source.readable;
+        else if (source.hasCacheFile())
+            file = source.getCacheFile();
+        else
+            file = null;
+
+        if (file == null || source.key == null || !file.canRead()) {
+            if (DEBUG.IMAGE) Log.debug("can't read tiles from " + source);
+            return null;
+        }
+        return new ImageTiles(ref, source, file, fullSize[0], fullSize[1], subsampling);
+    }
+
+    private ImageTiles(ImageRef ref, ImageSource source, File file, int width, int height, int subsampling) {
+        mRef = ref;
+        mSource = source;
+        mFile = file;
+        mWidth = width;
+        mHeight = height;
+        mSubsampling = subsampling;
+    }
+
+    /**
+     * Draw whatever tiles we have for the visible region of the image, and request any
+     * we're missing.  The image is being drawn at 0,0 into the given width & height.
+     */
+    void draw(DrawContext dc, float width, float height)
+    {
+        final Graphics2D g = dc.g;
+
+        // device pixels per source pixel
+        final double scale = g.getTransform().getScaleX() * width / mWidth;
+
+        if (scale * mSubsampling <= 1) {
+            // the subsampled image is already at least as detailed as the display
+            return;
+        }
+
+        final double toSourceX = mWidth / width;
+        final double toSourceY = mHeight / height;
+
+        final Rectangle clip = g.getClipBounds();
+        final Rectangle visible;
+        if (clip == null) {
+            visible = new Rectangle(mWidth, mHeight);
+        } else {
+            visible = new Rectangle((int) Math.floor(clip.x * toSourceX),
+                                    (int) Math.floor(clip.y * toSourceY),
+                                    (int) Math.ceil(clip.width * toSourceX) + 1,
+                                    (int) Math.ceil(clip.height * toSourceY) + 1)
+                .intersection(new Rectangle(mWidth, mHeight));
+        }
+
+        if (visible.isEmpty())
+            return;
+
+        final int col0 = visible.x / TILE_SIZE;
+        final int row0 = visible.y / TILE_SIZE;
+        final int col1 = (visible.x + visible.width - 1) / TILE_SIZE;
+        final int row1 = (visible.y + visible.height - 1) / TILE_SIZE;
+
+        if ((col1 - col0 + 1) * (row1 - row0 + 1) > MAX_VISIBLE_TILES)
+            return;
+
+        final boolean mayLoad = !dc.isAnimating() && !dc.isPrintQuality();
+        final AffineTransform tx = new AffineTransform();
+
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                final ImageRep tile = getTile(col, row);
+                final Image image = tile.image();
+                if (image != null) {
+                    tx.setToTranslation(col * TILE_SIZE / toSourceX, row * TILE_SIZE / toSourceY);
+                    tx.scale(1 / toSourceX, 1 / toSourceY);
+                    g.drawImage(image, tx, null);
+                    tile.drawn(image);
+                } else if (mayLoad && !tile.loading() && !tile.hasError()) {
+                    if (dc.snapshot != null) {
+                        // drawing off the AWT thread (see BackgroundRenderer)
+                        dc.snapshot.deferLoad(new Runnable() { public void run() {
+                            if (!tile.loading() && !tile.hasError())
+                                tile.reconstitute();
+                        }});
+                    } else {
+                        tile.reconstitute();
+                    }
+                }
+            }
+        }
+    }
+
+    private ImageRep getTile(int col, int row)
+    {
+        final Long key = ((long) row << 32) | col;
+        synchronized (mTiles) {
+            ImageRep tile = mTiles.get(key);
+            if (tile == null) {
+                final Rectangle region = new Rectangle(col * TILE_SIZE,
+                                                       row * TILE_SIZE,
+                                                       Math.min(TILE_SIZE, mWidth - col * TILE_SIZE),
+                                                       Math.min(TILE_SIZE, mHeight - row * TILE_SIZE));
+                tile = ImageRep.create(mRef, ImageSource.createRegionSource(mSource, mFile, region), true);
+                mTiles.put(key, tile);
+            }
+            return tile;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImageTiles[%dx%d /%d tiles=%d %s]", mWidth, mHeight, mSubsampling, mTiles.size(), mFile);
+    }
+}
@@ -62,6 +62,9 @@ public class Images
 
     private static volatile int LOW_MEMORY_COUNT = 0;
 
+    /** images with more pixels than this are never decoded at full resolution: they're subsampled down to fit */
+    static final int MAX_DECODE_PIXELS = VueResources.getInt("image.maxDecodePixels", 4096 * 4096);
+
     // Setting DELAYED_ICONS to true allows maps with lots of images paint something for
     // each image much faster the first time they're loaded under plentiful memory
     // conditions, but cause horrible thrashing under low memory conditions, and it
@@ -84,6 +87,7 @@ public class Images
         }
         // we do this out side of the sync just in case, as
         // below will obtain it's own sync
+        ImageMemoryCache.lowMemory();
         //TaskQueue.flushCachingRequests(); // needs testing
 
         // TODO: either allow the above flushing, or skip the tasks when popped off queue and force
@@ -209,36 +213,31 @@ public class Images
 //         }
 //     }
 
+    /** the index of the files in the disk cache: null if it's not in use */
+    private static volatile DiskCacheIndex DiskIndex;
+
+    /**
+     * Start loading the disk cache index in the background.  Disk cache entries are
+     * looked up in the index the first time their key is requested (or directly in the
+     * cache directory if the index hasn't finished loading).
+     */
     public static void loadDiskCache()
     {
-        File dir = getCacheDirectory();
-        if (dir == null)
-            return;
-
-        Log.debug("listing disk cache...");
-        File[] files = dir.listFiles();
-        Log.debug("listing disk cache: done; entries=" + files.length);
-        
         synchronized (RawCache) {
-            for (int i = 0; i < files.length; i++) {
-                File file = files[i];
-                String name = file.getName();
-                if (name.charAt(0) == '.')
-                    continue;
-                //out("found cache file " + file);
-                URI key = null;
-                try {
-                    key = cacheFileNameToKey(name);
-                    if (DEBUG.IMAGE && DEBUG.META) out("made cache key: " + key);
-                    if (key != null) {
-                        RawCache.put(key, new CacheEntry(file));
-                        //RefCache.put(key, file);
-                   }
-                } catch (Throwable t) {
-                    Log.error("failed to load cache with [" + name + "]; key=" + key);
-                }
-            }
+            if (DiskIndex != null)
+                return;
+            File dir = getCacheDirectory();
+            if (dir == null)
+                return;
+            DiskIndex = new DiskCacheIndex(dir);
+            DiskIndex.start();
         }
+        ImageCacheStats.publish();
+    }
+
+    /** @return the disk cache index, or null if the disk cache isn't in use */
+    static DiskCacheIndex getDiskCacheIndex() {
+        return DiskIndex;
     }
     
     /** @return the cache file for the given resource, or null if none exists */
@@ -417,25 +416,71 @@ public class Images
      */
     private static class CacheMap extends HashMap {
 
-        public synchronized Object get(Object key) {
+        /**
+         * If we have no entry for a key, this will make one if the key is in the disk cache
+         * index.  The index is consulted without holding our lock.
+         */
+        public Object get(Object key) {
+            final Object entry = getInMemory(key);
+            if (entry == null && key instanceof URI)
+                return getDiskEntry((URI) key);
+            else
+                return entry;
+        }
+
+        /** @return our entry for the given key, without consulting the disk cache index */
+        public synchronized Object getInMemory(Object key) {
             return super.get(key);
         }
         
-        public synchronized boolean containsKey(Object key) {
-            return super.containsKey(key);
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        private Object getDiskEntry(URI key) {
+            final DiskCacheIndex index = DiskIndex;
+            if (index == null)
+                return null;
+            final File file = index.lookup(keyToCacheFileName(key));
+            if (file == null)
+                return null;
+            synchronized (this) {
+                final Object entry = super.get(key);
+                if (entry != null) {
+                    // someone else got here first
+                    return entry;
+                }
+                if (DEBUG.IMAGE && DEBUG.META) out("found disk cache entry for key: " + key);
+                final CacheEntry diskEntry = new CacheEntry(file);
+                super.put(key, diskEntry);
+                return diskEntry;
+            }
         }
         
+        /** any image in a CacheEntry is also held by the ImageMemoryCache */
         public synchronized Object put(Object key, Object value) {
+            if (value instanceof CacheEntry && ((CacheEntry)value).ref != null)
+                ImageMemoryCache.hold(key, ((CacheEntry)value).ref.get());
+            else
+                ImageMemoryCache.remove(key);
             return super.put(key, value);
         }
 
         public synchronized Object remove(Object key) {
+            ImageMemoryCache.remove(key);
             return super.remove(key);
         }
+
+        /** remove the entry for the given key only if it's still the given Loader */
+        public synchronized void removeLoader(Object key, Loader loader) {
+            if (key != null && super.get(key) == loader)
+                super.remove(key);
+        }
         
 
         // for now, only clears memory cache
         public synchronized void clear() {
+            ImageMemoryCache.clear();
             final Iterator i = values().iterator();
             while (i.hasNext()) {
                 Object entry = i.next();
@@ -489,12 +534,18 @@ public class Images
         // TODO: sync icon key 128 size with size in ImageRef, or better yet, search
         // cache for all cache keys of any size (tho we only have one size for now)
         
-        if (flushEntry(iconKey, "ic128")) {
-            File iconFile = new File(getCacheDirectory(), keyToCacheFileName(iconKey));
+        // the icon may be in the disk cache even if it hasn't been requested this runtime
+        flushEntry(iconKey, "ic128");
+        final File cacheDir = getCacheDirectory();
+        if (cacheDir != null) {
+            File iconFile = new File(cacheDir, keyToCacheFileName(iconKey));
             Log.info("looking for cache file " + iconFile);
             if (iconFile.exists()) {
                 Log.info("   deleting cache file " + iconFile);
-                iconFile.delete();
+                if (DiskIndex != null)
+                    DiskIndex.discard(iconFile);
+                else
+                    iconFile.delete();
             }
         }
 
@@ -557,17 +608,6 @@ public class Images
         return null;
     }
     
-    private static URI cacheFileNameToKey(String name) 
-    {
-        try {
-            return new URI(java.net.URLDecoder.decode(name, "UTF-8"));
-            //return new URL(java.net.URLDecoder.decode(name, "UTF-8"));
-        } catch (Throwable t) {
-            if (DEBUG.Enabled) tufts.Util.printStackTrace(t);
-            return null;
-        }
-    }
-
     /**
      * Using a relay system, as opposed to say a list of listeners maintained by the
      * Loader, allows the image loading code to not care if there is a single listener
@@ -1278,6 +1318,91 @@ public class Images
     private static final String PRI_NORM = "NORM";
     private static final String PRI_LOW = "LAST";
 
+    /**
+     * What the active viewer is showing: a region of it's focal.  Within each priority,
+     * queued load tasks are run nearest to this region first, and paint requests for
+     * images that were in or near view when requested, but have since gone well out of
+     * view, are cancelled.  Distances are measured lazily from the image processing
+     * threads, once per task per viewport, but only from what was captured from the
+     * model when the task was created, and when the viewport was set (both on the AWT
+     * thread), so the model is never touched from those threads.  Only tasks whose owner
+     * (e.g., an LWImage) is on the map being viewed, or on the slide being viewed, are
+     * measured: anything else (e.g., slide contents seen from the map, or content from
+     * some other map) is simply treated as out of view.
+     */
+    private static final class Viewport
+    {
+        static final double NOT_IN_VIEW = Double.MAX_VALUE;
+
+        final LWComponent focal;
+        /** the map the focal is on, and the slide it is or is on, if any */
+        final LWMap map;
+        final LWSlide slide;
+        /** the visible region, in map coordinates */
+        final java.awt.geom.Rectangle2D bounds;
+
+        Viewport(LWComponent focal, java.awt.geom.Rectangle2D bounds) {
+            this.focal = focal;
+            this.map = focal.getMap();
+            this.slide = focal instanceof LWSlide ? (LWSlide) focal : focal.getAncestorOfType(LWSlide.class);
+            this.bounds = bounds;
+        }
+
+        /** update the distance of the given task from this viewport */
+        void measure(Task task)
+        {
+            task.far = false;
+            if (task.ownerBounds == null) {
+                task.distance = NOT_IN_VIEW;
+            } else if (task.ownerSlide != null) {
+                // a slide is always seen whole
+                task.distance = task.ownerSlide == slide ? 0 : NOT_IN_VIEW;
+            } else if (slide == null && task.ownerMap == map) {
+                final java.awt.geom.Rectangle2D r = task.ownerBounds;
+                final double dx = Math.max(0, Math.max(bounds.getMinX() - r.getMaxX(), r.getMinX() - bounds.getMaxX()));
+                final double dy = Math.max(0, Math.max(bounds.getMinY() - r.getMaxY(), r.getMinY() - bounds.getMaxY()));
+                task.distance = Math.sqrt(dx * dx + dy * dy);
+                // more than a viewport's width or height out of view
+                task.far = dx > bounds.getWidth() || dy > bounds.getHeight();
+            } else {
+                task.distance = NOT_IN_VIEW;
+            }
+        }
+
+        @Override public String toString() {
+            return "Viewport[" + focal + " " + Util.fmt(bounds) + "]";
+        }
+    }
+
+    private static volatile Viewport CurrentViewport;
+
+    /**
+     * Report the region of it's focal the active viewer is showing (normally on every
+     * paint), so image loads can be prioritized by their distance from it.  Must be
+     * called on the AWT thread.
+     */
+    public static void setViewport(LWComponent focal, java.awt.geom.Rectangle2D visibleBounds)
+    {
+        final Viewport view = CurrentViewport;
+        if (focal == null || visibleBounds == null) {
+            CurrentViewport = null;
+        } else if (view == null || view.focal != focal || !view.bounds.equals(visibleBounds)) {
+            CurrentViewport = new Viewport(focal, (java.awt.geom.Rectangle2D) visibleBounds.clone());
+            if (DEBUG.IMAGE && DEBUG.SCROLL) Log.debug("new " + CurrentViewport);
+        }
+    }
+
+    /** deliver CANCELLED to any listeners of the given tasks, which have already been removed from the queue */
+    private static void cancelTasks(List<Task> tasks)
+    {
+        for (Task task : tasks) {
+            if (DEBUG.IMAGE||DEBUG.WORK) Log.debug("cancelled " + task);
+            RawCache.removeLoader(task.imageSRC.key, task);
+            task.relay.gotImageError(task.imageSRC.original, CANCELLED);
+            task.dispose();
+        }
+    }
+
     // ThreadPoolExectuor impl requires BlockingQueue methods:
     //          offer, remove, isEmpty, poll, poll(time,timeUnit), take, drainTo(Collection), iterator,
     //          remainingCapacity, size
@@ -1333,7 +1458,10 @@ public class Images
 //         }
         
         @Override public E take() throws InterruptedException {
-            E o = popNext();
+            final List<Task> cancelled = new ArrayList(0);
+            E o = popNext(cancelled);
+            if (!cancelled.isEmpty())
+                cancelTasks(cancelled);
             if (o != null) {
                 if (DEBUG.IMAGE) debug("take provides " + o);
                 return o;
@@ -1437,17 +1565,56 @@ public class Images
             ((Task)task).setPriority(pri);
         }
 
-        /** @return the next highest priority processing task */
-        private synchronized E popNext() {
+        /**
+         * @return the next highest priority processing task.  Any paint requests found to
+         * no longer be needed are removed and added to cancelled.
+         */
+        private synchronized E popNext(List<Task> cancelled) {
 
             // Ideally, we would mark Tasks as RUNNING right here -- as soon as it's de-queued.
-                
-            if (q1.size() > 0)
-                return q1.removeFirst(); // pop front (was inserted FIFO)
-            else if (q2.size() > 0)
-                return q2.removeFirst(); // pop front (was inserted LIFO)
-            else 
-                return q3.poll(); // pop front (was inserted FIFO), but return null if empty
+
+            E task = popNearest(q1, null);
+            if (task == null)
+                task = popNearest(q2, cancelled);
+            if (task == null)
+                task = popNearest(q3, null);
+            return task;
+        }
+
+        /**
+         * @return the task in the given queue nearest the current Viewport, or null if
+         * it's empty.  Amongst tasks at the same distance (e.g., all those in view, or all
+         * those we can't place), the one at the front of the queue wins, so FIFO or LIFO
+         * order still applies.
+         */
+        private E popNearest(LinkedList<E> q, List<Task> cancelled)
+        {
+            if (q.isEmpty())
+                return null;
+            final Viewport view = CurrentViewport;
+            Task nearest = null;
+            for (Iterator<E> i = q.iterator(); i.hasNext();) {
+                final Task task = (Task) i.next();
+                if (task.measuredFor != view) {
+                    task.measuredFor = view;
+                    if (view == null) {
+                        task.distance = Viewport.NOT_IN_VIEW;
+                        task.far = false;
+                    } else {
+                        view.measure(task);
+                    }
+                }
+                if (cancelled != null && task.far && task.wasNear) {
+                    i.remove();
+                    task.started = true; // so nobody will try and re-queue it
+                    cancelled.add(task);
+                } else if (nearest == null || task.distance < nearest.distance) {
+                    nearest = task;
+                }
+            }
+            if (nearest != null)
+                q.remove(nearest);
+            return (E) nearest;
         }
 
         void raiseTaskPriority(Task task) {
@@ -1476,6 +1643,10 @@ public class Images
 //         }
 
         synchronized void jumpQueue(List src, Task task, Object newPri) {
+                if (task.isRunning()) {
+                    // it's already been de-queued: it's running, or was cancelled
+                    return;
+                }
                 if (DEBUG.Enabled) {
                     if (DEBUG.IMAGE) dump();
                     debug("jumpQueue to " + newPri + " for: " + task);
@@ -1547,7 +1718,16 @@ public class Images
             else
                 useCores = 1;
         } else {
-            useCores = cores;
+            // Don't run more decodes at once than half the heap could hold at their
+            // largest (the decoded raster, plus about as much again for icon generation)
+            final long decodeBytes = MAX_DECODE_PIXELS * 4L * 2;
+            final int byMemory = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 2 / decodeBytes);
+            final int maxThreads = VueResources.getInt("image.maxLoadThreads", 0);
+            int threads = Math.min(cores, byMemory);
+            if (maxThreads > 0)
+                threads = Math.min(threads, maxThreads);
+            useCores = threads;
+            Log.info("image processing threads: " + useCores + " (cores-1=" + cores + ", by memory=" + byMemory + ")");
         }
 
         // rough test: on a 2-core laptop, our use-case came in at 1min v.s. 1:30min w/all cores in use
@@ -1807,6 +1987,13 @@ public class Images
             if (imageSRC.mayBlockIndefinitely()) {
                 // run in a completely separate thread outside the thread pool:
                 loader = new LoadThread(imageSRC, listener);
+            } else if (imageSRC.isImageSourceForIcon() && imageSRC.readable == null && imageSRC.getCacheFile().canRead()) {
+                // A GC'd runtime generated icon (e.g., a level of an ImageRef pyramid) that
+                // has already been written to the disk cache: we no longer have the image to
+                // generate it from, so just load it as a disk cache entry.
+                final ImageSource diskSRC = ImageSource.create(imageSRC.key);
+                diskSRC.setCacheFile(imageSRC.getCacheFile());
+                loader = new Task(diskSRC, listener, PRI_NORM);
             } else if (imageSRC.isImageSourceForIcon()) {
                 // highest-priority tasks:
                 loader = new IconTask(imageSRC, listener);
@@ -1824,10 +2011,45 @@ public class Images
         }
         
         Object priority;
+
+        /**
+         * Where what's been drawn that wants the result (e.g., an LWImage) was when we were
+         * created, if we know: it's map bounds, map, and the slide it's on, if any.
+         */
+        final java.awt.geom.Rectangle2D ownerBounds;
+        final LWMap ownerMap;
+        final LWSlide ownerSlide;
+        /** true if we were in or near the Viewport when requested */
+        final boolean wasNear;
+        /** the Viewport distance & far were last measured for: must hold TaskQueue lock */
+        Viewport measuredFor;
+        double distance;
+        boolean far;
         
         private Task(ImageSource is, Listener relay, Object pri) {
             super(is, relay);
             priority = pri;
+            // we're created by whatever's drawing the owner, which is always the AWT thread:
+            // background renders defer their loads to it (see BackgroundRenderer.Snapshot)
+            final Object owner = relay instanceof ImageRep ? ((ImageRep)relay).owner() : null;
+            if (owner instanceof LWComponent) {
+                final LWComponent c = (LWComponent) owner;
+                ownerBounds = c.getMapBounds();
+                ownerMap = c.getMap();
+                ownerSlide = c.getAncestorOfType(LWSlide.class);
+            } else {
+                ownerBounds = null;
+                ownerMap = null;
+                ownerSlide = null;
+            }
+            final Viewport view = CurrentViewport;
+            if (ownerBounds != null && view != null) {
+                view.measure(this);
+                measuredFor = view;
+                wasNear = !far && distance != Viewport.NOT_IN_VIEW;
+            } else {
+                wasNear = false;
+            }
             if (DEBUG.IMAGE && relay == null)
                 Log.debug(this + "; nobody currently listening: image may be quietly cached: " + imageSRC);
             
@@ -1929,6 +2151,11 @@ public class Images
     {
         Loader loader = null;
 
+        // Look for it in the disk cache before taking the cache lock, so other requests
+        // aren't held up behind the disk cache index.
+        if (imageSRC.key != null)
+            RawCache.get(imageSRC.key);
+
         //-------------------------------------------------------
         // OBTAIN CACHE LOCK
         //-------------------------------------------------------
@@ -2063,10 +2290,13 @@ public class Images
         if (imageSRC.key == null)
             return null;
         
-        final Object entry = RawCache.get(imageSRC.key);
+        // any disk cache entry has already been looked for by getCachedOrKickLoad
+        final Object entry = RawCache.getInMemory(imageSRC.key);
 
-        if (entry == null)
+        if (entry == null) {
+            ImageMemoryCache.miss();
             return null;
+        }
         
         if (DEBUG.IMAGE) out("found cache entry for key " + tag(imageSRC.key) + ": " + entry);
                 
@@ -2116,10 +2346,13 @@ public class Images
             RawCache.remove(imageSRC.key);
         }
 
-        if (cachedImage == null)
+        if (cachedImage == null) {
+            ImageMemoryCache.miss();
             return null;
-        else
+        } else {
+            ImageMemoryCache.hit(imageSRC.key, cachedImage);
             return new Handle(cachedImage, ce.data);
+        }
         
         //return cachedImage;
 
@@ -2204,7 +2437,13 @@ public class Images
             }
         }
         
-        final Dimension originalSize = new Dimension(hardImage.getWidth(null), hardImage.getHeight(null));
+        final Dimension originalSize;
+        if (iconSource.sourcePixels != null && iconSource.sourcePixels != ImageRep.ZERO_SIZE) {
+            // the hard image may have been subsampled: record the size of the full image
+            originalSize = new Dimension(iconSource.sourcePixels[0], iconSource.sourcePixels[1]);
+        } else {
+            originalSize = new Dimension(hardImage.getWidth(null), hardImage.getHeight(null));
+        }
         
         final Handle iconHandle =
             createIcon(hardImage, iconSource.iconSize);
@@ -2263,6 +2502,8 @@ public class Images
                 ImageIO.write(image, "png", cacheFile);
             }
             if (DEBUG.IMAGE||DEBUG.IO) Log.debug("  wrote " + cacheFile);
+            if (DiskIndex != null)
+                DiskIndex.added(cacheFile);
             return true;
         } catch (Throwable t) {
             Log.error("writing icon cache file " + iconKey, t);
@@ -2452,6 +2693,8 @@ public class Images
     static class DataException extends ImageException { DataException(String s) { super(s); }}
 
     public static final String OUT_OF_MEMORY = "Out of memory";
+    /** delivered as the error message for a load that was cancelled as no longer needed: it may be requested again */
+    public static final String CANCELLED = "Cancelled";
 
     
     /** An wrapper for readAndCreateImage that deals with exceptions, and puts successful results in the cache */
@@ -2472,6 +2715,13 @@ public class Images
             if (DEBUG.IMAGE) Util.printStackTrace(t);
 
             RawCache.remove(imageSRC.key);
+
+            if (imageSRC.hasCacheFile() && imageSRC.readable == imageSRC.getCacheFile()
+                && DiskIndex != null && !(t instanceof OutOfMemoryError) && !(t instanceof ThreadDeath)) {
+                // the disk cache file is unreadable: drop it so the next request will go to the original
+                Log.warn("discarding unreadable cache file " + imageSRC.getCacheFile());
+                DiskIndex.discard(imageSRC.getCacheFile());
+            }
             
             if (relay != null) {
                 String msg;
@@ -2551,8 +2801,9 @@ public class Images
 //                     imageSRC.resource.setCacheFile(permanentCacheFile);
             }
         } else {
+            // if this was loaded from the disk cache, keep the file so we can reload it if this is GC'd
             if (imageData.image != null)
-                RawCache.put(imageSRC.key, new CacheEntry(imageData, null));
+                RawCache.put(imageSRC.key, new CacheEntry(imageData, imageSRC.isDiskCacheEntry() ? imageSRC.getCacheFile() : null));
             //RawCache.put(imageSRC.key, new CacheEntry(image, null));
         }
 
@@ -2729,6 +2980,8 @@ public class Images
             File permanentFile = new File(file.getParentFile(), permanentName);
             if (file.renameTo(permanentFile)) {
                 Log.debug("new perm cache file: " + permanentFile);
+                if (DiskIndex != null)
+                    DiskIndex.added(permanentFile);
                 return permanentFile;
             }
         } catch (Throwable t) {
@@ -2820,6 +3073,8 @@ public class Images
         if (imageSRC.hasCacheFile()) {
             // just point us at the cache file: ImageIO will create the input stream
             imageSRC.readable = imageSRC.getCacheFile();
+            if (DiskIndex != null)
+                DiskIndex.accessed(imageSRC.getCacheFile());
             if (DEBUG.IMAGE && imageSRC.resource != null) {
                 imageSRC.resource.setDebugProperty("image.cache", imageSRC.getCacheFile());
                 out("reading cache file: " + imageSRC.getCacheFile());
@@ -3022,7 +3277,23 @@ public class Images
         Throwable exception = null;
 
         try {
-            image = reader.read(0);
+            final ImageReadParam param = reader.getDefaultReadParam();
+            if (imageSRC.region != null) {
+                param.setSourceRegion(imageSRC.region);
+            } else if (!imageSRC.isDiskCacheEntry() && !imageSRC.isImageSourceForIcon()) {
+                final int subsampling = getSubsampling(w, h);
+                if (subsampling > 1) {
+                    // Don't decode the whole thing: we'd either run out of memory, or use up
+                    // so much that everything else would be GC'd.  See ImageTiles for how we
+                    // draw such images at full resolution.
+                    if (DEBUG.IMAGE || DEBUG.IO) out(String.format("subsampling %dx%d by %d: %s", w, h, subsampling, imageSRC));
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    imageData = new HashMap();
+                    imageData.put("subsampledFrom", new int[] { w, h });
+                    imageData.put("subsampling", subsampling);
+                }
+            }
+            image = reader.read(0, param);
             if (DEBUG.Enabled) out("    got " + imageSRC + ".");
             //testImageInspect(reader, image, imageSRC);
 
@@ -3104,6 +3375,20 @@ public class Images
     }
 
 
+    /**
+     * @return the subsampling factor needed to decode an image of the given size within
+     * MAX_DECODE_PIXELS, or 1 if it fits already
+     */
+    static int getSubsampling(int w, int h) {
+        final long pixels = (long) w * h;
+        if (pixels <= MAX_DECODE_PIXELS)
+            return 1;
+        int factor = (int) Math.sqrt((double) pixels / MAX_DECODE_PIXELS);
+        while ((long) ((w + factor - 1) / factor) * ((h + factor - 1) / factor) > MAX_DECODE_PIXELS)
+            factor++;
+        return factor;
+    }
+    
     private void testImageInspect(ImageReader reader, Image image, ImageSource imageSRC) {
         try {
             int thumbs = reader.getNumThumbnails(0);
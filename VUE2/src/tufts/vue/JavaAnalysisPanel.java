@@ -720,8 +720,8 @@ public class JavaAnalysisPanel extends JPanel implements ActionListener {
 		node.setFillColor(Color.WHITE);
 		node.setTextColor(UNDECLARED_COLOR);
 		node.setStrokeColor(UNDECLARED_COLOR);
-		node.mStrokeStyle.setTo(NONABSTRACT_STROKE_STYLE);
-		node.mStrokeWidth.setTo(NONFINAL_STROKE_WIDTH);
+		LWComponent.SLOT_StrokeStyle.setTo(node, NONABSTRACT_STROKE_STYLE);
+		LWComponent.SLOT_StrokeWidth.setTo(node, NONFINAL_STROKE_WIDTH);
 
 		metadataList.add(METADATA_CATEGORY, metadata);
 		metadataList.add(METADATA_CATEGORY, METADATA_KEYWORD_UNDECLARED);
@@ -756,12 +756,12 @@ public class JavaAnalysisPanel extends JPanel implements ActionListener {
 		}
 
 		if (isAbstract && !metadataList.contains(METADATA_CATEGORY, ABSTRACT_KEYWORD)) {
-			node.mStrokeStyle.setTo(ABSTRACT_STROKE_STYLE);
+			LWComponent.SLOT_StrokeStyle.setTo(node, ABSTRACT_STROKE_STYLE);
 			metadataList.add(METADATA_CATEGORY, ABSTRACT_KEYWORD);
 		}
 
 		if (isFinal && !metadataList.contains(METADATA_CATEGORY, FINAL_KEYWORD)) {
-			node.mStrokeWidth.setTo(FINAL_STROKE_WIDTH);
+			LWComponent.SLOT_StrokeWidth.setTo(node, FINAL_STROKE_WIDTH);
 			metadataList.add(METADATA_CATEGORY, FINAL_KEYWORD);
 		}
 
@@ -102,6 +102,30 @@ public class LWCEvent
         this.key = key;
         this.oldValue = NO_OLD_VALUE;
     }
+
+    /** for LWKey.Batch events only: the changed components & all the events that were coalesced into this one */
+    LWCEvent(LWMap source, List<LWComponent> components, List<LWCEvent> batched)
+    {
+        this(source, components, LWKey.Batch);
+        this.batched = batched;
+    }
+
+    /** for LWKey.Batch events: the events coalesced into this one, in the order they occurred */
+    private List<LWCEvent> batched = null;
+    
+    /** @return for LWKey.Batch events, the list of events that were delivered as part of this batch, in the order
+     * they occurred.  For any other event, an empty list. */
+    public List<LWCEvent> getBatchedEvents() {
+        if (batched == null)
+            return java.util.Collections.EMPTY_LIST;
+        else
+            return java.util.Collections.unmodifiableList(batched);
+    }
+
+    /** @return true if this is an LWKey.Batch event */
+    public boolean isBatch() {
+        return batched != null;
+    }
     
     public Object getSource()
     {
@@ -213,6 +237,8 @@ public class LWCEvent
         if (component != null && component != source) {
             buf.append(" c=" + component);
             //basic information.. if more information wants to be stringfied, need to code this part
+        } else if (batched != null) {
+            buf.append(" batch(" + batched.size() + " events, " + components.size() + " components)");
         } else if (components != null) {
             buf.append(" list(" + components.size() + ": ");
 
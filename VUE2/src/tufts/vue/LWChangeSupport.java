@@ -19,9 +19,11 @@ import tufts.Util;
 import static tufts.Util.*;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 /**
  * Handle dispatching of LWCEvents, mainly for LWComponents, but any client
@@ -35,11 +37,19 @@ public class LWChangeSupport
 {
     private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(LWChangeSupport.class);
     
-    private static int sEventDepth = 0;
+    private static final LWComponent.Listener[] NO_LISTENERS = new LWComponent.Listener[0];
+
+    /** Event delivery depth for the current thread: used for loop detection and diagnostic indenting.
+     * Each thread gets it's own counter so that event dispatch needn't synchronize on a global lock. */
+    private static final ThreadLocal<int[]> EventDepth = new ThreadLocal<int[]>() {
+        @Override protected int[] initialValue() { return new int[1]; }
+    };
     
-    private List listeners;
+    /** Copy-on-write dispatch snapshot: never modified in place, only replaced under our
+     * monitor, so dispatch can use whatever snapshot it reads without locking or copying. */
+    private volatile DispatchTable mDispatch = DispatchTable.EMPTY;
     private Object mClient;
-    private boolean mEventsDisabled = false;
+    private volatile boolean mEventsDisabled = false;
     private int mEventSuspensions = 0;
     
     LWChangeSupport(Object client) {
@@ -61,19 +71,13 @@ public class LWChangeSupport
             listener.LWCChanged(e);
         }
 
-        public boolean isListeningFor(LWCEvent e)
-        {
-            if (eventMask instanceof Object[]) {
-                for (Object desiredKey : (Object[]) eventMask) {
-                    if (e.key == desiredKey)
-                        return true;
-                }
-                return false;
-            } else {
-                return eventMask == e.key;
-            }
+        /** @return the event keys this listener has asked for */
+        Object[] keys() {
+            if (eventMask instanceof Object[])
+                return (Object[]) eventMask;
+            else
+                return new Object[] { eventMask };
         }
-        
 
         public String toString() {
             String s = listener.toString();
@@ -94,28 +98,243 @@ public class LWChangeSupport
         }
     }
 
-    private class LWCListenerList extends java.util.Vector {
-        public synchronized int indexOf(Object elem, int index) {
-            if (elem == null) {
-                for (int i = index ; i < elementCount ; i++)
-                    if (elementData[i]==null)
-                        return i;
+    /**
+     * An immutable, key-indexed view of a listener list.  Unmasked ("wildcard") listeners are
+     * delivered every event.  Listeners registered with an event mask appear only in the
+     * per-key delivery lists for the keys they asked for, so delivering an event never has
+     * to examine (or filter out) listeners that aren't interested in it.
+     *
+     * Each per-key list is the complete, pre-merged delivery list for that key: the
+     * wildcard listeners plus those masked for the key, in the original registration
+     * order.  Delivery order is thus exactly what it would be if we'd walked the full list
+     * and filtered each masked listener.
+     */
+    private static final class DispatchTable
+    {
+        static final DispatchTable EMPTY = new DispatchTable(NO_LISTENERS);
+        
+        /** the full registration-ordered list, with masked listeners still wrapped in their LWCListenerProxy */
+        final LWComponent.Listener[] all;
+        /** real listeners for any key that no masked listener asked for */
+        final LWComponent.Listener[] wildcard;
+        /** complete delivery lists for keys requested by at least one masked listener, or null if none */
+        final Map<Object,LWComponent.Listener[]> byKey;
+        /** just the masked listeners for each key, or null if none: used for unpacking batch events */
+        final Map<Object,LWComponent.Listener[]> maskedByKey;
+
+        DispatchTable(LWComponent.Listener[] all) {
+            this.all = all;
+            
+            final List<LWComponent.Listener> any = new ArrayList<LWComponent.Listener>(all.length);
+            Map<Object,List<LWComponent.Listener>> keyed = null;
+            Map<Object,List<LWComponent.Listener>> masked = null;
+            
+            for (LWComponent.Listener l : all) {
+                if (l instanceof LWCListenerProxy) {
+                    final LWCListenerProxy proxy = (LWCListenerProxy) l;
+                    if (keyed == null) {
+                        keyed = new IdentityHashMap<Object,List<LWComponent.Listener>>();
+                        masked = new IdentityHashMap<Object,List<LWComponent.Listener>>();
+                    }
+                    for (Object key : proxy.keys()) {
+                        List<LWComponent.Listener> forKey = keyed.get(key);
+                        if (forKey == null) {
+                            // start with all wildcard listeners registered so far
+                            forKey = new ArrayList<LWComponent.Listener>(any);
+                            keyed.put(key, forKey);
+                            masked.put(key, new ArrayList<LWComponent.Listener>(1));
+                        }
+                        if (forKey.isEmpty() || forKey.get(forKey.size() - 1) != proxy.listener) { // in case a key was listed twice
+                            forKey.add(proxy.listener);
+                            masked.get(key).add(proxy.listener);
+                        }
+                    }
+                } else {
+                    any.add(l);
+                    if (keyed != null) {
+                        for (List<LWComponent.Listener> forKey : keyed.values())
+                            forKey.add(l);
+                    }
+                }
+            }
+
+            this.wildcard = any.size() == all.length ? all : any.toArray(NO_LISTENERS);
+
+            this.byKey = toArrays(keyed);
+            this.maskedByKey = toArrays(masked);
+        }
+
+        private DispatchTable(LWComponent.Listener[] all,
+                              LWComponent.Listener[] wildcard,
+                              Map<Object,LWComponent.Listener[]> byKey,
+                              Map<Object,LWComponent.Listener[]> maskedByKey)
+        {
+            this.all = all;
+            this.wildcard = wildcard;
+            this.byKey = byKey;
+            this.maskedByKey = maskedByKey;
+        }
+
+        /**
+         * @return a table with the given new listener (possibly an LWCListenerProxy)
+         * appended.  Only the delivery lists the listener belongs in are copied, so adding
+         * doesn't cost a rebuild of the whole table.
+         */
+        DispatchTable added(LWComponent.Listener l) {
+            final LWComponent.Listener[] newAll = Arrays.copyOf(all, all.length + 1);
+            newAll[all.length] = l;
+
+            if (l instanceof LWCListenerProxy) {
+                final LWCListenerProxy proxy = (LWCListenerProxy) l;
+                final Map<Object,LWComponent.Listener[]> keyed = copyOf(byKey);
+                final Map<Object,LWComponent.Listener[]> masked = copyOf(maskedByKey);
+                for (Object key : proxy.keys()) {
+                    final LWComponent.Listener[] forKey = keyed.get(key);
+                    if (forKey == null) {
+                        // start with all wildcard listeners registered so far
+                        keyed.put(key, appended(wildcard, proxy.listener));
+                        masked.put(key, new LWComponent.Listener[] { proxy.listener });
+                    } else if (forKey[forKey.length - 1] != proxy.listener) { // in case a key was listed twice
+                        keyed.put(key, appended(forKey, proxy.listener));
+                        masked.put(key, appended(masked.get(key), proxy.listener));
+                    }
+                }
+                return new DispatchTable(newAll, wildcard, keyed, masked);
             } else {
-                for (int i = index ; i < elementCount ; i++) {
-                    Object ed = elementData[i];
-                    if (elem.equals(ed))
-                        return i;
-                    if (ed instanceof LWCListenerProxy && ((LWCListenerProxy)ed).listener == elem)
-                        return i;
+                Map<Object,LWComponent.Listener[]> keyed = null;
+                if (byKey != null) {
+                    keyed = new IdentityHashMap<Object,LWComponent.Listener[]>(byKey.size());
+                    for (Map.Entry<Object,LWComponent.Listener[]> entry : byKey.entrySet())
+                        keyed.put(entry.getKey(), appended(entry.getValue(), l));
+                }
+                return new DispatchTable(newAll, appended(wildcard, l), keyed, maskedByKey);
+            }
+        }
+
+        /**
+         * @return a table without the listener at the given index of all.  As with added,
+         * only the delivery lists it appeared in are copied.
+         */
+        DispatchTable removed(int index) {
+            if (all.length == 1)
+                return EMPTY;
+            final LWComponent.Listener l = all[index];
+            final LWComponent.Listener[] newAll = new LWComponent.Listener[all.length - 1];
+            System.arraycopy(all, 0, newAll, 0, index);
+            System.arraycopy(all, index + 1, newAll, index, all.length - index - 1);
+
+            if (l instanceof LWCListenerProxy) {
+                final LWCListenerProxy proxy = (LWCListenerProxy) l;
+                final Map<Object,LWComponent.Listener[]> keyed = copyOf(byKey);
+                final Map<Object,LWComponent.Listener[]> masked = copyOf(maskedByKey);
+                for (Object key : proxy.keys()) {
+                    final LWComponent.Listener[] forKey = masked.get(key);
+                    if (forKey == null)
+                        continue; // key was listed twice, and is already gone
+                    final LWComponent.Listener[] remaining = removed(forKey, proxy.listener);
+                    if (remaining == forKey) {
+                        continue; // key was listed twice, and we're already gone
+                    } else if (remaining.length == 0) {
+                        // nobody else masked for this key: it's delivered to the wildcards again
+                        keyed.remove(key);
+                        masked.remove(key);
+                    } else {
+                        keyed.put(key, removed(keyed.get(key), proxy.listener));
+                        masked.put(key, remaining);
+                    }
+                }
+                return new DispatchTable(newAll, wildcard,
+                                         keyed.isEmpty() ? null : keyed,
+                                         masked.isEmpty() ? null : masked);
+            } else {
+                Map<Object,LWComponent.Listener[]> keyed = null;
+                if (byKey != null) {
+                    keyed = new IdentityHashMap<Object,LWComponent.Listener[]>(byKey.size());
+                    for (Map.Entry<Object,LWComponent.Listener[]> entry : byKey.entrySet())
+                        keyed.put(entry.getKey(), removed(entry.getValue(), l));
+                }
+                return new DispatchTable(newAll, removed(wildcard, l), keyed, maskedByKey);
+            }
+        }
+
+        private static Map<Object,LWComponent.Listener[]> copyOf(Map<Object,LWComponent.Listener[]> map) {
+            if (map == null)
+                return new IdentityHashMap<Object,LWComponent.Listener[]>();
+            else
+                return new IdentityHashMap<Object,LWComponent.Listener[]>(map);
+        }
+
+        private static LWComponent.Listener[] appended(LWComponent.Listener[] list, LWComponent.Listener l) {
+            final LWComponent.Listener[] newList = Arrays.copyOf(list, list.length + 1);
+            newList[list.length] = l;
+            return newList;
+        }
+
+        /** @return the given list without the given listener (by identity), or the list itself if it's not there */
+        private static LWComponent.Listener[] removed(LWComponent.Listener[] list, LWComponent.Listener l) {
+            for (int i = 0; i < list.length; i++) {
+                if (list[i] == l) {
+                    final LWComponent.Listener[] newList = new LWComponent.Listener[list.length - 1];
+                    System.arraycopy(list, 0, newList, 0, i);
+                    System.arraycopy(list, i + 1, newList, i, list.length - i - 1);
+                    return newList;
                 }
             }
-            return -1;
+            return list;
         }
-        public synchronized int lastIndexOf(Object elem, int index) {
-            throw new UnsupportedOperationException("lastIndexOf");
+
+        private static Map<Object,LWComponent.Listener[]> toArrays(Map<Object,List<LWComponent.Listener>> lists) {
+            if (lists == null)
+                return null;
+            final Map<Object,LWComponent.Listener[]> arrays = new IdentityHashMap<Object,LWComponent.Listener[]>(lists.size());
+            for (Map.Entry<Object,List<LWComponent.Listener>> entry : lists.entrySet())
+                arrays.put(entry.getKey(), entry.getValue().toArray(NO_LISTENERS));
+            return arrays;
+        }
+
+        /** @return the listeners to deliver an event with the given key to, in delivery order */
+        LWComponent.Listener[] listenersFor(Object key) {
+            if (byKey != null) {
+                final LWComponent.Listener[] forKey = byKey.get(key);
+                if (forKey != null)
+                    return forKey;
+            }
+            return wildcard;
+        }
+
+        /** @return only those listeners that were registered with a mask including the given key */
+        LWComponent.Listener[] maskedListenersFor(Object key) {
+            if (maskedByKey != null) {
+                final LWComponent.Listener[] forKey = maskedByKey.get(key);
+                if (forKey != null)
+                    return forKey;
+            }
+            return NO_LISTENERS;
         }
     }
 
+    /** publish a new listener list -- only to be called while holding our monitor */
+    private void setListeners(LWComponent.Listener[] list) {
+        mDispatch = (list.length == 0 ? DispatchTable.EMPTY : new DispatchTable(list));
+    }
+
+    /** @return index of the given listener in the given snapshot, including a match on
+     * the real listener wrapped inside any LWCListenerProxy, or -1 if not found */
+    private static int indexOf(LWComponent.Listener[] list, Object listener) {
+        for (int i = 0; i < list.length; i++) {
+            final LWComponent.Listener l = list[i];
+            if (listener.equals(l))
+                return i;
+            if (l instanceof LWCListenerProxy && ((LWCListenerProxy)l).listener == listener)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int eventDepth() {
+        return EventDepth.get()[0];
+    }
+
     /**
      * Move @param listener - existing listener, to the front of the
      * notification list, so it get's notifications before anyone else.
@@ -127,22 +346,22 @@ public class LWChangeSupport
      */
     public synchronized void setPriorityListener(LWComponent.Listener listener) {
 
-        if (listeners == null) {
+        final LWComponent.Listener[] list = mDispatch.all;
+
+        if (list.length == 0) {
             Log.error("Attempting to set priorty listener with no listeners at all for client " + mClient);
             return;
         }
         
-        int i = listeners.indexOf(listener);
+        final int i = indexOf(list, listener);
         
         if (i > 0) {
-            if (i == 1) {
-                // swap first two
-                listeners.set(1, listeners.set(0, listener));
-            } else {
-                // remove & add back at the front
-                listeners.remove(listener);
-                listeners.add(0, listener);
-            }
+            // shift everyone ahead of the listener down one, and put it at the front
+            final LWComponent.Listener[] newList = new LWComponent.Listener[list.length];
+            newList[0] = list[i];
+            System.arraycopy(list, 0, newList, 1, i);
+            System.arraycopy(list, i + 1, newList, i + 1, list.length - i - 1);
+            setListeners(newList);
         } else if (i == 0) {
             ; // already priority listener
         } else
@@ -155,9 +374,8 @@ public class LWChangeSupport
 
     public synchronized void addListener(LWComponent.Listener listener, Object eventMask)
     {
-        if (listeners == null)
-            listeners = new LWCListenerList();
-        if (listeners.contains(listener)) {
+        final LWComponent.Listener[] list = mDispatch.all;
+        if (indexOf(list, listener) >= 0) {
             // do nothing (they're already listening to us)
             if (DEBUG.EVENTS) {
                 if (DEBUG.META) System.out.println("already listening to us: " + listener + " " + mClient);
@@ -169,24 +387,29 @@ public class LWChangeSupport
         } else {
             if (DEBUG.EVENTS && DEBUG.META)
                 outln("*** LISTENER " + listener + "\t+++ADDS " + mClient + (eventMask==null?"":(" eventMask=" + eventMask)));
-            if (eventMask == null) {
-                listeners.add(listener);
-            } else
-                listeners.add(new LWCListenerProxy(listener, eventMask));
+            if (eventMask == null)
+                mDispatch = mDispatch.added(listener);
+            else
+                mDispatch = mDispatch.added(new LWCListenerProxy(listener, eventMask));
         }
     }
     public synchronized void removeListener(LWComponent.Listener listener)
     {
-        if (listeners == null)
+        final LWComponent.Listener[] list = mDispatch.all;
+        if (list.length == 0)
             return;
         if (DEBUG.EVENTS && DEBUG.META) System.out.println("*** LISTENER " + listener + "\tREMOVES " + mClient);
-        listeners.remove(listener);
+        final int i = indexOf(list, listener);
+        if (i < 0)
+            return;
+        mDispatch = mDispatch.removed(i);
     }
     public synchronized void removeAllListeners()
     {
-        if (listeners != null) {
-            if (DEBUG.EVENTS) System.out.println(mClient + " *** CLEARING ALL LISTENERS " + listeners);
-            listeners.clear();
+        final LWComponent.Listener[] list = mDispatch.all;
+        if (list.length > 0) {
+            if (DEBUG.EVENTS) System.out.println(mClient + " *** CLEARING ALL LISTENERS " + Arrays.asList(list));
+            setListeners(NO_LISTENERS);
         }
     }
 
@@ -218,8 +441,12 @@ public class LWChangeSupport
      * This method for clients that are LWComponent's ONLY.  Otherwise call dispatchLWCEvent
      * directly.
      */
-    synchronized void notifyListeners(LWComponent client, LWCEvent e)
+    void notifyListeners(LWComponent client, LWCEvent e)
     {
+        // read the snapshot once: all further work in this notification uses the same table
+        final DispatchTable dispatch = mDispatch;
+        final LWComponent.Listener[] listeners = dispatch.all;
+        
         if (mEventsDisabled) {
             if (DEBUG.EVENTS) System.out.println(e + " (dispatch skipped: events disabled)");
             return;
@@ -230,7 +457,7 @@ public class LWChangeSupport
                 "FYI, ZOMBIE EVENT: notifyListeners; deleted component attempting event notification:"
                 + "\n\t        deleted client: " + client
                 + "\n\tattempting delivery of: " + e
-                + "\n\t     current listeners: " + listeners
+                + "\n\t     current listeners: " + Arrays.asList(listeners)
                 + "\n\tparent (ought be null): " + client.getParent()
                 + "\n"
                 ;
@@ -243,10 +470,10 @@ public class LWChangeSupport
         }
 
         //if (DEBUG.EVENTS && (DEBUG.META || !DEBUG.THREAD)) {
-        if (DEBUG.EVENTS && (DEBUG.META || e.isUndoable()) && (DEBUG.META || listeners != null))  {
-            final String ldesc = (listeners == null
+        if (DEBUG.EVENTS && (DEBUG.META || e.isUndoable()) && (DEBUG.META || listeners.length > 0))  {
+            final String ldesc = (listeners.length == 0
                                   ? " -> <no listeners>"
-                                  : ((listeners.size()>0?TERM_GREEN:"") + " => (" + listeners.size() + " listeners)" + TERM_CLEAR
+                                  : (TERM_GREEN + " => (" + listeners.length + " listeners)" + TERM_CLEAR
                                      //+ " " + Arrays.asList(listeners)
                                      ));
                                 //: (DELIVERY_ARROW + "(" + listeners.size() + " listeners)"));a
@@ -256,9 +483,13 @@ public class LWChangeSupport
                 eoutln(e + ldesc);
         }
         
-        if (listeners != null && listeners.size() > 0) {
+        if (listeners.length > 0) {
             if (DEBUG.EVENTS && DEBUG.META) eoutln(e + " dispatching for client " + client + " to listeners " + Arrays.asList(listeners));
-            dispatchLWCEvent(client, listeners, e);
+            final LWComponent.Listener[] targets = dispatch.listenersFor(e.key);
+            if (targets.length > 0)
+                dispatchLWCEvent(client, targets, e);
+            if (e.isBatch() && dispatch.maskedByKey != null)
+                dispatchBatchToMasked(client, dispatch, e);
         } else {
             //if (DEBUG.EVENTS && DEBUG.THREAD && (DEBUG.META || DEBUG.CONTAINMENT))
             if (DEBUG.EVENTS && DEBUG.THREAD)
@@ -279,11 +510,11 @@ public class LWChangeSupport
             }
             client.getParent().broadcastChildEvent(e);
         } else if (client.isOrphan() && !client.permitZombieEvent(e)) {
-            if (listeners != null && listeners.size() > 0) {
+            if (listeners.length > 0) {
                 Log.info("ORPHAN NODE w/LISTENERS DELIVERED EVENTS:"
                          + "\n\torphan=" + client
                          + "\n\tevent=" + e
-                         + "\n\tlisteners=" + listeners);
+                         + "\n\tlisteners=" + Arrays.asList(listeners));
                 if (DEBUG.PARENTING) new Throwable().printStackTrace();
             }
             /*else if (DEBUG.META && (DEBUG.EVENTS || DEBUG.PARENTING) && !(this instanceof LWGroup))
@@ -294,12 +525,25 @@ public class LWChangeSupport
         }
     }
 
+    /**
+     * Listeners that asked only for specific keys don't know about batch events: for those,
+     * unpack the batch and deliver them just the events they asked for.  Wildcard listeners
+     * have already been given the whole batch.
+     */
+    private static void dispatchBatchToMasked(Object client, DispatchTable dispatch, LWCEvent batch) {
+        for (LWCEvent e : batch.getBatchedEvents()) {
+            final LWComponent.Listener[] targets = dispatch.maskedListenersFor(e.key);
+            if (targets.length > 0)
+                dispatchLWCEvent(client, targets, e);
+        }
+    }
+
     private static void eout(String s) {
         synchronized (System.err) {
             //if (DEBUG.THREAD) System.err.format("%-27s", Thread.currentThread().toString().substring(6));
             if (!javax.swing.SwingUtilities.isEventDispatchThread())
                 System.err.format("[%s]", Thread.currentThread().getName());
-            for (int x = 0; x < sEventDepth; x++) System.err.print("--->");
+            for (int x = eventDepth(); x > 0; x--) System.err.print("--->");
             System.err.print(s);
         }
     }
@@ -312,51 +556,40 @@ public class LWChangeSupport
     }
     
     public void dispatchEvent(LWCEvent e) {
-        if (listeners != null)
-            dispatchLWCEvent(mClient, listeners, e);
+        final LWComponent.Listener[] targets = mDispatch.listenersFor(e.key);
+        if (targets.length > 0)
+            dispatchLWCEvent(mClient, targets, e);
     }
 
     /**
      * Deliver LWCEvent @param e to all the @param listeners
+     *
+     * No locking is done here: the listener array is a copy-on-write snapshot that is never
+     * modified once published, so concurrent add/remove's only affect later dispatches.
+     * A listener removed during delivery of this event may thus still see this event
+     * (it's already been notified or is about to be -- either is fine).
      */
-    static synchronized void dispatchLWCEvent(Object source, List listeners, LWCEvent e)
+    static void dispatchLWCEvent(Object source, LWComponent.Listener[] listener_array, LWCEvent e)
     {
-        if (sEventDepth > 5) // guestimate max based on current architecture -- increase if you need to
-            throw new IllegalStateException("eventDepth=" + sEventDepth
+        final int[] depth = EventDepth.get();
+        
+        if (depth[0] > 5) // guestimate max based on current architecture -- increase if you need to
+            throw new IllegalStateException("eventDepth=" + depth[0]
                                             + ", assumed looping on delivery of "
-                                            + e + " in " + source + " to " + listeners);
+                                            + e + " in " + source + " to " + Arrays.asList(listener_array));
 
         if (source instanceof LWComponent) {
             final LWComponent client = (LWComponent) source;
-            if ((client.isDeleted() && !client.permitZombieEvent(e)) || listeners == null) {
+            if ((client.isDeleted() && !client.permitZombieEvent(e)) || listener_array == null) {
                 System.err.println("ZOMBIE DISPATCH: deleted component or null listeners attempting event dispatch:"
                                    + "\n\tsource=" + source
-                                   + "\n\tlisteners=" + listeners
+                                   + "\n\tlisteners=" + (listener_array == null ? null : Arrays.asList(listener_array))
                                    + "\n\tattempted notification=" + e);
                 new Throwable("ZOMBIE DISPATCH").printStackTrace();
                 return;
             }
         }
         
-        // todo perf: take array code out and see if can fix all
-        // concurrent mod exceptions (e.g., delete out from under a
-        // pathway was giving us some problems, tho I think that may
-        // have gone away) or: allow listener removes via nulling, tho
-        // that's not really a concern anyway in that a component that
-        // removes itself as a listener after having been notified of
-        // an event has already had it's notification and we don't
-        // need to make sure it doesn't get one further down the list.
-        
-        //int nlistener = listeners.size();
-        //Listener[] listener_array = (Listener[]) listeners.toArray(listener_buf);
-        //if (listener_array != listener_buf)
-        //    out("FYI: listener count " + nlistener + " exceeded performance buffer.");
-        // Of course, using a static buf of course doesn't work the second we have any event depth!
-        // and we can't make it a member as this is a static method...
-        // We could actually just only allocate a new array if there IS any event depth...
-
-        LWComponent.Listener[] listener_array = new LWComponent.Listener[listeners.size()];
-        listeners.toArray(listener_array);
         for (int i = 0; i < listener_array.length; i++) {
             if (DEBUG.EVENTS && DEBUG.META) {
                 if (e.getSource() != source)
@@ -364,22 +597,9 @@ public class LWChangeSupport
                 else
                     eout(e + " " + i + " >> ");
             }
-            LWComponent.Listener target = listener_array[i];
-            //-------------------------------------------------------
-            // If a listener proxy, extract the real listener
-            //-------------------------------------------------------
-            if (target instanceof LWCListenerProxy) {
-                LWCListenerProxy lp = (LWCListenerProxy) target;
-                if (!lp.isListeningFor(e)) {
-                    if (DEBUG.EVENTS && DEBUG.META)
-                        outln(target + " (filtered)");
-                    continue;
-                }
-                target = lp.listener;
-            }
-            //-------------------------------------------------------
-            // now we know we have the real listener
-            //-------------------------------------------------------
+            // masked listeners have already been sorted into the per-key lists, so we know
+            // we have the real listener, and that it wants this event
+            final LWComponent.Listener target = listener_array[i];
             if (DEBUG.EVENTS && DEBUG.THREAD) {
                 if (DEBUG.META) {
                     if (e.getSource() == target)
@@ -393,7 +613,7 @@ public class LWChangeSupport
             }
             if (e.getSource() == target) // this prevents events from going back to their source
                 continue;
-            sEventDepth++;
+            depth[0]++;
             try {
                 if (DEBUG.EVENTS && DEBUG.THREAD)
                     outln(target + "");
@@ -412,9 +632,49 @@ public class LWChangeSupport
                      + "\n\t          event was: " + e
                      + "\n\t   failing listener: " + target);
             } finally {
-                sEventDepth--;
+                depth[0]--;
             }
             if (DEBUG.EVENTS && DEBUG.META) eoutln(e + " disptach returned from: " + target);
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Dispatch micro-benchmark: delivers events to a single wildcard listener while
+     * an increasing number of listeners masked for other keys are also registered.
+     * Cost per event should stay flat as the masked listener count grows.
+     */
+    public static void main(String args[])
+    {
+        final int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        final int[] delivered = new int[1];
+        final LWComponent.Listener counter = new LWComponent.Listener() {
+                public void LWCChanged(LWCEvent e) { delivered[0]++; }
+            };
+        final String hotKey = "bench.hot";
+        
+        for (int masked : new int[] { 0, 10, 100, 1000, 10000 }) {
+            final LWChangeSupport support = new LWChangeSupport("bench-client");
+            support.addListener(counter);
+            for (int i = 0; i < masked; i++) {
+                final Object key = "bench.key." + (i % 50);
+                support.addListener(new LWComponent.Listener() {
+                        public void LWCChanged(LWCEvent e) { throw new Error("masked listener got " + e); }
+                    }, key);
+            }
+            final LWCEvent e = new LWCEvent("bench-source", (LWComponent) null, hotKey);
+
+            for (int i = 0; i < events / 10; i++) // warm-up
+                support.dispatchEvent(e);
+            
+            delivered[0] = 0;
+            final long start = System.nanoTime();
+            for (int i = 0; i < events; i++)
+                support.dispatchEvent(e);
+            final long elapsed = System.nanoTime() - start;
+            
+            System.out.format("%6d masked listeners: %7.1f ns/event (%d delivered)\n",
+                              masked, (double) elapsed / events, delivered[0]);
+        }
+    }
+}
@@ -197,6 +197,9 @@ public class LWComponent
             /** this is link with tail pruned */
             , PRUNE_TAIL
 
+            /** draw from a cached raster when possible (see RasterCache) */
+            , RASTER_CACHE
+
             ;
 
         // do we want a generalized LOCKED which means fixed,no-delete,no-duplicate?,no-reorder(forward/back),no-link?
@@ -305,7 +308,9 @@ public class LWComponent
     protected transient double scale = 1.0;
     private transient AffineTransform mTemporaryTransform;
 
-    protected transient TextBox labelBox = null;
+    protected transient LabelBox labelBox = null;
+    /** the TextBox for an interactive edit of our label: only exists while an edit is underway */
+    protected transient TextBox labelEditBox = null;
     protected transient BasicStroke stroke = STROKE_ZERO;
     //protected transient boolean selected = false;
 
@@ -339,6 +344,9 @@ public class LWComponent
 
     private transient long mSupportedPropertyKeys;
 
+    /** our overridden property values, indexed by Property.slot: a null entry means the property default is in effect */
+    private Object[] mSlotValues = NO_SLOT_VALUES;
+
     // TODO PERFORMANCE: change support could be handled generically, and we could at least lazy-create
     protected transient final LWChangeSupport mChangeSupport = new LWChangeSupport(this);
 
@@ -346,6 +354,9 @@ public class LWComponent
 
     protected transient BufferedImage mImageBuffer;
 
+    /** our cached rasters, if we've ever been drawn with Flag.RASTER_CACHE set */
+    transient RasterCache.Entry rasterEntry;
+
     public static final Comparator XSorter = new Comparator<LWComponent>() {
             public int compare(LWComponent c1, LWComponent c2) {
                 // we multiply up the result so as not to loose differential precision in the integer result
@@ -439,10 +450,17 @@ public class LWComponent
         }
         if (styleSource == null)
             return;
-        for (Key key : Key.AllKeys)
-            //if (key.isStyleProperty && styleSource.supportsProperty(key) && (permittedPropertyBits & key.bit) != 0)
-            if (styleSource.isStyling(key) && (permittedPropertyBits & key.bit) != 0)
-                key.copyValue(styleSource, this);
+        // font name, size, style, etc, may each want a layout: do it once at the end
+        final boolean deferring = LayoutScheduler.begin();
+        try {
+            for (Key key : Key.AllKeys)
+                //if (key.isStyleProperty && styleSource.supportsProperty(key) && (permittedPropertyBits & key.bit) != 0)
+                if (styleSource.isStyling(key) && (permittedPropertyBits & key.bit) != 0)
+                    key.copyValue(styleSource, this);
+        } finally {
+            if (deferring)
+                LayoutScheduler.end();
+        }
     }
 
     public void copyProperties(LWComponent source, long propertyBits) {
@@ -655,8 +673,7 @@ public class LWComponent
 
         }
 
-        private static final LWComponent EmptyStyle = new LWComponent();
-        static final Property NO_SLOT_PROVIDED = EmptyStyle.mFillColor; // any slot will do
+        static final Property NO_SLOT_PROVIDED = new Property(null, null) {};
         //private static final Property BAD_SLOT = EmptyStyle.mStrokeColor; // any (different) slot will do
         /** If this isn't overriden to return non-null, getValue & setValue must be overriden to provide the setter/getter impl  */
         Property getSlot(TSubclass c) { return NO_SLOT_PROVIDED; }
@@ -681,7 +698,7 @@ public class LWComponent
                         Log.warn(c == null ? null : c.getClass() + "; has no property of type: " + this);
                     return null;
                 } else
-                    return (TValue) propertySlot.get();
+                    return (TValue) propertySlot.get(c);
             } catch (Throwable t) {
                 if (DEBUG.META)
                     tufts.Util.printStackTrace(new Throwable(t), this + ": property slot get() failed " + propertySlot);
@@ -720,9 +737,9 @@ public class LWComponent
                 return;
             if (value instanceof String) {
                 // If a String value comes in, this allows us to auto-parse it
-                slot.setFromString((String)value);
+                slot.setFromString(c, (String)value);
             } else {
-                slot.set(value);
+                slot.set(c, value);
             }
         }
 
@@ -771,13 +788,13 @@ public class LWComponent
 //                 //tufts.Util.printStackTrace(this + ": bad slot");
 //                 return DEBUG.Enabled ? "<unsupported for this object>" : null;
             } else
-                return slot.asString();
+                return slot.asString(c);
         }
 
         void setStringValue(TSubclass c, String stringValue) {
             Property slot = getSlotSafely(c);
             if (slot != NO_SLOT_PROVIDED) {
-                slot.setFromString(stringValue);
+                slot.setFromString(c, stringValue);
             } else {
                 TValue v = getValue(c);
                 // handle a few special cases for standard java types, even if there's no slot (Property object) to parse the string
@@ -805,8 +822,8 @@ public class LWComponent
                 return false;
             }
             try {
-                slot.setFromCSS(cssName, cssValue);
-                System.err.println("applied value: " + slot);
+                slot.setFromCSS(c, cssName, cssValue);
+                System.err.println("applied value: " + slot + "=" + slot.get(c));
                 return true;
             } catch (Throwable t) {
                 System.err.println();
@@ -865,142 +882,141 @@ public class LWComponent
      * notifications.  It also allows us to easily attach meta-data to the property itself: e.g.,
      * it's locked, it's overriding a parent style value, it's caching some related computed value,
      * etc.
+     *
+     * There is exactly one Property instance per Key, shared by all LWComponents: it holds no
+     * per-component state.  Each component keeps only the values it has overridden, in its sparse
+     * slot array (see getSlotValue / putSlotValue) -- any slot it hasn't overriden reads as the
+     * property's shared default value.
      */
-    protected abstract class Property<T> {
+    protected static abstract class Property<T> {
 
         final Key key;
-        protected T value;
+        /** index of this property in every LWComponent's slot array, or -1 if not slotted */
+        final int slot;
+        /** the value for any LWComponent that has not overridden this property */
+        final T defaultValue;
+
+        private static int SlotCount; // increment for each slotted property, to establish it's slot index
 
-        Property(Key key) {
+        Property(Key key, T defaultValue) {
             this.key = key;
+            this.defaultValue = defaultValue;
+            if (key == null)
+                this.slot = -1; // NO_SLOT_PROVIDED
+            else
+                this.slot = SlotCount++;
         }
 
-        T get() { return value; }
+        T get(LWComponent c) { return (T) c.getSlotValue(this); }
 
-        public void setTo(T newValue) {
-            set(newValue);
+        public void setTo(LWComponent c, T newValue) {
+            set(c, newValue);
         }
 
-        boolean isChanged(T newValue)
+        boolean isChanged(LWComponent c, T newValue)
         {
-            if (this.value == newValue || (newValue != null && newValue.equals(this.value)))
+            final T value = get(c);
+            if (value == newValue || (newValue != null && newValue.equals(value)))
                 return false;
             else
                 return true;
         }
 
-        void set(T newValue) {
+        void set(LWComponent c, T newValue) {
             //final Object old = get(); // if "get" actually does anything tho, this is a BAD idea; if needbe, create a "curValue"
 
-            if (!isChanged(newValue))
+            if (!isChanged(c, newValue))
                 return;
-            final Object oldValue = this.value;
-            take(newValue);
-            onChange();
+            final Object oldValue = get(c);
+            take(c, newValue);
+            onChange(c);
 
             // RAISE CHANGE EVENT (for observers -- e.g., repaint, UndoManager, editors, etc)
             // maybe: if (alive()) ?
-            LWComponent.this.notify(this.key, oldValue);
-
-            // note: if could handle event raising in Key class, we could make this class static.
-            // Tho then to bind to a particular property on a particular LWComponent, you'd need a
-            // Binding object.  Do we actually bind directly to individual Property instance's
-            // anywhere? (Answer: seems no -- was just able to make this class protected instead of
-            // public) Could we possibly change class hierarchy such that LWComponent.Key is typed, and
-            // subclassed for the various types, and then do away with the Property class hierarchy
-            // entirely? -- SMF 2012
+            c.notify(this.key, oldValue);
         }
 
         /** This JUST changes the stored value: no notifications of any kind will be triggered, no undo recorded. */
-        void take(T o) {
-            this.value = o;
-            if (DEBUG.TOOL) System.out.printf("     TAKING: %-30s -> %s\n", vtag(key, o, this), LWComponent.this);
+        void take(LWComponent c, T o) {
+            c.putSlotValue(this, o);
+            if (DEBUG.TOOL) System.out.printf("     TAKING: %-30s -> %s\n", vtag(key, o, this, c), c);
         }
 
         /** impl's can override this to do something after the value has changed (after take() has been called),
          * and before listeners have been notified */
-        void onChange() {}
+        void onChange(LWComponent c) {}
 
-        void setFromString(String s) {
+        void setFromString(LWComponent c, String s) {
             try {
-                setBy(s);
+                setBy(c, s);
             } catch (Throwable t) {
                 Log.error("bad value for " + this + ": [" + s + "] " + t);
             }
         }
 
-        void setFromCSS(String cssKey, String value) {
+        void setFromCSS(LWComponent c, String cssKey, String value) {
             throw new UnsupportedOperationException(this + " unimplemented setFromCSS " + cssKey + " = " + value);
             //VUE.Log.error("unimplemented setFromCSS " + cssKey + " = " + value);
         }
 
-        void setBy(String fromValue) {
+        void setBy(LWComponent c, String fromValue) {
             // Could get rid all of the setBy's (and then mayve even all the StyleProp subclasses!!)
             // If we just had mapper class that took a type, a value, and returned a string (e.g., Font.class, Object value)
             Log.error("unimplememnted: " + this + " setBy " + fromValue.getClass() + " " + fromValue);
         }
 
         /** override to provide an impl other than value.toString() */
-        String asString() {
+        String asString(LWComponent c) {
+            final T value = get(c);
             return value == null ? null : value.toString();
         }
 
-        /*
-        void setByUser(Object newValue) { // for tools.  Actually, tools using generic setProperty right now...
-            out("SetByUser: " + key + " " + newValue);
-            set(newValue);
-        }
-        */
-
         /** used for debugging */
         public String toString() {
-            return key + "[" + value + "]";
+            return key + "[slot " + slot + "; default=" + defaultValue + "]";
         }
 
     }
 
-    public class EnumProperty<T extends Enum> extends Property<T> {
+    public static class EnumProperty<T extends Enum> extends Property<T> {
         EnumProperty(Key key, T defaultValue) {
-            super(key);
-            value = defaultValue;
+            super(key, defaultValue);
             //System.out.println("enum values: " + Arrays.asList(defaultValue.getClass().getEnumConstants()));
             //System.out.println("enum test: " + Enum.valueOf(defaultValue.getClass(), "DASH1"));
         }
-        void setBy(String s) {
-            // note: value can never be null, or we'll need to store the Enum class reference elsewhere
+        void setBy(LWComponent c, String s) {
+            // note: the default value can never be null, or we'll need to store the Enum class reference elsewhere
             // (e.g., in the Key -- better there anyway, where we could provide a generic "values"
             // to list the supported values)
-            set((T) Enum.valueOf(value.getClass(), s.trim()));
+            set(c, (T) Enum.valueOf(defaultValue.getDeclaringClass(), s.trim()));
         }
     }
 
     private static final String _DefaultString = "";
-    public class StringProperty extends Property<java.lang.String> {
+    public static class StringProperty extends Property<java.lang.String> {
         StringProperty(Key key) {
-            super(key);
-            value = _DefaultString;
+            super(key, _DefaultString);
         }
-        void setBy(String s) { set(s); }
+        void setBy(LWComponent c, String s) { set(c, s); }
     }
 
-    public class BooleanProperty extends Property<java.lang.Boolean> {
+    public static class BooleanProperty extends Property<java.lang.Boolean> {
         BooleanProperty(Key key, Boolean defaultValue) {
-            super(key);
-            value = defaultValue;
+            super(key, defaultValue);
         }
         BooleanProperty(Key key) {
            this(key, Boolean.FALSE);
         }
 
-        void setBy(String s) { set(Boolean.valueOf(s)); }
+        void setBy(LWComponent c, String s) { set(c, Boolean.valueOf(s)); }
     }
 
-    abstract public class NumberProperty<T> extends Property<T> {
-        NumberProperty(Key key) { super(key); }
+    abstract public static class NumberProperty<T> extends Property<T> {
+        NumberProperty(Key key, T defaultValue) { super(key, defaultValue); }
 
-        void setFromCSS(String cssKey, String value) {
+        void setFromCSS(LWComponent c, String cssKey, String value) {
             if (value.endsWith("pt") || value.endsWith("px"))
-                setBy(value.substring(0, value.length()-2));
+                setBy(c, value.substring(0, value.length()-2));
             else
                 throw new IllegalArgumentException("unhandled CSS number conversion for [" + value + "]");
 
@@ -1019,33 +1035,30 @@ public class LWComponent
 
     private static final Integer _DefaultInteger = new Integer(0);
 
-    public class IntProperty extends NumberProperty<java.lang.Integer> {
+    public static class IntProperty extends NumberProperty<java.lang.Integer> {
         IntProperty(Key key, Integer defaultValue) {
-            super(key);
-            value = defaultValue;
+            super(key, defaultValue);
         }
         IntProperty(Key key) {
             this(key, _DefaultInteger);
         }
 
-        void setBy(String s) { set(new Integer(s)); }
+        void setBy(LWComponent c, String s) { set(c, new Integer(s)); }
     }
 
     private static final Float _DefaultFloat = new Float(0f);
-    public class FloatProperty extends NumberProperty<java.lang.Float> {
+    public static class FloatProperty extends NumberProperty<java.lang.Float> {
         FloatProperty(Key key) {
-            super(key);
-            value = _DefaultFloat;
+            super(key, _DefaultFloat);
         }
-        void setBy(String s) { set(new Float(s)); }
+        void setBy(LWComponent c, String s) { set(c, new Float(s)); }
     }
 
-    public class FontProperty extends Property<java.awt.Font> {
+    public static class FontProperty extends Property<java.awt.Font> {
         FontProperty(Key key) {
-            super(key);
-            value = VueConstants.FONT_DEFAULT;
+            super(key, VueConstants.FONT_DEFAULT);
         }
-        final void setBy(String s) {
+        final void setBy(LWComponent c, String s) {
         	//check for underline
 
         	String p = s.substring(s.indexOf("-")+1,s.length());
@@ -1053,18 +1066,18 @@ public class LWComponent
 
         	if (p.endsWith("underline"))
         	{	//do something
-        		LWComponent.this.mFontUnderline.set("underline");
+        		SLOT_FontUnderline.set(c, "underline");
         		s= s.replaceAll(p, p.substring(0,p.indexOf("underline")));
         	}
         	Font f = Font.decode(s);
 
-        	set(f);
+        	set(c, f);
         	}
-        final String asString() {
+        final String asString(LWComponent c) {
             //if (this.font == null || this.font == getParent().getFont())
             //return null;
 
-            final Font font = get();
+            final Font font = get(c);
             String strStyle;
 
             if (font.isBold()) {
@@ -1073,7 +1086,7 @@ public class LWComponent
                 strStyle = font.isItalic() ? "italic" : "plain";
             }
 
-            if (LWComponent.this.mFontUnderline.get().equals("underline"))
+            if (SLOT_FontUnderline.get(c).equals("underline"))
             	strStyle = strStyle.concat("underline");
             return font.getName() + "-" + strStyle + "-" + font.getSize();
         }
@@ -1084,16 +1097,16 @@ public class LWComponent
      * Also handles CSS font-weight value of "bold" (anything else is ignored for now)
      * todo: no hook for font-weight yet, permits invalid CSS
      */
-    public class CSSFontStyleProperty extends IntProperty {
+    public static class CSSFontStyleProperty extends IntProperty {
         CSSFontStyleProperty(Key key) { super(key); }
-        void setFromCSS(String cssKey, String value) {
+        void setFromCSS(LWComponent c, String cssKey, String value) {
             // todo: this ignoring the key, which will permit non-confomant CSS
             if ("italic".equalsIgnoreCase(value))
-                set(java.awt.Font.ITALIC);
+                set(c, java.awt.Font.ITALIC);
             else if ("bold".equalsIgnoreCase(value))
-                set(java.awt.Font.BOLD);
+                set(c, java.awt.Font.BOLD);
             else
-                set(0);
+                set(c, 0);
         }
     }
 
@@ -1110,11 +1123,11 @@ public class LWComponent
     }
     */
 
-    public class CSSFontFamilyProperty extends StringProperty {
+    public static class CSSFontFamilyProperty extends StringProperty {
         CSSFontFamilyProperty(Key key) { super(key); }
-        void setFromCSS(String cssKey, String value) {
+        void setFromCSS(LWComponent c, String cssKey, String value) {
             // no translation needed for now: just use the raw name -- if it's a preference list tho, we'll need to handle it
-            setBy(value);
+            setBy(c, value);
         }
     }
 
@@ -1123,51 +1136,69 @@ public class LWComponent
 
 
 
-    public class ColorProperty extends Property<java.awt.Color> {
+    /**
+     * Alpha constraints are per LWComponent class (and apply to all of it's subclasses), as
+     * the property itself is shared by every instance.
+     */
+    public static class ColorProperty extends Property<java.awt.Color> {
         private static final short ALPHA_NOT_PERMITTED = Short.MIN_VALUE;
         private static final short NO_ALPHA_SET = -1;
-        private short fixedAlpha = NO_ALPHA_SET;
+        private final Map<Class,Short> fixedAlphaForClass = new HashMap<Class,Short>(2);
 
-        ColorProperty(Key key) { super(key); }
+        ColorProperty(Key key) { this(key, null); }
         ColorProperty(Key key, Color defaultValue) {
-            this(key);
-            this.value = defaultValue;
+            super(key, defaultValue);
         }
 
-        public boolean isTransparent() {
+        public boolean isTransparent(LWComponent c) {
+            final Color value = get(c);
             return value == null || value.getAlpha() == 0;
         }
 
-        public boolean isTranslucent() {
+        public boolean isTranslucent(LWComponent c) {
+            final Color value = get(c);
             return value == null || value.getAlpha() != 0xFF;
         }
 
-        void setAllowAlpha(boolean allow) {
+        void setAllowAlpha(Class<? extends LWComponent> clazz, boolean allow) {
             if (allow)
-                fixedAlpha = NO_ALPHA_SET;
+                fixedAlphaForClass.put(clazz, NO_ALPHA_SET);
             else
-                fixedAlpha = ALPHA_NOT_PERMITTED;
+                fixedAlphaForClass.put(clazz, ALPHA_NOT_PERMITTED);
         }
 
         /** alpha should be in the range 0-255 */
-        void setFixedAlpha(int alpha) {
+        void setFixedAlpha(Class<? extends LWComponent> clazz, int alpha) {
             if (alpha > 255)
                 alpha = 255;
             else if (alpha < 0)
                 alpha = 0;
-            fixedAlpha = (short) alpha;
+            fixedAlphaForClass.put(clazz, (short) alpha);
             //out("SET FIXED ALPHA " + fixedAlpha);
         }
 
+        private short getFixedAlpha(LWComponent c) {
+            if (fixedAlphaForClass.isEmpty())
+                return NO_ALPHA_SET; // the common case
+            for (Class clazz = c.getClass(); clazz != LWComponent.class; clazz = clazz.getSuperclass()) {
+                final Short alpha = fixedAlphaForClass.get(clazz);
+                if (alpha != null)
+                    return alpha;
+            }
+            return NO_ALPHA_SET;
+        }
+
         @Override
-        void set(Color newColor) {
+        void set(LWComponent c, Color newColor) {
+
+            final short fixedAlpha = getFixedAlpha(c);
 
             if (fixedAlpha < 0) {
                 // the common case
-                super.set(newColor);
+                super.set(c, newColor);
             } else {
 
-                if (value == newColor)
+                if (get(c) == newColor)
                     return;
 
                 // enforce the fixed alpha on any incoming color:
@@ -1177,43 +1208,37 @@ public class LWComponent
                     //out("used fixed alpha " + fixedAlpha + " producing " + newColor + " alpha=" + newColor.getAlpha()
                     //+ " " + ColorToString(newColor));
                 }
-                super.set(newColor);
+                super.set(c, newColor);
             }
         }
 
         @Override
-        void take(Color c) {
-            if (fixedAlpha < NO_ALPHA_SET && (c == null || c.getAlpha() != 0xFF))
+        void take(LWComponent c, Color color) {
+            if (getFixedAlpha(c) < NO_ALPHA_SET && (color == null || color.getAlpha() != 0xFF))
                 throw new PropertyValueVeto(key + "; color with translucence: "
-                                            + c
-                                            + " alpha=" + c.getAlpha()
-                                            + " not allowed on " + LWComponent.this);
-
-//             if (LWComponent.this instanceof LWNode)
-//                 super.take(c == null ? null : new Color(c.getRGB() + (fixedAlpha << 24), true));
-//             //super.take(c == null ? null : new Color(c.getRGB() + ((128 & 0xFF) << 24), true));
-//             //super.take(c == null ? null : new Color(c.getRGB() + 0x20000000, true));
-//             else
-            super.take(c);
+                                            + color
+                                            + " alpha=" + color.getAlpha()
+                                            + " not allowed on " + c);
+            super.take(c, color);
         }
 
         @Override
-        void setBy(String s) {
-            set(StringToColor(s));
+        void setBy(LWComponent c, String s) {
+            set(c, StringToColor(s));
         }
 
         @Override
-        void setFromCSS(String key, String value) {
+        void setFromCSS(LWComponent c, String key, String value) {
             // todo: CSS Style object could include the already instanced Color object
             // we ignore key: assume that whatever it is is a color value
-            setBy(value);
+            setBy(c, value);
         }
 
         /** @return a value between 0.0 and 1.0 representing brightness: the saturation % of the strongest channel
          * e.g.: white returns 1, black returns 0
          */
-        public float brightness() {
-            return Util.brightness(value);
+        public float brightness(LWComponent c) {
+            return Util.brightness(get(c));
         }
 
 //         dynamic version not workng
@@ -1223,13 +1248,14 @@ public class LWComponent
 //             //return new Color(value.getRGB() + 0x80000000, true);
 //         }
 
-        public boolean equals(Color c) {
-            return value == c || (c != null && c.equals(value));
+        public boolean valueEquals(LWComponent c, Color color) {
+            final Color value = get(c);
+            return value == color || (color != null && color.equals(value));
         }
 
 
-        String asString() {
-            return ColorToString(get());
+        String asString(LWComponent c) {
+            return ColorToString(get(c));
         }
     }
 
@@ -1270,15 +1296,15 @@ public class LWComponent
 
     public enum Alignment { LEFT, CENTER, RIGHT }
 
-    public static final Key KEY_FillColor   = new Key("fill.color", "background")       { final Property getSlot(LWComponent c) { return c.mFillColor; } };
-    public static final Key KEY_TextColor   = new Key("text.color", "font-color")       { final Property getSlot(LWComponent c) { return c.mTextColor; } };
-    public static final Key KEY_StrokeColor = new Key("stroke.color", "border-color")   { final Property getSlot(LWComponent c) { return c.mStrokeColor; } };
+    public static final Key KEY_FillColor   = new Key("fill.color", "background")       { final Property getSlot(LWComponent c) { return SLOT_FillColor; } };
+    public static final Key KEY_TextColor   = new Key("text.color", "font-color")       { final Property getSlot(LWComponent c) { return SLOT_TextColor; } };
+    public static final Key KEY_StrokeColor = new Key("stroke.color", "border-color")   { final Property getSlot(LWComponent c) { return SLOT_StrokeColor; } };
     //public static final Key KEY_StrokeStyle = new Key("stroke.style", "border-style")   { final Property getSlot(LWComponent c) { return null; } };
-    public static final Key KEY_StrokeWidth = new Key("stroke.width", "stroke-width")   { final Property getSlot(LWComponent c) { return c.mStrokeWidth; } };
+    public static final Key KEY_StrokeWidth = new Key("stroke.width", "stroke-width")   { final Property getSlot(LWComponent c) { return SLOT_StrokeWidth; } };
     public static final Key KEY_StrokeStyle = new Key<LWComponent,StrokeStyle>
-        ("stroke.style", KeyType.STYLE)   { final Property getSlot(LWComponent c) { return c.mStrokeStyle; } };
+        ("stroke.style", KeyType.STYLE)   { final Property getSlot(LWComponent c) { return SLOT_StrokeStyle; } };
     public static final Key KEY_Alignment = new Key<LWComponent,Alignment>
-        ("alignment", KeyType.STYLE)   { final Property getSlot(LWComponent c) { return c.mAlignment; } };
+        ("alignment", KeyType.STYLE)   { final Property getSlot(LWComponent c) { return SLOT_Alignment; } };
 
 
     /* font.size: point size for font */
@@ -1286,11 +1312,11 @@ public class LWComponent
     /* font.name: family name of the font */
 
     /** Aggregate font key, which represents the combination of it's three sub-properties */
-    public static final Key KEY_Font = new Key("font", KeyType.STYLE)                   { final Property getSlot(LWComponent c) { return c.mFont; } };
-    public static final Key KEY_FontSize  = new Key("font.size", KeyType.SUB_STYLE)     { final Property getSlot(LWComponent c) { return c.mFontSize; } };
-    public static final Key KEY_FontStyle = new Key("font.style", KeyType.SUB_STYLE)    { final Property getSlot(LWComponent c) { return c.mFontStyle; } };
-    public static final Key KEY_FontUnderline = new Key("font.underline", KeyType.SUB_STYLE)    { final Property getSlot(LWComponent c) { return c.mFontUnderline; } };
-    public static final Key KEY_FontName  = new Key("font.name", KeyType.SUB_STYLE)     { final Property getSlot(LWComponent c) { return c.mFontName; } };
+    public static final Key KEY_Font = new Key("font", KeyType.STYLE)                   { final Property getSlot(LWComponent c) { return SLOT_Font; } };
+    public static final Key KEY_FontSize  = new Key("font.size", KeyType.SUB_STYLE)     { final Property getSlot(LWComponent c) { return SLOT_FontSize; } };
+    public static final Key KEY_FontStyle = new Key("font.style", KeyType.SUB_STYLE)    { final Property getSlot(LWComponent c) { return SLOT_FontStyle; } };
+    public static final Key KEY_FontUnderline = new Key("font.underline", KeyType.SUB_STYLE)    { final Property getSlot(LWComponent c) { return SLOT_FontUnderline; } };
+    public static final Key KEY_FontName  = new Key("font.name", KeyType.SUB_STYLE)     { final Property getSlot(LWComponent c) { return SLOT_FontName; } };
 
     public static final Key KEY_Collapsed =
         new Key<LWComponent,Boolean>("collapsed") {
@@ -1314,21 +1340,20 @@ public class LWComponent
 
 
 
-    public final ColorProperty mFillColor = new ColorProperty(KEY_FillColor);
-    public final ColorProperty mTextColor = new ColorProperty(KEY_TextColor, java.awt.Color.black) {
-            //{ color = java.awt.Color.black; } // default value
-            void onChange() {
-                if (labelBox != null)
-                    labelBox.copyStyle(LWComponent.this); // todo better: handle thru style.textColor notification?
+    public static final ColorProperty SLOT_FillColor = new ColorProperty(KEY_FillColor);
+    public static final ColorProperty SLOT_TextColor = new ColorProperty(KEY_TextColor, java.awt.Color.black) {
+            void onChange(LWComponent c) {
+                if (c.labelEditBox != null)
+                    c.labelEditBox.copyStyle(c); // todo better: handle thru style.textColor notification?
             }
         };
-    public final ColorProperty mStrokeColor = new ColorProperty(KEY_StrokeColor, java.awt.Color.darkGray);
-    public final FloatProperty mStrokeWidth = new FloatProperty(KEY_StrokeWidth) { void onChange() { rebuildStroke(); }};
-    public final EnumProperty<Alignment> mAlignment = new EnumProperty(KEY_Alignment, Alignment.LEFT) {
-            void onChange() { layout(KEY_Alignment); }
+    public static final ColorProperty SLOT_StrokeColor = new ColorProperty(KEY_StrokeColor, java.awt.Color.darkGray);
+    public static final FloatProperty SLOT_StrokeWidth = new FloatProperty(KEY_StrokeWidth) { void onChange(LWComponent c) { c.rebuildStroke(); }};
+    public static final EnumProperty<Alignment> SLOT_Alignment = new EnumProperty(KEY_Alignment, Alignment.LEFT) {
+            void onChange(LWComponent c) { c.layout(KEY_Alignment); }
         };
 
-    public final EnumProperty<StrokeStyle> mStrokeStyle = new EnumProperty(KEY_StrokeStyle, StrokeStyle.SOLID) { void onChange() { rebuildStroke(); }};
+    public static final EnumProperty<StrokeStyle> SLOT_StrokeStyle = new EnumProperty(KEY_StrokeStyle, StrokeStyle.SOLID) { void onChange(LWComponent c) { c.rebuildStroke(); }};
 
     public enum StrokeStyle {
 
@@ -1368,9 +1393,9 @@ public class LWComponent
     }
 
     private void rebuildStroke() {
-        final float width = mStrokeWidth.get();
+        final float width = SLOT_StrokeWidth.get(this);
         if (width > 0)
-            this.stroke = mStrokeStyle.get().makeStroke(width);
+            this.stroke = SLOT_StrokeStyle.get(this).makeStroke(width);
         else
             this.stroke = STROKE_ZERO;
         /*/ below code was broken in previous code.  Node child layout does NOT
@@ -1386,21 +1411,21 @@ public class LWComponent
     }
 
 
-    public final IntProperty mFontStyle = new CSSFontStyleProperty(KEY_FontStyle)       { void onChange() { rebuildFont(); } };
-    public final IntProperty mFontSize = new IntProperty(KEY_FontSize)                  { void onChange() { rebuildFont(); } };
-    public final StringProperty mFontName = new CSSFontFamilyProperty(KEY_FontName)     { void onChange() { rebuildFont(); } };
+    public static final IntProperty SLOT_FontStyle = new CSSFontStyleProperty(KEY_FontStyle)       { void onChange(LWComponent c) { c.rebuildFont(); } };
+    public static final IntProperty SLOT_FontSize = new IntProperty(KEY_FontSize)                  { void onChange(LWComponent c) { c.rebuildFont(); } };
+    public static final StringProperty SLOT_FontName = new CSSFontFamilyProperty(KEY_FontName)     { void onChange(LWComponent c) { c.rebuildFont(); } };
 
-    public final StringProperty mFontUnderline = new StringProperty(KEY_FontUnderline) {
-    	boolean isChanged(String newValue) {
+    public static final StringProperty SLOT_FontUnderline = new StringProperty(KEY_FontUnderline) {
+    	boolean isChanged(LWComponent c, String newValue) {
     		return true;
     	}
 
-    	@Override void onChange() {
-            rebuildFont();
-            if (labelBox != null) {
-                labelBox.copyStyle(LWComponent.this);
-                layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
-            }
+    	@Override void onChange(LWComponent c) {
+            c.rebuildFont();
+            if (c.labelEditBox != null)
+                c.labelEditBox.copyStyle(c);
+            if (c.labelBox != null)
+                c.layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
     	}
 
     	};
@@ -1410,32 +1435,89 @@ public class LWComponent
         // This so at least for now we have backward compat with the old font property (esp. for tools & persistance)
     	fontIsRebuilding = true;
         try  {
-            Font f =new Font(mFontName.get(), mFontStyle.get(), mFontSize.get());
-            mFont.set(f);
+            Font f =new Font(SLOT_FontName.get(this), SLOT_FontStyle.get(this), SLOT_FontSize.get(this));
+            SLOT_Font.set(this, f);
 
         } finally {
             fontIsRebuilding = false;
         }
     }
 
-    public final FontProperty mFont = new FontProperty(KEY_Font) {
-            @Override void onChange() {
-                if (!fontIsRebuilding) {
-                    final Font f = get();
+    public static final FontProperty SLOT_Font = new FontProperty(KEY_Font) {
+            @Override void onChange(LWComponent c) {
+                if (!c.fontIsRebuilding) {
+                    final Font f = get(c);
 
-                    mFontStyle.take(f.getStyle());
+                    SLOT_FontStyle.take(c, f.getStyle());
 
-                    mFontSize.take(f.getSize());
-                    mFontName.take(f.getName());
+                    SLOT_FontSize.take(c, f.getSize());
+                    SLOT_FontName.take(c, f.getName());
                 }
 
-                if (labelBox != null) {
-                    labelBox.copyStyle(LWComponent.this);
-                    layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
-                }
+                if (c.labelEditBox != null)
+                    c.labelEditBox.copyStyle(c);
+                if (c.labelBox != null)
+                    c.layout(this.key); // could make this generic: add a key bit that says "layout needed on-change";
             }
         };
 
+    /** marks an explicit null override in a slot array, where a null entry means "not overridden" */
+    private static final Object NULL_SLOT_VALUE = new Object() { public String toString() { return "<null>"; } };
+    private static final Object[] NO_SLOT_VALUES = {};
+
+    /** @return the value for the given property: our own if we've overridden it, otherwise the property default */
+    final Object getSlotValue(Property p) {
+        final Object[] values = mSlotValues; // one read: the array may be replaced by a setter at any time
+        final Object value;
+        if (p.slot < values.length && (value = values[p.slot]) != null)
+            return value == NULL_SLOT_VALUE ? null : value;
+        else
+            return p.defaultValue;
+    }
+
+    /**
+     * Store a property value.  A value equal to the property default releases our override,
+     * and the slot array is only ever as long as the highest slot we've overridden.
+     */
+    final void putSlotValue(Property p, Object value) {
+        final int slot = p.slot;
+        final boolean isDefault = (value == p.defaultValue || (value != null && value.equals(p.defaultValue)));
+        final Object[] values = mSlotValues;
+
+        if (isDefault) {
+            if (slot >= values.length || values[slot] == null)
+                return;
+            int top = values.length;
+            if (slot == top - 1) {
+                // trim: drop this and any empty slots below it
+                top = slot;
+                while (top > 0 && values[top - 1] == null)
+                    top--;
+                mSlotValues = (top == 0) ? NO_SLOT_VALUES : Arrays.copyOf(values, top);
+            } else {
+                values[slot] = null;
+            }
+        } else {
+            final Object stored = (value == null ? NULL_SLOT_VALUE : value);
+            if (slot < values.length) {
+                values[slot] = stored;
+            } else {
+                final Object[] grown = Arrays.copyOf(values, slot + 1);
+                grown[slot] = stored;
+                mSlotValues = grown;
+            }
+        }
+    }
+
+    /** @return the number of property values this component has overridden (for footprint reporting) */
+    int getSlotOverrideCount() {
+        int count = 0;
+        for (Object o : mSlotValues)
+            if (o != null)
+                count++;
+        return count;
+    }
+
 
     public static final String KEY_LabelFormat = "label.format";
     public static final Key KEY_Label = new Key<LWComponent,String>("label", KeyType.DATA) {
@@ -1460,7 +1542,7 @@ public class LWComponent
     //===================================================================================================
 
     // for debug
-    private static String vtag(Object key, Object val, Property p)
+    private static String vtag(Object key, Object val, Property p, LWComponent c)
     {
         if (val == null) {
             return key + "(null)";
@@ -1470,7 +1552,7 @@ public class LWComponent
 
         String typeName = val.getClass().getName();
         String valType = typeName.substring(typeName.lastIndexOf('.') + 1);
-        String valRep = (p == null ? val.toString() : p.asString());
+        String valRep = (p == null ? val.toString() : p.asString(c));
 
         String extra = "";
 
@@ -1620,7 +1702,7 @@ public class LWComponent
 
     protected void setPropertyImpl(final Object key, final Object val, final Object context)
     {
-        if (DEBUG.TOOL||DEBUG.UNDO) Log.debug("setPropertyImpl[" + context + "] " + this + " " + vtag(key, val, null));
+        if (DEBUG.TOOL||DEBUG.UNDO) Log.debug("setPropertyImpl[" + context + "] " + this + " " + vtag(key, val, null, null));
 
         if (key instanceof Key) {
             final Key k = (Key) key;
@@ -1812,7 +1894,6 @@ public class LWComponent
             ((LWText)c).getRichLabelBox().setText(((LWText)this).getRichLabelBox().getRichText());
         } else {
             c.setLabelImpl(this.label, true, false);
-            c.getLabelBox().setSize(getLabelBox().getSize());
         }
 
         if (hasResource())
@@ -2256,6 +2337,8 @@ public class LWComponent
     public void setFiltered(boolean filtered) {
         //if (DEBUG.SEARCH&&DEBUG.TEST) Log.debug("setFiltered " + filtered + "; " + this);
         setFlag(Flag.FILTERED, filtered);
+        LWContainer.notifyBoundsChanged(this); // may change isDrawn
+        RasterCache.invalidateAncestors(this);
     }
 
 //     protected void setFilterBits(int bits) {
@@ -2418,23 +2501,17 @@ public class LWComponent
 
         if (newLabel == null || newLabel.length() == 0) {
             this.label = null;
-            if (labelBox != null)
-                labelBox.setText("");
+            if (labelEditBox != null && setDocument)
+                labelEditBox.setText("");
         } else {
             this.label = newLabel;
             if (DEBUG.TEXT || DEBUG.DATA) out("setLabelImpl textSet " + Util.tags(newLabel));
-            // todo opt: only need to do this if node or link (LWImage?)
-            // Handle this more completely -- shouldn't need to create
-            // label box at all -- why can't do entirely lazily?
-            if (this.labelBox == null) {
-                // figure out how to skip this:
-                //getLabelBox();
-            } else if (setDocument) {
+            // our LabelBox always lays out the current label: only an edit in progress needs updating
+            if (labelEditBox != null && setDocument) {
                 try {
-                    // note: this needs to happen before the call to layout below
-                    getLabelBox().setText(newLabel);
+                    labelEditBox.setText(newLabel);
                 } catch (Throwable t) {
-                    Log.error(String.format("failed to set label '%s' on %s in %s", newLabel, Util.tags(getLabelBox()), this), t);
+                    Log.error(String.format("failed to set label '%s' on %s in %s", newLabel, Util.tags(labelEditBox), this), t);
                 }
             }
         }
@@ -2530,13 +2607,13 @@ public class LWComponent
 
 
 
-    protected tufts.vue.TextBox getLabelBox()
+    protected LabelBox getLabelBox()
     {
         try {
             if (this.labelBox == null) {
                 synchronized (this) {
                     if (this.labelBox == null)
-                        this.labelBox = new tufts.vue.TextBox(this, this.label);
+                        this.labelBox = new LabelBox(this);
                 }
             }
         } catch (Throwable t) {
@@ -2548,6 +2625,34 @@ public class LWComponent
         return this.labelBox;
     }
 
+    /**
+     * @return a TextBox for an interactive edit of our label, placed where our label
+     * is currently drawn.  The TextBox is kept only until the edit is done: see
+     * releaseLabelEditBox.
+     */
+    TextBox getLabelEditBox()
+    {
+        if (this.labelEditBox == null) {
+            final TextBox box = new TextBox(this, this.label);
+            if (this.labelBox != null)
+                box.setBoxLocation(labelBox.getBoxX(), labelBox.getBoxY());
+            this.labelEditBox = box;
+        }
+        return this.labelEditBox;
+    }
+
+    /** called by the MapViewer when the given label edit is done */
+    void releaseLabelEditBox(TextBox box) {
+        if (this.labelEditBox == box)
+            this.labelEditBox = null;
+    }
+
+    /** @return true if our label is currently being edited on the map, in which case AWT/Swing is drawing it, not us */
+    protected boolean isEditingLabel() {
+        final TextBox box = this.labelEditBox;
+        return box != null && box.getParent() != null;
+    }
+
     public void setNotes(String pNotes)
     {
         pNotes = cleanControlChars(pNotes);
@@ -2939,6 +3044,8 @@ public class LWComponent
         if (!mEntries.contains(e))
             mEntries.add(e);
         addPathwayRef(e.pathway);
+        LWContainer.notifyBoundsChanged(this); // slide icons are drawn & picked outside our bounds
+        RasterCache.invalidateAncestors(this);
     }
 
     protected void removeEntryRef(LWPathway.Entry e) {
@@ -2949,6 +3056,8 @@ public class LWComponent
         if (!mEntries.remove(e))
             Util.printStackTrace(this + "; Warning: didn't contain entry " + e);
         removePathwayRef(e.pathway);
+        LWContainer.notifyBoundsChanged(this);
+        RasterCache.invalidateAncestors(this);
     }
 
 
@@ -3112,7 +3221,7 @@ public class LWComponent
         }
     }
 
-    private static final Object LAYOUT_DEFAULT = "default";
+    static final Object LAYOUT_DEFAULT = "default";
 
     /** Layout this component and all children, if any.  Normally this would only be called on an
      * LWMap, but in some cases, any component might effectively be "at the top level" while in an
@@ -3132,9 +3241,28 @@ public class LWComponent
     }
 
     final void layout(Object triggerKey) {
+        if (mXMLRestoreUnderway || !LayoutScheduler.request(this, triggerKey))
+            layoutNow(triggerKey);
+    }
+
+    /**
+     * Run any layouts that have been deferred by a bulk change underway (e.g., a style
+     * change being applied to many components), for code that needs final geometry now.
+     */
+    public static void flushLayout() {
+        LayoutScheduler.flush();
+    }
+
+    /** the actual layout: called from layout(), or later by the LayoutScheduler if the layout was deferred */
+    final void layoutNow(Object triggerKey) {
         if (mXMLRestoreUnderway == false) {
 
-            layoutImpl(triggerKey);
+            final boolean tracked = LayoutScheduler.enter(this);
+            try {
+                layoutImpl(triggerKey);
+            } finally {
+                LayoutScheduler.exit(tracked);
+            }
 
             if (triggerKey == LWMap.NODE_INIT_LAYOUT) {
                 validateInitialValues();
@@ -3178,9 +3306,9 @@ public class LWComponent
             bad = true;
         }
 
-        if (supportsProperty(KEY_FontSize) && mFontSize.get() < 1) {
-            Log.warn("bad font size " + mFontSize.get() + " " + this);
-            mFontSize.take(1); // don't risk triggering an event at a bad time
+        if (supportsProperty(KEY_FontSize) && SLOT_FontSize.get(this) < 1) {
+            Log.warn("bad font size " + SLOT_FontSize.get(this) + " " + this);
+            SLOT_FontSize.take(this, 1); // don't risk triggering an event at a bad time
             bad = true;
         }
 
@@ -3205,11 +3333,11 @@ public class LWComponent
     }
 
     public boolean isTransparent() {
-        return mFillColor.isTransparent();
+        return SLOT_FillColor.isTransparent(this);
     }
 
     public boolean isTranslucent() {
-        return mFillColor.isTranslucent();
+        return SLOT_FillColor.isTranslucent(this);
     }
 
     /**
@@ -3217,7 +3345,7 @@ public class LWComponent
      * We also use this for the background color in active on-map text edits.
      */
     public Color getRenderFillColor(DrawContext dc) {
-        if (mFillColor.isTransparent()) {
+        if (SLOT_FillColor.isTransparent(this)) {
             if (dc != null && dc.focal == this) {
                 //System.out.println("     DC FILL: " + dc.getFill() + " " + this);
                 return dc.getBackgroundFill();
@@ -3227,11 +3355,11 @@ public class LWComponent
             }
         }
         //System.out.println("DEFAULT FILL: " + mFillColor.get() + " " + this);
-        return mFillColor.get();
+        return SLOT_FillColor.get(this);
     }
 
     public Color getFinalFillColor(DrawContext dc) {
-        if (mFillColor.isTransparent()) {
+        if (SLOT_FillColor.isTransparent(this)) {
             Color c = null;
             if (getParent() != null)
                 return getParent().getFinalFillColor(dc);
@@ -3284,51 +3412,51 @@ public class LWComponent
 
 
     void takeFillColor(Color color) {
-        mFillColor.take(color);
+        SLOT_FillColor.take(this, color);
     }
 
     // We still need these standard style setters & getters for backward compat
     // with all sorts of old code, and espcially for persistance (the castor
     // mapping, which refers to these methods)
 
-    public float        getStrokeWidth()                { return mStrokeWidth.get(); }
-    public void         setStrokeWidth(float w)         { mStrokeWidth.set(w); }
+    public float        getStrokeWidth()                { return SLOT_StrokeWidth.get(this); }
+    public void         setStrokeWidth(float w)         { SLOT_StrokeWidth.set(this, w); }
 
     /** @return null for SOLID (ordinal 0, the default, as for old save files), or otherwise, the ordinal of the style enum
      * Castor will not bother to generate the attribute/element when it's value is null. */
     public Integer getXMLstrokeStyle() {
-        int code = mStrokeStyle.get().ordinal();
+        int code = SLOT_StrokeStyle.get(this).ordinal();
         return code == 0 ? null : code;
     }
     public void setXMLstrokeStyle(Integer ordinal)  {
         // todo: have the Key class process enum's generically, caching the results of Class<? extends Enum>.getEnumConstants()
         for (StrokeStyle ss : StrokeStyle.values()) {
             if (ss.ordinal() == ordinal) {
-                mStrokeStyle.set(ss);
+                SLOT_StrokeStyle.set(this, ss);
                 break;
             }
         }
     }
 
-    public Color        getFillColor()                  { return mFillColor.get(); }
-    public void         setFillColor(Color c)           { mFillColor.set(c); }
-    public String       getXMLfillColor()               { return mFillColor.asString(); }
-    public void         setXMLfillColor(String xml)     { mFillColor.setFromString(xml); }
+    public Color        getFillColor()                  { return SLOT_FillColor.get(this); }
+    public void         setFillColor(Color c)           { SLOT_FillColor.set(this, c); }
+    public String       getXMLfillColor()               { return SLOT_FillColor.asString(this); }
+    public void         setXMLfillColor(String xml)     { SLOT_FillColor.setFromString(this, xml); }
 
-    public Color        getTextColor()                  { return mTextColor.get(); }
-    public void         setTextColor(Color c)           { mTextColor.set(c); }
-    public String       getXMLtextColor()               { return mTextColor.asString(); }
-    public void         setXMLtextColor(String xml)     { mTextColor.setFromString(xml); }
+    public Color        getTextColor()                  { return SLOT_TextColor.get(this); }
+    public void         setTextColor(Color c)           { SLOT_TextColor.set(this, c); }
+    public String       getXMLtextColor()               { return SLOT_TextColor.asString(this); }
+    public void         setXMLtextColor(String xml)     { SLOT_TextColor.setFromString(this, xml); }
 
-    public Color        getStrokeColor()                { return mStrokeColor.get(); }
-    public void         setStrokeColor(Color c)         { mStrokeColor.set(c); }
-    public String       getXMLstrokeColor()             { return mStrokeColor.asString(); }
-    public void         setXMLstrokeColor(String xml)   { mStrokeColor.setFromString(xml); }
+    public Color        getStrokeColor()                { return SLOT_StrokeColor.get(this); }
+    public void         setStrokeColor(Color c)         { SLOT_StrokeColor.set(this, c); }
+    public String       getXMLstrokeColor()             { return SLOT_StrokeColor.asString(this); }
+    public void         setXMLstrokeColor(String xml)   { SLOT_StrokeColor.setFromString(this, xml); }
 
-    public Font         getFont()               { return mFont.get(); }
-    public void         setFont(Font font)      { mFont.set(font); }
-    public String       getXMLfont()            { return mFont.asString(); }
-    public void         setXMLfont(String xml)  { mFont.setFromString(xml); }
+    public Font         getFont()               { return SLOT_Font.get(this); }
+    public void         setFont(Font font)      { SLOT_Font.set(this, font); }
+    public String       getXMLfont()            { return SLOT_Font.asString(this); }
+    public void         setXMLfont(String xml)  { SLOT_Font.setFromString(this, xml); }
 
 
 
@@ -4433,6 +4561,7 @@ public class LWComponent
     protected void takeScale(double newScale) {
         if (DEBUG.LAYOUT) out("takeScale " + newScale);
         this.scale = newScale;
+        LWContainer.notifyBoundsChanged(this);
     }
 
     protected void setScale(double newScale)
@@ -4557,6 +4686,8 @@ public class LWComponent
             this.x = x;
             this.y = y;
         }
+        // Location & size changes aren't always accompanied by events, so we mark here
+        LWContainer.notifyBoundsChanged(this);
     }
 
 //     public void userTranslate(float dx, float dy) {
@@ -4757,6 +4888,7 @@ public class LWComponent
         if (DEBUG.LAYOUT) out("*** takeSize (LWC)  " + w + "x" + h);
         this.width = w;
         this.height = h;
+        LWContainer.notifyBoundsChanged(this);
     }
 
     protected float mAspect = 0;
@@ -4924,9 +5056,9 @@ public class LWComponent
     public float getMapHeight()         { return (float) (this.height * getMapScale()); }
 
     /** @return local width including any border stroke ((width + stroke) * scale) */
-    public float getLocalBorderWidth() { return (float) ((this.width + mStrokeWidth.get()) * getScale()); }
+    public float getLocalBorderWidth() { return (float) ((this.width + SLOT_StrokeWidth.get(this)) * getScale()); }
     /** @return local height including any border stroke ((height + stroke) * scale) */
-    public float getLocalBorderHeight() { return (float) ((this.height + mStrokeWidth.get()) * getScale()); }
+    public float getLocalBorderHeight() { return (float) ((this.height + SLOT_StrokeWidth.get(this)) * getScale()); }
 
     /** convenience */
     public Size getSize() {
@@ -5445,6 +5577,7 @@ public class LWComponent
     void setZoomedFocus(AffineTransform tx) {
 
          mTemporaryTransform = tx;
+         LWContainer.notifyBoundsChanged(this);
 
         //linkNotificationDisabled = isZoomedFocus;
     }
@@ -5899,13 +6032,15 @@ public class LWComponent
 
     public boolean requiresPaint(DrawContext dc)
     {
-        return requiresPaintImpl(dc) != null;
+        final boolean required = requiresPaintImpl(dc) != null;
+        PaintStats.countPaintCheck(required);
+        return required;
     }
 
     /** @return true if this component currently requires painting and intersects the master paint region */
     protected Object requiresPaintImpl(DrawContext dc)
     {
-        if (dc.skipDraw == this)
+        if (dc.skipDraw == this || (dc.skipDrawSet != null && dc.skipDrawSet.contains(this)))
             return null;
 
         // always draw the focal
@@ -6373,7 +6508,7 @@ public class LWComponent
         final AffineTransform zeroTransform = DEBUG.PDF ? dc.g.getTransform() : null;
 
         dc.checkComposite(this);
-        if (DEBUG.Enabled) dc.recordDebug(this);
+        PaintStats.countDrawn(this);
 
         try {
 
@@ -6386,8 +6521,11 @@ public class LWComponent
             	}
             }
 
-            drawImpl(dc);
+            if (!hasFlag(Flag.RASTER_CACHE) || !RasterCache.draw(this, dc))
+                drawImpl(dc);
 
+        } catch (java.util.concurrent.CancellationException e) {
+            throw e; // a cancelled background render unwinding: nothing failed
         } catch (RuntimeException e) {
             Log.error("drawImpl failed: " + e);
             try {
@@ -6796,6 +6934,9 @@ public class LWComponent
 
     protected synchronized void notifyLWCListeners(LWCEvent e)
     {
+        if (rasterEntry != null)
+            RasterCache.invalidate(this);
+
         if (isDeleted() && !permitZombieEvent(e)) {
             // note: this test shortcuts much more detailed diagnostics in LWChangeSupport
             // for tracking zombie events -- comment out for advanced debugging
@@ -6921,7 +7062,18 @@ public class LWComponent
         // (as opposed to ontology style objects)
 
         // todo: this not a fast way to traverse & find what we need to change...
-        for (LWComponent dest : findPotentialStyleWatchers()) {
+        final boolean deferring = LayoutScheduler.begin();
+        try {
+            updateStyleWatchers(key, e, findPotentialStyleWatchers());
+        } finally {
+            if (deferring)
+                LayoutScheduler.end();
+        }
+    }
+
+    private void updateStyleWatchers(Key key, LWCEvent e, Collection<LWComponent> potentialWatchers)
+    {
+        for (LWComponent dest : potentialWatchers) {
             // we should never be point back to ourself, but we check just in case
             if (dest.mParentStyle == this && dest.supportsProperty(key) && dest != this) {
                 // Only copy over the style value if was previously set to our existing style value
@@ -7128,6 +7280,8 @@ public class LWComponent
 //         return this.selected;
 //     }
     public void setSelected(boolean selected) {
+        if (selected != isSelected())
+            RasterCache.invalidateAncestors(this); // we draw differently when selected
         setFlag(Flag.SELECTED, selected);
     }
     public final boolean isSelected() {
@@ -8058,8 +8212,61 @@ public class LWComponent
 
 
 
+    /**
+     * Report the heap retained by each of the basic component types: the growth in
+     * used heap after constructing (and holding) count instances of each, along with
+     * the average number of property slots they've overridden.
+     */
+    static void reportHeapFootprint(final int count) throws Exception
+    {
+        final Object[][] types = {
+            { "LWComponent",     LWComponent.class },
+            { "LWNode (raw)",    LWNode.class },
+            { "LWNode (label)",  "node" },
+            { "LWLink",          LWLink.class },
+            { "LWImage",         LWImage.class },
+            { "LWText",          LWText.class },
+            { "LWGroup",         LWGroup.class },
+        };
+
+        // warm up: make sure all classes, Keys & Properties are initialized before measuring
+        new LWNode("warmup"); new LWLink(); new LWImage(); new LWText(); new LWGroup();
+
+        System.out.format("%-16s %10s %8s\n", "type", "bytes/each", "slots");
+        for (Object[] type : types) {
+            final LWComponent[] held = new LWComponent[count];
+            final long before = usedHeap();
+            for (int i = 0; i < count; i++) {
+                if (type[1] == "node")
+                    held[i] = new LWNode("label " + i);
+                else
+                    held[i] = (LWComponent) ((Class)type[1]).newInstance();
+            }
+            final long after = usedHeap();
+            int slots = 0;
+            for (LWComponent c : held)
+                slots += c.getSlotOverrideCount();
+            System.out.format("%-16s %10d %8.1f\n", type[0], (after - before) / count, slots / (float) count);
+        }
+    }
+
+    private static long usedHeap() {
+        final Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try { Thread.sleep(50); } catch (InterruptedException e) {}
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
     public static void main(String args[]) throws Exception
     {
+        if (args.length > 0 && args[0].equals("-footprint")) {
+            // java -Djava.awt.headless=true tufts.vue.LWComponent -footprint [count]
+            reportHeapFootprint(args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+            return;
+        }
+
         VUE.init(args);
 
         /*
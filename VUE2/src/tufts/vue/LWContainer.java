@@ -19,6 +19,7 @@ import tufts.Util;
 import static tufts.Util.copy;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Shape;
@@ -44,6 +45,12 @@ public abstract class LWContainer extends LWComponent
 
     protected java.util.List<LWComponent> mChildren = NO_CHILDREN;
 
+    /** spatial index of our children for picking & paint culling: created on demand for large containers */
+    transient SpatialIndex mSpatialIndex;
+
+    /** incrementally maintained union of our children's paint bounds: only created by containers that need it (map layers) */
+    transient BoundsTracker mChildBounds;
+
     @Override
     public void XML_fieldAdded(Object context, String name, Object child) {
         super.XML_fieldAdded(context, name, child);
@@ -174,6 +181,10 @@ public abstract class LWContainer extends LWComponent
     /** called by LWChangeSupport, available here for override by parent classes that want to
      * monitor what's going on with their children */
     void broadcastChildEvent(LWCEvent e) {
+        if (mSpatialIndex != null)
+            mSpatialIndex.childEvent(e);
+        if (mChildBounds != null)
+            mChildBounds.childEvent(e);
         notifyLWCListeners(e);
     }
 
@@ -525,6 +536,15 @@ public abstract class LWContainer extends LWComponent
         //c.reparentNotify(this);
         ensureID(c);
 
+        if (mSpatialIndex != null)
+            mSpatialIndex.childAdded(c, context.getClass() != Integer.class);
+        if (mChildBounds != null)
+            mChildBounds.childAdded(c);
+
+        final LWMap map = getMap();
+        if (map != null)
+            map.getDescendentRegistry().childAdded(this, c);
+
         c.notifyHierarchyChanged();
         
     }
@@ -718,6 +738,15 @@ public abstract class LWContainer extends LWComponent
             */
         }
         //c.setParent(null);
+
+        if (mSpatialIndex != null)
+            mSpatialIndex.childRemoved(c);
+        if (mChildBounds != null)
+            mChildBounds.childRemoved(c);
+
+        final LWMap map = getMap();
+        if (map != null)
+            map.getDescendentRegistry().childRemoved(c);
     }
 
 
@@ -1183,6 +1212,7 @@ public abstract class LWContainer extends LWComponent
         notify(LWKey.HierarchyChanging);
         mChildren.remove(idx);
         mChildren.add(c);
+        invalidateSpatialIndex();
         // we layout the parent because a parent node may lay out
         // it's children in the order they appear in this list
         notify("hier.move.front", c);
@@ -1204,6 +1234,7 @@ public abstract class LWContainer extends LWComponent
         notify(LWKey.HierarchyChanging);
         mChildren.remove(idx);
         mChildren.add(0, c);
+        invalidateSpatialIndex();
         notify("hier.move.back", c);
         c.getParent().layoutChildren();
         return true;
@@ -1250,6 +1281,50 @@ public abstract class LWContainer extends LWComponent
     {
         //System.out.println("swapping positions " + i + " and " + j);
         mChildren.set(i, mChildren.set(j, mChildren.get(i)));
+        invalidateSpatialIndex();
+    }
+
+    /** must be called if mChildren is replaced or re-ordered other than via addChildImpl / removeChildImpl */
+    void invalidateSpatialIndex() {
+        if (mSpatialIndex != null)
+            mSpatialIndex.invalidate();
+    }
+
+    /** must be called if mChildren is replaced with a list that may hold different children */
+    void invalidateChildIndexes() {
+        invalidateSpatialIndex();
+        if (mChildBounds != null)
+            mChildBounds.invalidate();
+    }
+
+    /** the given child of ours, or something in it's subtree, may have changed bounds */
+    void childBoundsChanged(LWComponent child) {
+        if (mSpatialIndex != null)
+            mSpatialIndex.markChild(child);
+        if (mChildBounds != null)
+            mChildBounds.markChild(child);
+    }
+
+    /**
+     * The bounds of the given component have changed without necessarily issuing an event
+     * (e.g., a link with a moved endpoint, or a takeSize).  Let every ancestor know.
+     */
+    static void notifyBoundsChanged(LWComponent c) {
+        for (LWContainer p = c.getParent(); p != null; c = p, p = p.getParent())
+            p.childBoundsChanged(c);
+    }
+
+    /**
+     * @return our children that may intersect the given map region (possibly all of them), in child (z) order.
+     * Large containers answer this from a spatial index.
+     * @param include -- if one of our children, it is always included
+     */
+    List<LWComponent> getChildrenIntersecting(Rectangle2D region, LWComponent include) {
+        if (mChildren.size() < SpatialIndex.MIN_CHILDREN || !SpatialIndex.Enabled)
+            return mChildren;
+        if (mSpatialIndex == null)
+            mSpatialIndex = new SpatialIndex(this);
+        return mSpatialIndex.query(region, include);
     }
 
     // essentially this implements an "insert-after" of top relative to bottom
@@ -1287,6 +1362,7 @@ public abstract class LWContainer extends LWComponent
                 mChildren.add(onTop);
             else
                 mChildren.add(bottomIndex, onTop);
+            invalidateSpatialIndex();
             notify("hier.sequence");
         } else {
             if (DEBUG.PARENTING) out("ensurePaintSequence: already sequenced: " + onTop);
@@ -1334,7 +1410,32 @@ public abstract class LWContainer extends LWComponent
         if (hasChildren() == false)
             return;
 
-        for (LWComponent c : getChildren()) {
+        final List<LWComponent> children;
+        final BackgroundRenderer.Snapshot snapshot = dc.snapshot;
+
+        if (snapshot != null) {
+            // off the AWT thread: never touch the live child list or the spatial index
+            snapshot.checkCancelled();
+            children = snapshot.getChildren(this);
+        } else if (dc.isClipOptimized() && !(dc.zoom <= 1.0 && fullyContainsChildren() && dc.focal != this)) {
+            // only visit children that could possibly intersect the clip (see requiresPaintImpl
+            // for why we can't cull when we fully contain our children and are zoomed out)
+            children = getChildrenIntersecting(dc.getMasterClipRect(), dc.focal);
+            PaintStats.countCulled(getChildren().size() - children.size());
+        } else {
+            children = getChildren();
+        }
+
+        for (LWComponent c : children) {
+
+            if (snapshot != null) {
+                snapshot.checkCancelled();
+                if (c instanceof LWLink && ((LWLink)c).needsRecompute()) {
+                    // changed since the snapshot: computing it here would modify the model off
+                    // the AWT thread, and the change will have cancelled the render anyway
+                    continue;
+                }
+            }
 
             //-------------------------------------------------------
             // Using a requiresPaint is a huge speed optimzation.
@@ -1360,6 +1461,10 @@ public abstract class LWContainer extends LWComponent
         try {
             drawChild(c, dc);
         } catch (Throwable t) {
+            if (_dc.snapshot != null && _dc.snapshot.isCancelled()) {
+                // a cancelled background render: let it unwind all the way out (see BackgroundRenderer)
+                throw t instanceof CancellationException ? (CancellationException) t : new CancellationException();
+            }
             synchronized (System.err) {
                 tufts.Util.printStackTrace(t);
                 System.err.println("*** Exception drawing: " + c);
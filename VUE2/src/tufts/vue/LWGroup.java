@@ -61,7 +61,9 @@ public class LWGroup extends LWContainer
         disableProperty(LWKey.FontSize);
         disableProperty(LWKey.FontStyle);
         disableProperty(LWKey.TextColor);
-        
+
+        // groups are usually static, and may have many children to draw
+        setFlag(Flag.RASTER_CACHE);
     }
 
     @Override
@@ -103,6 +105,7 @@ public class LWGroup extends LWContainer
             System.err.println("null bounds in LWGroup.useSelection");
         }
         super.mChildren = selection;
+        invalidateChildIndexes();
     }
 
     /**
@@ -554,6 +557,17 @@ public class LWGroup extends LWContainer
     }
     
     private void translateSelection(double dx, double dy)
+    {
+        final boolean batched = LWLink.beginTranslation(getChildren(), dx, dy);
+        try {
+            translateSelectionChildren(dx, dy);
+        } finally {
+            if (batched)
+                LWLink.endTranslation();
+        }
+    }
+
+    private void translateSelectionChildren(double dx, double dy)
     {
         for (LWComponent c : getChildren()) {
 
@@ -735,8 +749,10 @@ public class LWGroup extends LWContainer
             fill = getFillColor();
         }
 
+        final boolean filled = fill != null && fill.getAlpha() != 0;
+
         if (!isFiltered()) {
-            if (fill != null && fill.getAlpha() != 0)  {
+            if (filled)  {
                 dc.g.setColor(fill);
                 dc.g.fill(getZeroShape());
             }
@@ -746,8 +762,14 @@ public class LWGroup extends LWContainer
                 dc.g.draw(getZeroShape());
             }
         }
-        
-        drawChildren(dc);
+
+        // LOD: a filled group too small to make out is drawn as just the fill.
+        // Transparent groups are only a frame around their children, so those
+        // children are always drawn, and can simplify themselves.
+        if (filled && !isFiltered() && dc.focal != this && dc.canSimplify(this.height))
+            ; // don't draw children
+        else
+            drawChildren(dc);
 
 //         if (FancyGroups)
 //             // draw fill, border & children
@@ -723,11 +723,23 @@ public class LWImage extends LWComponent
             return this;
     }
 
+    /**
+     * Do what drawing us may do to the model (see drawImage), so that we can then be
+     * drawn off the AWT thread.  AWT thread only: see BackgroundRenderer.Snapshot.
+     */
+    void prepareToDraw()
+    {
+        refLoaded();
+        if (hasFlag(Flag.UNSIZED))
+            guessAtBestSize(getResource());
+    }
+
     private void drawImage(DrawContext dc)
     {
-        final ImageRef ref = refLoaded();
+        // a background render has already prepared us (see prepareToDraw)
+        final ImageRef ref = dc.snapshot != null ? ref() : refLoaded();
         
-        if (hasFlag(Flag.UNSIZED)) {
+        if (hasFlag(Flag.UNSIZED) && dc.snapshot == null) {
             // seems a bit overkill, but oddly needed if the image is already in the cache, as we
             // don't currently immediately pull the aspect from the icon image size data in the
             // cache at init time (we're still waiting for a draw to do that), which we should be
@@ -918,10 +930,11 @@ public class LWImage extends LWComponent
     // old experimental on-map text label code
     //----------------------------------------------------------------------------------------
     
-    @Override protected TextBox getLabelBox()
+    @Override protected LabelBox getLabelBox()
     {
         if (super.labelBox == null) {
-            initTextBoxLocation(super.getLabelBox());
+            final LabelBox box = super.getLabelBox();
+            box.setBoxLocation(0, -box.getHeight());
             //layoutImpl("LWImage.labelBox-init");
         }
         return this.labelBox;
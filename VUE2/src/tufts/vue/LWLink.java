@@ -156,7 +156,7 @@ public class LWLink extends LWComponent
             final Object old = new Point2D.Float(this.x, this.y);
             this.x = newX;
             this.y = newY;
-            link.mRecompute = true;
+            link.invalidateGeometry();
             link.notify(key, old);
         }
         
@@ -242,6 +242,24 @@ public class LWLink extends LWComponent
     /** has an endpoint moved since we last computed shape? */
     private transient boolean mRecompute;
 
+    /**
+     * Everything our computed geometry was last derived from: the center, transform,
+     * size & shape of what's at each end (or the location of a free end), the curve
+     * control points, the stroke width, and the size of the label & icons.  When a
+     * recompute is requested, but none of this has actually changed (e.g., an endpoint
+     * was laid out, but didn't move or resize), the current geometry -- endpoints, curve,
+     * flattened curve segments, label position & bounds -- is simply kept.
+     */
+    private transient final double[] mStamp = new double[STAMP_SIZE];
+    private transient Shape mStampHeadShape, mStampTailShape;
+    /** false if mStamp is out of date: something it doesn't track has changed */
+    private transient boolean mStampValid;
+
+    private static final int END_STAMP = 11;
+    private static final int CURVE_STAMP = END_STAMP * 2;
+    private static final int LABEL_STAMP = CURVE_STAMP + 6;
+    private static final int STAMP_SIZE = LABEL_STAMP + 4;
+
     private transient LWIcon.Block mIconBlock =
         new LWIcon.Block(this,
                          11, 9,
@@ -347,7 +365,7 @@ public class LWLink extends LWComponent
     @Override
     protected void setParent(LWContainer newParent) {
         super.setParent(newParent);
-        mRecompute = true;
+        invalidateGeometry();
     }
 
     
@@ -369,7 +387,7 @@ public class LWLink extends LWComponent
         private boolean vueHeadOffFromCSS = false;
         
         final Property getSlot(LWLink l) {
-            return l.mArrowState; // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
+            return SLOT_LinkArrows; // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
         }
         
         public boolean setValueFromCSS(LWLink c, String cssKey, String cssValue) {
@@ -416,7 +434,7 @@ public class LWLink extends LWComponent
         
         @Override
         final Property getSlot(LWLink l) {
-            return l.mArrowState; // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
+            return SLOT_LinkArrows; // if getting a type-mismatch on mLine, feed this file to javac with LWComponent.java at the same time
         }
         
         @Override
@@ -430,8 +448,8 @@ public class LWLink extends LWComponent
         }
     }; */
     
-    private final IntProperty mArrowState = new IntProperty(KEY_LinkArrows, ARROW_TAIL) {
-            void onChange() { mRecompute = true; layout(); }
+    private static final IntProperty SLOT_LinkArrows = new IntProperty(KEY_LinkArrows, ARROW_TAIL) {
+            void onChange(LWComponent c) { ((LWLink)c).invalidateGeometry(); c.layout(); }
         };
         
     public static final Key KEY_LinkShape = new Key<LWLink,Integer>("link.shape") { // do we want this to be a KeyType.STYLE? could argue either way...
@@ -606,7 +624,7 @@ public class LWLink extends LWComponent
             head.node.removeLinkRef(this);
         final LWComponent oldHead = head.node;
         setPersistHead(c);
-        mRecompute = true;
+        invalidateGeometry();
         addCleanupTask(this);        
         if (alive()) notify("link.head.connect", new Undoable(oldHead) { void undo() { setHead(oldHead); }} );
     }
@@ -619,7 +637,7 @@ public class LWLink extends LWComponent
             tail.node.removeLinkRef(this);            
         final LWComponent oldTail = tail.node;
         setPersistTail(c);
-        mRecompute = true;
+        invalidateGeometry();
         addCleanupTask(this);        
         if (alive()) notify("link.tail.connect", new Undoable(oldTail) { void undo() { setTail(oldTail); }} );
     }
@@ -1373,7 +1391,7 @@ public class LWLink extends LWComponent
         Object old = new Integer(mCurveControls);
         mCurveControls = newControlCount;
         //this.mControlPoints = new LWSelection.Controller[MAX_CONTROL];
-        mRecompute = true;
+        invalidateGeometry();
         notify(LWKey.LinkShape, old);
     }
 
@@ -1480,7 +1498,7 @@ public class LWLink extends LWComponent
         super.restoreToModel();
         if (head.hasNode()) head.node.addLinkRef(this);
         if (tail.hasNode()) tail.node.addLinkRef(this);
-        mRecompute = true; // for some reason cached label position is off on restore
+        invalidateGeometry(); // for some reason cached label position is off on restore
     }
 
     private LWComponent parentInParentChildLink()
@@ -1667,23 +1685,36 @@ public class LWLink extends LWComponent
     /** compute shortest distance from the link to the given point (the nearest segment of the line) */
     public float distanceToEdgeSq(float x, float y) {
 
+        if (mCurve != null)
+            return curveDistanceSq(x, y, 0);
+        else
+            return (float) mLine.ptSegDistSq(x, y);
+    }
+
+    /**
+     * @return the squared distance from the given parent-local point to the nearest
+     * segment of our cached flattened curve, or the first distance found that's
+     * within hitDistSq, if any.
+     */
+    private float curveDistanceSq(float x, float y, float hitDistSq)
+    {
+        final float[] points = mPoints;
+        final int last = mLastPoint;
+        float x1 = head.x;
+        float y1 = head.y;
         double minDistSq = Float.MAX_VALUE;
-        
-        if (mCurve != null) {
-            
-            double segDistSq;
-            for (Line2D seg : new SegIterator()) {
-                segDistSq = seg.ptSegDistSq(x, y);
-                if (segDistSq < minDistSq)
-                    minDistSq = segDistSq;
-            }
-            
-        } else {
-            minDistSq = mLine.ptSegDistSq(x, y);
+        for (int i = 0; i < last; i += 2) {
+            final float x2 = points[i];
+            final float y2 = points[i + 1];
+            final double distSq = Line2D.ptSegDistSq(x1, y1, x2, y2, x, y);
+            if (distSq <= hitDistSq)
+                return (float) distSq;
+            if (distSq < minDistSq)
+                minDistSq = distSq;
+            x1 = x2;
+            y1 = y2;
         }
-
         return (float) minDistSq;
-        
     }
 
     @Override
@@ -1747,17 +1778,12 @@ public class LWLink extends LWComponent
         float minDistSq = Float.MAX_VALUE;
         
         if (mCurve != null) {
-            float distSq;
-
             // Check the distance from all the segments in the flattened curve
-            for (Line2D seg : new SegIterator()) {
-                distSq = (float) seg.ptSegDistSq(x, y);
-                if (distSq <= hitDistSq)
-                    return 0;
-                else if (distSq < minDistSq)
-                    minDistSq = distSq;
-            }
-            
+            final float distSq = curveDistanceSq(x, y, hitDistSq);
+            if (distSq <= hitDistSq)
+                return 0;
+            else
+                minDistSq = distSq;
         } else {
             final float distSq = (float) mLine.ptSegDistSq(x, y);
             if (distSq <= hitDistSq)
@@ -1801,6 +1827,7 @@ public class LWLink extends LWComponent
         if (w <= 0f)
             w = 0.1f;
         super.setStrokeWidth(w);
+        mRecompute = true; // our bounds include the stroke
     }
     public int incrementWeight()
     {
@@ -1955,11 +1982,15 @@ public class LWLink extends LWComponent
     {
         final boolean wasDirty = this.mRecompute; // this is for debug only: remove eventually
 
-        if (mRecompute || (movingSrc != null && hasAncestor(movingSrc) && end.hasAncestor(movingSrc))) {
+        if (movingSrc != null && hasAncestor(movingSrc) && end.hasAncestor(movingSrc)) {
             // we can skip the update: the link and the endpoint are both moving
-            // inside a collective parent context (or we already marked)
+            // inside a collective parent context
+        } else if (Batch != null && Batch.defer(this)) {
+            // we'll be updated once when the translation batch ends
         } else {
             mRecompute = true;
+            // our bounds will change without an event: let any spatial index know
+            LWContainer.notifyBoundsChanged(this);
         }
 
         if (DEBUG.CONTAINMENT) {
@@ -2218,9 +2249,11 @@ public class LWLink extends LWComponent
         if (mXMLRestoreUnderway)
             ; // do nothing
         else if (getParent() == null)
-            mRecompute = true; // mark for later
-        else
+            invalidateGeometry(); // mark for later
+        else {
+            mStampValid = false;
             computeLink(); // recompute now
+        }
     }
     
 
@@ -2319,6 +2352,9 @@ public class LWLink extends LWComponent
         
         mRecompute = false;
 
+        if (Batch != null)
+            Batch.computed(this);
+
         if (DEBUG.LINK) {
             //Util.printStackTrace("computeLink " + this);
             System.out.println("computeLink " + this);
@@ -2335,6 +2371,12 @@ public class LWLink extends LWComponent
         
         final LWContainer parent = getParent();
 
+        // A free end is it's own center.  We don't store the centers of connected ends
+        // into head & tail until we know we need to recompute from them, as head & tail
+        // currently hold the connection points computed from the last centers.
+        final Point2D.Float headCenter = new Point2D.Float(head.x, head.y);
+        final Point2D.Float tailCenter = new Point2D.Float(tail.x, tail.y);
+
         if (head.hasNode()) {
 
             // If an endpoint is a link, make sure it's currently computed so we know exactly
@@ -2351,8 +2393,8 @@ public class LWLink extends LWComponent
             if (!mXMLRestoreUnderway && head.node instanceof LWLink && ((LWLink)head.node).mRecompute)
                 ((LWLink)head.node).computeLink();
             
-            // This will store the parent-local center x/y in head:
-            head.node.getLinkConnectionCenterRelativeTo(head.getPoint(), parent);
+            // This will store the parent-local center x/y in headCenter:
+            head.node.getLinkConnectionCenterRelativeTo(headCenter, parent);
         }
         if (tail.hasNode()) {
             
@@ -2360,8 +2402,8 @@ public class LWLink extends LWComponent
             if (!mXMLRestoreUnderway && tail.node instanceof LWLink && ((LWLink)tail.node).mRecompute)
                 ((LWLink)tail.node).computeLink();
             
-            // This will store the parent-local center x/y in tail:
-            tail.node.getLinkConnectionCenterRelativeTo(tail.getPoint(), parent);
+            // This will store the parent-local center x/y in tailCenter:
+            tail.node.getLinkConnectionCenterRelativeTo(tailCenter, parent);
         }
 
         // Note, if what's at the endpoint we're connecting to is a LWLink, we do NOT
@@ -2370,10 +2412,6 @@ public class LWLink extends LWComponent
         // midpoint of the first sub-division -- the same place we put the label if
         // there is one).
 
-        //-----------------------------------------------------------------------------
-        // PROCESS THE HEAD END
-        //-----------------------------------------------------------------------------
-
         final Shape headShape;
         final AffineTransform headTransform;
         if (head.node == null || head.node instanceof LWLink) {
@@ -2395,6 +2433,33 @@ public class LWLink extends LWComponent
             
         }
 
+        final Shape tailShape;
+        final AffineTransform tailTransform;
+        if (tail.node == null || tail.node instanceof LWLink) {
+            tailShape = null;
+            tailTransform = null;
+        } else {
+            // use zero/raw shape because we use the relative transform in computeIntersection
+            tailShape = tail.node.getZeroShape(); 
+            tailTransform = tail.node.getRelativeTransform(parent);
+        }
+        
+        if (!stampGeometry(headCenter, headShape, headTransform, tailCenter, tailShape, tailTransform)) {
+            // Nothing we compute from has changed since we were last computed (e.g., an
+            // endpoint was laid out, but didn't move or resize): keep what we've got.
+            if (DEBUG.LINK) System.out.println("computeLink " + this + " unchanged");
+            return;
+        }
+
+        head.x = headCenter.x;
+        head.y = headCenter.y;
+        tail.x = tailCenter.x;
+        tail.y = tailCenter.y;
+
+        //-----------------------------------------------------------------------------
+        // PROCESS THE HEAD END
+        //-----------------------------------------------------------------------------
+
         if (headShape != null) {
             final float srcX, srcY;
             if (mCurveControls == 1) {
@@ -2420,17 +2485,6 @@ public class LWLink extends LWComponent
         // PROCESS THE TAIL END
         //-----------------------------------------------------------------------------
         
-        final Shape tailShape;
-        final AffineTransform tailTransform;
-        if (tail.node == null || tail.node instanceof LWLink) {
-            tailShape = null;
-            tailTransform = null;
-        } else {
-            // use zero/raw shape because we use the relative transform in computeIntersection
-            tailShape = tail.node.getZeroShape(); 
-            tailTransform = tail.node.getRelativeTransform(parent);
-        }
-        
         if (tailShape != null) {
             final float srcX, srcY;
             if (mCurveControls == 1) {
@@ -2451,7 +2505,89 @@ public class LWLink extends LWComponent
                  tail.y = intersection[1];
             }
         }
+
+        computeShape();
+        stampLabel(mStamp); // record the label & icon sizes as they were just laid out
+    }
+
+    /** mark us for a full re-compute, even if nothing at our endpoints has changed */
+    private void invalidateGeometry() {
+        mStampValid = false;
+        mRecompute = true;
+    }
+
+    /**
+     * Record the given endpoint state, along with everything else our geometry is
+     * computed from, in mStamp.
+     * @return true if anything has changed since it was last recorded
+     */
+    private boolean stampGeometry(Point2D.Float headCenter, Shape headShape, AffineTransform headTransform,
+                                  Point2D.Float tailCenter, Shape tailShape, AffineTransform tailTransform)
+    {
+        final double[] s = mStamp;
+        
+        boolean changed = !mStampValid || headShape != mStampHeadShape || tailShape != mStampTailShape;
+
+        changed |= stampEnd(s, 0, head.node, headCenter, headShape, headTransform);
+        changed |= stampEnd(s, END_STAMP, tail.node, tailCenter, tailShape, tailTransform);
+
+        int i = CURVE_STAMP;
+        changed |= stamp(s, i++, mCurveControls);
+        if (mCurveControls == 1) {
+            changed |= stamp(s, i++, mQuad.ctrlx) | stamp(s, i++, mQuad.ctrly);
+        } else if (mCurveControls == 2) {
+            changed |= stamp(s, i++, mCubic.ctrlx1) | stamp(s, i++, mCubic.ctrly1)
+                     | stamp(s, i++, mCubic.ctrlx2) | stamp(s, i++, mCubic.ctrly2);
+        }
+        changed |= stamp(s, LABEL_STAMP - 1, getStrokeWidth());
+        changed |= stampLabel(s);
+
+        mStampHeadShape = headShape;
+        mStampTailShape = tailShape;
+        mStampValid = true;
         
+        return changed;
+    }
+
+    private static boolean stampEnd(double[] s, int i, LWComponent node, Point2D.Float center, Shape shape, AffineTransform tx)
+    {
+        boolean changed = stamp(s, i++, center.x) | stamp(s, i++, center.y);
+        if (shape != null) {
+            changed |=
+                  stamp(s, i++, tx.getScaleX())     | stamp(s, i++, tx.getShearY())
+                | stamp(s, i++, tx.getShearX())     | stamp(s, i++, tx.getScaleY())
+                | stamp(s, i++, tx.getTranslateX()) | stamp(s, i++, tx.getTranslateY())
+                | stamp(s, i++, node.getWidth())    | stamp(s, i++, node.getHeight())
+                | stamp(s, i++, shape.hashCode()); // for shapes that are mutated in place, this tracks the frame, arcs, etc
+        }
+        return changed;
+    }
+
+    /** the label & icons are laid out by computeShape, so these are also re-stamped once it's done */
+    private boolean stampLabel(double[] s)
+    {
+        final boolean hasLabelBox = labelBox != null && hasLabel();
+        final boolean hasIcons = mIconBlock.isShowing();
+        int i = LABEL_STAMP;
+        return stamp(s, i++, hasLabelBox ? labelBox.getBoxWidth() : -1)
+             | stamp(s, i++, hasLabelBox ? labelBox.getBoxHeight() : -1)
+             | stamp(s, i++, hasIcons ? mIconBlock.width : -1)
+             | stamp(s, i++, hasIcons ? mIconBlock.height : -1);
+    }
+
+    private static boolean stamp(double[] s, int i, double value) {
+        if (s[i] == value)
+            return false;
+        s[i] = value;
+        return true;
+    }
+
+    /**
+     * Compute everything that follows from the current head & tail connection points
+     * and control points: the line or curve, rotations, label placement and bounds.
+     */
+    private void computeShape()
+    {
         mCenterX = head.x - (head.x - tail.x) / 2;
         mCenterY = head.y - (head.y - tail.y) / 2;
         
@@ -2558,6 +2694,135 @@ public class LWLink extends LWComponent
         
     }
 
+    //-----------------------------------------------------------------------------
+    // Translation batches
+    //-----------------------------------------------------------------------------
+
+    /** the currently open translation batch, if any */
+    private static TranslationBatch Batch;
+
+    /**
+     * Begin a batch of translations of the given components (and implicitly all their
+     * descendents) by the given absolute map amount, as when dragging a selection.
+     * Until endTranslation is called, endpoint-moved notifications for links connected
+     * to anything moving are deferred, so each such link is updated exactly once for the
+     * whole batch, no matter how many of it's endpoints move, and no matter how many
+     * times it's geometry is asked for in the meantime (e.g., by viewers on each event).
+     *
+     * At the end of the batch, links for which everything moves by the same amount --
+     * both endpoints, and for curves, the link itself (and so it's control points) -- are
+     * simply shifted, skipping the endpoint intersections entirely.  Everything else is
+     * marked for a full re-compute as usual.
+     *
+     * Batches are for use on the AWT thread, and don't nest.
+     *
+     * @return true if a batch was started: only then should endTranslation be called
+     */
+    static boolean beginTranslation(Collection<LWComponent> moving, double mapDX, double mapDY) {
+        if (Batch != null)
+            return false;
+        Batch = new TranslationBatch(moving, mapDX, mapDY);
+        return true;
+    }
+
+    /** apply any deferred link updates and close the current translation batch */
+    static void endTranslation() {
+        final TranslationBatch batch = Batch;
+        Batch = null;
+        if (batch != null)
+            batch.apply();
+    }
+
+    private static final class TranslationBatch {
+        final Thread thread = Thread.currentThread();
+        final Set<LWComponent> moving = Collections.newSetFromMap(new IdentityHashMap());
+        /** all links connected to anything moving -> were they computed (not marked for recompute) at batch start */
+        final Map<LWLink,Boolean> connected = new IdentityHashMap();
+        final List<LWLink> deferred = new ArrayList();
+        final Set<LWLink> deferredSet = Collections.newSetFromMap(new IdentityHashMap());
+        final double dx, dy;
+
+        TranslationBatch(Collection<LWComponent> movers, double dx, double dy) {
+            this.dx = dx;
+            this.dy = dy;
+            moving.addAll(movers);
+            for (LWComponent c : movers)
+                collectLinks(c);
+        }
+
+        private void collectLinks(LWComponent c) {
+            for (LWLink link : c.getLinks())
+                if (!connected.containsKey(link))
+                    connected.put(link, link.mRecompute ? Boolean.FALSE : Boolean.TRUE);
+            if (c.hasChildren())
+                for (LWComponent child : c.getChildren())
+                    collectLinks(child);
+        }
+
+        /** @return true if the endpoint update for the given link has been deferred until the end of the batch */
+        boolean defer(LWLink link) {
+            if (thread != Thread.currentThread() || !connected.containsKey(link))
+                return false;
+            if (deferredSet.add(link))
+                deferred.add(link);
+            return true;
+        }
+
+        /** the given link has been computed mid-batch: it's current geometry can no longer just be shifted */
+        void computed(LWLink link) {
+            if (connected.containsKey(link))
+                connected.put(link, Boolean.FALSE);
+        }
+
+        /** @return true if c or any of it's ancestors is moving */
+        boolean isMoving(LWComponent c) {
+            for (; c != null; c = c.getParent())
+                if (moving.contains(c))
+                    return true;
+            return false;
+        }
+
+        void apply() {
+            for (LWLink link : deferred) {
+                if (isShiftable(link))
+                    link.shiftComputed(dx, dy);
+                else
+                    link.mRecompute = true;
+                LWContainer.notifyBoundsChanged(link);
+            }
+            if (DEBUG.LINK || DEBUG.PERF) Log.debug("translation batch: " + moving.size() + " moving; "
+                                                    + connected.size() + " connected links; "
+                                                    + deferred.size() + " updated");
+        }
+
+        private boolean isShiftable(LWLink link) {
+            if (connected.get(link) != Boolean.TRUE || link.getParent() == null)
+                return false;
+            final LWComponent h = link.head.node, t = link.tail.node;
+            if (h == null || t == null || h == t || h instanceof LWLink || t instanceof LWLink)
+                return false;
+            if (isMoving(link.getParent()))
+                return false; // link-local coordinates are moving: let it recompute
+            if (link.mCurveControls > 0 && !moving.contains(link))
+                return false; // endpoints moving, but not the control points
+            return isMoving(h) && isMoving(t);
+        }
+    }
+
+    /** everything we're attached to has moved by the given map amount: shift our computed geometry to match */
+    private void shiftComputed(double mapDX, double mapDY) {
+        final double scale = getParent().getMapScale();
+        final float dx = (float) (mapDX / scale);
+        final float dy = (float) (mapDY / scale);
+        head.x += dx;
+        head.y += dy;
+        tail.x += dx;
+        tail.y += dy;
+        mRecompute = false;
+        mStampValid = false; // we've moved without re-stamping
+        computeShape();
+    }
+
     private Rectangle2D.Float computeCurvedLink()
     {
         // We compute the bounds ourselves, as the default bounds fetchers for
@@ -2570,7 +2835,7 @@ public class LWLink extends LWComponent
         
         if (mCurveControls == 1) {
 
-            if (false && (mArrowState.get() & ARROW_HEAD) != 0) {
+            if (false && (SLOT_LinkArrows.get(this) & ARROW_HEAD) != 0) {
                 // This backs up the curve endpoint to the tail of the arrow
                 // This will slightly move the curve, but it keeps the connection
                 // to the arrow much cleaner.
@@ -2751,8 +3016,8 @@ public class LWLink extends LWComponent
 //         return radians;
     }
 
-    public void setArrowState(int arrowState) { mArrowState.set(arrowState); }
-    public int getArrowState() { return mArrowState.get(); }
+    public void setArrowState(int arrowState) { SLOT_LinkArrows.set(this, arrowState); }
+    public int getArrowState() { return SLOT_LinkArrows.get(this); }
     public void rotateArrowState() {
         int newState = getArrowState() + 1;
         if (newState > ARROW_BOTH)
@@ -2799,12 +3064,12 @@ public class LWLink extends LWComponent
         // we currently use the stroke width drawn around the arrows
         // to keep them reasonably sized relative to the line, but
         // we don't want any dash-pattern in the stroke for this
-        if (mStrokeStyle.get() == StrokeStyle.SOLID)
+        if (SLOT_StrokeStyle.get(this) == StrokeStyle.SOLID)
             dc.g.setStroke(this.stroke);
         else
-            dc.g.setStroke(StrokeStyle.SOLID.makeStroke(mStrokeWidth.get()));
+            dc.g.setStroke(StrokeStyle.SOLID.makeStroke(SLOT_StrokeWidth.get(this)));
             
-        if ((mArrowState.get() & ARROW_HEAD) != 0) {
+        if ((SLOT_LinkArrows.get(this) & ARROW_HEAD) != 0) {
             dc.g.setColor(getStrokeColor());
             dc.g.translate(head.x, head.y);
             dc.g.rotate(head.rotation);
@@ -2827,7 +3092,7 @@ public class LWLink extends LWComponent
             dc.g.setTransform(savedTransform);
         }
         
-        if ((mArrowState.get() & ARROW_TAIL) != 0) {
+        if ((SLOT_LinkArrows.get(this) & ARROW_TAIL) != 0) {
             dc.g.setColor(getStrokeColor());
             // draw the second arrow
             //dc.g.translate(line.getX2(), line.getY2());
@@ -2933,10 +3198,18 @@ public class LWLink extends LWComponent
             return false;
     }
 
+    /** @return true if our geometry is out of date, and will be recomputed on next use */
+    boolean needsRecompute() {
+        return mRecompute;
+    }
+
     @Override protected void drawImpl(DrawContext dc)
     {
-        if (mRecompute)
+        if (mRecompute) {
+            if (dc.snapshot != null)
+                return; // never compute off the AWT thread: see BackgroundRenderer
             computeLink();
+        }
 
         if (isSelected() && dc.isInteractive()) {
             dc.g.setColor(COLOR_HIGHLIGHT);
@@ -3039,16 +3312,19 @@ public class LWLink extends LWComponent
 
         dc.g.setColor(getStrokeColor());
 
+        float strokeWidth = SLOT_StrokeWidth.get(this);
+        if (strokeWidth <= 0)
+            strokeWidth = 0.5f;
+
+        // LOD: if our arrows would be too small to make out, we're just a line
+        final boolean simplified = dc.canSimplify(ArrowBase * 1.3f + strokeWidth);
+
         //-------------------------------------------------------
         // Draw arrow heads if there are any
         //-------------------------------------------------------
         
-        if (mArrowState.get() != 0) {
-            if (dc.zoom <= 0.125 && dc.isLODEnabled())
-                ; // don't draw arrows
-            else
-                drawArrows(dc);
-        }
+        if (SLOT_LinkArrows.get(this) != 0 && !simplified)
+            drawArrows(dc);
         
         //-------------------------------------------------------
         // Set the stroke width
@@ -3058,25 +3334,24 @@ public class LWLink extends LWComponent
         // modifying the drawn stroke width, as well as the text box.
         // -------------------------------------------------------
 
-        float strokeWidth = mStrokeWidth.get();
-        if (strokeWidth <= 0)
-            strokeWidth = 0.5f;
-
 //         if (dc.drawAbsoluteLinks) {
 //             //dc.setAbsoluteStroke(stroke.getLineWidth() * getMapScale());
 //             g.setStroke(mStrokeStyle.get().makeStroke(strokeWidth / g.getTransform().getScaleX()));
 //         } else {
-        if (stroke == STROKE_ZERO) { // mStrokeWidth.get() was 0
+        if (simplified && strokeWidth * dc.getAbsoluteScale() <= 1) {
+            // LOD: dash patterns & sub-pixel widths can't be made out anyway: hairlines are fastest
+            dc.g.setStroke(STROKE_ZERO);
+        } else if (stroke == STROKE_ZERO) { // SLOT_StrokeWidth.get(this) was 0
             // never draw an invisible link: draw zero strokes at small absolute scale tho
             float curScale = (float) dc.g.getTransform().getScaleX();
             if (curScale > 1)
                 strokeWidth /= curScale;
-            dc.g.setStroke(mStrokeStyle.get().makeStroke(strokeWidth));
+            dc.g.setStroke(SLOT_StrokeStyle.get(this).makeStroke(strokeWidth));
         } else {
             dc.g.setStroke(stroke);
         }
 
-        drawStroke(dc);
+        drawStroke(dc, simplified);
         
         if (!isNestedLink())
             drawLinkDecorations(dc);
@@ -3113,9 +3388,13 @@ public class LWLink extends LWComponent
         
     }
 
-    private void drawStroke(DrawContext dc)
+    /**
+     * @param simplified if true, draw any curve that wouldn't visibly differ
+     * from a straight line as a straight line
+     */
+    private void drawStroke(DrawContext dc, boolean simplified)
     {
-        if (mCurve == null) {
+        if (mCurve == null || (simplified && dc.canSimplify(getCurveDeviation()))) {
             
             //-------------------------------------------------------
             // draw the line
@@ -3192,6 +3471,20 @@ public class LWLink extends LWComponent
         }
     }
 
+    /** @return an upper bound on how far our curve strays from the straight line between it's endpoints */
+    private float getCurveDeviation()
+    {
+        // a quad curve reaches half-way to it's control point, and a cubic
+        // at most 3/4 of the way to the furthest of it's control points
+        if (mCurve == mQuad)
+            return (float) mLine.ptLineDist(mQuad.getCtrlPt()) / 2;
+        else if (mCurve == mCubic)
+            return (float) Math.max(mLine.ptLineDist(mCubic.getCtrlP1()),
+                                    mLine.ptLineDist(mCubic.getCtrlP2())) * 0.75f;
+        else
+            return 0;
+    }
+
     /** Split the curves into green & red halves for debugging */
     private void drawDebugCurve(DrawContext dc)
     {
@@ -3205,7 +3498,7 @@ public class LWLink extends LWComponent
             QuadCurve2D right = new QuadCurve2D.Float();
             mQuad.subdivide(left,right);
             g.setColor(Color.green);
-            g.setStroke(new BasicStroke(mStrokeWidth.get()+4));
+            g.setStroke(new BasicStroke(SLOT_StrokeWidth.get(this)+4));
             g.draw(left);
             g.setColor(Color.red);
             g.draw(right);
@@ -3214,7 +3507,7 @@ public class LWLink extends LWComponent
             CubicCurve2D right = new CubicCurve2D.Float();
             mCubic.subdivide(left,right);
             g.setColor(Color.green);
-            g.setStroke(new BasicStroke(mStrokeWidth.get()+4));
+            g.setStroke(new BasicStroke(SLOT_StrokeWidth.get(this)+4));
             g.draw(left);
             g.setColor(Color.red);
             g.draw(right);
@@ -3255,13 +3548,12 @@ public class LWLink extends LWComponent
         //-------------------------------------------------------
         
         
-        if (DisplayLabels && hasLabel() && getLabelBox().getParent() == null) {
-            // todo perf minor: only get/check label box once (also done in drawLabel)
-            // only draw if we have a label, and it's not an active edit on the map (parent == null)
+        if (DisplayLabels && hasLabel() && !dc.canSkipText(SLOT_FontSize.get(this)) && !isEditingLabel()) {
+            // only draw if we have a label, and it's not an active edit on the map
             drawLabel(dc);
         }
 
-        if (mIconBlock.isShowing() && dc.zoom > ICON_BLOCK_LOD_ZOOM) { // LOD
+        if (mIconBlock.isShowing() && dc.zoom > ICON_BLOCK_LOD_ZOOM && !dc.canSkipText(LWIcon.FONT_ICON.getSize())) { // LOD
             //dc.g.setStroke(STROKE_HALF);
             //dc.g.setColor(Color.gray);
             //dc.g.draw(mIconBlock);
@@ -3290,14 +3582,12 @@ public class LWLink extends LWComponent
 
     private void drawLabel(DrawContext dc)
     {
-        final TextBox textBox = getLabelBox();
+        final LabelBox textBox = getLabelBox();
         
         // We force a fill color on link labels to make sure we create
         // a contrast between the text and the background, which otherwise
         // would include the usually black link stroke in the middle, obscuring
         // some of the text.
-        // todo perf: only set opaque-bit/background once/when it changes.
-        // (probably put a textbox factory on LWComponent and override in LWLink)
 
         //                 if (fillColor == null || !dc.isInteractive()) {
         //                     textBox.setOpaque(false);
@@ -3306,10 +3596,9 @@ public class LWLink extends LWComponent
         //                     textBox.setOpaque(true);
         //                 }
 
-        if (dc.isDraftQuality()) {
-            textBox.setBackground(null);
-            textBox.setOpaque(false);
-        } else {
+        Color labelFill = null;
+
+        if (!dc.isDraftQuality()) {
             Color textFill = getRenderFillColor(dc);
             if (textFill != null || dc.isInteractive()) {
 
@@ -3320,13 +3609,8 @@ public class LWLink extends LWComponent
                         textFill = Util.alphaMix(textFill, fill);
                 }
                 
-                textBox.setBackground(textFill == null ? Color.white : textFill);
-                textBox.setOpaque(true);
+                labelFill = (textFill == null ? Color.white : textFill);
                 //if (DEBUG.IMAGE) out("textFill: " + textFill);
-            } else {
-                textBox.setBackground(null);
-                textBox.setOpaque(false);
-                //if (DEBUG.Enabled) Util.printStackTrace(this + "; FYI: null (transparent) text fill");
             }
         }
                 
@@ -3334,7 +3618,7 @@ public class LWLink extends LWComponent
         final float ly = textBox.getBoxY();
         
         dc.g.translate(lx, ly);
-        textBox.draw(dc);
+        textBox.draw(dc, labelFill);
 
         if (DEBUG.LINK && DEBUG.META) {
             dc.g.setColor(Color.red);
@@ -3425,8 +3709,6 @@ public class LWLink extends LWComponent
         // Always call LWIcon.Block.layout first to have it compute size/determine if showing
         // before asking it if isShowing()
 
-        TextBox textBox;
-        
         boolean vertical = false;
         if (hasLabel() && !putBelow) {
             // Check to see if we want to make it vertical
@@ -3622,7 +3904,7 @@ public class LWLink extends LWComponent
     @Override
     public String paramString()
     {
-        String s = String.format("%s %.0f,%.0f-->%.0f,%.0f", mStrokeStyle.get(), head.x, head.y, tail.x, tail.y);
+        String s = String.format("%s %.0f,%.0f-->%.0f,%.0f", SLOT_StrokeStyle.get(this), head.x, head.y, tail.x, tail.y);
         if (getControlCount() == 1)
             s += String.format(" (%.0f,%.0f)", mQuad.ctrlx,  mQuad.ctrly);
         else if (getControlCount() == 2)
@@ -110,6 +110,8 @@ public class LWMap extends LWContainer
 
     //private transient boolean isLayered;
     private transient Layer mActiveLayer;
+    /** live index of all proper descendents by type */
+    private final transient DescendantRegistry mDescendents = new DescendantRegistry(this);
     /** for use during restores only */
     private transient java.util.List<Layer> mLayers = new ArrayList();
     //private transient Layer mInternalLayer;
@@ -120,6 +122,9 @@ public class LWMap extends LWContainer
     /** only used during restore */
     private final Collection<Schema> mRestoredSchemas = new ArrayList();
 
+    /** restore timing for the log (ms): when the load began (0 once the first paint is reported), and how long it took to unmarshal */
+    private transient long mLoadStartTime, mUnmarshalTime;
+
     private static final String InitLabel = "<map-during-XML-restoration>";
     
     // only to be used during a restore from persisted
@@ -167,11 +172,15 @@ public class LWMap extends LWContainer
         // todo: listen to child for events & pass up
     }
 
+    static {
+        // alpha constraints are on the shared fill property, so they're set per class
+        SLOT_FillColor.setAllowAlpha(LWMap.class, false);
+    }
+
     protected void initMap() {
         disablePropertyTypes(KeyType.STYLE);
         enableProperty(LWKey.FillColor);
         disableProperty(LWKey.Label);
-        mFillColor.setAllowAlpha(false);
 // //         // TODO: need to handle persistance -- could match via a special name, for maybe persistIsStyle
 // //         mInternalLayer = new Layer("*Internal*");
 // //         mInternalLayer.setVisible(false);
@@ -661,6 +670,39 @@ public class LWMap extends LWContainer
         return bag;
     }
 
+    DescendantRegistry getDescendentRegistry() {
+        return mDescendents;
+    }
+
+    /**
+     * @return a live, read-only view of all ChildKind.PROPER descendents of exactly the given class.
+     * This is answered from an index, in time proportional to the result, and will reflect any
+     * subsequent changes to the map.  Copy it first if the hierarchy is going to be changed while
+     * iterating.  Iteration order is not guaranteed to be tree order.
+     */
+    public <A extends LWComponent> Collection<A> getAllOfType(Class<A> clazz) {
+        return mDescendents.getAllOfType(clazz);
+    }
+
+    /** @return as getAllOfType, but including instances of any subclasses of the given class */
+    public <A extends LWComponent> Collection<A> getAllInstancesOf(Class<A> clazz) {
+        return mDescendents.getAllInstancesOf(clazz);
+    }
+
+    /** @return a live, read-only view of all descendents of the given kind, in no guaranteed order.  ChildKind.ANY is not indexed. */
+    public Collection<LWComponent> getDescendentsView(ChildKind kind) {
+        return mDescendents.getAll(kind);
+    }
+
+    /** answered from the descendent index for all but ChildKind.ANY: note that unlike getAllDescendents, order is not guaranteed */
+    @Override
+    public <A extends LWComponent> Iterable<A> getDescendentsOfType(ChildKind kind, Class<A> clazz) {
+        if (kind == ChildKind.ANY)
+            return super.getDescendentsOfType(kind, clazz);
+        else
+            return mDescendents.getAll(kind, clazz);
+    }
+
     // TODO PERFORMANCE: cache results for each kind in immutable lists; only flush if modification count goes up.
     // (to verify: modification count goes up when layers are locked, anything is hidden/shown, which will effect EDITABLE lists)
     @Override
@@ -881,6 +923,7 @@ public class LWMap extends LWContainer
             // style properties not used on layers (pretty much no properties at all actually)
             // we disable them mainly to prevent warnings on layers with invalid values
             disablePropertyTypes(KeyType.STYLE);
+            mChildBounds = new BoundsTracker(this);
         }
 
         @Override public float getX() { return 0; }
@@ -1310,6 +1353,8 @@ public class LWMap extends LWContainer
 
         //isLayered = true;
         setActiveLayer(activeLayer);
+        mDescendents.invalidate();
+        invalidateLayerBounds();
     }
     
     
@@ -1412,11 +1457,33 @@ public class LWMap extends LWContainer
         }
     }
 
+    /**
+     * Called by the unmarshalling code before completeXMLRestore, so that the time taken
+     * to load this map, from the start of unmarshalling until it's first painted, can be logged.
+     * @param loadStartTime the time at which unmarshalling began (System.currentTimeMillis)
+     * @param unmarshalTime the time (ms) it took to unmarshal the map
+     */
+    public void setLoadTiming(long loadStartTime, long unmarshalTime) {
+        mLoadStartTime = loadStartTime;
+        mUnmarshalTime = unmarshalTime;
+    }
+
+    /** called by MapViewer after every paint of this map: the first after a restore is logged with the restore timing */
+    void notifyPainted(long paintTime) {
+        if (mLoadStartTime != 0) {
+            Log.info(String.format("first paint %dms; %dms after load began: %s",
+                                   paintTime, System.currentTimeMillis() - mLoadStartTime, this));
+            mLoadStartTime = 0;
+        }
+    }
+
     public void completeXMLRestore(Object context)
     {
         if (DEBUG.INIT || DEBUG.IO || DEBUG.XML)
             Log.debug(getLabel() + ": completing restore...");
 
+        final long restoreStart = System.currentTimeMillis();
+
         if (mChildren == NO_CHILDREN || mChildren == Collections.EMPTY_LIST || mChildren == null) {
             // If there was NO content in the map, we need to make sure we manually set
             // the child list to a real list before we do anything else.  Note
@@ -1566,11 +1633,31 @@ public class LWMap extends LWContainer
         // tmp hack: we were geting exceptions when testing just SaveAction on this code?
         //if (!tufts.vue.action.SaveAction.PACKAGE_DEBUG)
 
+        final long labelStart = System.currentTimeMillis();
+
+        // nearly all the time spent in layout is measuring labels: do that in parallel first
+        final int labelThreads = LabelPrefetcher.prefetch(this);
+
+        final long layoutStart = System.currentTimeMillis();
+
         layoutAllAfterRestore(allRestored, INIT_LAYOUT);
 
+        final long layoutEnd = System.currentTimeMillis();
+
+        Log.info(String.format("restore timing: unmarshal %dms, restore %dms, labels %dms (%s), layout %dms; %d components in %s",
+                               mUnmarshalTime,
+                               labelStart - restoreStart,
+                               layoutStart - labelStart,
+                               labelThreads > 0 ? labelThreads + " threads" : "inline",
+                               layoutEnd - layoutStart,
+                               allRestored.size(),
+                               this));
+
         if (DEBUG.INIT || DEBUG.IO || DEBUG.XML) Log.debug("RESTORE COMPLETED; nextID=" + mNextID.get());
         
         mXMLRestoreUnderway = false;
+        mDescendents.invalidate(); // children were installed without going through addChildImpl
+        invalidateLayerBounds();
         markAsSaved();
     }
 
@@ -2016,21 +2103,21 @@ public class LWMap extends LWContainer
     //for peristance
     public String getPresentationBackground()
     {
-    	return mPresentationColor.asString();
+    	return SLOT_PresentationColor.asString(this);
     }
     //for persistance
     public void setPresentationBackground(String c)
     {
-    	mPresentationColor.setFromString(c);
+    	SLOT_PresentationColor.setFromString(this, c);
     }
     public java.awt.Color getPresentationBackgroundValue()
     {
-    	return mPresentationColor.get();
+    	return SLOT_PresentationColor.get(this);
     }
     
     public void setPresentationBackgroundValue(java.awt.Color c)
     {
-    	mPresentationColor.set(c);
+    	SLOT_PresentationColor.set(this, c);
     }
     
     public java.awt.image.BufferedImage createImage(double alpha, java.awt.Dimension maxSize, java.awt.Color fillColor, double mapZoom) {
@@ -2257,53 +2344,162 @@ public class LWMap extends LWContainer
             if (DEBUG.EVENTS) System.out.println(e + " SKIPPING (events disabled)");
             return;
         }
+
+        final boolean batching = mBatchDepth > 0 && mBatchThread == Thread.currentThread();
+
+        if (batching && !isBatchable(e)) {
+            // Order sensitive events (e.g., HierarchyChanging, which the UndoManager handles
+            // by capturing the current child list at delivery time) can't be deferred, and
+            // anything batched before them must be delivered first to keep event order intact.
+            flushBatch();
+        }
         
         if (e.isUndoable())
             markChange(e);
 
         if (mCachedBounds != null) {
-            Rectangle2D.Float outside = null;
-            if (e.key == LWKey.UserActionCompleted) {
-                flushBounds();
-                // force re-compute / re-cache while user is likely idle, tho getPaintBounds
-                // may well have already been called my something else by then.
-                VUE.invokeAfterAWT(EnsureBoundsCacheIsFilled); // VUE/AWT ref in model: not ideal
-            }
-            // else if (e.key instanceof LWComponent.Key && ((LWComponent.Key)e.key).isColor) {
-            //     // ignore [speeds up colors, but slows down everything else: e.g., drags]
-            // }
-            else if (e.component != null && mCachedBounds.contains(outside = e.component.getPaintBounds())) {
-                // Do nothing.  Whatever happened to the component, its bounds are still inside the cached
-                // bounds.  This works for making sure GROW the bounds when needed, but it won't SHRINK them.
-                // We handle that above by forcing re-compute on UserActionCompleted.  Todo: can skip this
-                // check entirely for many events that can't touch bounds: e.g., colors.
-            }
-            else {
-                // Todo: further optimize: could have a bounds event / flag for events that can
-                // touch bounds. Note: we may only need this for the scroll-pane?  If so, maybe it
-                // should handle tracking this itself.  In any case, may NOT need it when in
-                // full-screen mode.
-                if (outside != null)
-                    mCachedBounds.add(outside);
-                else
-                    flushBounds(); 
-            }
+            // Any event may mean changed bounds, but now that each layer maintains the bounds
+            // of it's children incrementally, re-computing them only costs something in
+            // proportion to what actually changed, so we can just flush the cache.
+            flushBounds();
         }
+
+        if (batching && isBatchable(e)) {
+            mBatchEvents.add(e);
+            return;
+        }
+        
         super.notifyLWCListeners(e);
 
     }
 
-    /** javac should be smart enough to automatically create a single instance of these closures
-     ** when used inline for its enclosing class instance (LWMap in this case) when nothing other
-     ** than "this" is used, but it's not, so here it is not inline. (For that matter, it should
-     ** simply have method references, which would erase the need for this construct entirely, but
-     ** i digress). */
-    private final Runnable EnsureBoundsCacheIsFilled = new Runnable() { public void run() { getMapBounds(); }};
+    //-----------------------------------------------------------------------------
+    // Event batching
+    //-----------------------------------------------------------------------------
     
+    private int mBatchDepth;
+    private Thread mBatchThread;
+    private List<LWCEvent> mBatchEvents;
+
+    /**
+     * Begin coalescing all events in the map into a single LWKey.Batch event, to be delivered
+     * once at the matching endBatch().  Use this around bulk operations (e.g., creating hundreds
+     * of data nodes, layouts, big pastes) so that map listeners (UndoManager, MapViewer's, etc)
+     * see one composite event instead of an event per property per component.
+     *
+     * Listeners on individual components still see their events immediately: only
+     * delivery to the listeners of the map itself is deferred.  Batches nest, and only
+     * apply to events generated on the thread that started the batch.  Calls must be paired,
+     * usually via try/finally:
+     * <pre>
+     *     map.beginBatch();
+     *     try {
+     *         ... bulk changes ...
+     *     } finally {
+     *         map.endBatch();
+     *     }
+     * </pre>
+     */
+    public synchronized void beginBatch() {
+        if (mBatchDepth == 0) {
+            mBatchThread = Thread.currentThread();
+            mBatchEvents = new ArrayList<LWCEvent>();
+        } else if (mBatchThread != Thread.currentThread()) {
+            // a second thread can't join the batch: it will just deliver it's events as usual
+            if (DEBUG.EVENTS) Log.debug("ignoring beginBatch from " + Thread.currentThread() + "; batch owned by " + mBatchThread);
+            return;
+        }
+        mBatchDepth++;
+    }
+
+    /** end a batch started with beginBatch: when the outermost batch ends, the composite event is delivered */
+    public void endBatch() {
+        final List<LWCEvent> events;
+        synchronized (this) {
+            if (mBatchThread != Thread.currentThread())
+                return; // see beginBatch
+            if (mBatchDepth <= 0)
+                throw new IllegalStateException(this + ": endBatch without beginBatch");
+            if (--mBatchDepth > 0)
+                return;
+            // Release the batch before delivery: any events generated by listeners as a
+            // result of the delivery are then delivered as usual, instead of being
+            // collected into a batch that will never be flushed.
+            events = mBatchEvents;
+            mBatchEvents = null;
+            mBatchThread = null;
+        }
+        // deliver outside the lock, so listeners don't run holding the map's monitor
+        deliverBatch(events);
+    }
+
+    /** @return true if a batch is currently collecting events from the current thread */
+    public boolean isBatching() {
+        return mBatchDepth > 0 && mBatchThread == Thread.currentThread();
+    }
+
+    private static boolean isBatchable(LWCEvent e) {
+        return e.key != LWKey.HierarchyChanging
+            && e.key != LWKey.UserActionCompleted
+            && e.key != LWKey.Repaint
+            && e.key != LWKey.RepaintAsync
+            && e.key != LWKey.RepaintRegion
+            && e.key != LWKey.RepaintComponent
+            && e.key != LWKey.Batch;
+    }
+
+    /** deliver all events collected so far in the current batch as a single LWKey.Batch event */
+    private void flushBatch() {
+        final List<LWCEvent> events = mBatchEvents;
+        if (events.isEmpty())
+            return;
+        // anything listeners generate during delivery is collected in the new list
+        mBatchEvents = new ArrayList<LWCEvent>();
+        deliverBatch(events);
+    }
+
+    private void deliverBatch(List<LWCEvent> events) {
+        if (events.isEmpty())
+            return;
+
+        if (events.size() == 1) {
+            // no point in the overhead of a composite event
+            super.notifyLWCListeners(events.get(0));
+            return;
+        }
+
+        final Collection<LWComponent> changed = new java.util.LinkedHashSet<LWComponent>();
+        for (LWCEvent e : events) {
+            if (e.component != null)
+                changed.add(e.component);
+            else if (e.getComponents() != null)
+                changed.addAll(e.getComponents());
+        }
+
+        if (DEBUG.EVENTS) Log.debug(this + " delivering batch of " + events.size() + " events for " + changed.size() + " components");
+        
+        super.notifyLWCListeners(new LWCEvent(this, new ArrayList<LWComponent>(changed), events));
+    }
+
     private void flushBounds() {
         mCachedBounds = null;
         if (DEBUG.EVENTS&&DEBUG.META) out(this + " flushed cached bounds");
     }
+
+    /** something in the map has changed bounds without an event */
+    @Override
+    void childBoundsChanged(LWComponent child) {
+        super.childBoundsChanged(child);
+        flushBounds();
+    }
+
+    /** for when the layers or their child lists have been replaced wholesale */
+    private void invalidateLayerBounds() {
+        for (LWComponent c : getChildren())
+            if (c instanceof Layer)
+                ((Layer)c).invalidateChildIndexes();
+        flushBounds();
+    }
     
     private void markChange(LWCEvent e) {
 
@@ -2496,8 +2692,10 @@ public class LWMap extends LWContainer
         for (LWComponent layer : getChildren()) {
             if (layer.isVisible()) {
                 if (layer instanceof Layer) { // this should always be the case
-                    
-                    accruePaintBounds(layer.getChildren(), bounds);
+
+                    final Rectangle2D.Float layerBounds = ((Layer)layer).mChildBounds.getBounds();
+                    if (layerBounds != null)
+                        accumulate(bounds, layerBounds, layer, "layerBounds");
                     
                 } else {
                     
@@ -2721,9 +2919,9 @@ public class LWMap extends LWContainer
     
     // Moved KEY_PresentationColor to the bottom of the file -- seems
     // to be helping with the sporadic javac failures -- SMF 2008-04-09
-    private final ColorProperty mPresentationColor = new ColorProperty(KEY_PresentationColor, new java.awt.Color(32,32,32));
     public static final Key KEY_PresentationColor = new Key("presentation.color", KeyType.STYLE)
-        { final Property getSlot(LWMap c) { return c.mPresentationColor; } };
+        { final Property getSlot(LWMap c) { return SLOT_PresentationColor; } };
+    private static final ColorProperty SLOT_PresentationColor = new ColorProperty(KEY_PresentationColor, new java.awt.Color(32,32,32));
     
     private List searchArrLst = new ArrayList();
     public List getSearchArrLst() { return searchArrLst; }
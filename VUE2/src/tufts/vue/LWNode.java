@@ -1975,7 +1975,7 @@ public class LWNode extends LWContainer
         }
 
         
-        labelBox.setSizeFlexHeight(newTextSize);
+        // labels don't wrap: their height is always that of their text
         newTextSize.height = labelBox.getHeight();
         this.textSize = newTextSize.dim();
         
@@ -2068,7 +2068,7 @@ public class LWNode extends LWContainer
 //         if (isPresentationContext())
 //             layoutChildrenGrid(baseX, baseY, result, 1, minWidth);
 //         else
-        if (hasFlag(Flag.SLIDE_STYLE) && mAlignment.get() != Alignment.LEFT && isImageNode(this))
+        if (hasFlag(Flag.SLIDE_STYLE) && SLOT_Alignment.get(this) != Alignment.LEFT && isImageNode(this))
             layoutChildrenColumnAligned(baseX, baseY, result);
         else
             layoutChildrenSingleColumn(baseX, baseY, result);
@@ -2108,9 +2108,9 @@ public class LWNode extends LWContainer
             else
                 y += ChildVerticalGap * getScale();
 
-            if (mAlignment.get() == Alignment.RIGHT)
+            if (SLOT_Alignment.get(this) == Alignment.RIGHT)
                 c.setLocation(baseX + maxLayoutWidth - c.getLocalWidth(), y);
-            else if (mAlignment.get() == Alignment.CENTER)
+            else if (SLOT_Alignment.get(this) == Alignment.CENTER)
                 c.setLocation(baseX + (maxLayoutWidth - c.getLocalWidth()) / 2, y);
             else
                 c.setLocation(baseX, y);
@@ -2308,7 +2308,7 @@ public class LWNode extends LWContainer
 
 
     /** Draw without rendering any textual glyphs, possibly without children, possibly as a rectanlge only */
-    private void drawNodeWithReducedLOD(final DrawContext dc, final float renderScale)
+    private void drawNodeWithReducedLOD(final DrawContext dc)
     {
         //=============================================================================
         // DRAW FAST (with little or no detail)
@@ -2331,7 +2331,7 @@ public class LWNode extends LWContainer
                 dc.g.setColor(renderFill);
         }
 
-        if (this.height * renderScale > 5) {
+        if (!dc.canSimplify(this.height)) {
 
             // MEDIUM LEVEL OF DETAIL: retain shape & draw children
 
@@ -2362,7 +2362,7 @@ public class LWNode extends LWContainer
         final int hh = (int) ((getHeight() / 2f) + 0.5f);
         //dc.setAntiAlias(false); // too crappy
         dc.g.setStroke(STROKE_SEVEN);
-        dc.g.setColor(mTextColor.get());
+        dc.g.setColor(SLOT_TextColor.get(this));
         dc.g.drawLine(0, hh, getLabelBox().getWidth(), hh);
     }
     
@@ -2432,21 +2432,19 @@ public class LWNode extends LWContainer
         
         if (dc.isLODEnabled()) {
 
-            // if net on-screen point size is less than 5 for all text, we allow drawing
-            // with reduced LOD (level-of-detail)
+            // if the net on-screen size of all text is below the DrawContext LOD
+            // threshold, we allow drawing with reduced LOD (level-of-detail)
             
-            final float renderScale = (float) dc.getAbsoluteScale();            
-            final float renderFont = mFontSize.get() * renderScale;
-            final boolean canSkipLabel = renderFont < 5; 
+            final boolean canSkipLabel = dc.canSkipText(SLOT_FontSize.get(this));
             final boolean canSkipIcon;
             
             if (iconShowing())
-                canSkipIcon = LWIcon.FONT_ICON.getSize() * renderScale < 5;
+                canSkipIcon = dc.canSkipText(LWIcon.FONT_ICON.getSize());
             else
                 canSkipIcon = true;
 
             if (canSkipLabel && canSkipIcon) {
-                drawNodeWithReducedLOD(dc, renderScale);
+                drawNodeWithReducedLOD(dc);
                 return; // WE'RE DONE
             } // else: fall thru and draw full node
         }
@@ -2537,9 +2535,9 @@ public class LWNode extends LWContainer
         // this.label is still getting set -- maybe we have to null it out
         // manually (and maybe labelBox also)
         
-        if (hasLabel() && this.labelBox != null && this.labelBox.getParent() == null) {
+        if (hasLabel() && this.labelBox != null && !isEditingLabel()) {
             
-            // if parent is not null, this box is an active edit on the map
+            // if we're editing, the TextBox is an active edit on the map
             // and we don't want to paint it here as AWT/Swing is handling
             // that at the moment (and at a possibly slightly different offset)
 
@@ -2582,7 +2580,7 @@ public class LWNode extends LWContainer
         // paint the node icons
         //-------------------------------------------------------
 
-        if (/*!dc.isPresenting() &&*/ iconShowing()) {
+        if (/*!dc.isPresenting() &&*/ iconShowing() && !dc.canSkipText(LWIcon.FONT_ICON.getSize())) {
             mIconBlock.draw(dc);
             // draw divider if there's a label
             if (hasLabel()) {
@@ -2629,9 +2627,9 @@ public class LWNode extends LWContainer
                 // is center label, left children: when we move to generally
                 // suporting left/center/right alignment, that configuration won't
                 // be supported: we may need a special "old-style" alignment style
-                if (mAlignment.get() == Alignment.LEFT && hasFlag(Flag.SLIDE_STYLE)) {
+                if (SLOT_Alignment.get(this) == Alignment.LEFT && hasFlag(Flag.SLIDE_STYLE)) {
                     return ChildPadX;
-                } else if (mAlignment.get() == Alignment.RIGHT) {
+                } else if (SLOT_Alignment.get(this) == Alignment.RIGHT) {
                     return (this.width - getTextSize().width) - 1;
                 } else {
                     // CENTER:
@@ -2708,7 +2706,7 @@ public class LWNode extends LWContainer
             baseY = mBoxedLayoutChildY;
             if (DEBUG.LAYOUT) out("*** childOffsetY starting with precomputed " + baseY + " to produce " + (baseY + ChildOffsetY));
         } else {
-            final TextBox labelBox = getLabelBox();
+            final LabelBox labelBox = getLabelBox();
             int labelHeight = labelBox == null ? 12 : labelBox.getHeight();
             //if (DEBUG.WORK) out("labelHeight: " + labelHeight);
             baseY = relativeLabelY() + labelHeight;
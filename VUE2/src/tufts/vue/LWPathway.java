@@ -581,9 +581,12 @@ public class LWPathway extends LWContainer
 
     private static final int PathwayAlpha = (int) (255f * (VueResources.getInt("pathway.alpha.percent", 50) / 100f) + 0.5);
 
+    static {
+        SLOT_StrokeColor.setFixedAlpha(LWPathway.class, PathwayAlpha);
+    }
+
     private void initPathway() {
         disablePropertyTypes(KeyType.STYLE);
-        mStrokeColor.setFixedAlpha(PathwayAlpha);
     }
     
     /** @return null -- will prevent participating in auto-styling system */
@@ -1672,7 +1675,7 @@ public class LWPathway extends LWContainer
     
     /** @return the color of the pathway (same as stroke-color) */
     public Color getColor() {
-        return mStrokeColor.get();
+        return SLOT_StrokeColor.get(this);
     }
 
     public static void decorateOver(final LWComponent node, final DrawContext dc)
@@ -35,10 +35,13 @@ import java.awt.geom.AffineTransform;
 
 public class LWPortal extends LWNode
 {
+    static {
+        SLOT_FillColor.setFixedAlpha(LWPortal.class, 64);
+        SLOT_StrokeColor.setFixedAlpha(LWPortal.class, 64);
+    }
+
     public LWPortal() {
         updateCapabilities();
-        mFillColor.setFixedAlpha(64);
-        mStrokeColor.setFixedAlpha(64);
     }
 
     @Override
@@ -144,8 +147,8 @@ public class LWPortal extends LWNode
     
     @Override
     public Color getRenderFillColor(DrawContext dc) {
-        if (mFillColor.isTransparent())
-            return getMap().mFillColor.brightness() > 0.5 ? DarkFill : LightFill;
+        if (SLOT_FillColor.isTransparent(this))
+            return SLOT_FillColor.brightness(getMap()) > 0.5 ? DarkFill : LightFill;
         else
             return getFillColor();
 //         if (false&&dc != null && dc.focal != null)
@@ -243,7 +246,7 @@ public class LWPortal extends LWNode
             }
         } else {
 
-            if (this.stroke == STROKE_ZERO || !mFillColor.isTransparent()) {
+            if (this.stroke == STROKE_ZERO || !SLOT_FillColor.isTransparent(this)) {
                 // Show the portal region:
                 dc.g.setColor(getRenderFillColor(dc));
                 dc.g.fill(getZeroShape());
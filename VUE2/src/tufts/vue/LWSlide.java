@@ -366,7 +366,7 @@ public class LWSlide extends LWContainer
         }
         
         c.setFlag(Flag.SLIDE_STYLE);
-        c.mAlignment.set(Alignment.LEFT);
+        SLOT_Alignment.set(c, Alignment.LEFT);
 
         final LWComponent style;
         
@@ -498,7 +498,7 @@ public class LWSlide extends LWContainer
     /** implemented to return the bg color of the master slide (for proper on-slide text edit fill color) */
     @Override
     public Color getRenderFillColor(DrawContext dc) {
-         if (mFillColor.isTransparent()) {
+         if (SLOT_FillColor.isTransparent(this)) {
              final LWSlide master = getMasterSlide();
              if (master == null)
                  return getFillColor();
@@ -543,6 +543,9 @@ public class LWSlide extends LWContainer
             }
         }
 
+        // LOD: a slide icon too small to make out is just a filled box
+        final boolean simplified = onMapSlideIcon && dc.canSimplify(this.height);
+
         final LWSlide master = getMasterSlide();
         final Color fillColor = getRenderFillColor(dc);
 
@@ -575,7 +578,7 @@ public class LWSlide extends LWContainer
             }
         }
         
-        if (master != null) {
+        if (master != null && !simplified) {
             // As the master slide isn't in the model, sit's children can't succesfully know
             // their bounds anyway, so we can't clip-optimize further when we draw it.
             // (It would be of little help anyway)
@@ -597,6 +600,9 @@ public class LWSlide extends LWContainer
             dc.g.setStroke(STROKE_FIVE);
             dc.g.draw(getZeroShape());
         }
+
+        if (simplified)
+            return;
         
         if (dc.focal != this)
             dc.g.clip(getZeroShape());
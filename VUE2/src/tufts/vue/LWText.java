@@ -121,6 +121,7 @@ public class LWText extends LWComponent {
     	disableProperty(LWKey.StrokeStyle);
     	disableProperty(LWKey.StrokeWidth);
         //mShape = new java.awt.geom.Rectangle2D.Float();
+        setFlag(Flag.RASTER_CACHE); // rich text is slow to draw
     }
 
 	
@@ -330,12 +331,10 @@ public class LWText extends LWComponent {
     @Override protected void drawImpl(DrawContext dc)
     {
         if (dc.isLODEnabled()) {
-            // if net on-screen point size is less than 5 for all text, we allow drawing
-            // with reduced LOD (level-of-detail)
-            final float renderScale = (float) dc.getAbsoluteScale(); 
-            final float renderFont = getAverageTextSize() * renderScale;
-            if (renderFont < 5) {
-                drawTextWithReducedLOD(dc, renderScale);
+            // if the net on-screen size of all text is below the DrawContext LOD
+            // threshold, we allow drawing with reduced LOD (level-of-detail)
+            if (dc.canSkipText(getAverageTextSize())) {
+                drawTextWithReducedLOD(dc, (float) dc.getAbsoluteScale());
                 return; // WE'RE DONE
             }
         }
@@ -524,9 +523,9 @@ public class LWText extends LWComponent {
     public float getMapHeight()         { return (float) (getHeight() * getMapScale()); }
 
     @Override
-    public float getLocalBorderWidth() { return (float) ((getWidth() + mStrokeWidth.get()) * getScale()); }
+    public float getLocalBorderWidth() { return (float) ((getWidth() + SLOT_StrokeWidth.get(this)) * getScale()); }
     @Override
-    public float getLocalBorderHeight() { return (float) ((getHeight() + mStrokeWidth.get()) * getScale()); }
+    public float getLocalBorderHeight() { return (float) ((getHeight() + SLOT_StrokeWidth.get(this)) * getScale()); }
 
 
 	private boolean inLayout = false;
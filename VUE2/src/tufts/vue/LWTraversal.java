@@ -131,6 +131,14 @@ public class LWTraversal {
                     Util.printStackTrace(t, "pickList fetch failed for " + c + "; pickables=" + pickables);
                 }
 
+                if (pickables != null && pickables == c.getChildList() && c instanceof LWContainer) {
+                    // For large containers, only traverse the children whose bounds could
+                    // possibly matter, as answered by the container's spatial index.
+                    final Rectangle2D region = getPickRegion();
+                    if (region != null)
+                        pickables = ((LWContainer)c).getChildrenIntersecting(region, null);
+                }
+
                 if (depth > 15) {
                     Util.printStackTrace("aborting pick at depth " + depth + " in case of loop; pickables: " + pickables);
                     done = true;
@@ -171,6 +179,11 @@ public class LWTraversal {
     public boolean acceptChildren(LWComponent c) {
         return true;
     }
+
+    /** @return the map region outside of which nothing can be visited with effect, or null if everything must be visited */
+    protected Rectangle2D getPickRegion() {
+        return null;
+    }
         
     public void traversePicks(LWComponent curTop, java.util.List<LWComponent> children)
     {
@@ -407,6 +420,24 @@ public class LWTraversal {
         public PointPick(MapMouseEvent e) {
             this(e.getViewer().getPickContext(e.getMapX(), e.getMapY()));
         }
+
+        /** @return the pick point, expanded by the distance at which a close-hit is close enough to be picked */
+        @Override
+        protected Rectangle2D getPickRegion() {
+            final float slop = (float) Math.sqrt(closeEnoughSq());
+            return new Rectangle2D.Float(mapPoint.x - slop, mapPoint.y - slop, slop * 2, slop * 2);
+        }
+
+        private float closeEnoughSq() {
+            if (pc.zoom < 1) {
+                // allow more slop if zoomed way out (links are very small and hard to hit)
+                return (8 / pc.zoom) * (8 / pc.zoom);
+            } else if (pc.zoom >= 4) {
+                final float zf = pc.zoom / 2;
+                return 8/zf * 8/zf;
+            } else
+                return 8 * 8;
+        }
         
 //         public boolean acceptTraversal(LWComponent c) {
 //             if (super.acceptTraversal(c)) {
@@ -530,15 +561,7 @@ public class LWTraversal {
                 // a close-hit on that, but this is a rare case and dealing with it
                 // would hardly be worth it.
 
-                final float closeEnoughSq;
-                if (pc.zoom < 1) {
-                    // allow more slop if zoomed way out (links are very small and hard to hit)
-                    closeEnoughSq = (8 / pc.zoom) * (8 / pc.zoom);
-                } else if (pc.zoom >= 4) {
-                    final float zf = pc.zoom / 2;
-                    closeEnoughSq = 8/zf * 8/zf;
-                } else
-                    closeEnoughSq = 8 * 8;
+                final float closeEnoughSq = closeEnoughSq();
                 if (DEBUG.PICK) System.out.format(" closeEnough=%.2f;", Math.sqrt(closeEnoughSq));
                 //if (hit == null && closestDistSq < closeEnoughSq) {
                 if (closestDistSq < closeEnoughSq) {
@@ -643,6 +666,11 @@ public class LWTraversal {
             this.mapRect = new Rectangle2D.Float(pc.x, pc.y, pc.width, pc.height);
         }
 
+        @Override
+        protected Rectangle2D getPickRegion() {
+            return mapRect;
+        }
+
         @Override
         public void visit(LWComponent c) {
             if (DEBUG.PICK) eoutln("VISIT " + c);
@@ -0,0 +1,195 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The label of an LWComponent as it sits on the map: where the label box is in the
+ * component, and the layout of the text inside it.
+ *
+ * This used to be the job of a TextBox (a JTextPane) per component, which cost a
+ * Swing Document, it's element & view trees and attribute sets for every label on
+ * the map.  Now the text layout is an immutable LabelLayout shared by all labels with
+ * the same text & font, so all we keep per component is the box location and a
+ * reference to the current layout.  A TextBox is only created when the user actually
+ * starts editing a label (see LWComponent.getLabelEditBox), and it's dropped when the
+ * edit is done.
+ *
+ * The layout is always that of the component's current label & font, so there's
+ * nothing to keep up to date when they change: the component just lays itself out
+ * again.
+ *
+ * @see LabelLayout
+ * @see TextBox
+ * @version $Revision: 1.0 $
+ */
+public final class LabelBox
+{
+    private final LWComponent lwc;
+    /** bounds: generally used by the component as local coordinates (relative to the coordinate 0,0)
+     * The width/height are always those of the current layout */
+    private final Rectangle2D.Float mBounds = new Rectangle2D.Float();
+    private LabelLayout mLayout;
+
+    LabelBox(LWComponent lwc)
+    {
+        this.lwc = lwc;
+        mBounds.x = Float.NaN; // mark as uninitialized
+        mBounds.y = Float.NaN; // mark as uninitialized
+        getLayout();
+    }
+
+    LWComponent getLWC() {
+        return this.lwc;
+    }
+
+    /** @return the layout of the current label text in the current font */
+    LabelLayout getLayout()
+    {
+        final String text = lwc.label == null ? "" : lwc.label;
+        final java.awt.Font font = lwc.getFont();
+        LabelLayout layout = mLayout;
+        if (layout == null || (layout.font != font && !layout.font.equals(font)) || !layout.text.equals(text)) {
+            layout = LabelLayout.get(text, font);
+            mBounds.width = layout.width;
+            mBounds.height = layout.height;
+            mLayout = layout;
+        }
+        return layout;
+    }
+
+    public Dimension getPreferredSize() {
+        final LabelLayout layout = getLayout();
+        return new Dimension(layout.width, layout.height);
+    }
+
+    /** label boxes are always their preferred size */
+    public Dimension getSize() {
+        return getPreferredSize();
+    }
+
+    public int getWidth() {
+        return getLayout().width;
+    }
+
+    public int getHeight() {
+        return getLayout().height;
+    }
+
+    public float getMaxWordWidth() {
+        return getLayout().getMaxWordWidth();
+    }
+
+    public Rectangle2D getBoxBounds() {
+        getLayout();
+        return mBounds;
+    }
+
+    public boolean boxContains(float x, float y)
+    {
+        getLayout();
+        return x >= mBounds.x
+            && y >= mBounds.y
+            && x <= mBounds.x + mBounds.width
+            && y <= mBounds.y + mBounds.height;
+    }
+
+    public boolean boxIntersects(Rectangle2D rect)
+    {
+        getLayout();
+        return rect.intersects(mBounds);
+    }
+
+    public void setBoxLocation(float x, float y)
+    {
+        mBounds.x = x;
+        mBounds.y = y;
+    }
+
+    public void setBoxLocation(Point2D p)
+    {
+        setBoxLocation((float) p.getX(), (float) p.getY());
+    }
+
+    public void setBoxCenter(float x, float y) {
+        setBoxLocation(x - getBoxWidth() / 2,
+                       y - getBoxHeight() / 2);
+    }
+
+    public Point2D.Float getBoxPoint()
+    {
+        return new Point2D.Float(mBounds.x, mBounds.y);
+    }
+
+    public float getBoxWidth() { return getLayout().width; }
+    public float getBoxHeight() { return getLayout().height; }
+    public float getBoxX() { return mBounds.x; }
+    public float getBoxY() { return mBounds.y; }
+
+    /** draw the label at 0,0 with no background */
+    public void draw(DrawContext dc)
+    {
+        draw(dc, null);
+    }
+
+    /**
+     * Draw the label at 0,0.
+     * @param fill if not null, first fill the label box with this color
+     */
+    public void draw(DrawContext dc, Color fill)
+    {
+        final LabelLayout layout = getLayout();
+
+        Color textColor = lwc.getTextColor();
+
+        if (dc.isPresenting() && lwc.isTransparent()) {
+            // if the text color equals the background color when in a presentation
+            // (e.g. the master slide has a black background), and the text box
+            // has to fill of it's own for contrast, then temporarily swap
+            // the text color to white or black so it can be seen.
+            if (LWComponent.SLOT_TextColor.valueEquals(lwc, dc.getBackgroundFill())) {
+                if (LWComponent.SLOT_TextColor.brightness(lwc) > 0.5) {
+                    textColor = DEBUG.Enabled ? Color.blue  : Color.black;
+                } else {
+                    textColor = DEBUG.Enabled ? Color.green : Color.white;
+                }
+            }
+        }
+
+        final boolean center = !(lwc instanceof LWNode && ((LWNode)lwc).isTextNode());
+        final boolean underline = "underline".equals(LWComponent.SLOT_FontUnderline.get(lwc));
+
+        layout.draw(dc.g, textColor, fill, center, underline);
+
+        if (DEBUG.BOXES) {
+            final Graphics2D g = dc.g;
+            g.setColor(Color.red);
+            dc.setAbsoluteStroke(0.5);
+            g.drawRect(0,0, layout.width, layout.height);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LabelBox[" + lwc + "; " + mLayout + "]";
+    }
+}
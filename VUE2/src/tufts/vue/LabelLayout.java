@@ -0,0 +1,400 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
+import javax.swing.JTextPane;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+/**
+ * The immutable layout of a plain text label in a single font: it's lines, their
+ * glyphs, and the size of the box needed to hold them.  Layouts are cached and shared
+ * by text & font, so every component with the same label in the same font (e.g., an
+ * empty label, or "New Node") uses the same one.
+ *
+ * The size is exactly the preferred size of a TextBox (a JTextPane) holding the same
+ * text, which is what we've always laid out labels with, so existing maps keep their
+ * geometry.  For ordinary text, the JTextPane size is simply the widest line plus room
+ * for the caret, by the line height times the number of lines, which we compute from
+ * the same FontMetrics Swing would use.  Anything the JTextPane might treat specially
+ * (tabs, carriage returns, bidirectional or combining text, etc) is measured, and
+ * drawn, by a JTextPane of it's own, which is kept with the layout.  That's as
+ * expensive as a TextBox, but such labels are rare, and it's still shared.
+ *
+ * Labels don't wrap (see LWNode.WrapText), so the layout doesn't depend on the width
+ * of the component.
+ *
+ * @see LabelBox
+ * @see TextBox
+ * @version $Revision: 1.0 $
+ */
+final class LabelLayout
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(LabelLayout.class);
+
+    /** max number of layouts to keep */
+    private static final int CACHE_SIZE = 4096;
+
+    /** text+font key -> layout, in LRU order */
+    private static final Map<Key,LabelLayout> Cache = new LinkedHashMap<Key,LabelLayout>(256, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    final String text;
+    final Font font;
+
+    /** the preferred width & height of a TextBox holding our text */
+    final int width, height;
+
+    /** the JTextPane that measured us, if we're not simple text: it also draws us */
+    private final RubberStamp mStamp;
+
+    /** the glyphs for each line, or null if we're drawn by our stamp */
+    private final GlyphVector[] mLines;
+    private final int[] mLineWidths;
+    private final int mLineHeight;
+    private final int mBaseline;
+    /** as per GlyphView, underlines don't include trailing whitespace */
+    private final int[] mUnderlineWidths;
+
+    private volatile float mMaxWordWidth = -1;
+
+    /** @return the layout for the given text in the given font */
+    static LabelLayout get(String text, Font font)
+    {
+        if (text == null)
+            text = "";
+        final Key key = new Key(text, font);
+        LabelLayout layout;
+        synchronized (Cache) {
+            layout = Cache.get(key);
+        }
+        if (layout == null) {
+            // a layout may occasionally be built twice by different threads: that's harmless
+            layout = new LabelLayout(text, font);
+            PaintStats.countTextLayout();
+            synchronized (Cache) {
+                Cache.put(key, layout);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * @return the metrics labels in the given font are measured with.  This asks a
+     * JTextPane, so is only for the AWT thread, or whatever thread owns the model.
+     */
+    static FontMetrics getMetrics(Font font) {
+        return Metrics.getFontMetrics(font);
+    }
+
+    /**
+     * @return true if the layout of the given text can be computed from the given metrics
+     * alone (see getMetrics), without a JTextPane
+     */
+    static boolean isPlainText(String text, FontMetrics fm) {
+        return CaretWidth >= 0 && isSimpleText(text) && !fm.getFontRenderContext().usesFractionalMetrics();
+    }
+
+    /**
+     * Compute & cache the layout of the given plain text (see isPlainText), measured with
+     * the given metrics from getMetrics.  This uses only the FontMetrics & GlyphVector
+     * path, never Swing, so unlike get it may be called from any thread.
+     */
+    static void prefetch(String text, Font font, FontMetrics fm)
+    {
+        if (!isPlainText(text, fm))
+            return;
+        final Key key = new Key(text, font);
+        synchronized (Cache) {
+            if (Cache.containsKey(key))
+                return;
+        }
+        final LabelLayout layout = new LabelLayout(text, font, fm);
+        synchronized (Cache) {
+            Cache.put(key, layout);
+        }
+    }
+
+    /** @return the max number of layouts that are cached */
+    static int getCacheSize() {
+        return CACHE_SIZE;
+    }
+
+    private LabelLayout(String text, Font font) {
+        this(text, font, Metrics.getFontMetrics(font));
+    }
+
+    private LabelLayout(String text, Font font, FontMetrics fm)
+    {
+        this.text = text;
+        this.font = font;
+
+        if (isPlainText(text, fm)) {
+            final String[] lines = text.split("\n", -1);
+            mLines = new GlyphVector[lines.length];
+            mLineWidths = new int[lines.length];
+            mUnderlineWidths = new int[lines.length];
+            int maxWidth = 0;
+            for (int i = 0; i < lines.length; i++) {
+                final String line = lines[i];
+                mLines[i] = font.createGlyphVector(fm.getFontRenderContext(), line);
+                mLineWidths[i] = fm.stringWidth(line);
+                int end = line.length();
+                while (end > 0 && Character.isWhitespace(line.charAt(end - 1)))
+                    end--;
+                mUnderlineWidths[i] = end == line.length() ? mLineWidths[i] : fm.stringWidth(line.substring(0, end));
+                if (mLineWidths[i] > maxWidth)
+                    maxWidth = mLineWidths[i];
+            }
+            mLineHeight = fm.getHeight();
+            mBaseline = fm.getHeight() - fm.getDescent();
+            this.width = maxWidth + CaretWidth;
+            this.height = mLineHeight * lines.length;
+            mStamp = null;
+        } else {
+            mLines = null;
+            mLineWidths = mUnderlineWidths = null;
+            mLineHeight = mBaseline = 0;
+            final RubberStamp stamp = new RubberStamp(text, font);
+            final Dimension size = stamp.getSize();
+            this.width = size.width;
+            this.height = size.height;
+            mStamp = stamp;
+        }
+
+        if (DEBUG.TEXT) Log.debug(this);
+    }
+
+    /**
+     * @return true if we're drawn by a JTextPane (we're not plain text): we may then
+     * only be drawn on the AWT thread
+     */
+    boolean isStamped() {
+        return mStamp != null;
+    }
+
+    /** @return the max width of any word in the label, for wrapping */
+    float getMaxWordWidth() {
+        if (mMaxWordWidth < 0) {
+            final float maxCharWidth = (float) font.getMaxCharBounds(VueConstants.DefaultFontContext).getWidth();
+            float w;
+            try {
+                w = TextBox.maxWordWidth(font, text, maxCharWidth);
+            } catch (Exception e) {
+                w = maxCharWidth;
+            }
+            mMaxWordWidth = w;
+        }
+        return mMaxWordWidth;
+    }
+
+    /**
+     * Draw the label at 0,0.
+     *
+     * @param fill if not null, first fill our box with this color
+     * @param center center the lines in the box, otherwise they're left aligned
+     */
+    void draw(Graphics2D g, Color textColor, Color fill, boolean center, boolean underline)
+    {
+        if (fill != null) {
+            g.setColor(fill);
+            g.fillRect(0, 0, width, height);
+        }
+
+        if (mLines == null) {
+            synchronized (mStamp) {
+                mStamp.draw(g, textColor, center, underline);
+            }
+            return;
+        }
+
+        g.setColor(textColor);
+
+        int y = 0;
+        for (int i = 0; i < mLines.length; i++) {
+            // as per javax.swing.text.BoxView.layoutMinorAxis: the text is laid out in the width less the caret
+            final int x = center ? (int) ((width - CaretWidth - mLineWidths[i]) * 0.5f) : 0;
+            final int baseline = y + mBaseline;
+            g.drawGlyphVector(mLines[i], x, baseline);
+            if (underline)
+                g.drawLine(x, baseline + 1, x + mUnderlineWidths[i], baseline + 1);
+            y += mLineHeight;
+        }
+    }
+
+    /**
+     * @return true if the given text has nothing a JTextPane might lay out differently
+     * from plain left-to-right runs of glyphs broken only at newlines
+     */
+    private static boolean isSimpleText(String text)
+    {
+        final int len = text.length();
+        for (int i = 0; i < len; i++) {
+            final char c = text.charAt(i);
+            if (c == '\n'
+                || (c >= 0x0020 && c <= 0x007E)
+                || (c >= 0x00A0 && c <= 0x02FF && c != 0x00AD) // Latin-1, Latin extended, modifier letters: no soft hyphen
+                || (c >= 0x0370 && c <= 0x0482)                // Greek, Cyrillic
+                || (c >= 0x048A && c <= 0x052F)                // Cyrillic supplement
+                || (c >= 0x1E00 && c <= 0x1FFF)                // Latin & Greek extended
+                || (c >= 0x2010 && c <= 0x2027)                // punctuation: dashes, quotes, bullets, ellipsis
+                || (c >= 0x2030 && c <= 0x205E)                // punctuation: per-mille, primes, etc
+                || (c >= 0x20A0 && c <= 0x20BF)                // currency
+                || (c >= 0x2100 && c <= 0x27BF)                // letterlike, arrows, math, technical, dingbats
+                || (c >= 0x3000 && c <= 0x3029)                // CJK punctuation
+                || (c >= 0x3041 && c <= 0x3096)                // hiragana
+                || (c >= 0x30A0 && c <= 0x30FF)                // katakana
+                || (c >= 0x4E00 && c <= 0x9FFF)                // CJK ideographs
+                || (c >= 0xAC00 && c <= 0xD7A3)                // Hangul syllables
+                || (c >= 0xFF01 && c <= 0xFF60))               // full-width forms
+                continue;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "LabelLayout[" + width + "x" + height + " " + (mLines == null ? "stamped" : (mLines.length + " lines"))
+            + " " + font + " " + Util.tags(text) + "]";
+    }
+
+    private static final class Key {
+        final String text;
+        final Font font;
+        final int hash;
+        Key(String text, Font font) {
+            this.text = text;
+            this.font = font;
+            this.hash = text.hashCode() * 31 + (font == null ? 0 : font.hashCode());
+        }
+        @Override public int hashCode() {
+            return hash;
+        }
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            final Key k = (Key) o;
+            return hash == k.hash && text.equals(k.text) && (font == null ? k.font == null : font.equals(k.font));
+        }
+    }
+
+    //-----------------------------------------------------------------------------
+    // The rubber stamp
+    //-----------------------------------------------------------------------------
+
+    /**
+     * A JTextPane set up just as a TextBox is, for measuring & drawing the text we
+     * don't lay out ourselves.  The preferred size of a JTextPane depends on what it's
+     * laid out before (e.g., tab stops depend on it's current size), so each one only
+     * ever holds one label.  Callers must synchronize on it to draw.
+     */
+    private static final class RubberStamp extends JTextPane
+    {
+        private Color mTextColor;
+        private boolean mCenter = true, mUnderline;
+
+        /** lay out the given text centered, and size ourselves to it, as per the TextBox constructor */
+        RubberStamp(String text, Font font) {
+            setDragEnabled(false);
+            setBorder(null);
+            setText(text);
+            setMargin(null);
+            setOpaque(false);
+            setSize(getPreferredSize());
+            final SimpleAttributeSet a = new SimpleAttributeSet();
+            // as per TextBox.copyStyle
+            StyleConstants.setAlignment(a, StyleConstants.ALIGN_CENTER);
+            StyleConstants.setFontFamily(a, font.getFamily());
+            StyleConstants.setFontSize(a, font.getSize());
+            StyleConstants.setItalic(a, font.isItalic());
+            StyleConstants.setBold(a, font.isBold());
+            setParagraphAttributes(a);
+            // the JTextPane height lags a layout behind the width, so size until stable
+            for (int i = 0; i < 8 && !getSize().equals(getPreferredSize()); i++)
+                setSize(getPreferredSize());
+        }
+
+        private void setParagraphAttributes(SimpleAttributeSet a) {
+            final StyledDocument doc = getStyledDocument();
+            doc.setParagraphAttributes(0, doc.getEndPosition().getOffset(), a, false);
+        }
+
+        void draw(Graphics2D g, Color textColor, boolean center, boolean underline) {
+            if (center != mCenter || underline != mUnderline || !textColor.equals(mTextColor)) {
+                final SimpleAttributeSet a = new SimpleAttributeSet();
+                StyleConstants.setAlignment(a, center ? StyleConstants.ALIGN_CENTER : StyleConstants.ALIGN_LEFT);
+                StyleConstants.setForeground(a, textColor);
+                StyleConstants.setUnderline(a, underline);
+                setParagraphAttributes(a);
+                mTextColor = textColor;
+                mCenter = center;
+                mUnderline = underline;
+            }
+            paintComponent(g);
+        }
+
+        @Override
+        public void paintComponent(Graphics g) {
+            super.paintComponent(g);
+        }
+    }
+
+    /** for FontMetrics: those of any JComponent are what the JTextPane views use */
+    private static final JTextPane Metrics = new JTextPane();
+
+    /**
+     * The extra width a JTextPane adds to it's preferred size beyond the width of it's
+     * text (room for the caret), or -1 if the JTextPane in this JVM doesn't size itself
+     * the way we expect, in which case all labels are measured by the rubber stamp.
+     */
+    private static final int CaretWidth;
+
+    static {
+        int caretWidth = -1;
+        try {
+            final Font font = new Font("SansSerif", Font.PLAIN, 12);
+            final String text = "Label\nText";
+            final FontMetrics fm = Metrics.getFontMetrics(font);
+            final Dimension size = new RubberStamp(text, font).getSize();
+            final int textWidth = Math.max(fm.stringWidth("Label"), fm.stringWidth("Text"));
+            if (size.height == fm.getHeight() * 2 && size.width >= textWidth)
+                caretWidth = size.width - textWidth;
+            else
+                Log.warn("unexpected JTextPane size " + size + " for text of " + textWidth + "x" + (fm.getHeight() * 2)
+                         + "; all labels will be measured with a JTextPane");
+        } catch (Throwable t) {
+            Log.error("measuring JTextPane", t);
+        }
+        CaretWidth = caretWidth;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.vue.LWComponent.ChildKind;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Measures the labels of a freshly restored map in parallel, just before
+ * LWMap.completeXMLRestore lays it out.
+ *
+ * Most of the time spent laying out a restored map goes to laying out the text of
+ * every label (see LabelLayout).  Layouts are immutable, and shared through a
+ * synchronized cache by text & font, so the distinct labels in the map can be measured
+ * concurrently, and the layout that follows on the restoring thread, in the usual order,
+ * just finds them in the cache.  The resulting geometry is exactly what it would have
+ * been.
+ *
+ * Only the model & Swing are left alone by the worker threads: the restoring thread
+ * collects the label text & fonts, and fetches the FontMetrics for each font, and the
+ * workers only measure plain text with those metrics & GlyphVectors (see
+ * LabelLayout.prefetch).  Labels that need a JTextPane to measure them, and the label
+ * boxes themselves, are left to be created lazily by the layout as usual.  Laying out
+ * the subtrees themselves in parallel isn't safe, as layout changes the model and fires
+ * events.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class LabelPrefetcher
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(LabelPrefetcher.class);
+
+    /** don't bother with threads for maps with fewer distinct labels than this */
+    private static final int MIN_PARALLEL_LABELS = 200;
+
+    /** how long to wait for the label tasks before giving up and laying out anyway */
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private LabelPrefetcher() {}
+
+    /** @return true if the given component will need a label box to lay itself out */
+    private static boolean needsLabelBox(LWComponent c) {
+        return c.labelBox == null && (c instanceof LWNode || (c instanceof LWLink && c.hasLabel()));
+    }
+
+    /** a distinct label to measure */
+    private static final class Label {
+        final String text;
+        final java.awt.Font font;
+        final java.awt.FontMetrics metrics;
+        Label(String text, java.awt.Font font, java.awt.FontMetrics metrics) {
+            this.text = text;
+            this.font = font;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Measure the plain text labels of everything in the given restored map, using
+     * multiple threads if there's enough to do.  Must be called on the thread doing the
+     * restore.
+     *
+     * @return the number of threads that were used, or 0 if nothing was done
+     */
+    static int prefetch(final LWMap map)
+    {
+        // the distinct label text in each font
+        final Map<java.awt.Font,Set<String>> textByFont = new HashMap();
+
+        for (LWComponent layer : map.getChildren()) {
+            if (!layer.hasChildren())
+                continue;
+            for (LWComponent c : layer.getAllDescendents(ChildKind.PROPER)) {
+                if (!needsLabelBox(c))
+                    continue;
+                final java.awt.Font font = c.getFont();
+                Set<String> texts = textByFont.get(font);
+                if (texts == null) {
+                    texts = new HashSet();
+                    textByFont.put(font, texts);
+                }
+                texts.add(c.label == null ? "" : c.label);
+            }
+        }
+
+        final List<Label> labels = new ArrayList();
+        final int max = LabelLayout.getCacheSize(); // any more would just push each other out of the cache
+        for (Map.Entry<java.awt.Font,Set<String>> e : textByFont.entrySet()) {
+            final java.awt.Font font = e.getKey();
+            final java.awt.FontMetrics fm = LabelLayout.getMetrics(font);
+            for (String text : e.getValue()) {
+                if (labels.size() < max && LabelLayout.isPlainText(text, fm))
+                    labels.add(new Label(text, font, fm));
+            }
+        }
+
+        final int threads = Math.min(Runtime.getRuntime().availableProcessors(), labels.size() / MIN_PARALLEL_LABELS + 1);
+
+        if (labels.size() < MIN_PARALLEL_LABELS || threads < 2 || DEBUG.SINGLE_THREAD) {
+            if (DEBUG.INIT || DEBUG.PERF) Log.debug("not prefetching " + labels.size() + " labels");
+            return 0;
+        }
+
+        final List<Callable<Object>> tasks = new ArrayList(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = first; i < labels.size(); i += threads) {
+                            final Label label = labels.get(i);
+                            LabelLayout.prefetch(label.text, label.font, label.metrics);
+                        }
+                        return null;
+                    }
+                });
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, LabelThreadFactory);
+        try {
+            for (Future f : pool.invokeAll(tasks, TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                try {
+                    f.get();
+                } catch (CancellationException e) {
+                    Log.warn("timed out prefetching labels in " + map);
+                    break;
+                } catch (ExecutionException e) {
+                    Log.warn("failed prefetching labels in " + map, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.warn("interrupted prefetching labels in " + map, e);
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (DEBUG.INIT || DEBUG.PERF) Log.debug("prefetched " + labels.size() + " distinct labels on " + threads + " threads");
+
+        return threads;
+    }
+
+    private static final ThreadFactory LabelThreadFactory = new ThreadFactory() {
+            private int count = 0;
+            public synchronized Thread newThread(Runnable r) {
+                final Thread it = new Thread(r, "restoreLabels-" + (++count));
+                it.setDaemon(true);
+                return it;
+            }
+        };
+}
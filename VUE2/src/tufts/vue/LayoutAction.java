@@ -77,8 +77,15 @@ public abstract  class LayoutAction extends Actions.LWCAction
     }
     public void act(LWSelection selection, boolean autoFit) {
         if (DEBUG.Enabled) Log.debug(this + "; autoFit=" + autoFit);
+        final LWMap map = VUE.getActiveMap();
         try {
-            layout.layout(selection);
+            // a layout may move every node in the map: deliver map events for the whole layout at once
+            if (map != null) map.beginBatch();
+            try {
+                layout.layout(selection);
+            } finally {
+                if (map != null) map.endBatch();
+            }
             if (DEBUG.Enabled)Log.debug("autoFit: "+autoFit+" s.size "+selection.size()+" map.size:"+VUE.getActiveMap().getAllDescendents(LWContainer.ChildKind.PROPER).size());
             if (autoFit || (selection.size() == VUE.getActiveMap().getAllDescendents(LWContainer.ChildKind.PROPER).size())) {
             	 ZoomTool.setZoomOutFit();
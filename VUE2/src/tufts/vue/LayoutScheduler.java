@@ -0,0 +1,251 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.*;
+
+/**
+ * Defers and coalesces calls to LWComponent.layout() during bulk property changes.
+ *
+ * Normally, layout runs synchronously every time a label, font, size or child changes,
+ * and a node that lays itself out then asks it's parent to lay out.  Applying one
+ * style change to many components (or many style properties to one) can thus lay out
+ * the same components, and especially the same parents, many times over.
+ *
+ * Between begin() and the matching end(), layout requests made on the same thread are
+ * recorded instead of run.  When the outermost scope ends, everything requested is laid
+ * out once, deepest first, so children are sized before their parents lay them out.
+ * Requests made by those layouts (e.g., a node asking it's parent to lay out) are
+ * merged into the same pass, so a parent with many changed children is laid out once.
+ *
+ * Scopes must only enclose code that doesn't need current geometry (e.g., loops that just
+ * set properties).  Code inside a scope that does can call flush() (LWComponent.flushLayout)
+ * to bring everything up to date immediately.
+ *
+ * Like the rest of the model, this is meant for use from a single thread at a time:
+ * normally the AWT thread.  Scopes opened from any other thread while one is open are
+ * ignored, and layouts on that thread run immediately as always.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class LayoutScheduler
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(LayoutScheduler.class);
+
+    /** a runaway-loop guard for a single flush (e.g., layouts that keep requesting each other) */
+    private static final int MAX_PASS_LAYOUTS = 100000;
+
+    private static int Depth;
+    private static Thread Owner;
+    private static boolean Flushing;
+
+    /** on the owner thread: how many layouts are currently running (nested), and the outermost of them */
+    private static int Running;
+    private static LWComponent Outermost;
+
+    /** pending layouts, by depth in the hierarchy, deepest first: component -> trigger key */
+    private static final TreeMap<Integer,Map<LWComponent,Object>> Pending = new TreeMap(Collections.reverseOrder());
+    private static final Map<LWComponent,Integer> PendingDepth = new IdentityHashMap();
+
+    /** diagnostic counters: all layouts requested, layouts actually run, and requests that were deferred */
+    private static long Requested, Executed, Deferred;
+
+    private LayoutScheduler() {}
+
+    /**
+     * Begin deferring layouts on the current thread.
+     * @return true if a scope was opened: only then should end() be called
+     */
+    static synchronized boolean begin() {
+        final Thread current = Thread.currentThread();
+        if (Depth > 0 && Owner != current)
+            return false;
+        Owner = current;
+        Depth++;
+        return true;
+    }
+
+    /** end a scope opened with begin(): when the outermost scope ends, all deferred layouts are run */
+    static void end() {
+        synchronized (LayoutScheduler.class) {
+            if (Depth <= 0)
+                throw new IllegalStateException("LayoutScheduler.end without begin");
+            if (--Depth > 0)
+                return;
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (LayoutScheduler.class) {
+                if (Depth == 0)
+                    Owner = null;
+            }
+        }
+    }
+
+    /** trigger keys that mean something particular to the layout code, and so are always run immediately */
+    private static boolean isSpecial(Object triggerKey) {
+        return triggerKey == LWMap.NODE_INIT_LAYOUT
+            || triggerKey == LWMap.LINK_INIT_LAYOUT
+            || triggerKey == LWComponent.Flag.COLLAPSED
+            || triggerKey == LWKey.Alignment;
+    }
+
+    /**
+     * Called by LWComponent.layout for every layout request.
+     * @return true if the layout has been deferred, false if the caller should lay out now
+     */
+    static boolean request(LWComponent c, Object triggerKey) {
+        Requested++;
+
+        if ((Depth == 0 && !Flushing) || Owner != Thread.currentThread() || isSpecial(triggerKey))
+            return false;
+
+        if (Running > 0 && !isAncestorOfOutermost(c)) {
+            // A layout is underway, and it may depend on this one being done right now (e.g., a
+            // parent laying out children it needs sized first), so run it as usual.  Only requests
+            // for the ancestors of what's being laid out (e.g., a node telling it's parent it
+            // needs to lay out again) can wait, as parents are done after children anyway.
+            return false;
+        }
+
+        Deferred++;
+
+        final Integer oldDepth = PendingDepth.get(c);
+        if (oldDepth != null) {
+            // already pending: keep the first key unless it was only the default
+            final Map<LWComponent,Object> bucket = Pending.get(oldDepth);
+            if (bucket.get(c) == LWComponent.LAYOUT_DEFAULT)
+                bucket.put(c, triggerKey);
+            return true;
+        }
+
+        final Integer depth = depthOf(c);
+        Map<LWComponent,Object> bucket = Pending.get(depth);
+        if (bucket == null) {
+            bucket = new LinkedHashMap();
+            Pending.put(depth, bucket);
+        }
+        bucket.put(c, triggerKey);
+        PendingDepth.put(c, depth);
+        return true;
+    }
+
+    private static Integer depthOf(LWComponent c) {
+        int depth = 0;
+        for (LWComponent p = c.getParent(); p != null; p = p.getParent())
+            depth++;
+        return depth;
+    }
+
+    private static boolean isAncestorOfOutermost(LWComponent c) {
+        for (LWComponent p = Outermost.getParent(); p != null; p = p.getParent())
+            if (p == c)
+                return true;
+        return false;
+    }
+
+    /**
+     * Called by LWComponent for every layout that's actually run, before it runs.
+     * @return true if the layout is being tracked: if so, exit(true) must be called when it's done
+     */
+    static boolean enter(LWComponent c) {
+        Executed++;
+        if (Owner != Thread.currentThread())
+            return false;
+        if (Running++ == 0)
+            Outermost = c;
+        return true;
+    }
+
+    static void exit(boolean tracked) {
+        if (tracked && --Running == 0)
+            Outermost = null;
+    }
+
+    /** run all deferred layouts now, deepest first */
+    static void flush() {
+        if (Flushing || PendingDepth.isEmpty() || Owner != Thread.currentThread())
+            return;
+
+        final long startExecuted = Executed;
+        final long startDeferred = Deferred;
+        int passLayouts = 0;
+
+        RuntimeException failure = null;
+
+        Flushing = true;
+        try {
+            while (!Pending.isEmpty()) {
+                final Map.Entry<Integer,Map<LWComponent,Object>> deepest = Pending.firstEntry();
+                final Iterator<Map.Entry<LWComponent,Object>> i = deepest.getValue().entrySet().iterator();
+                final Map.Entry<LWComponent,Object> next = i.next();
+                final LWComponent c = next.getKey();
+                final Object triggerKey = next.getValue();
+                i.remove();
+                if (deepest.getValue().isEmpty())
+                    Pending.remove(deepest.getKey());
+                PendingDepth.remove(c);
+
+                if (++passLayouts > MAX_PASS_LAYOUTS) {
+                    Log.warn("abandoning runaway layout pass; " + PendingDepth.size() + " still pending, e.g. " + c);
+                    Pending.clear();
+                    PendingDepth.clear();
+                    break;
+                }
+
+                if (c.isDeleted())
+                    continue;
+
+                try {
+                    c.layoutNow(triggerKey);
+                } catch (RuntimeException e) {
+                    // As the layout would have thrown to whoever made the change had it not
+                    // been deferred, we re-throw once everything else pending has been laid
+                    // out, so one bad component doesn't leave the rest un-laid-out.
+                    if (failure == null)
+                        failure = e;
+                    else
+                        Log.warn("deferred layout also failed for " + c + "; trigger=" + triggerKey, e);
+                }
+            }
+        } finally {
+            Flushing = false;
+            if (!Pending.isEmpty()) {
+                // an Error is propagating: drop whatever is left, so nothing stale is run later
+                Pending.clear();
+                PendingDepth.clear();
+            }
+        }
+
+        if (DEBUG.LAYOUT || DEBUG.PERF)
+            Log.debug("flushed: " + (Deferred - startDeferred) + " deferred requests -> "
+                      + (Executed - startExecuted) + " layouts; " + stats());
+
+        if (failure != null)
+            throw failure;
+    }
+
+    /** @return a summary of the layout counters */
+    static String stats() {
+        return String.format("layouts requested=%d executed=%d deferred=%d (%.1f%% saved)",
+                             Requested, Executed, Deferred,
+                             Requested == 0 ? 0.0 : 100.0 * (Requested - Executed) / Requested);
+    }
+
+    static long getRequestedCount() { return Requested; }
+    static long getExecutedCount() { return Executed; }
+}
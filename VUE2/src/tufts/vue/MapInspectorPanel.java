@@ -544,11 +544,22 @@ public class MapInspectorPanel extends JPanel
 
         // LWComponent.Listener method
         public void LWCChanged(LWCEvent event) {
-            if (event.key == LWKey.LinkAdded || event.key == LWKey.LinkRemoved ||
-                    event.key == LWKey.Created || event.key == LWKey.Deleting) {
+            if (event.isBatch()) {
+                for (LWCEvent e : event.getBatchedEvents()) {
+                    if (isStatsEvent(e)) {
+                        updateStats(); // once is enough for the whole batch
+                        return;
+                    }
+                }
+            } else if (isStatsEvent(event)) {
                 updateStats();
             }
         }
+
+        private boolean isStatsEvent(LWCEvent event) {
+            return event.key == LWKey.LinkAdded || event.key == LWKey.LinkRemoved ||
+                event.key == LWKey.Created || event.key == LWKey.Deleting;
+        }
     }
     
     
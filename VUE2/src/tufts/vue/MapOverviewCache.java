@@ -0,0 +1,332 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.*;
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * An offscreen image of an entire map, as drawn in the MapPanner.
+ *
+ * The image holds only what the map draws itself, on a transparent background, so
+ * the panner can fill the visible canvas region under it and draw the viewer reticle
+ * over it without re-rendering the map: scrolling the viewer is just a blit and a
+ * rectangle.
+ *
+ * Model changes don't throw the image away.  Every component that raises an event is
+ * remembered as dirty, and at the next paint only the regions of the image that the
+ * dirty components covered (as of the last time they were drawn here), or now cover,
+ * are cleared and re-rendered.  Any links to a dirty component, and anything inside
+ * of it, are dirty along with it, as they may have moved with it.  The whole image is
+ * only re-rendered when the panner zoom or offset changes (e.g., the map bounds grew),
+ * when the hierarchy is changed wholesale (e.g., undo), when a pathway member changes
+ * (pathways draw across the whole map), or when the dirty regions would cover most of
+ * the image anyway.
+ *
+ * The panner draws in draft quality, which also permits level-of-detail rendering, so
+ * most labels & icons aren't even drawn at the tiny scales the panner usually works at.
+ *
+ * Invalidation may come from any thread.  Painting is AWT thread only.
+ *
+ * @see MapPanner
+ * @version $Revision: 1.0 $
+ */
+final class MapOverviewCache
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(MapOverviewCache.class);
+
+    /** extra margin (pixels) around dirty regions, for anti-aliased edges */
+    private static final int MARGIN = 2;
+
+    /** extra margin (pixels) for culling, for strokes drawn outside a component's geometry */
+    private static final int CULL_MARGIN = 8;
+
+    /** if there are more than this many separate dirty regions, re-render their union in one pass */
+    private static final int MAX_PATCHES = 8;
+
+    private BufferedImage mImage;
+    private LWMap mMap;
+    private double mZoom;
+    private float mOffsetX, mOffsetY;
+    private Object mAntiAlias;
+
+    private boolean mInvalidateAll = true;
+    private final Set<LWComponent> mDirty = new HashSet();
+
+    /** the paint bounds of every component, as of the last time it was drawn into the image */
+    private final Map<LWComponent,Rectangle2D.Float> mDrawnBounds = new HashMap();
+
+    /** for diagnostics */
+    private int mFullRenders, mPatches, mBlits;
+
+    //-----------------------------------------------------------------------------
+    // Invalidation: may be called from any thread
+    //-----------------------------------------------------------------------------
+
+    /** re-render the entire image at the next paint */
+    void invalidate() {
+        synchronized (mDirty) {
+            mInvalidateAll = true;
+            mDirty.clear();
+        }
+    }
+
+    /** re-render the regions of the given component at the next paint */
+    void invalidate(LWComponent c) {
+        if (c == null)
+            return;
+        if (c instanceof LWMap || c instanceof LWPathway) {
+            invalidate();
+            return;
+        }
+        synchronized (mDirty) {
+            if (!mInvalidateAll)
+                mDirty.add(c);
+        }
+    }
+
+    /** re-render whatever the given event may have changed */
+    void invalidate(LWCEvent e) {
+        final Object key = e.key;
+        if (key == LWKey.UserActionCompleted || key == LWKey.HierarchyChanging) {
+            // nothing new to draw: the changes have been, or will be, reported
+            return;
+        }
+        if (key == LWKey.ChildrenAdded || key == LWKey.ChildrenRemoved) {
+            // the parent needn't redraw, just the children that came or went
+            if (e.oldValue instanceof Collection) {
+                for (Object o : (Collection) e.oldValue)
+                    if (o instanceof LWComponent)
+                        invalidate((LWComponent) o);
+                return;
+            }
+        } else if (key == LWKey.HierarchyChanged) {
+            invalidate();
+            return;
+        }
+        final List<LWComponent> components = e.getComponents();
+        if (components != null) {
+            for (LWComponent c : components)
+                invalidate(c);
+        } else if (e.component != null) {
+            invalidate(e.component);
+        } else {
+            invalidate();
+        }
+    }
+
+    //-----------------------------------------------------------------------------
+    // Painting: AWT thread only
+    //-----------------------------------------------------------------------------
+
+    /**
+     * Draw the given map into the given panner DrawContext through the cached image,
+     * bringing the image up to date first if needed.  The DrawContext must have been
+     * created with the given zoom and offset, and is left in map drawing mode.
+     *
+     * @param size the pixel size of the panner region being drawn into
+     */
+    void paint(DrawContext dc, LWMap map, Rectangle size, Object antiAlias)
+    {
+        final int width = size.width + 1;
+        final int height = size.height + 1;
+
+        final boolean invalidateAll;
+        final LWComponent[] dirty;
+        synchronized (mDirty) {
+            invalidateAll = mInvalidateAll;
+            mInvalidateAll = false;
+            dirty = mDirty.toArray(new LWComponent[mDirty.size()]);
+            mDirty.clear();
+        }
+
+        if (invalidateAll
+            || mImage == null
+            || mImage.getWidth() != width
+            || mImage.getHeight() != height
+            || mMap != map
+            || mZoom != dc.zoom
+            || mOffsetX != dc.offsetX
+            || mOffsetY != dc.offsetY
+            || mAntiAlias != antiAlias)
+        {
+            if (mImage == null || mImage.getWidth() != width || mImage.getHeight() != height) {
+                if (mImage != null)
+                    mImage.flush();
+                mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            mMap = map;
+            mZoom = dc.zoom;
+            mOffsetX = dc.offsetX;
+            mOffsetY = dc.offsetY;
+            mAntiAlias = antiAlias;
+            renderAll();
+        } else if (dirty.length > 0) {
+            renderDirty(dirty);
+        }
+
+        dc.setRawDrawing();
+        try {
+            dc.g.drawImage(mImage, 0, 0, null);
+            mBlits++;
+        } finally {
+            dc.setMapDrawing();
+        }
+
+        if (DEBUG.PAINT && DEBUG.META) Log.debug(this);
+    }
+
+    private void renderAll()
+    {
+        render(null);
+        mDrawnBounds.clear();
+        for (LWComponent c : mMap.getAllDescendents(LWComponent.ChildKind.PROPER))
+            mDrawnBounds.put(c, c.getPaintBounds());
+        mFullRenders++;
+    }
+
+    private void renderDirty(LWComponent[] dirty)
+    {
+        // everything that may have moved along with a dirty component is dirty too
+        final Set<LWComponent> all = new HashSet();
+        for (LWComponent c : dirty) {
+            if (c.getMap() != mMap && !c.isDeleted() && !mDrawnBounds.containsKey(c))
+                continue; // not ours
+            if (all.add(c)) {
+                if (c.hasChildren())
+                    all.addAll(c.getAllDescendents(LWComponent.ChildKind.PROPER));
+                // groups resize to fit their children without telling anyone
+                for (LWComponent p = c.getParent(); p instanceof LWGroup; p = p.getParent())
+                    all.add(p);
+            }
+        }
+        for (LWComponent c : all.toArray(new LWComponent[all.size()]))
+            all.addAll(c.getLinks());
+
+        final List<Rectangle> patches = new ArrayList();
+        final Rectangle imageBounds = new Rectangle(mImage.getWidth(), mImage.getHeight());
+        long patchArea = 0;
+
+        for (LWComponent c : all) {
+            if (c.inPathway()) {
+                // the pathways of this component will need redrawing where ever they go
+                renderAll();
+                return;
+            }
+            final Rectangle2D.Float drawn;
+            if (c.isDeleted() || c.getMap() != mMap) {
+                drawn = mDrawnBounds.remove(c);
+                patchArea += addPatch(patches, drawn, imageBounds);
+            } else {
+                final Rectangle2D.Float now = c.getPaintBounds();
+                drawn = mDrawnBounds.put(c, now);
+                patchArea += addPatch(patches, drawn, imageBounds);
+                patchArea += addPatch(patches, now, imageBounds);
+            }
+        }
+
+        if (patches.isEmpty())
+            return;
+
+        if (patchArea * 2 > (long) imageBounds.width * imageBounds.height) {
+            // it'd be just as much work to patch it all as to start over
+            renderAll();
+            return;
+        }
+
+        if (patches.size() > MAX_PATCHES) {
+            final Rectangle union = new Rectangle(patches.get(0));
+            for (Rectangle r : patches)
+                union.add(r);
+            patches.clear();
+            patches.add(union);
+        }
+
+        for (Rectangle r : patches) {
+            render(r);
+            mPatches++;
+        }
+    }
+
+    /** @return the area of the patch added, if any */
+    private int addPatch(List<Rectangle> patches, Rectangle2D.Float mapRect, Rectangle imageBounds)
+    {
+        if (mapRect == null || Util.isBadRect(mapRect))
+            return 0;
+        final int x0 = (int) Math.floor(mapRect.x * mZoom + mOffsetX) - MARGIN;
+        final int y0 = (int) Math.floor(mapRect.y * mZoom + mOffsetY) - MARGIN;
+        final int x1 = (int) Math.ceil((mapRect.x + mapRect.width) * mZoom + mOffsetX) + MARGIN;
+        final int y1 = (int) Math.ceil((mapRect.y + mapRect.height) * mZoom + mOffsetY) + MARGIN;
+        final Rectangle r = new Rectangle(x0, y0, x1 - x0, y1 - y0).intersection(imageBounds);
+        if (r.isEmpty())
+            return 0;
+        for (Rectangle p : patches) {
+            if (p.contains(r))
+                return 0;
+        }
+        patches.add(r);
+        return r.width * r.height;
+    }
+
+    /** clear & re-render the given pixel region of the image, or all of it if null */
+    private void render(Rectangle region)
+    {
+        if (region == null)
+            region = new Rectangle(mImage.getWidth(), mImage.getHeight());
+        final Graphics2D g = mImage.createGraphics();
+        try {
+            final Composite composite = g.getComposite();
+            g.setComposite(AlphaComposite.Clear);
+            g.fill(region);
+            g.setComposite(composite);
+
+            // Components are culled against the DrawContext's master clip by their
+            // geometry, not by the pixels their strokes & anti-aliasing touch, so cull
+            // against a generous clip, but only actually touch the cleared region.
+            g.setClip(region.x - CULL_MARGIN, region.y - CULL_MARGIN,
+                      region.width + CULL_MARGIN * 2, region.height + CULL_MARGIN * 2);
+            final DrawContext dc = new DrawContext(g, mZoom, mOffsetX, mOffsetY, null, mMap, false);
+            dc.setRawDrawing();
+            g.setClip(region);
+            dc.setMapDrawing();
+            dc.g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, mAntiAlias);
+            dc.setDraftQuality(); // okay to skimp in rendering of panner image -- it's usually so tiny
+            mMap.draw(dc);
+        } catch (Throwable t) {
+            Log.error("rendering overview of " + mMap + " in " + region, t);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MapOverviewCache[" + mMap
+            + (mImage == null ? "" : (" " + mImage.getWidth() + "x" + mImage.getHeight()))
+            + " full=" + mFullRenders
+            + " patches=" + mPatches
+            + " blits=" + mBlits
+            + "]";
+    }
+}
@@ -46,6 +46,7 @@ public class MapPanner extends javax.swing.JPanel
     private Point lastDrag; // where mouse was at last drag
     private Point2D mapStart; // where map origin was at mouse press
     private LWMap map; // active map
+    private final MapOverviewCache overview = new MapOverviewCache(); // the map as last drawn here
 
     // Enable this to keep viewport always visible in panner: (it causes while-you-drag
     // zoom adjusting tho, which can be a bit disorienting)
@@ -145,13 +146,17 @@ public class MapPanner extends javax.swing.JPanel
             if (this.map != null)
                 this.map.removeLWCListener(this);
             this.map = map;
-            // if (DEBUG.Enabled) this.map.addLWCListener(this); else // GAA -- very confusing...
-            this.map.addLWCListener(this, LWKey.UserActionCompleted, LWKey.Repaint);
+            // we hear all events, so the overview image can be patched where ever the map changed
+            this.map.addLWCListener(this);
+            overview.invalidate();
         }
     }
 
     public void LWCChanged(LWCEvent e) {
-        repaint();
+        overview.invalidate(e);
+        // we still only repaint once each user action is complete
+        if (e.key == LWKey.UserActionCompleted || e.key == LWKey.Repaint)
+            repaint();
         // //if (DEBUG.Enabled) Log.debug("LWCChanged: " + e);
         // Log.info("LWCChanged: " + e);
         // if (DEBUG.DYNAMIC_UPDATE || e.key == LWKey.UserActionCompleted || e.key == LWKey.RepaintAsync)
@@ -398,10 +403,15 @@ public class MapPanner extends javax.swing.JPanel
         }
         
         /*
-         * Now tell the active LWMap to draw itself here on the panner.
+         * Now tell the active LWMap to draw itself here on the panner.  The panner
+         * itself keeps an image of the map, so that moving the viewer reticle, or a
+         * change to only part of the map, doesn't mean drawing the whole map again.
          */
-        
-        map.draw(dc);
+
+        if (panner != null && drawViewerReticle)
+            panner.overview.paint(dc, map, paintRect, viewer.AA_ON);
+        else
+            map.draw(dc);
 
         if (drawViewerReticle) {
             /*
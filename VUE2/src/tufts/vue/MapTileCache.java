@@ -0,0 +1,323 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * An offscreen cache of the rendered map for a MapViewer, kept as fixed size tiles.
+ *
+ * Tiles are laid out on a grid in zoomed map space (map coordinates times the zoom),
+ * so they don't depend on the scroll position: scrolling or panning the viewer only
+ * has to render the tiles that newly come into view, and a repaint of a small region
+ * (e.g., for a tooltip, or a selection change) only has to blit the tiles under it.  A
+ * change in zoom or background color empties the cache.
+ *
+ * The tiles hold only what the focal draws itself.  The viewer still draws the
+ * selection decorations, the indication, the dragged selector box and any active text
+ * edit live, on top of the blitted tiles.  Because components draw themselves a bit
+ * differently when selected, or when their label is being edited, the viewer
+ * invalidates the regions of those components when they change.
+ *
+ * Invalidation can come from any thread (e.g., image loaders reporting a repaint
+ * region), so invalidations are just queued, and applied at the start of the next
+ * paint on the AWT thread.  When the whole cache is invalidated (which happens for
+ * almost any model change), the next paint is not cached: while the model is
+ * changing continuously (e.g., during a drag), rendering tiles would only cost more
+ * than drawing directly.  The first paint after the model is quiet re-fills the cache.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class MapTileCache
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(MapTileCache.class);
+
+    /** tile width & height, in pixels */
+    static final int TILE_SIZE = 256;
+
+    /** always allow at least this many tiles, in addition to twice what's needed to cover the viewer */
+    private static final int MIN_TILES = 16;
+
+    /** extra margin (pixels) for strokes drawn outside a component's paint bounds or geometry: e.g., selection strokes */
+    private static final int COMPONENT_MARGIN = 12;
+
+    private final MapViewer mViewer;
+
+    /** a rendered tile */
+    private static final class Tile {
+        final BufferedImage image;
+        /** the keys of the images drawn into the tile: see ImageMemoryCache.shown */
+        final Set<Object> imageKeys;
+        Tile(BufferedImage image, Set<Object> imageKeys) {
+            this.image = image;
+            this.imageKeys = imageKeys;
+        }
+    }
+
+    /** tile key -> rendered tile, in LRU order */
+    private final LinkedHashMap<Long,Tile> mTiles = new LinkedHashMap(64, 0.75f, true);
+
+    private double mZoom = Double.NaN;
+    private Color mFill;
+
+    private final AtomicBoolean mInvalidateAll = new AtomicBoolean(true);
+    private final ConcurrentLinkedQueue<Rectangle2D.Float> mInvalidRegions = new ConcurrentLinkedQueue();
+
+    /** for diagnostics */
+    private int mTilesRendered, mTilesBlitted;
+
+    MapTileCache(MapViewer viewer) {
+        mViewer = viewer;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Invalidation: may be called from any thread
+    //-----------------------------------------------------------------------------
+
+    /** discard all tiles */
+    void invalidate() {
+        mInvalidateAll.set(true);
+    }
+
+    /** discard all tiles that intersect the given map region */
+    void invalidate(Rectangle2D mapRect) {
+        if (mapRect == null || mapRect.isEmpty())
+            return;
+        mInvalidRegions.add(new Rectangle2D.Float((float) mapRect.getX(), (float) mapRect.getY(),
+                                                  (float) mapRect.getWidth(), (float) mapRect.getHeight()));
+    }
+
+    /** discard all tiles that may include any part of the given component */
+    void invalidate(LWComponent c) {
+        if (c == null)
+            return;
+        final Rectangle2D.Float r = c.getPaintBounds();
+        if (Util.isBadRect(r)) {
+            invalidate();
+            return;
+        }
+        final double zoom = mZoom;
+        if (zoom > 0) {
+            final float margin = (float) (COMPONENT_MARGIN / zoom);
+            r.x -= margin;
+            r.y -= margin;
+            r.width += margin * 2;
+            r.height += margin * 2;
+        }
+        invalidate(r);
+    }
+
+    /** discard whatever the given event may have changed */
+    void invalidate(LWCEvent e) {
+        final Object key = e.key;
+        if (key == LWKey.UserActionCompleted) {
+            // nothing new to draw: the changes have already been reported
+            return;
+        }
+        if ((key == LWKey.RepaintRegion || key == LWKey.RepaintComponent) && e.component != null) {
+            // e.g., image data has arrived: the geometry hasn't changed
+            invalidate(e.component);
+            return;
+        }
+        invalidate();
+    }
+
+    //-----------------------------------------------------------------------------
+    // Painting: AWT thread only
+    //-----------------------------------------------------------------------------
+
+    /** @return the number of tiles currently cached */
+    int size() {
+        return mTiles.size();
+    }
+
+    /**
+     * Fill the clip region of the given viewer DrawContext by drawing the given focal
+     * through the tile cache.  The DrawContext is left in map drawing mode, with it's
+     * background fill set, just as if the focal had been drawn into it directly.
+     *
+     * @return false if the cache can't be used for this paint: the caller must draw
+     * the focal itself, including the background
+     */
+    boolean paint(final DrawContext dc, final LWComponent focal, final Color fill)
+    {
+        final boolean wasValid = applyInvalidations();
+
+        if (dc.zoom != mZoom || !fill.equals(mFill)) {
+            clear();
+            mZoom = dc.zoom;
+            mFill = fill;
+        }
+
+        if (!wasValid || fill.getAlpha() != 255)
+            return false;
+
+        // tiles can only be blitted exactly at whole pixel offsets, with no scaling
+        // on the underlying device transform
+        final int offsetX = (int) dc.offsetX;
+        final int offsetY = (int) dc.offsetY;
+        if (offsetX != dc.offsetX || offsetY != dc.offsetY)
+            return false;
+
+        dc.setRawDrawing();
+
+        if ((dc.g.getTransform().getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            dc.setMapDrawing();
+            return false;
+        }
+
+        try {
+            final Rectangle clip = dc.g.getClipBounds();
+            if (clip != null && !clip.isEmpty()) {
+                final int tx0 = floorDiv(clip.x - offsetX, TILE_SIZE);
+                final int ty0 = floorDiv(clip.y - offsetY, TILE_SIZE);
+                final int tx1 = floorDiv(clip.x + clip.width - 1 - offsetX, TILE_SIZE);
+                final int ty1 = floorDiv(clip.y + clip.height - 1 - offsetY, TILE_SIZE);
+
+                for (int ty = ty0; ty <= ty1; ty++) {
+                    for (int tx = tx0; tx <= tx1; tx++) {
+                        final Tile tile = getTile(dc, focal, tx, ty);
+                        dc.g.drawImage(tile.image, offsetX + tx * TILE_SIZE, offsetY + ty * TILE_SIZE, null);
+                        ImageMemoryCache.shown(tile.imageKeys);
+                        mTilesBlitted++;
+                    }
+                }
+
+                trim(dc.frame);
+            }
+        } finally {
+            dc.setMapDrawing();
+        }
+
+        dc.setBackgroundFill(fill);
+
+        if (DEBUG.PAINT && DEBUG.META) Log.debug(this);
+
+        return true;
+    }
+
+    /** @return true if the cache wasn't entirely invalidated */
+    private boolean applyInvalidations()
+    {
+        if (mInvalidateAll.getAndSet(false)) {
+            mInvalidRegions.clear();
+            clear();
+            return false;
+        }
+
+        Rectangle2D.Float r;
+        while ((r = mInvalidRegions.poll()) != null) {
+            if (mTiles.isEmpty() || !(mZoom > 0))
+                continue;
+            final double x0 = r.x * mZoom, y0 = r.y * mZoom;
+            final double x1 = (r.x + r.width) * mZoom, y1 = (r.y + r.height) * mZoom;
+            // include a pixel on each side for anti-aliased edges
+            final int tx0 = floorDiv((int) Math.floor(x0) - 1, TILE_SIZE);
+            final int ty0 = floorDiv((int) Math.floor(y0) - 1, TILE_SIZE);
+            final int tx1 = floorDiv((int) Math.ceil(x1) + 1, TILE_SIZE);
+            final int ty1 = floorDiv((int) Math.ceil(y1) + 1, TILE_SIZE);
+            if ((long) (tx1 - tx0 + 1) * (ty1 - ty0 + 1) > mTiles.size()) {
+                final Iterator<Long> i = mTiles.keySet().iterator();
+                while (i.hasNext()) {
+                    final long key = i.next();
+                    final int tx = (int) (key >> 32), ty = (int) key;
+                    if (tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1)
+                        i.remove();
+                }
+            } else {
+                for (int ty = ty0; ty <= ty1; ty++)
+                    for (int tx = tx0; tx <= tx1; tx++)
+                        mTiles.remove(key(tx, ty));
+            }
+        }
+        return true;
+    }
+
+    private Tile getTile(DrawContext viewerDC, LWComponent focal, int tx, int ty)
+    {
+        final Long key = key(tx, ty);
+        Tile tile = mTiles.get(key);
+        if (tile == null) {
+            final BufferedImage image = viewerDC.g.getDeviceConfiguration().createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.OPAQUE);
+            final Graphics2D g = image.createGraphics();
+            ImageMemoryCache.beginRecording();
+            try {
+                // Components are culled against the clip by their geometry, not by the pixels
+                // their strokes & anti-aliasing actually touch, so clip generously, and let
+                // the tile edges do the real clipping.  Otherwise, anything that ends just
+                // short of a tile edge would be missing it's last few pixels on the other side.
+                g.setClip(-COMPONENT_MARGIN, -COMPONENT_MARGIN, TILE_SIZE + COMPONENT_MARGIN * 2, TILE_SIZE + COMPONENT_MARGIN * 2);
+                final DrawContext dc = mViewer.createTileDrawContext(g, -tx * TILE_SIZE, -ty * TILE_SIZE, TILE_SIZE);
+                dc.fillBackground(mFill);
+                focal.draw(dc);
+            } catch (Throwable t) {
+                Log.error("rendering tile " + tx + "," + ty + " of " + focal, t);
+            } finally {
+                g.dispose();
+            }
+            tile = new Tile(image, ImageMemoryCache.endRecording());
+            mTiles.put(key, tile);
+            mTilesRendered++;
+        }
+        return tile;
+    }
+
+    /** drop the least recently used tiles beyond what we want to keep for a viewer of the given size */
+    private void trim(Rectangle frame)
+    {
+        int max = MIN_TILES;
+        if (frame != null)
+            max += 2 * (frame.width / TILE_SIZE + 2) * (frame.height / TILE_SIZE + 2);
+        if (mTiles.size() <= max)
+            return;
+        final Iterator<Tile> i = mTiles.values().iterator();
+        while (mTiles.size() > max && i.hasNext()) {
+            i.next().image.flush();
+            i.remove();
+        }
+    }
+
+    private void clear() {
+        for (Tile tile : mTiles.values())
+            tile.image.flush();
+        mTiles.clear();
+    }
+
+    private static long key(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
+    private static int floorDiv(int a, int b) {
+        return a >= 0 ? a / b : -((-a + b - 1) / b);
+    }
+
+    @Override
+    public String toString() {
+        return "MapTileCache[" + mTiles.size() + " tiles; zoom=" + mZoom
+            + " rendered=" + mTilesRendered + " blitted=" + mTilesBlitted + "; " + mViewer + "]";
+    }
+}
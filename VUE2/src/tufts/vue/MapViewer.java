@@ -255,6 +255,71 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
 			true);
     
     
+    private final static BooleanPreference tiledRenderingPref = BooleanPreference.create(
+			edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+			"tiledRendering", 
+			VueResources.getString("preference.tiledrendering.title"), 
+			VueResources.getString("preference.tiledrendering.description"),
+			Boolean.FALSE,
+			true);
+
+    private static boolean TiledRendering = tiledRenderingPref.isTrue();
+
+    static {
+        tiledRenderingPref.addVuePrefListener(new VuePrefListener() {
+                public void preferenceChanged(VuePrefEvent pe) {
+                    TiledRendering = ((Boolean)pe.getNewValue()).booleanValue();
+                }
+            });
+    }
+
+    /** offscreen tiles of the rendered map, if TiledRendering is on */
+    private MapTileCache mTileCache;
+    /** the selection, as of the last time we invalidated the tile regions for it */
+    private final List<LWComponent> mTiledSelection = new ArrayList();
+
+    private final static BooleanPreference spriteDragPref = BooleanPreference.create(
+			edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+			"spriteDrag", 
+			VueResources.getString("preference.spritedrag.title"), 
+			VueResources.getString("preference.spritedrag.description"),
+			Boolean.FALSE,
+			true);
+
+    private static boolean SpriteDrag = spriteDragPref.isTrue();
+
+    static {
+        spriteDragPref.addVuePrefListener(new VuePrefListener() {
+                public void preferenceChanged(VuePrefEvent pe) {
+                    SpriteDrag = ((Boolean)pe.getNewValue()).booleanValue();
+                }
+            });
+    }
+
+    /** the drag of a large selection currently being shown without moving it in the model, if SpriteDrag is on */
+    private DragSprite mDragSprite;
+
+    private final static BooleanPreference backgroundRenderingPref = BooleanPreference.create(
+			edu.tufts.vue.preferences.PreferenceConstants.MAPDISPLAY_CATEGORY,
+			"backgroundRendering", 
+			VueResources.getString("preference.backgroundrendering.title"), 
+			VueResources.getString("preference.backgroundrendering.description"),
+			Boolean.FALSE,
+			true);
+
+    private static boolean BackgroundRendering = backgroundRenderingPref.isTrue();
+
+    static {
+        backgroundRenderingPref.addVuePrefListener(new VuePrefListener() {
+                public void preferenceChanged(VuePrefEvent pe) {
+                    BackgroundRendering = ((Boolean)pe.getNewValue()).booleanValue();
+                }
+            });
+    }
+
+    /** renders huge maps off the AWT thread, if BackgroundRendering is on */
+    private BackgroundRenderer mBackgroundRenderer;
+    
     public MapViewer(LWMap map) {
         this(map, "");
     }
@@ -489,6 +554,8 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
             Log.warn(this + " *** toolSelected: NULL ID IN TOOL!");
             return;
         }
+
+        invalidateTiles(); // the tool may change how the map is drawn
         
         VueTool oldTool = activeTool; // might be safer to pull this from the ActiveEvent
 
@@ -1587,6 +1654,9 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
             return;
         }
 
+        // we may not see events from the map while it isn't the focal
+        invalidateTiles();
+
         final boolean loadingWasSet = mFocalLoading;
 
         if (!loadingWasSet)
@@ -1967,8 +2037,43 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
                 VueSelection = VUE.ModelSelection;
             }
         }
+        if (mTileCache != null)
+            invalidateSelectionTiles(s);
+        if (mBackgroundRenderer != null)
+            mBackgroundRenderer.invalidate();
         repaintSelection();
     }
+
+    /** selected components draw themselves differently: invalidate the tiles for both the old and new selection */
+    private void invalidateSelectionTiles(LWSelection s) {
+        if (mTiledSelection.size() + s.size() > 1000) {
+            mTileCache.invalidate();
+        } else {
+            for (LWComponent c : mTiledSelection)
+                mTileCache.invalidate(c);
+            for (LWComponent c : s)
+                mTileCache.invalidate(c);
+        }
+        mTiledSelection.clear();
+        mTiledSelection.addAll(s);
+    }
+
+    /** discard all cached map tiles, and any background renders */
+    private void invalidateTiles() {
+        if (mTileCache != null)
+            mTileCache.invalidate();
+        if (mBackgroundRenderer != null)
+            mBackgroundRenderer.invalidate();
+    }
+
+    /** discard any cached map tiles, background renders, or cached component rasters, that include the given component */
+    private void invalidateTiles(LWComponent c) {
+        if (mTileCache != null)
+            mTileCache.invalidate(c);
+        if (mBackgroundRenderer != null)
+            mBackgroundRenderer.invalidate();
+        RasterCache.invalidateAncestors(c);
+    }
     
     /** update the regions of both the old selection & the new selection */
     public void repaintSelection() {
@@ -2010,6 +2115,7 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
     }
     
     public void activeChanged(ActiveEvent e, LWPathway.Entry entry) {
+        invalidateTiles(); // the current entry may be drawn differently
         //if (instanceName.equals("*LEFT") && VUE.getActiveViewer() != this) Util.printStackTrace("***ACTIVE VIEWER: " + VUE.getActiveViewer());
         if (activeTool != ToolPresentation && VUE.getActiveViewer() == this && mFocal instanceof LWMap == false && entry != null) {
             //if (isPathwayEntryMode()) {
@@ -2445,6 +2551,11 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
 //             }
 //         }
 
+        if (mTileCache != null)
+            mTileCache.invalidate(e);
+        if (mBackgroundRenderer != null)
+            mBackgroundRenderer.invalidate(e);
+
         if (e.key == LWKey.RepaintAsync) {
             setFastPaint("async paint request");
             repaint();
@@ -2475,6 +2586,11 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
             return;
         }
 
+        if (e.isBatch()) {
+            handleBatch(e);
+            return;
+        }
+
         if (DEBUG.THREAD && !SwingUtilities.isEventDispatchThread()) {
             Util.printStackTrace(this + "; Handling event in non AWT thread: " + e);
             //out("Handling event during non AWT thread: " + e + "; " + Thread.currentThread());
@@ -2600,6 +2716,34 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         }
     }
 
+    /**
+     * Handle an LWKey.Batch event from the map: a single canvas adjustment and a single repaint
+     * for the whole batch, instead of once for each event.
+     */
+    private void handleBatch(LWCEvent batch) {
+        boolean boundsChanged = false;
+        for (LWCEvent e : batch.getBatchedEvents()) {
+            if (e.key == LWPathway.Entry.MAP_VIEW_CHANGED) {
+                LWCChanged(e); // rare: let the usual code handle it
+                continue;
+            }
+            if (e.key == LWKey.Deleting && mRollover == e.getComponent())
+                clearRollover();
+            if (!boundsChanged && isBoundsEvent(e.key))
+                boundsChanged = true;
+        }
+        
+        if (mUndoManager != null && mUndoManager.hasCleanupTasks() && (getFocal() == getMap())) {
+            // see LWCChanged: don't draw until we're complete
+            if (DEBUG.PAINT) out("skipping batch draw till cleanup-tasks complete");
+            return;
+        }
+        
+        if (boundsChanged)
+            adjustCanvasSize();
+        repaint();
+    }
+
     private java.util.List computeSelection(final Rectangle2D mapRect)
     {
         PickContext pc = getPickContext((Rectangle2D.Float) mapRect);
@@ -3477,6 +3621,9 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
     private final java.util.concurrent.atomic.AtomicInteger mFastRequests = new java.util.concurrent.atomic.AtomicInteger();
 
     private static final String PAINT_TRACKPOINT = "PAINT";
+
+    /** the last frame of ours measured by PaintStats, if any, for the HUD */
+    private PaintStats.Frame mLastFrame;
     
     @Override
     public void paint(Graphics g) {
@@ -3490,8 +3637,9 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
 
         final long start = System.currentTimeMillis();
 
+        final PaintStats.Frame frame = (PaintStats.Enabled || DEBUG.PAINT) ? PaintStats.beginFrame(getDiagName()) : null;
+
         if (DEBUG.Enabled) {
-            DrawContext.clearDebug();
             if (DEBUG.PAINT || DEBUG.SCROLL || DEBUG.PRESENT)
                 pout(String.format("PAINT =>[%d]%s rawClip=%s",
                                    mPaints,
@@ -3505,6 +3653,10 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
 //                 redrawSelectorBox((Graphics2D)g);
 //                 redrawingSelector = false;} else
             
+            final Rectangle2D visibleBounds = getVisibleMapBounds();
+            ImageMemoryCache.beginPaint(this, mFocal, visibleBounds);
+            if (VUE.getActiveViewer() == this)
+                Images.setViewport(mFocal, visibleBounds);
             super.paint(g);
             
         } catch (Throwable t) {
@@ -3514,11 +3666,22 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
                 Log.error("*paint* VueSelection.first: " + VueSelection.first());
             Log.error("*paint* Graphics: " + g);
             Log.error("*paint* Graphics transform: " + ((Graphics2D)g).getTransform());
+        } finally {
+            ImageMemoryCache.endPaint();
+            if (frame != null)
+                PaintStats.endFrame(frame);
         }
 
+        if (frame != null) {
+            PaintStats.record(frame);
+            mLastFrame = frame;
+        }
 
         final long delta = System.currentTimeMillis() - start;
 
+        if (mMap != null)
+            mMap.notifyPainted(delta);
+
         if (mPaints == 0) {
             if (inScrollPane)
                 adjustCanvasSize(); // need for intial scroll-bar sizes if bigger than viewport on startup
@@ -3542,30 +3705,15 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
 //             }
         }
         
-        if (DEBUG.PAINT || (DEBUG.Enabled && delta > 200)) {
-            //try { Thread.sleep(500); } catch (Exception e) {}            
+        if (DEBUG.Enabled && delta > 200 && !DEBUG.PAINT) {
+            // with DEBUG.PAINT, every frame is already being reported by PaintStats
             final float fps = delta > 0 ? 1000f/delta : -1;
-
-            if (DEBUG.PAINT) {
-                g.setFont(BigFont);
-                g.setColor(ContrastBlack);
-                g.drawString(""+mPaints, 100, 200);
-                g.setColor(ContrastWhite);
-                g.drawString(""+mPaints, 100, 300);
-                g.setColor(ContrastRed);
-                g.drawString(""+mPaints, 100, 400);
-                g.setColor(ContrastGreen);
-                g.drawString(""+mPaints, 100, 500);
-                g.setColor(ContrastBlue);
-                g.drawString(""+mPaints, 100, 600);
-            }
-            
-            out("slow-paint: " + DrawContext.getDebug());
-            pout(String.format("paint <-[%d]%s (%.2f fps) %dms",
+            pout(String.format("slow paint <-[%d]%s (%.2f fps) %dms%s",
                                mPaints,
                                (mThisPaintIsFast?" FAST":""),
                                fps,
-                               delta));
+                               delta,
+                               frame == null ? "" : ("; " + frame)));
         }
         
         mPaints++;
@@ -3573,8 +3721,6 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         
     }
 
-    private static final Font BigFont = new Font("SansSerif", Font.BOLD, 96);
-
     private void scheduleQualityPaintIfNeeded(final Graphics g, final int fastRequestsAtStartOfPaint)
     {
         final int newFastPaintsWhilePainting = (mFastRequests.get() - fastRequestsAtStartOfPaint);
@@ -3861,7 +4007,9 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         // DRAW THE THE CURRENT FOCAL (usually the MAP)
         //-------------------------------------------------------
 
+        PaintStats.beginFocal();
         drawFocal(dc);
+        PaintStats.endFocal();
         
         //-------------------------------------------------------
         
@@ -3925,7 +4073,7 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         // wanted, even for the BrowseTool, from the drawing of the resize handles +
         // selection bounding-box, so can turn off just the latter for the BrowseTool.
 
-        if (s == null || s.isEmpty() || !activeTool.supportsResizeControls() || isAnimating) {
+        if (s == null || s.isEmpty() || !activeTool.supportsResizeControls() || isAnimating || mDragSprite != null) {
             //if (DEBUG.Enabled) out("SKIPPING RESIZE CONTROL on SELECTION; sel=" + s);
             resizeControl.active = false;
         } else {
@@ -3972,6 +4120,12 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
             }
         }
 
+        if (PaintStats.isHUDShowing()) {
+            dc.setRawDrawing();
+            final Rectangle visible = getVisibleBounds();
+            PaintStats.drawHUD(dc.g, mLastFrame, visible.x + 10, visible.y + 10);
+        }
+
         // If there's an active text edit, draw it:
 
         if (hasActiveTextEdit())     // This is a real Swing JComponent
@@ -4141,6 +4295,21 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         }
 
         
+        if (mDragSprite != null && mFocal == mMap && mRollover == null) {
+            if (mDragSprite.paint(dc))
+                return;
+        }
+
+        if (mFocal != null && useBackgroundRenderer(dc)) {
+            if (mBackgroundRenderer.paint(dc, getBackgroundFillColor(dc)))
+                return;
+        }
+
+        if (mFocal != null && useTileCache(dc)) {
+            if (mTileCache.paint(dc, mFocal, getBackgroundFillColor(dc)))
+                return;
+        }
+
         if (dc.getBackgroundFill() == null) {
             // unless the active tool has already done some kind
             // of special fill, fill the entire background
@@ -4189,6 +4358,113 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         }
     }
 
+    /**
+     * @return true if the focal can be drawn from the tile cache for this paint: only
+     * a regular interactive paint of the whole map with nothing special going on.
+     * The tile cache is created or dropped here as the preference changes.
+     */
+    private boolean useTileCache(DrawContext dc)
+    {
+        if (!TiledRendering) {
+            mTileCache = null;
+            return false;
+        }
+        
+        if (mTileCache == null) {
+            mTileCache = new MapTileCache(this);
+            mTiledSelection.clear();
+            if (VueSelection != null)
+                mTiledSelection.addAll(VueSelection);
+        }
+
+        return mFocal == mMap
+            && mRollover == null
+            && dc.getBackgroundFill() == null
+            && dc.isInteractive()
+            && !isAnimating
+            && !mThisPaintIsFast
+            && !DEBUG.PAINT
+            && !DEBUG.VIEWER;
+    }
+
+    /**
+     * @return true if the focal can be drawn by the background renderer for this
+     * paint: the same conditions as for the tile cache, and the map must be huge.
+     * The background renderer is created or dropped here as the preference changes.
+     */
+    private boolean useBackgroundRenderer(DrawContext dc)
+    {
+        if (!BackgroundRendering) {
+            if (mBackgroundRenderer != null) {
+                mBackgroundRenderer.dispose();
+                mBackgroundRenderer = null;
+            }
+            return false;
+        }
+        
+        if (mFocal != mMap
+            || mRollover != null
+            || dc.getBackgroundFill() != null
+            || !dc.isInteractive()
+            || isAnimating
+            || mThisPaintIsFast
+            || DEBUG.PAINT
+            || DEBUG.VIEWER)
+            return false;
+
+        if (mMap.getDescendentsView(LWComponent.ChildKind.PROPER).size() < BackgroundRenderer.MIN_COMPONENTS) {
+            if (mBackgroundRenderer != null) {
+                mBackgroundRenderer.dispose();
+                mBackgroundRenderer = null;
+            }
+            return false;
+        }
+
+        if (mBackgroundRenderer == null)
+            mBackgroundRenderer = new BackgroundRenderer(this);
+
+        return true;
+    }
+
+    /** @return a DrawContext for rendering a map tile, set up just as getDrawContext would for a regular paint */
+    DrawContext createTileDrawContext(Graphics2D g, float offsetX, float offsetY, int tileSize)
+    {
+        final DrawContext dc = new DrawContext(g,
+                                               getZoomFactor(),
+                                               offsetX,
+                                               offsetY,
+                                               new Rectangle(0, 0, tileSize, tileSize),
+                                               mFocal,
+                                               true);
+        dc.setAnimating(false);
+        dc.setInteractive(true);
+        dc.setInteractiveQuality();
+        dc.setDrawPathways(true);
+        
+        return activeTool.getDrawContext(dc);
+    }
+
+    /**
+     * @return a DrawContext for rendering the given region of the canvas into an offscreen
+     * image, set up just as getDrawContext would for a regular paint.  The given graphics
+     * must already be translated to canvas coordinates.
+     */
+    DrawContext createOffscreenDrawContext(Graphics2D g, Rectangle region)
+    {
+        g.clip(region); // before the DrawContext takes up it's master clip in map coordinates
+        return activeTool.getDrawContext(getDrawContext(g));
+    }
+
+    /** draw the focal as a regular paint would, but never through any caches, into a DrawContext from createOffscreenDrawContext */
+    void drawFocalOffscreen(DrawContext dc)
+    {
+        dc.setRasterCacheEnabled(false);
+        if (dc.getBackgroundFill() == null)
+            dc.fillBackground(getBackgroundFillColor(dc));
+        if (mFocal != null)
+            mFocal.draw(dc);
+    }
+    
     // This code handled transparent anything (with map showing thru) + links as focals:
     /*
           protected void drawFocalImpl(DrawContext dc)
@@ -4309,9 +4585,12 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         } finally {
             boolean removedEdit = false;
             if (c == activeTextEdit) {
+                invalidateTiles(activeTextEdit.getLWC());
+                activeTextEdit.getLWC().releaseLabelEditBox(activeTextEdit);
                 activeTextEdit = null;
                 removedEdit = true;
             } else if (c == activeRichTextEdit) {
+                invalidateTiles(activeRichTextEdit.getLWC());
                 activeRichTextEdit = null;
                 removedEdit = true;
                 VUE.setActive(RichTextBox.class, this, null);
@@ -4413,11 +4692,14 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         }
         else
         {
-        	activeTextEdit = lwc.getLabelBox();
+        	activeTextEdit = lwc.getLabelEditBox();
         	activeTextEdit.saveCurrentText();
         	if (activeTextEdit.getText().length() < 1)
         		activeTextEdit.setText(VueResources.getString("mapviewer.label.tooltip"));
         }
+
+        // the label is no longer drawn by the component while it's being edited
+        invalidateTiles(lwc);
         
         
         Point2D.Float point = null;
@@ -5966,12 +6248,57 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         }
     }
 
+    /**
+     * If sprite dragging is on, and the selection just starting to be dragged is big enough
+     * to make it worthwhile, show the drag with a DragSprite instead of moving the selection.
+     */
+    private void startDragSprite()
+    {
+        if (!SpriteDrag || mDragSprite != null || isAnimating || mFocal != mMap || mRollover != null)
+            return;
+        if (dragComponent != draggedSelectionGroup || dragControl != null)
+            return;
+
+        final List<LWComponent> moving = new ArrayList();
+        for (LWComponent c : draggedSelectionGroup.getChildren()) {
+            // same as the selection group: a selected child moves with it's selected parent
+            if (!(c.isSelected() && c.isAncestorSelected()))
+                moving.add(c);
+        }
+
+        mDragSprite = DragSprite.create(this, draggedSelectionGroup, moving);
+        
+        if (DEBUG.PAINT && mDragSprite != null) out("sprite drag: " + mDragSprite);
+    }
+
+    /** apply the drag shown so far by the DragSprite to the model, and stop using it */
+    private void commitDragSprite()
+    {
+        final DragSprite sprite = mDragSprite;
+        dropDragSprite();
+        if (sprite != null && sprite.isMoved() && dragComponent != null)
+            dragComponent.setMapLocation(sprite.getX(), sprite.getY());
+    }
+
+    /** stop using any DragSprite, without applying the drag */
+    private void dropDragSprite()
+    {
+        if (mDragSprite != null) {
+            if (DEBUG.PAINT) out("sprite drag done: " + mDragSprite);
+            mDragSprite.flush();
+            mDragSprite = null;
+            repaint();
+        }
+    }
+
     protected void setDragger(LWComponent c) {
         if (isAnimating && c != null) {
             if (DEBUG.Enabled) Util.printStackTrace("dragger not allowed: animating");
             return;
         }
         //out("\n***DRAG SET TO " + c);
+        if (c != dragComponent)
+            dropDragSprite(); // if the drag didn't complete, the model was never moved
         dragComponent = c;
         //if (c instanceof LWGroup) tufts.Util.printStackTrace("DRAGGERSET");
     }
@@ -6416,6 +6743,7 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
                 else if (c == 'D') { DEBUG.DOCK = !DEBUG.DOCK; }
                 else if (c == 'E') { DEBUG.EVENTS = !DEBUG.EVENTS; }
                 else if (c == 'F') { DEBUG.FOCUS = !DEBUG.FOCUS; }
+                else if (c == 'H') { PaintStats.setHUDShowing(!PaintStats.isHUDShowing()); }
                 //else if (c == 'F') { DEBUG_FINDPARENT_OFF = !DEBUG_FINDPARENT_OFF; }
                 else if (c == 'I') { DEBUG.IMAGE = !DEBUG.IMAGE; }
                 else if (c == 'K') { DEBUG.KEYS = !DEBUG.KEYS; }
@@ -7633,7 +7961,10 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
                     return;
                 }
 
-                mouseDragInitiated = true;
+                if (!mouseDragInitiated) {
+                    mouseDragInitiated = true;
+                    startDragSprite();
+                }
             
                 // todo opt: do all this in dragStart
                 //-------------------------------------------------------
@@ -7665,13 +7996,21 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
                 // Reposition the component due to mouse drag
                 //-------------------------------------------------------
                 
-                dragComponent.setMapLocation(mapX + dragOffset.x,
-                                             mapY + dragOffset.y);
+                if (mDragSprite != null)
+                    mDragSprite.moveTo(mapX + dragOffset.x, mapY + dragOffset.y);
+                else
+                    dragComponent.setMapLocation(mapX + dragOffset.x,
+                                                 mapY + dragOffset.y);
                 //dragPosition.setLocation(mapX + dragOffset.x,mapY + dragOffset.y);
                 
                 if (inScrollPane)
                     //scrollToVisible(dragComponent); // unexpected behaviour with large selections
                     scrollToMouse(e);
+
+                if (mDragSprite != null && !mDragSprite.isCurrent()) {
+                    // we've scrolled or zoomed out from under the sprite: carry on with a regular drag
+                    commitDragSprite();
+                }
                 
                 //-------------------------------------------------------
                 // Compute more repaint region
@@ -7764,6 +8103,12 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
             
             if (dragComponent == null && dragControl == null)
                 return;
+
+            if (mDragSprite != null) {
+                // nothing has moved in the model: just re-composite the drag
+                repaint();
+                return;
+            }
             
             if (OPTIMIZED_REPAINT == false) {
                 
@@ -7893,6 +8238,9 @@ public class MapViewer extends TimedASComponent//javax.swing.JComponent
         public void mouseReleased(MouseEvent e) {
             sDragUnderway = false;
             if (DEBUG.MOUSE) out("[" + e.paramString() + "]");
+
+            if (mDragSprite != null)
+                commitDragSprite(); // before anything looks at where the selection ended up
             
             viewer.setAutoscrolls(true); // in case had been cleared for panning
             setLastMousePoint(e.getX(), e.getY());
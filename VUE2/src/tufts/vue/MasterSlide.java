@@ -321,7 +321,7 @@ public final class MasterSlide extends LWSlide
 
         if (dc.focal == this) {
             dc.g.setFont(EditLabelFont);
-            if (mFillColor.brightness() < 0.5)
+            if (SLOT_FillColor.brightness(this) < 0.5)
                 dc.g.setColor(EditLabelColorDarkBG);
             else
                 dc.g.setColor(EditLabelColorLightBG);
@@ -0,0 +1,505 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import java.util.*;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+
+/**
+ * Counts & timings of what goes on while painting, for finding out where the paint time
+ * goes on a given map.
+ *
+ * A Frame covers one paint of a MapViewer (or any other rendering someone wants to
+ * measure): the total & focal drawing time, the number of components whose paint
+ * requirements were checked, how many of those were culled (including those the
+ * spatial index never even offered up), how many were drawn, by type, how many text
+ * layouts had to be computed, and how many images were drawn versus placeholders for
+ * images not yet loaded.  The counting hooks are called from the drawing code
+ * unconditionally, and are no-ops unless there's a current frame on the calling
+ * thread, so they cost next to nothing when we're not measuring.  Only one thread at a
+ * time is measured: painting is normally AWT thread only.
+ *
+ * MapViewer frames are measured when the HUD is showing (debug key 'H' in a
+ * MapViewer), or collection has been turned on through JMX, where the stats are
+ * published as tufts.vue:type=PaintStats if paintStats.jmx is set.  The last
+ * paintStats.window frames are kept for the frame time percentiles & histogram.
+ *
+ * @see PaintStatsMBean
+ * @version $Revision: 1.0 $
+ */
+public final class PaintStats implements PaintStatsMBean
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(PaintStats.class);
+
+    /** number of recent frames kept for the percentiles & histogram */
+    private static final int WINDOW = Math.max(1, VueResources.getInt("paintStats.window", 300));
+
+    /** the upper bounds (ms) of the frame time histogram buckets: there's one more for anything slower */
+    private static final int[] BUCKETS = { 4, 8, 16, 33, 66, 133, 266 };
+
+    /** the one instance, covering the frames of all MapViewers */
+    static final PaintStats Stats = new PaintStats();
+
+    /** true if MapViewers should currently be measuring their frames */
+    static volatile boolean Enabled;
+
+    private static volatile boolean ShowHUD;
+    private static volatile boolean Collecting;
+
+    /** the frame being counted, if any */
+    private static volatile Frame Current;
+
+    static {
+        if (VueResources.getBool("paintStats.jmx")) {
+            try {
+                java.lang.management.ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(Stats, new javax.management.ObjectName("tufts.vue:type=PaintStats"));
+            } catch (Throwable t) {
+                Log.warn("couldn't publish paint stats via JMX: " + t);
+            }
+        }
+    }
+
+    /**
+     * The counts & timings for one rendering.  Counts are only ever made from the
+     * thread that began the frame.
+     */
+    static final class Frame
+    {
+        final String source;
+        final Thread thread = Thread.currentThread();
+        private final Frame outer;
+        private final long start = System.nanoTime();
+        private long focalStart;
+
+        long frameNanos;
+        long focalNanos;
+        /** components whose paint requirements were checked */
+        int visited;
+        /** components skipped as outside the paint region, whether checked or not */
+        int culled;
+        int drawn;
+        int textLayouts;
+        int images;
+        int placeholders;
+        final Map<Class,int[]> drawnByType = new HashMap();
+
+        private Frame(String source, Frame outer) {
+            this.source = source;
+            this.outer = outer;
+        }
+
+        double getMillis() {
+            return frameNanos / 1e6;
+        }
+
+        double getFocalMillis() {
+            return focalNanos / 1e6;
+        }
+
+        /** @return the drawn counts by type, as "Node:12 Link:20 ..." */
+        String getDrawnByType() {
+            final StringBuilder b = new StringBuilder();
+            for (Map.Entry<Class,int[]> e : drawnByType.entrySet()) {
+                if (b.length() > 0)
+                    b.append(' ');
+                b.append(typeName(e.getKey())).append(':').append(e.getValue()[0]);
+            }
+            return b.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.1fms (focal %.1fms) visited=%d culled=%d drawn=%d [%s] layouts=%d images=%d placeholders=%d",
+                                 source,
+                                 getMillis(),
+                                 getFocalMillis(),
+                                 visited,
+                                 culled,
+                                 drawn,
+                                 getDrawnByType(),
+                                 textLayouts,
+                                 images,
+                                 placeholders);
+        }
+    }
+
+    private static String typeName(Class type) {
+        final String name = type.getSimpleName();
+        if (name.length() == 0)
+            return type.getName();
+        else if (name.startsWith("LW") && name.length() > 2)
+            return name.substring(2);
+        else
+            return name;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Frames
+    //-----------------------------------------------------------------------------
+
+    /**
+     * Start counting a new frame on the current thread.  Any frame already being counted
+     * on this thread is suspended until this one ends.  If another thread is currently
+     * counting a frame, this one will be timed, but nothing will be counted for it.
+     */
+    static Frame beginFrame(String source)
+    {
+        final Frame current = Current;
+        final Thread thread = Thread.currentThread();
+        if (current == null || current.thread == thread) {
+            final Frame frame = new Frame(source, current);
+            Current = frame;
+            return frame;
+        } else {
+            return new Frame(source, null);
+        }
+    }
+
+    /** stop counting the given frame, and resume counting any it suspended */
+    static void endFrame(Frame frame)
+    {
+        frame.frameNanos = System.nanoTime() - frame.start;
+        if (Current == frame)
+            Current = frame.outer;
+    }
+
+    /** add the given ended frame to the stats */
+    static void record(Frame frame)
+    {
+        Stats.add(frame);
+        if (DEBUG.PAINT) Log.debug(frame);
+    }
+
+    private static Frame frame() {
+        final Frame frame = Current;
+        return frame != null && frame.thread == Thread.currentThread() ? frame : null;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Counting hooks: no-ops unless there's a frame on the current thread
+    //-----------------------------------------------------------------------------
+
+    static void beginFocal() {
+        final Frame frame = frame();
+        if (frame != null)
+            frame.focalStart = System.nanoTime();
+    }
+
+    static void endFocal() {
+        final Frame frame = frame();
+        if (frame != null && frame.focalStart != 0) {
+            frame.focalNanos += System.nanoTime() - frame.focalStart;
+            frame.focalStart = 0;
+        }
+    }
+
+    /** a component's paint requirements were checked */
+    static void countPaintCheck(boolean required) {
+        final Frame frame = frame();
+        if (frame != null) {
+            frame.visited++;
+            if (!required)
+                frame.culled++;
+        }
+    }
+
+    /** the given number of components were culled without being checked */
+    static void countCulled(int count) {
+        final Frame frame = frame();
+        if (frame != null)
+            frame.culled += count;
+    }
+
+    static void countDrawn(LWComponent c) {
+        final Frame frame = frame();
+        if (frame != null) {
+            frame.drawn++;
+            final int[] count = frame.drawnByType.get(c.getClass());
+            if (count == null)
+                frame.drawnByType.put(c.getClass(), new int[] { 1 });
+            else
+                count[0]++;
+        }
+    }
+
+    /** a new text layout was computed */
+    static void countTextLayout() {
+        final Frame frame = frame();
+        if (frame != null)
+            frame.textLayouts++;
+    }
+
+    /** an image was drawn, or a placeholder was drawn for one that isn't loaded yet */
+    static void countImage(boolean placeholder) {
+        final Frame frame = frame();
+        if (frame != null) {
+            if (placeholder)
+                frame.placeholders++;
+            else
+                frame.images++;
+        }
+    }
+
+    //-----------------------------------------------------------------------------
+    // Enabling
+    //-----------------------------------------------------------------------------
+
+    static boolean isHUDShowing() {
+        return ShowHUD;
+    }
+
+    static void setHUDShowing(boolean show) {
+        ShowHUD = show;
+        Enabled = ShowHUD || Collecting;
+    }
+
+    public boolean isCollecting() {
+        return Collecting;
+    }
+
+    public void setCollecting(boolean collecting) {
+        Collecting = collecting;
+        Enabled = ShowHUD || Collecting;
+    }
+
+    //-----------------------------------------------------------------------------
+    // The rolling window
+    //-----------------------------------------------------------------------------
+
+    private final Frame[] mWindow = new Frame[WINDOW];
+    private int mNext;
+    private long mFrames;
+    private Frame mLast;
+
+    private PaintStats() {}
+
+    private synchronized void add(Frame frame) {
+        mWindow[mNext] = frame;
+        mNext = (mNext + 1) % mWindow.length;
+        mFrames++;
+        mLast = frame;
+    }
+
+    private synchronized List<Frame> window() {
+        final List<Frame> frames = new ArrayList(mWindow.length);
+        for (Frame f : mWindow)
+            if (f != null)
+                frames.add(f);
+        return frames;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mWindow, null);
+        mNext = 0;
+        mFrames = 0;
+        mLast = null;
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrames;
+    }
+
+    public int getWindowFrames() {
+        return window().size();
+    }
+
+    public synchronized double getLastFrameMillis() {
+        return mLast == null ? 0 : mLast.getMillis();
+    }
+
+    public synchronized String getLastFrame() {
+        return mLast == null ? "" : mLast.toString();
+    }
+
+    /** @return the frame times in the window, sorted */
+    private double[] sortedMillis() {
+        final List<Frame> frames = window();
+        final double[] millis = new double[frames.size()];
+        for (int i = 0; i < millis.length; i++)
+            millis[i] = frames.get(i).getMillis();
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        if (sorted.length == 0)
+            return 0;
+        final int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    public double getMedianFrameMillis()       { return percentile(sortedMillis(), 0.5); }
+    public double getPercentile90FrameMillis() { return percentile(sortedMillis(), 0.9); }
+    public double getPercentile99FrameMillis() { return percentile(sortedMillis(), 0.99); }
+    public double getMaxFrameMillis()          { return percentile(sortedMillis(), 1); }
+
+    /** @return the counts of the frames in the window by frame time, one per bucket, plus one for anything slower */
+    int[] getHistogram() {
+        final int[] counts = new int[BUCKETS.length + 1];
+        for (Frame f : window()) {
+            final double ms = f.getMillis();
+            int b = 0;
+            while (b < BUCKETS.length && ms >= BUCKETS[b])
+                b++;
+            counts[b]++;
+        }
+        return counts;
+    }
+
+    private static String bucketLabel(int b) {
+        return b < BUCKETS.length ? ("<" + BUCKETS[b] + "ms") : (">" + BUCKETS[BUCKETS.length - 1] + "ms");
+    }
+
+    public String getFrameTimeHistogram() {
+        final int[] counts = getHistogram();
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0)
+                b.append(' ');
+            b.append(bucketLabel(i)).append(':').append(counts[i]);
+        }
+        return b.toString();
+    }
+
+    // The indices of the per-frame figures we average over the window
+    private static final int FRAME = 0, FOCAL = 1, VISITED = 2, CULLED = 3, DRAWN = 4, LAYOUTS = 5, IMAGES = 6, PLACEHOLDERS = 7;
+
+    private double mean(int figure) {
+        final List<Frame> frames = window();
+        if (frames.isEmpty())
+            return 0;
+        double sum = 0;
+        for (Frame f : frames) {
+            switch (figure) {
+            case FRAME:         sum += f.getMillis(); break;
+            case FOCAL:         sum += f.getFocalMillis(); break;
+            case VISITED:       sum += f.visited; break;
+            case CULLED:        sum += f.culled; break;
+            case DRAWN:         sum += f.drawn; break;
+            case LAYOUTS:       sum += f.textLayouts; break;
+            case IMAGES:        sum += f.images; break;
+            case PLACEHOLDERS:  sum += f.placeholders; break;
+            }
+        }
+        return sum / frames.size();
+    }
+
+    public double getMeanFrameMillis()          { return mean(FRAME); }
+    public double getMeanFocalMillis()          { return mean(FOCAL); }
+    public double getMeanComponentsVisited()    { return mean(VISITED); }
+    public double getMeanComponentsCulled()     { return mean(CULLED); }
+    public double getMeanComponentsDrawn()      { return mean(DRAWN); }
+    public double getMeanTextLayouts()          { return mean(LAYOUTS); }
+    public double getMeanImagesDrawn()          { return mean(IMAGES); }
+    public double getMeanImagePlaceholders()    { return mean(PLACEHOLDERS); }
+
+    public String getMeanComponentsDrawnByType() {
+        final List<Frame> frames = window();
+        final Map<String,Double> sums = new TreeMap();
+        for (Frame f : frames) {
+            for (Map.Entry<Class,int[]> e : f.drawnByType.entrySet()) {
+                final String type = typeName(e.getKey());
+                final Double sum = sums.get(type);
+                sums.put(type, (sum == null ? 0 : sum) + e.getValue()[0]);
+            }
+        }
+        final StringBuilder b = new StringBuilder();
+        for (Map.Entry<String,Double> e : sums.entrySet()) {
+            if (b.length() > 0)
+                b.append(' ');
+            b.append(String.format("%s:%.1f", e.getKey(), e.getValue() / frames.size()));
+        }
+        return b.toString();
+    }
+
+    //-----------------------------------------------------------------------------
+    // The HUD
+    //-----------------------------------------------------------------------------
+
+    private static final Font HUDFont = new Font("SansSerif", Font.PLAIN, 11);
+    private static final Color HUDBackground = new Color(0,0,0,176);
+    private static final Color HUDBar = new Color(96,192,255);
+    private static final int HUD_LINE = 14;
+    private static final int HUD_WIDTH = 420;
+    private static final int HUD_BAR_WIDTH = 200;
+
+    /**
+     * Draw a summary of the given frame, and of the window, at the given location, in
+     * raw (device) coordinates.
+     */
+    static void drawHUD(Graphics2D g, Frame last, int x, int y)
+    {
+        final int[] histogram = Stats.getHistogram();
+        final double[] sorted = Stats.sortedMillis();
+        final List<String> lines = new ArrayList();
+
+        if (last != null) {
+            lines.add(String.format("last frame %.1fms, focal %.1fms", last.getMillis(), last.getFocalMillis()));
+            lines.add(String.format("visited %d, culled %d, drawn %d, text layouts %d",
+                                    last.visited, last.culled, last.drawn, last.textLayouts));
+            lines.add(String.format("images %d, placeholders %d", last.images, last.placeholders));
+            lines.add("drawn: " + last.getDrawnByType());
+        }
+        lines.add(String.format("%d frames: median %.1fms, 90%% %.1fms, 99%% %.1fms, max %.1fms",
+                                sorted.length,
+                                percentile(sorted, 0.5),
+                                percentile(sorted, 0.9),
+                                percentile(sorted, 0.99),
+                                percentile(sorted, 1)));
+
+        int max = 1;
+        for (int count : histogram)
+            max = Math.max(max, count);
+
+        final int height = (lines.size() + histogram.length) * HUD_LINE + 10;
+
+        final Composite composite = g.getComposite();
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setColor(HUDBackground);
+        g.fillRect(x, y, HUD_WIDTH, height);
+        g.setFont(HUDFont);
+
+        int ty = y + 5 + HUD_LINE - 3;
+        g.setColor(Color.white);
+        for (String line : lines) {
+            g.drawString(line, x + 6, ty);
+            ty += HUD_LINE;
+        }
+        for (int b = 0; b < histogram.length; b++) {
+            g.setColor(Color.white);
+            g.drawString(bucketLabel(b), x + 6, ty);
+            g.drawString(Integer.toString(histogram[b]), x + 70 + HUD_BAR_WIDTH + 6, ty);
+            g.setColor(HUDBar);
+            g.fillRect(x + 70, ty - HUD_LINE + 5, histogram[b] * HUD_BAR_WIDTH / max, HUD_LINE - 4);
+            ty += HUD_LINE;
+        }
+        g.setComposite(composite);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PaintStats[frames=%d window=%d mean=%.1fms %s]",
+                             getFrameCount(),
+                             getWindowFrames(),
+                             getMeanFrameMillis(),
+                             getFrameTimeHistogram());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+/**
+ * The JMX management interface of PaintStats.  All figures are for the frames
+ * currently in the rolling window, unless otherwise noted.
+ *
+ * @see PaintStats
+ * @version $Revision: 1.0 $
+ */
+public interface PaintStatsMBean
+{
+    /** @return true if MapViewer frames are being measured */
+    boolean isCollecting();
+    /** start or stop measuring MapViewer frames */
+    void setCollecting(boolean collecting);
+    /** forget all frames measured so far */
+    void reset();
+
+    /** @return the number of frames measured since the last reset */
+    long getFrameCount();
+    /** @return the number of frames in the window */
+    int getWindowFrames();
+
+    double getLastFrameMillis();
+    double getMeanFrameMillis();
+    double getMedianFrameMillis();
+    double getPercentile90FrameMillis();
+    double getPercentile99FrameMillis();
+    double getMaxFrameMillis();
+    double getMeanFocalMillis();
+
+    /** @return the counts of frames by frame time, as "<4ms:12 <8ms:30 ..." */
+    String getFrameTimeHistogram();
+
+    double getMeanComponentsVisited();
+    double getMeanComponentsCulled();
+    double getMeanComponentsDrawn();
+    /** @return the mean number of components drawn per frame by type, as "Node:120.0 Link:88.5 ..." */
+    String getMeanComponentsDrawnByType();
+    double getMeanTextLayouts();
+    double getMeanImagesDrawn();
+    double getMeanImagePlaceholders();
+
+    /** @return a description of the last frame measured */
+    String getLastFrame();
+}
@@ -225,16 +225,19 @@ public class PresentationNotes {
                     }
                 }
                 
+                final PaintStats.Frame frame = DEBUG.Enabled ? PaintStats.beginFrame("deck entry") : null;
                 try {
-                    if (DEBUG.Enabled) dc.clearDebug();
                     toDraw.drawFit(dc, 0);
                 } catch (Throwable t) {
                     Log.error("exception drawing " + toDraw, t);
+                } finally {
+                    if (frame != null)
+                        PaintStats.endFrame(frame);
                 }
                 
                 try {
                 
-                    if (DEBUG.Enabled) Log.debug("painted " + DrawContext.getDebug() + " to " + dc);
+                    if (DEBUG.Enabled) Log.debug("painted " + frame + " to " + dc);
 
                     if (DEBUG.PDF) {
                         final String dcDesc = dc.toString() + String.format(" scale=%.1f%%", dc.g.getTransform().getScaleX() * 100);
@@ -0,0 +1,386 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A cache of the rendered drawing of individual components, for components that are
+ * expensive to draw and rarely change: e.g., groups with many children, or rich text.
+ * Components opt in by setting LWComponent.Flag.RASTER_CACHE.
+ *
+ * A raster holds only what the component's drawImpl draws (for a container, that
+ * includes all it's children), at a particular device scale and sub-pixel offset.
+ * When a component is drawn again at the same scale & offset, the raster is blitted
+ * instead.  The rasters are in device pixels, so they're never scaled: at any other
+ * scale, a new raster is rendered.  A component may have a raster for each of a
+ * couple of different scales at once (e.g., the map viewer and a second viewer).
+ *
+ * Any LWCEvent from the component or any of it's descendants discards it's rasters, as
+ * does anything else known to change how they're drawn without an event: see
+ * invalidateAncestors.  After an invalidation, the next draw is vector drawn: while
+ * a component is changing continuously (e.g., a drag, or an animation), rendering a
+ * raster would only cost more.  The first draw after it's quiet renders a new one.
+ *
+ * The total size of all the rasters is kept under a memory budget, by discarding
+ * the least recently drawn.
+ *
+ * @see DrawContext#isRasterCacheEnabled
+ * @version $Revision: 1.0 $
+ */
+final class RasterCache
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(RasterCache.class);
+
+    /** total bytes of raster to keep */
+    private static final long BUDGET = VueResources.getInt("rasterCache.maxMegabytes", 48) * 1024L * 1024L;
+
+    /** never render a raster larger than this in either dimension: at high zooms, vector drawing of what's visible is cheaper */
+    private static final int MAX_SIZE = 2048;
+
+    /** max number of rasters (at different scales) to keep for any one component */
+    private static final int MAX_PER_COMPONENT = 2;
+
+    /** containers with fewer descendants than this aren't worth caching */
+    private static final int MIN_DESCENDANTS = 16;
+
+    /** extra margin, in pixels, for anti-aliasing */
+    private static final int MARGIN = 2;
+
+    /** the caching state of a single component: see LWComponent.rasterEntry */
+    static final class Entry
+    {
+        /** most recently used first */
+        private final Raster[] rasters = new Raster[MAX_PER_COMPONENT];
+        /** true if there's been no invalidation since the last draw */
+        private boolean quiet;
+        /** true if it's no use caching this component until it next changes */
+        private boolean uncacheable;
+
+        @Override
+        public String toString() {
+            return "RasterCache.Entry[" + rasters[0] + (rasters[1] == null ? "" : (" " + rasters[1]))
+                + (quiet ? " quiet" : "") + (uncacheable ? " uncacheable" : "") + "]";
+        }
+    }
+
+    private static final class Raster
+    {
+        final Entry entry;
+        final BufferedImage image;
+        /** location of the image, relative to the whole pixel translation of the component's transform */
+        final int x, y;
+        final double scale, fractionX, fractionY;
+        final int mode;
+        final Color fill;
+
+        Raster(Entry entry, BufferedImage image, int x, int y, double scale, double fractionX, double fractionY, int mode, Color fill) {
+            this.entry = entry;
+            this.image = image;
+            this.x = x;
+            this.y = y;
+            this.scale = scale;
+            this.fractionX = fractionX;
+            this.fractionY = fractionY;
+            this.mode = mode;
+            this.fill = fill;
+        }
+
+        boolean matches(double scale, double fractionX, double fractionY, int mode, Color fill) {
+            return this.scale == scale
+                && this.fractionX == fractionX
+                && this.fractionY == fractionY
+                && this.mode == mode
+                && (fill == null ? this.fill == null : fill.equals(this.fill));
+        }
+
+        int bytes() {
+            return image.getWidth() * image.getHeight() * 4;
+        }
+
+        @Override
+        public String toString() {
+            return image.getWidth() + "x" + image.getHeight() + "@" + (float) scale;
+        }
+    }
+
+    /** all the rasters, in LRU order */
+    private static final LinkedHashMap<Raster,Raster> Rasters = new LinkedHashMap<Raster,Raster>(64, 0.75f, true);
+
+    private static long BytesHeld;
+    /** for diagnostics */
+    private static int Hits, Misses, Renders, Evictions;
+
+    private RasterCache() {}
+
+    //-----------------------------------------------------------------------------
+    // Invalidation: may be called from any thread
+    //-----------------------------------------------------------------------------
+
+    /** discard any rasters of the given component */
+    static void invalidate(LWComponent c)
+    {
+        final Entry e = c.rasterEntry;
+        if (e != null) {
+            synchronized (Rasters) {
+                e.quiet = false;
+                e.uncacheable = false;
+                for (int i = 0; i < MAX_PER_COMPONENT; i++) {
+                    if (e.rasters[i] != null) {
+                        discard(e.rasters[i]);
+                        e.rasters[i] = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard any rasters of the given component or any of it's ancestors.  This is for
+     * changes that affect how a component is drawn, but don't generate an event: e.g.,
+     * selection, filtering, pathway membership, or label editing.
+     */
+    static void invalidateAncestors(LWComponent c)
+    {
+        for (; c != null; c = c.parent)
+            invalidate(c);
+    }
+
+    /** must hold Rasters lock: discard the given raster, which the caller must also remove from it's entry */
+    private static void discard(Raster r)
+    {
+        if (Rasters.remove(r) != null)
+            BytesHeld -= r.bytes();
+        r.image.flush();
+    }
+
+    //-----------------------------------------------------------------------------
+    // Drawing
+    //-----------------------------------------------------------------------------
+
+    /**
+     * Draw the given component, which is expected to be ready to draw itself via
+     * drawImpl into the given DrawContext, from a raster, rendering a new one if
+     * needed.
+     *
+     * @return false if no raster can be used: the caller must draw the component itself
+     */
+    static boolean draw(final LWComponent c, final DrawContext dc)
+    {
+        if (!dc.isRasterCacheEnabled() || dc.getAlpha() != 1f || c.isSelected() || c.isDeleted())
+            return false;
+
+        final AffineTransform t = dc.g.getTransform();
+        if ((t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0)
+            return false;
+        final double scale = t.getScaleX();
+        if (scale <= 0)
+            return false;
+
+        final double tx = Math.floor(t.getTranslateX());
+        final double ty = Math.floor(t.getTranslateY());
+        final double fractionX = t.getTranslateX() - tx;
+        final double fractionY = t.getTranslateY() - ty;
+        final int mode = getMode(c, dc);
+        final Color fill = dc.getBackgroundFill();
+
+        Entry e = c.rasterEntry;
+        if (e == null)
+            e = c.rasterEntry = new Entry();
+
+        Raster raster = null;
+
+        synchronized (Rasters) {
+            if (e.uncacheable)
+                return false;
+            for (int i = 0; i < MAX_PER_COMPONENT; i++) {
+                final Raster r = e.rasters[i];
+                if (r != null && r.matches(scale, fractionX, fractionY, mode, fill)) {
+                    raster = r;
+                    Rasters.get(r); // mark as recently used
+                    // move to the front of the entry
+                    System.arraycopy(e.rasters, 0, e.rasters, 1, i);
+                    e.rasters[0] = r;
+                    Hits++;
+                    break;
+                }
+            }
+            if (raster == null) {
+                Misses++;
+                if (!e.quiet) {
+                    // we've changed since the last draw: wait till we're quiet
+                    e.quiet = true;
+                    return false;
+                }
+            }
+        }
+
+        if (raster == null) {
+            final Rectangle r = getDeviceBounds(c, t);
+            if (r == null || r.width > MAX_SIZE || r.height > MAX_SIZE || r.width * r.height * 4L > BUDGET / 4)
+                return false;
+            final BufferedImage image = render(c, dc, r);
+            if (image == null)
+                return false;
+            raster = new Raster(e, image, (int) (r.x - tx), (int) (r.y - ty), scale, fractionX, fractionY, mode, fill);
+            synchronized (Rasters) {
+                if (e.quiet) {
+                    final Raster last = e.rasters[MAX_PER_COMPONENT - 1];
+                    if (last != null)
+                        discard(last);
+                    System.arraycopy(e.rasters, 0, e.rasters, 1, MAX_PER_COMPONENT - 1);
+                    e.rasters[0] = raster;
+                    Rasters.put(raster, raster);
+                    BytesHeld += raster.bytes();
+                    trim(raster);
+                } else {
+                    // invalidated while we were rendering: use it this once, but don't keep it
+                }
+            }
+        }
+
+        final Composite composite = dc.g.getComposite();
+        try {
+            dc.g.setTransform(new AffineTransform());
+            dc.g.setComposite(AlphaComposite.SrcOver);
+            dc.g.drawImage(raster.image, (int) tx + raster.x, (int) ty + raster.y, null);
+        } finally {
+            dc.g.setComposite(composite);
+            dc.g.setTransform(t);
+        }
+
+        if (DEBUG.PAINT && DEBUG.META) Log.debug("drew " + c + " from " + raster);
+
+        return true;
+    }
+
+    /** @return a value for everything in the given DrawContext that may change how the given component is drawn */
+    private static int getMode(LWComponent c, DrawContext dc)
+    {
+        int mode = dc.getLODState() << 6;
+        if (dc.isInteractive())          mode |= 0x1;
+        if (dc.isPresenting())           mode |= 0x2;
+        if (dc.drawPathways())           mode |= 0x4;
+        if (dc.isBlackWhiteReversed())   mode |= 0x8;
+        if (dc.isBrowsing())             mode |= 0x10;
+        if (dc.focal == c)               mode |= 0x20;
+        return mode;
+    }
+
+    /**
+     * @return the device bounds of everything the given component may draw, given it's
+     * current (zero) transform, or null if it shouldn't be cached.  As this has to look
+     * at all the descendants, it marks the component as uncacheable (until it next
+     * changes) if any of them draw outside of it in ways that wouldn't be in the raster
+     * (e.g., pathway decorations or slide icons), or if there are too few of them to
+     * be worth it.
+     */
+    private static Rectangle getDeviceBounds(LWComponent c, AffineTransform t)
+    {
+        final Rectangle2D.Float mapBounds = c.getBorderBounds();
+        boolean uncacheable = false;
+        if (c.hasChildren()) {
+            int count = 0;
+            for (LWComponent d : c.getAllDescendents(LWComponent.ChildKind.PROPER)) {
+                if (d.inPathway() || d.hasEntries()) {
+                    uncacheable = true;
+                    break;
+                }
+                mapBounds.add(d.getBorderBounds());
+                count++;
+            }
+            if (count < MIN_DESCENDANTS)
+                uncacheable = true;
+        }
+        if (uncacheable) {
+            synchronized (Rasters) {
+                c.rasterEntry.uncacheable = true;
+            }
+            return null;
+        }
+        final Rectangle2D zeroBounds = c.transformMapToZeroRect(mapBounds);
+        if (Util.isBadRect(zeroBounds))
+            return null;
+        final Rectangle r = t.createTransformedShape(zeroBounds).getBounds();
+        // room for selection strokes drawn by descendants, and anti-aliasing
+        final int margin = (int) Math.ceil(VueConstants.SelectionStrokeWidth * t.getScaleX()) + MARGIN;
+        r.grow(margin, margin);
+        return r;
+    }
+
+    private static BufferedImage render(LWComponent c, DrawContext dc, Rectangle r)
+    {
+        final BufferedImage image = dc.g.getDeviceConfiguration().createCompatibleImage(r.width, r.height, Transparency.TRANSLUCENT);
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHints(dc.g.getRenderingHints());
+            final DrawContext rdc = new DrawContext(dc, g, r.x, r.y, r.width, r.height);
+            c.drawImpl(rdc);
+            Renders++;
+            return image;
+        } catch (Throwable t) {
+            Log.error("rendering raster of " + c, t);
+            image.flush();
+            return null;
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /** must hold Rasters lock: drop the least recently used rasters over budget, but never the given one */
+    private static void trim(Raster keep)
+    {
+        final Iterator<Raster> i = Rasters.keySet().iterator();
+        while (BytesHeld > BUDGET && i.hasNext()) {
+            final Raster r = i.next();
+            if (r == keep)
+                continue;
+            i.remove();
+            BytesHeld -= r.bytes();
+            r.image.flush();
+            final Raster[] rasters = r.entry.rasters;
+            for (int k = 0; k < MAX_PER_COMPONENT; k++) {
+                if (rasters[k] == r) {
+                    System.arraycopy(rasters, k + 1, rasters, k, MAX_PER_COMPONENT - k - 1);
+                    rasters[MAX_PER_COMPONENT - 1] = null;
+                    break;
+                }
+            }
+            Evictions++;
+        }
+    }
+
+    /** for diagnostics */
+    static String getStats()
+    {
+        synchronized (Rasters) {
+            return "RasterCache[" + Rasters.size() + " rasters; " + (BytesHeld / 1024) + "K of " + (BUDGET / 1024) + "K;"
+                + " hits=" + Hits + " misses=" + Misses + " renders=" + Renders + " evictions=" + Evictions + "]";
+        }
+    }
+}
@@ -1452,9 +1452,9 @@ return super.viewToModel(new Point(alloc));
             // (e.g. the master slide has a black background), and the text box
             // has to fill of it's own for contrast, then temporarily swap
             // the text color to white or black so it can be seen.
-            if (lwc.mTextColor.equals(dc.getBackgroundFill())) {
+            if (LWComponent.SLOT_TextColor.valueEquals(lwc, dc.getBackgroundFill())) {
                 restoreTextColor = true;
-                if (lwc.mTextColor.brightness() > 0.5) {
+                if (LWComponent.SLOT_TextColor.brightness(lwc) > 0.5) {
                     setDocumentColor(DEBUG.Enabled ? Color.blue  : Color.black);
                 } else {
                     setDocumentColor(DEBUG.Enabled ? Color.green : Color.white);
@@ -1482,7 +1482,7 @@ return super.viewToModel(new Point(alloc));
 
         if (restoreTextColor) {
             // return document color to black
-            setDocumentColor(lwc.mTextColor.get());
+            setDocumentColor(LWComponent.SLOT_TextColor.get(lwc));
         }
 
         // draw a border for links -- why?
@@ -0,0 +1,490 @@
+/*
+* Copyright 2003-2010 Tufts University  Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package tufts.vue;
+
+import tufts.Util;
+
+import java.util.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A spatial index over the children of a single LWContainer (in practice, a map layer
+ * or any other large container), used to avoid linear scans of every child during
+ * picking (LWTraversal) and clip culling (LWContainer.drawChildren).
+ *
+ * Each child is indexed by the map-coordinate paint bounds of it's entire subtree: children
+ * are allowed to stray outside their parents (e.g., links inside nodes), and both picking
+ * and painting descend into a child to get at them.  Any child that has a descendent
+ * with pathway entries (slide icons, which draw and pick well outside of any bounds we
+ * know about), or that is a temporarily zoomed rollover, is always returned as a candidate.
+ *
+ * The index itself is a uniform grid hashed by cell, sized at rebuild time from the
+ * average size of the children.  Children that would cover too many cells (e.g., long
+ * links across the whole map) are kept in a separate list that is always bounds-checked.
+ *
+ * Maintenance is incremental: LWContainer reports child adds & removes, and all events
+ * from descendents (location, size, scale, etc) mark the affected child dirty.  Links
+ * have their geometry recomputed implicitly when their endpoints move, so they are
+ * marked via LWContainer.notifyBoundsChanged from LWLink.notifyEndpointMoved.  Dirty children are re-indexed
+ * at the next query.  Anything that replaces a child list directly (undo, z-order changes)
+ * calls invalidate, and we rebuild at the next query.
+ *
+ * Results are always returned in child (z) order, so callers can iterate them exactly
+ * as they would have iterated the full child list.
+ *
+ * @version $Revision: 1.0 $
+ */
+final class SpatialIndex
+{
+    private static final org.apache.log4j.Logger Log = org.apache.log4j.Logger.getLogger(SpatialIndex.class);
+
+    /** containers with fewer children than this don't bother with an index */
+    static final int MIN_CHILDREN = 64;
+
+    /** a child covering more cells than this goes in the always-checked large list */
+    private static final int MAX_CELLS_PER_ENTRY = 64;
+
+    /** extra map-coordinate slop added to every entry (e.g., link prune-dot hit radii) */
+    private static final float PAD = 4;
+
+    /** for benchmarking & debugging: if false, containers never consult an index */
+    static boolean Enabled = true;
+
+    private static final class Entry {
+        final LWComponent c;
+        int order;
+        float x, y, w, h;
+        int cx0, cy0, cx1, cy1;
+        boolean placed;
+        boolean large;
+        boolean always;
+        boolean dirty;
+        int stamp;
+
+        Entry(LWComponent c, int order) {
+            this.c = c;
+            this.order = order;
+        }
+
+        boolean intersects(Rectangle2D r) {
+            return x + w >= r.getX()
+                && y + h >= r.getY()
+                && x <= r.getX() + r.getWidth()
+                && y <= r.getY() + r.getHeight();
+        }
+    }
+
+    private static final Comparator<Entry> ZOrder = new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+            }
+        };
+
+    private final LWContainer mOwner;
+
+    private final Map<LWComponent,Entry> mEntries = new IdentityHashMap();
+    private final Map<Long,List<Entry>> mCells = new HashMap();
+    private final List<Entry> mLarge = new ArrayList();
+    private final List<Entry> mAlways = new ArrayList();
+    private final List<Entry> mDirty = new ArrayList();
+
+    private float mCellSize = 256;
+    private int mNextOrder;
+    private int mStamp;
+    private boolean mValid;
+
+    /** for diagnostics */
+    private int mRebuilds;
+
+    SpatialIndex(LWContainer owner) {
+        mOwner = owner;
+    }
+
+    //-----------------------------------------------------------------------------
+    // Maintenance
+    //-----------------------------------------------------------------------------
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    void childAdded(LWComponent c, boolean appended) {
+        if (!mValid)
+            return;
+        if (!appended) {
+            // inserted somewhere in the middle: all the orders after it have changed
+            mValid = false;
+            return;
+        }
+        Entry e = mEntries.get(c);
+        if (e != null) {
+            // add-back to the end of the list (z-order change)
+            e.order = mNextOrder++;
+            markDirty(e);
+        } else {
+            e = new Entry(c, mNextOrder++);
+            mEntries.put(c, e);
+            markDirty(e);
+        }
+    }
+
+    void childRemoved(LWComponent c) {
+        if (!mValid)
+            return;
+        final Entry e = mEntries.remove(c);
+        if (e != null) {
+            unplace(e);
+            if (e.dirty)
+                mDirty.remove(e);
+        }
+    }
+
+    /** the given child of our owner, or something in it's subtree, may have changed bounds */
+    void markChild(LWComponent child) {
+        if (!mValid)
+            return;
+        final Entry e = mEntries.get(child);
+        if (e != null)
+            markDirty(e);
+    }
+
+    private void markDirty(Entry e) {
+        if (!e.dirty) {
+            e.dirty = true;
+            mDirty.add(e);
+        }
+    }
+
+    /** handle an event from a descendent of our owner */
+    void childEvent(LWCEvent e) {
+        if (!mValid)
+            return;
+
+        final Object src = e.getSource();
+        if (src instanceof LWComponent)
+            markDescendent((LWComponent) src);
+        if (e.component != null && e.component != src)
+            markDescendent(e.component);
+    }
+
+    private void markDescendent(LWComponent c) {
+        // find the child of our owner that contains the given descendent
+        for (LWContainer p = c.getParent(); p != null; c = p, p = p.getParent()) {
+            if (p == mOwner) {
+                markChild(c);
+                return;
+            }
+        }
+    }
+
+    //-----------------------------------------------------------------------------
+    // Grid
+    //-----------------------------------------------------------------------------
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private int cell(float v) {
+        return (int) Math.floor(v / mCellSize);
+    }
+
+    private void place(Entry e) {
+        e.placed = true;
+        if (e.always) {
+            mAlways.add(e);
+            return;
+        }
+        e.cx0 = cell(e.x);
+        e.cy0 = cell(e.y);
+        e.cx1 = cell(e.x + e.w);
+        e.cy1 = cell(e.y + e.h);
+        final long cells = (long) (e.cx1 - e.cx0 + 1) * (e.cy1 - e.cy0 + 1);
+        if (cells > MAX_CELLS_PER_ENTRY) {
+            e.large = true;
+            mLarge.add(e);
+            return;
+        }
+        e.large = false;
+        for (int cx = e.cx0; cx <= e.cx1; cx++) {
+            for (int cy = e.cy0; cy <= e.cy1; cy++) {
+                final Long key = cellKey(cx, cy);
+                List<Entry> list = mCells.get(key);
+                if (list == null)
+                    mCells.put(key, list = new ArrayList(4));
+                list.add(e);
+            }
+        }
+    }
+
+    private void unplace(Entry e) {
+        if (!e.placed)
+            return;
+        e.placed = false;
+        if (e.always) {
+            mAlways.remove(e);
+        } else if (e.large) {
+            mLarge.remove(e);
+        } else {
+            for (int cx = e.cx0; cx <= e.cx1; cx++) {
+                for (int cy = e.cy0; cy <= e.cy1; cy++) {
+                    final Long key = cellKey(cx, cy);
+                    final List<Entry> list = mCells.get(key);
+                    if (list != null) {
+                        list.remove(e);
+                        if (list.isEmpty())
+                            mCells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /** recompute the subtree bounds of the entry */
+    private static void measure(Entry e) {
+        final Rectangle2D.Float r = new Rectangle2D.Float();
+        r.setRect(e.c.getPaintBounds());
+        e.always = accumulate(e.c, r, e.c.hasEntries() || e.c.isZoomedFocus());
+        e.x = r.x - PAD;
+        e.y = r.y - PAD;
+        e.w = r.width + PAD * 2;
+        e.h = r.height + PAD * 2;
+        if (Float.isNaN(e.x) || Float.isNaN(e.y) || Float.isNaN(e.w) || Float.isNaN(e.h))
+            e.always = true;
+    }
+
+    /** add the paint bounds of all descendents to r @return true if any of them must always be a candidate */
+    private static boolean accumulate(LWComponent c, Rectangle2D.Float r, boolean always) {
+        if (c.hasChildren()) {
+            for (LWComponent child : c.getChildren()) {
+                r.add(child.getPaintBounds());
+                if (child.hasEntries() || child.isZoomedFocus())
+                    always = true;
+                always = accumulate(child, r, always);
+            }
+        }
+        return always;
+    }
+
+    private void rebuild() {
+        mEntries.clear();
+        mCells.clear();
+        mLarge.clear();
+        mAlways.clear();
+        mDirty.clear();
+        mNextOrder = 0;
+
+        final List<LWComponent> children = mOwner.getChildren();
+        final List<Entry> entries = new ArrayList(children.size());
+        for (LWComponent c : children) {
+            final Entry e = new Entry(c, mNextOrder++);
+            mEntries.put(c, e);
+            entries.add(e);
+        }
+
+        // Measuring may lazily recompute links, which can in turn mark other links
+        // as changed, so we must be valid (accepting marks) while we measure.
+        mValid = true;
+        
+        final float[] sizes = new float[entries.size()];
+        int count = 0;
+        for (Entry e : entries) {
+            measure(e);
+            if (!e.always)
+                sizes[count++] = Math.max(e.w, e.h);
+        }
+
+        // A cell about twice the size of the typical child keeps most children in one to four cells.
+        // We use the median, as a few long links would otherwise blow up an average.
+        float median = 0;
+        if (count > 0) {
+            Arrays.sort(sizes, 0, count);
+            median = sizes[count / 2];
+        }
+        mCellSize = Math.max(median * 2, 16);
+
+        for (Entry e : entries)
+            place(e);
+
+        mRebuilds++;
+        updateDirty();
+
+        if (DEBUG.PERF) Log.debug(mOwner + ": rebuilt #" + mRebuilds + "; " + entries.size() + " children, "
+                                  + mCells.size() + " cells @" + mCellSize + ", large=" + mLarge.size() + ", always=" + mAlways.size());
+    }
+
+    private void ensureCurrent() {
+        if (mValid && mEntries.size() != mOwner.numChildren()) {
+            // the child list was changed out from under us
+            if (DEBUG.Enabled) Log.debug(mOwner + ": child count changed without notification; rebuilding");
+            mValid = false;
+        }
+        if (!mValid || mDirty.size() > mEntries.size() / 4)
+            rebuild();
+        else
+            updateDirty();
+    }
+
+    private void updateDirty() {
+        // note that measuring may add new entries to mDirty as we go
+        for (int i = 0; i < mDirty.size(); i++) {
+            final Entry e = mDirty.get(i);
+            unplace(e);
+            measure(e);
+            place(e);
+            e.dirty = false;
+        }
+        mDirty.clear();
+    }
+
+    //-----------------------------------------------------------------------------
+    // Queries
+    //-----------------------------------------------------------------------------
+
+    /**
+     * @return all children of our owner whose subtree may intersect the given map region,
+     * in child (z) order.  This may include children that don't actually intersect, but
+     * will never exclude one that does.
+     * @param include -- if non-null, and a child of our owner, it's also included
+     */
+    List<LWComponent> query(Rectangle2D region, LWComponent include) {
+        ensureCurrent();
+
+        final int stamp = ++mStamp;
+        final List<Entry> hits = new ArrayList();
+
+        final int cx0 = cell((float) region.getX());
+        final int cy0 = cell((float) region.getY());
+        final int cx1 = cell((float) (region.getX() + region.getWidth()));
+        final int cy1 = cell((float) (region.getY() + region.getHeight()));
+
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > mCells.size()) {
+            // region covers more cells than we have: faster to just check what's there
+            for (List<Entry> list : mCells.values())
+                collect(list, region, stamp, hits);
+        } else {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    final List<Entry> list = mCells.get(cellKey(cx, cy));
+                    if (list != null)
+                        collect(list, region, stamp, hits);
+                }
+            }
+        }
+        collect(mLarge, region, stamp, hits);
+
+        for (Entry e : mAlways) {
+            if (e.stamp != stamp) {
+                e.stamp = stamp;
+                hits.add(e);
+            }
+        }
+        if (include != null) {
+            final Entry e = mEntries.get(include);
+            if (e != null && e.stamp != stamp) {
+                e.stamp = stamp;
+                hits.add(e);
+            }
+        }
+
+        if (hits.size() > 1)
+            Collections.sort(hits, ZOrder);
+
+        final List<LWComponent> result = new ArrayList(hits.size());
+        for (Entry e : hits)
+            result.add(e.c);
+        return result;
+    }
+
+    private static void collect(List<Entry> list, Rectangle2D region, int stamp, List<Entry> hits) {
+        for (Entry e : list) {
+            if (e.stamp != stamp) {
+                e.stamp = stamp;
+                if (e.intersects(region))
+                    hits.add(e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialIndex[" + mOwner + (mValid ? "" : " INVALID") + " n=" + mEntries.size() + " cells=" + mCells.size()
+            + " large=" + mLarge.size() + " always=" + mAlways.size() + " dirty=" + mDirty.size() + " rebuilds=" + mRebuilds + "]";
+    }
+
+    //-----------------------------------------------------------------------------
+    // Benchmark: pick latency v.s. map size, with and without the index
+    //-----------------------------------------------------------------------------
+
+    public static void main(String args[]) {
+        DEBUG.Enabled = false;
+        final int[] sizes = { 1000, 4000, 16000, 32000 };
+        final int picks = 2000;
+        final Random random = new Random(42);
+
+        System.out.println("      nodes     links   linear-pick   indexed-pick   speedup");
+        for (int n : sizes) {
+            final LWMap map = new LWMap("bench-" + n);
+            final List<LWComponent> nodes = new ArrayList(n);
+            final int side = (int) Math.ceil(Math.sqrt(n));
+            for (int i = 0; i < n; i++) {
+                final LWNode node = new LWNode("n" + i);
+                node.setLocation((i % side) * 150, (i / side) * 80);
+                nodes.add(node);
+            }
+            map.addChildren(nodes);
+            final List<LWComponent> links = new ArrayList(n);
+            for (int i = 1; i < n; i++)
+                links.add(new LWLink(nodes.get(i - 1), nodes.get(i)));
+            map.addChildren(links);
+
+            final float extentX = side * 150, extentY = (n / side + 1) * 80;
+            final float[] px = new float[picks], py = new float[picks];
+            for (int i = 0; i < picks; i++) {
+                px[i] = random.nextFloat() * extentX;
+                py[i] = random.nextFloat() * extentY;
+            }
+
+            final double linear = timePicks(map, px, py, false);
+            final double indexed = timePicks(map, px, py, true);
+            System.out.format("%11d %9d %11.3fms %12.3fms %8.1fx\n", n, links.size(), linear, indexed, linear / indexed);
+        }
+        Enabled = true;
+    }
+
+    /** @return average milliseconds per pick */
+    private static double timePicks(LWMap map, float[] px, float[] py, boolean indexed) {
+        Enabled = indexed;
+        int hits = 0;
+        // warm up (and builds the index if enabled)
+        for (int i = 0; i < Math.min(200, px.length); i++)
+            if (pick(map, px[i], py[i]) != null)
+                hits++;
+        final long start = System.nanoTime();
+        for (int i = 0; i < px.length; i++)
+            if (pick(map, px[i], py[i]) != null)
+                hits++;
+        final long delta = System.nanoTime() - start;
+        if (hits < 0) System.out.println(hits); // keep the JIT honest
+        return delta / 1e6 / px.length;
+    }
+
+    private static LWComponent pick(LWMap map, float x, float y) {
+        final PickContext pc = new PickContext(null, x, y);
+        pc.root = map;
+        return LWTraversal.PointPick.pick(pc);
+    }
+}
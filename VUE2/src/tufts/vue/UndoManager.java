@@ -493,6 +493,9 @@ public class UndoManager
             //-------------------------------------------------------
             
             parent.mChildren = (List) oldValue;
+            parent.invalidateChildIndexes();
+            if (parent.getMap() != null)
+                parent.getMap().getDescendentRegistry().invalidate();
 
             //-------------------------------------------------------
             // Now make sure all the children are properly parented,
@@ -1287,6 +1290,15 @@ public class UndoManager
             return;
         }
 
+        if (e.isBatch()) {
+            // a single pass over the coalesced events: we need to see every one of them to
+            // capture all old values, but we skip the overhead of separate delivery for each
+            if (DEBUG.UNDO) Log.debug(this + " unpacking " + e);
+            for (LWCEvent batched : e.getBatchedEvents())
+                LWCChanged(batched);
+            return;
+        }
+
         if (e.key == LWKey.Hidden || e.key == LWKey.Collapsed) {
             // technically, we only need to flag this if the LWComponent in the event is
             // also currently selected, tho theoretically there could be a list of
@@ -316,12 +316,22 @@ public class VueUtil extends tufts.Util
     }
 
 
+    /** for benchmarking: if false, always compute intersections from the flattened shape path */
+    static boolean AnalyticIntersections = true;
+
     /**
      * Compute the intersection of an arbitrary shape and a line segment
      * that is assumed to pass throught the shape.  Usually used
      * with an endpoint (rayX2,rayY2) that ends in the center of the
      * shape, tho that's not required.
      *
+     * Ellipses and round-rects are intersected exactly, in their own
+     * coordinate space.  Shapes made only of straight edges (rectangles & the
+     * polygons in tufts.vue.shape) are intersected edge by edge.  Only other
+     * shapes with curves need to be flattened into line segments first.
+     * Intersections are always reported in the order they'd be found walking
+     * the shape's path.
+     *
      * @param max - max number of intersections to compute. An x/y
      * pair of coords will put into result up to max times. Must be >= 1.
      *
@@ -333,13 +343,40 @@ public class VueUtil extends tufts.Util
                                               java.awt.Shape shape, java.awt.geom.AffineTransform shapeTransform,
                                               float[] result, int max)
     {
-        java.awt.geom.PathIterator i = shape.getPathIterator(shapeTransform);
-        // todo performance: if this shape has no curves (CUBICTO or QUADTO)
-        // this flattener is redundant.  Also, it would be faster to
-        // actually do the math for arcs and compute the intersection
-        // of the arc and the line, tho we can save that for another day.
-        i = new java.awt.geom.FlatteningPathIterator(i, 0.5);
+        if (AnalyticIntersections) {
+            if (shape instanceof java.awt.geom.Ellipse2D || shape instanceof java.awt.geom.RoundRectangle2D) {
+                final float[] hits = computeCurvedIntersection(segX1, segY1, segX2, segY2,
+                                                               (java.awt.geom.RectangularShape) shape, shapeTransform,
+                                                               result, max);
+                if (hits != null)
+                    return hits;
+            } else if (isStraightEdged(shape)) {
+                return computePathIntersection(segX1, segY1, segX2, segY2,
+                                               shape.getPathIterator(shapeTransform),
+                                               result, max);
+            }
+        }
         
+        return computePathIntersection(segX1, segY1, segX2, segY2,
+                                       new java.awt.geom.FlatteningPathIterator(shape.getPathIterator(shapeTransform), 0.5),
+                                       result, max);
+    }
+
+    /** @return true if we know the given shape has no curves in it's path */
+    private static boolean isStraightEdged(Shape shape) {
+        return shape instanceof java.awt.geom.Rectangle2D
+            || shape instanceof tufts.vue.shape.RectangularPoly2D
+            || shape instanceof tufts.vue.shape.Triangle2D
+            || shape instanceof tufts.vue.shape.Diamond2D
+            || shape instanceof Polygon;
+    }
+
+    /** intersect the segment with each line segment in the path, in path order: the path must have no curves */
+    private static float[] computePathIntersection(float segX1, float segY1,
+                                                   float segX2, float segY2,
+                                                   PathIterator i,
+                                                   float[] result, int max)
+    {
         float[] seg = new float[6];
         float firstX = 0f;
         float firstY = 0f;
@@ -380,6 +417,162 @@ public class VueUtil extends tufts.Util
         return NoIntersection;
     }
 
+    /**
+     * Intersect the segment with an ellipse or round-rect by solving for where the segment
+     * crosses each elliptical arc in the shape.  The segment is mapped into the
+     * coordinate space of the shape, where this is simple, and because an affine
+     * transform preserves where along the segment the crossings are, the results
+     * can be computed directly on the original segment.
+     *
+     * @return null if the shape transform can't be inverted, or the shape is empty
+     */
+    private static float[] computeCurvedIntersection(float segX1, float segY1,
+                                                     float segX2, float segY2,
+                                                     java.awt.geom.RectangularShape shape,
+                                                     java.awt.geom.AffineTransform shapeTransform,
+                                                     float[] result, int max)
+    {
+        final double w = shape.getWidth();
+        final double h = shape.getHeight();
+        if (!(w > 0 && h > 0))
+            return null;
+        
+        final double[] p = { segX1, segY1, segX2, segY2 };
+        if (shapeTransform != null && !shapeTransform.isIdentity()) {
+            try {
+                shapeTransform.inverseTransform(p, 0, p, 0, 2);
+            } catch (java.awt.geom.NoninvertibleTransformException e) {
+                return null;
+            }
+        }
+        final double x1 = p[0], y1 = p[1];
+        final double dx = p[2] - x1, dy = p[3] - y1;
+        final double x = shape.getX(), y = shape.getY();
+
+        // up to 4 crossings: we record the position along the path of each, and
+        // where it is along our segment (0-1)
+        final double[] pathPos = new double[4];
+        final double[] segPos = new double[4];
+        int count = 0;
+        
+        if (shape instanceof java.awt.geom.Ellipse2D) {
+            // the path starts at the right-most point, and runs clockwise (on screen) all the way round
+            count = crossArc(x1, y1, dx, dy, x + w/2, y + h/2, w/2, h/2, 0, 0, pathPos, segPos, count);
+        } else {
+            final java.awt.geom.RoundRectangle2D rr = (java.awt.geom.RoundRectangle2D) shape;
+            // as in RoundRectangle2D's path iterator
+            final double aw = Math.min(w, Math.abs(rr.getArcWidth()));
+            final double ah = Math.min(h, Math.abs(rr.getArcHeight()));
+            final double rx = aw / 2, ry = ah / 2;
+            final double left = x, top = y, right = x + w, bottom = y + h;
+            // the path starts at the top of the left edge and runs counter-clockwise:
+            // left edge, lower-left corner, bottom edge, lower-right corner, and so on
+            count = crossEdge(x1, y1, dx, dy, left, top + ry, left, bottom - ry, 0, pathPos, segPos, count);
+            if (rx > 0 && ry > 0) count = crossArc(x1, y1, dx, dy, left + rx, bottom - ry, rx, ry, 1, Math.PI, pathPos, segPos, count);
+            count = crossEdge(x1, y1, dx, dy, left + rx, bottom, right - rx, bottom, 2, pathPos, segPos, count);
+            if (rx > 0 && ry > 0) count = crossArc(x1, y1, dx, dy, right - rx, bottom - ry, rx, ry, 3, Math.PI / 2, pathPos, segPos, count);
+            count = crossEdge(x1, y1, dx, dy, right, bottom - ry, right, top + ry, 4, pathPos, segPos, count);
+            if (rx > 0 && ry > 0) count = crossArc(x1, y1, dx, dy, right - rx, top + ry, rx, ry, 5, Math.PI * 2, pathPos, segPos, count);
+            count = crossEdge(x1, y1, dx, dy, right - rx, top, left + rx, top, 6, pathPos, segPos, count);
+            if (rx > 0 && ry > 0) count = crossArc(x1, y1, dx, dy, left + rx, top + ry, rx, ry, 7, Math.PI * 3 / 2, pathPos, segPos, count);
+        }
+
+        // report them in path order
+        for (int i = 1; i < count; i++) {
+            for (int j = i; j > 0 && pathPos[j-1] > pathPos[j]; j--) {
+                final double tp = pathPos[j]; pathPos[j] = pathPos[j-1]; pathPos[j-1] = tp;
+                final double ts = segPos[j]; segPos[j] = segPos[j-1]; segPos[j-1] = ts;
+            }
+        }
+        final float segDX = segX2 - segX1;
+        final float segDY = segY2 - segY1;
+        for (int i = 0; i < count; i++) {
+            result[i*2 + 0] = (float) (segX1 + segPos[i] * segDX);
+            result[i*2 + 1] = (float) (segY1 + segPos[i] * segDY);
+            if (i + 1 >= max)
+                return result;
+        }
+        return NoIntersection;
+    }
+
+    /**
+     * Find where the segment starting at x1,y1 with extent dx,dy crosses the straight
+     * edge ax,ay -> bx,by, and record it at path position piece + (0-1) along the edge.
+     * @return the new number of crossings recorded
+     */
+    private static int crossEdge(double x1, double y1, double dx, double dy,
+                                 double ax, double ay, double bx, double by,
+                                 int piece, double[] pathPos, double[] segPos, int count)
+    {
+        final double ex = bx - ax, ey = by - ay;
+        final double denom = dx * ey - dy * ex;
+        if (denom == 0 || count >= segPos.length)
+            return count; // parallel
+        final double t = ((ax - x1) * ey - (ay - y1) * ex) / denom; // along the segment
+        final double u = ((ax - x1) * dy - (ay - y1) * dx) / denom; // along the edge
+        if (t >= 0 && t <= 1 && u >= 0 && u <= 1) {
+            pathPos[count] = piece + u;
+            segPos[count] = t;
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Find where the segment starting at x1,y1 with extent dx,dy crosses the ellipse
+     * centered at cx,cy with radii rx,ry.  For an ellipse (piece 0), all crossings
+     * count, at path positions that run clockwise from the right-most point.  Otherwise,
+     * only crossings on the quarter of the ellipse running counter-clockwise (on
+     * screen) from startAngle count, as that's the corner of a round-rect.
+     * @return the new number of crossings recorded
+     */
+    private static int crossArc(double x1, double y1, double dx, double dy,
+                                double cx, double cy, double rx, double ry,
+                                int piece, double startAngle,
+                                double[] pathPos, double[] segPos, int count)
+    {
+        // in coordinates where the ellipse is the unit circle at the origin
+        final double px = (x1 - cx) / rx, py = (y1 - cy) / ry;
+        final double vx = dx / rx, vy = dy / ry;
+        final double a = vx * vx + vy * vy;
+        if (a == 0)
+            return count;
+        final double b = 2 * (px * vx + py * vy);
+        final double c = px * px + py * py - 1;
+        final double disc = b * b - 4 * a * c;
+        if (disc < 0)
+            return count;
+        final double root = Math.sqrt(disc);
+        for (int i = 0; i < 2; i++) {
+            if (i == 1 && root == 0)
+                break; // tangent: just the one crossing
+            final double t = (-b + (i == 0 ? -root : root)) / (2 * a);
+            if (t < 0 || t > 1 || count >= segPos.length)
+                continue;
+            // angle on screen: 0 at the right, increasing clockwise
+            double angle = Math.atan2(py + t * vy, px + t * vx);
+            if (angle < 0)
+                angle += Math.PI * 2;
+            final double pos;
+            if (piece == 0) {
+                pos = angle / (Math.PI * 2);
+            } else {
+                double sweep = startAngle - angle; // how far counter-clockwise from the start
+                if (sweep < 0)
+                    sweep += Math.PI * 2;
+                else if (sweep >= Math.PI * 2)
+                    sweep -= Math.PI * 2;
+                if (sweep > Math.PI / 2)
+                    continue; // not on this corner
+                pos = sweep / (Math.PI / 2);
+            }
+            pathPos[count] = piece + pos;
+            segPos[count] = t;
+            count++;
+        }
+        return count;
+    }
+
     /** compute the first two y value crossings of the given x_axis and shape */
     public static float[] computeYCrossings(float x_axis, Shape shape, float[] result) {
         return computeIntersection(x_axis, Integer.MIN_VALUE, x_axis, Integer.MAX_VALUE, shape, null, result, 2);
@@ -848,6 +1041,104 @@ public class VueUtil extends tufts.Util
     }
 
 
+    //-----------------------------------------------------------------------------
+    // Benchmark: link recomputation while dragging nodes, with analytic v.s.
+    // flattened shape intersections
+    //-----------------------------------------------------------------------------
+
+    public static void main(String args[]) {
+        DEBUG.Enabled = false;
+        final Class[] shapes = {
+            java.awt.geom.Rectangle2D.Float.class,
+            tufts.vue.shape.RoundRect2D.class,
+            java.awt.geom.Ellipse2D.Float.class,
+            tufts.vue.shape.RectangularPoly2D.Hexagon.class,
+        };
+        final Random random = new Random(42);
+        final int n = 2000;
+        final int steps = 200;
+
+        final LWMap map = new LWMap("bench");
+        final List<LWComponent> nodes = new ArrayList(n);
+        for (int i = 0; i < n; i++) {
+            final LWNode node = new LWNode("n" + i);
+            node.setShape(shapes[i % shapes.length]);
+            node.setLocation(random.nextFloat() * 6000, random.nextFloat() * 4000);
+            nodes.add(node);
+        }
+        map.addChildren(nodes);
+        final List<LWComponent> links = new ArrayList(n * 2);
+        for (int i = 0; i < n * 2; i++) {
+            final LWLink link = new LWLink(nodes.get(random.nextInt(n)), nodes.get(random.nextInt(n)));
+            if (i % 4 == 0)
+                link.setControlCount(1 + i % 2);
+            links.add(link);
+        }
+        map.addChildren(links);
+
+        // drag the 100 most connected nodes, as if all selected
+        final List<LWComponent> dragged = new ArrayList(nodes);
+        Collections.sort(dragged, new Comparator<LWComponent>() {
+                public int compare(LWComponent a, LWComponent b) {
+                    return b.getLinks().size() - a.getLinks().size();
+                }});
+        final List<LWComponent> selection = dragged.subList(0, 100);
+        final Set<LWLink> moved = new HashSet();
+        for (LWComponent c : selection)
+            moved.addAll(c.getLinks());
+
+        System.out.println(selection.size() + " nodes dragged, " + moved.size() + " links recomputed per drag step");
+        System.out.println("              flattened     analytic   speedup");
+        for (int run = 0; run < 5; run++) {
+            final double flattened = timeDrag(selection, moved, steps, false);
+            final double analytic = timeDrag(selection, moved, steps, true);
+            System.out.format("drag step:   %9.3fms  %9.3fms  %7.1fx\n", flattened, analytic, flattened / analytic);
+        }
+        for (int run = 0; run < 5; run++) {
+            final double flattened = timeIntersections(moved, steps, false);
+            final double analytic = timeIntersections(moved, steps, true);
+            System.out.format("endpoints:   %9.3fms  %9.3fms  %7.1fx\n", flattened, analytic, flattened / analytic);
+        }
+        AnalyticIntersections = true;
+    }
+
+    /** @return average milliseconds to compute both endpoint intersections for all the given links */
+    private static double timeIntersections(Collection<LWLink> links, int steps, boolean analytic) {
+        AnalyticIntersections = analytic;
+        float sum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            for (LWLink l : links) {
+                final LWComponent head = l.getHead(), tail = l.getTail();
+                final float hx = head.getMapCenterX(), hy = head.getMapCenterY();
+                final float tx = tail.getMapCenterX(), ty = tail.getMapCenterY();
+                sum += computeIntersection(hx, hy, tx, ty, head)[0];
+                sum += computeIntersection(hx, hy, tx, ty, tail)[0];
+            }
+        }
+        final long delta = System.nanoTime() - start;
+        if (sum == 0.12345f) System.out.println(sum); // keep the JIT honest
+        return delta / 1e6 / steps;
+    }
+
+    /** @return average milliseconds per drag step */
+    private static double timeDrag(List<LWComponent> selection, Collection<LWLink> links, int steps, boolean analytic) {
+        AnalyticIntersections = analytic;
+        float sum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            final float dx = (i % 2 == 0) ? 7 : -7;
+            for (LWComponent c : selection)
+                c.translate(dx, dx / 2);
+            // what a repaint would do: bring the links up to date
+            for (LWLink l : links)
+                sum += l.getPaintBounds().width;
+        }
+        final long delta = System.nanoTime() - start;
+        if (sum < 0) System.out.println(sum); // keep the JIT honest
+        return delta / 1e6 / steps;
+    }
+
     public static int getMaxLabelLineLength() {
         // todo: this should be cached
         return VueResources.getInt("dataNode.labelLength");
@@ -931,10 +1222,10 @@ public class VueUtil extends tufts.Util
         
     public static List<LWComponent> setXYByClustering(LWMap map, Collection<? extends LWComponent> layoutNodes)
     {
-        final Collection<LWComponent> all = map.getAllDescendents();
-        final Collection<LWNode> relatingNodes = new ArrayList(all.size() / 2);
+        final Collection<LWNode> all = map.getAllOfType(LWNode.class);
+        final Collection<LWNode> relatingNodes = new ArrayList(all.size());
         
-        for (LWNode n : typeFilter(all, LWNode.class)) {
+        for (LWNode n : all) {
             if (!layoutNodes.contains(n))
                 relatingNodes.add(n);
         }
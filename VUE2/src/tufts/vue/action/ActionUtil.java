@@ -1212,6 +1212,8 @@ public class ActionUtil
             unmarshaller.setUnmarshalListener(mapHandler);
 
             // unmarshall the map:
+
+            final long unmarshalStart = System.currentTimeMillis();
             
             try {
                 map = (LWMap) unmarshaller.unmarshal(new InputSource(reader));
@@ -1234,6 +1236,8 @@ public class ActionUtil
 
             Log.info("unmarshalled: " + map);
 
+            map.setLoadTiming(unmarshalStart, System.currentTimeMillis() - unmarshalStart);
+
             // The below three notify calls must be called in exact sequence (file, then version, then completed)
 
             mapHandler.notifyFile(map, mapReader.file);
@@ -16,7 +16,6 @@
 package tufts.vue.ds;
 
 import tufts.Util;
-import tufts.Util.Picker;
 import tufts.vue.DEBUG;
 import tufts.vue.LWMap;
 import tufts.vue.LWComponent;
@@ -182,17 +181,12 @@ public final class DataAction
 
     }
 
-    private static final Picker DataNodePicker = new Picker<LWComponent>() {
-            public boolean match(LWComponent c) {
-                return c.getClass() == LWNode.class;
-                //return c.getClass() == LWNode.class && c.isDataNode();
-            }};
-
     /** @return a list of all *possible* targets we may want to be linking to */
     private static List<? extends LWComponent> getLinkTargets(LWMap map) {
-        return Util.extract(map.getAllDescendents(),
-                            DataNodePicker);
-        
+        // only exact-class LWNode's (answered from the map's type index)
+        //return c.getClass() == LWNode.class && c.isDataNode();
+        return new ArrayList(map.getAllOfType(LWNode.class));
+
     }
 
 
@@ -521,7 +515,7 @@ public final class DataAction
         if (link == null) { Log.error("link=null " + r); return null; }
         
         if (r.isCrossSchema()) {
-            link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASH3);
+            LWComponent.SLOT_StrokeStyle.setTo(link, LWComponent.StrokeStyle.DASH3);
             link.setStrokeWidth(2);
         }
 
@@ -569,7 +563,7 @@ public final class DataAction
         LWLink link = new LWLink(src, dest);
         link.setArrowState(0);
         if (specialColor != null) {
-            link.mStrokeStyle.setTo(LWComponent.StrokeStyle.DASH3);
+            LWComponent.SLOT_StrokeStyle.setTo(link, LWComponent.StrokeStyle.DASH3);
             link.setStrokeWidth(3);
             link.setStrokeColor(specialColor);
             if (specialColor == Color.red) {
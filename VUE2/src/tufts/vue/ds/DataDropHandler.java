@@ -123,10 +123,16 @@ class DataDropHandler extends MapDropTarget.DropHandler
 //             GUI.activateWaitCursor(); // *** STILL isn't working even though the drop is complete & drag/drop cursor should be cleared
 //             try {
                 Log.info("servicing the drop: " + drop);
-                serviceDrop(DataDropHandler.this, drop, newNodes, clusteringTargets);
-                if (drop.items != null && drop.items.size() > 0)
-                    MapDropTarget.addNodesToMap(drop);
-                MapDropTarget.completeDrop(drop);
+                final LWMap map = drop.viewer.getMap();
+                map.beginBatch(); // could be thousands of new nodes: deliver the map events all at once
+                try {
+                    serviceDrop(DataDropHandler.this, drop, newNodes, clusteringTargets);
+                    if (drop.items != null && drop.items.size() > 0)
+                        MapDropTarget.addNodesToMap(drop);
+                    MapDropTarget.completeDrop(drop);
+                } finally {
+                    map.endBatch();
+                }
                 String undoName = "Data Drop";
                 if (droppingDataItem.getField() != null)
                     undoName += " (" + droppingDataItem.getField().getName() + ")";
@@ -147,6 +147,14 @@ public class DataTree extends javax.swing.JTree
             } else if (isDataEvent(e)) {
                 mDataEventWasSeen = true;
                 if (DEBUG.ANNOTATE) Log.debug("   FOUND DATA EVENT: " + e + "; seenOne=" + mDataEventWasSeen);
+            } else if (e.isBatch() && !mDataEventWasSeen) {
+                for (tufts.vue.LWCEvent batched : e.getBatchedEvents()) {
+                    if (isDataEvent(batched)) {
+                        mDataEventWasSeen = true;
+                        if (DEBUG.ANNOTATE) Log.debug("   FOUND DATA EVENT IN BATCH: " + batched);
+                        break;
+                    }
+                }
             }
         }
 
@@ -1735,8 +1743,8 @@ public class DataTree extends javax.swing.JTree
         //dragNode.setFillColor(null);
         //dragNode.setStrokeWidth(0);
         if (!treeNode.isValue()) {
-            dragNode.mFontSize.setTo(24);
-            dragNode.mFontStyle.setTo(java.awt.Font.BOLD);
+            LWComponent.SLOT_FontSize.setTo(dragNode, 24);
+            LWComponent.SLOT_FontStyle.setTo(dragNode, java.awt.Font.BOLD);
             //                 dragNode.setClientData(LWComponent.ListFactory.class,
             //                                        new NodeProducer(treeNode));
         }
@@ -1790,6 +1798,17 @@ public class DataTree extends javax.swing.JTree
     private static final int NEW_ROW_NODE_MAP_REORG_THRESHOLD = 20;
     
     private void addMissingRowsToMap(final LWMap map)
+    {
+        map.beginBatch();
+        try {
+            addMissingRowsToMapInBatch(map);
+        } finally {
+            map.endBatch();
+        }
+        map.getUndoManager().mark("Add New Data Nodes");
+    }
+    
+    private void addMissingRowsToMapInBatch(final LWMap map)
     {
         // todo: we'll want to merge some of this code w/DropHandler code, as
         // this is somewhat of a special case of doing a drop
@@ -1887,8 +1906,6 @@ public class DataTree extends javax.swing.JTree
 	
             VUE.getSelection().setTo(newRowNodes);
         }
-	
-        map.getUndoManager().mark("Add New Data Nodes");
     }
 
 
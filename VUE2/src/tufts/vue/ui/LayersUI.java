@@ -800,6 +800,12 @@ public class LayersUI extends tufts.vue.gui.Widget implements LWComponent.Listen
 
         //if (DEBUG.EVENTS) Log.debug("handling " + e + "; source=" + e.getSource());
 
+        if (e.isBatch()) {
+            for (LWCEvent batched : e.getBatchedEvents())
+                LWCChanged(batched);
+            return;
+        }
+
         // ignore events from children: just want hierarchy events directly from the map
         // (as we're only interested in changes to map layers)
         